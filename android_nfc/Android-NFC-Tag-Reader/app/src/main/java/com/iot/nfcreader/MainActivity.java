@@ -5,6 +5,7 @@
 package com.iot.nfcreader;
 
 import android.Manifest;
+import android.annotation.TargetApi;
 import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.PendingIntent;
@@ -17,11 +18,14 @@ import android.nfc.NdefMessage;
 import android.nfc.NdefRecord;
 import android.nfc.NfcAdapter;
 import android.nfc.Tag;
+import android.nfc.tech.Ndef;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
 import android.os.Parcelable;
 import android.os.Vibrator;
 import android.provider.Settings;
+import android.util.Log;
 import android.support.v4.app.ActivityCompat;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -29,43 +33,122 @@ import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.LinearLayout;
+import android.widget.ListView;
 import android.widget.TextView;
 
 import com.google.android.gms.appindexing.Action;
 import com.google.android.gms.appindexing.AppIndex;
 import com.google.android.gms.common.api.GoogleApiClient;
+import com.iot.nfcreader.history.ScanHistoryAdapter;
+import com.iot.nfcreader.journal.ScanEvent;
+import com.iot.nfcreader.journal.ScanJournal;
 import com.iot.nfcreader.record.ParsedNdefRecord;
+import com.iot.nfcreader.record.RecordParsers;
 import com.iot.nfcreader.record.TextRecord;
 import com.iot.nfcreader.record.UriRecord;
-
-import java.io.BufferedReader;
+import com.iot.nfcreader.tap.ReaderModeOptions;
+import com.iot.nfcreader.tap.TapTimings;
+import com.iot.nfcreader.uid.FilteredUidLookup;
+import com.iot.nfcreader.uid.UidListWatcher;
+import com.iot.nfcreader.uid.UidLookup;
+
+import io.github.mylittleswift.nfc_codec.NdefText;
+import io.github.mylittleswift.nfc_session.SessionResult;
+import io.github.mylittleswift.nfc_session.SpanTracer;
+import io.github.mylittleswift.nfc_session.TagSessionExecutor;
+
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
-import au.com.bytecode.opencsv.CSVReader;
+import java.util.concurrent.Executor;
 
 
 /**
  * An {@link Activity} which handles a broadcast of a new tag that the device just discovered.
+ *
+ * Taps arrive through foreground dispatch, or, selected from the menu on Android 4.4 and
+ * later, through reader mode (see {@link ReaderModeOptions}). The time each tap takes to
+ * reach the screen is kept per path in {@link TapTimings}, and each stage of a tap is
+ * traced in a {@link SpanTracer}, dumped to a file from the menu.
  */
 public class MainActivity extends Activity {
 
+    private static final String TAG = "NfcReader";
+
+    /** Whether taps start out in reader mode rather than foreground dispatch, false by default. */
+    public static final String EXTRA_READER_MODE = "com.iot.nfcreader.READER_MODE";
+    /** NfcAdapter FLAG_READER_NFC_* technologies reader mode polls for, all by default. */
+    public static final String EXTRA_READER_TECH_FLAGS = "com.iot.nfcreader.READER_TECH_FLAGS";
+    /** Reader mode presence check delay in milliseconds. */
+    public static final String EXTRA_PRESENCE_CHECK_DELAY = "com.iot.nfcreader.PRESENCE_CHECK_DELAY";
+
+    /** Records kept in the history list, by default the history_capacity resource. */
+    public static final String EXTRA_HISTORY_CAPACITY = "com.iot.nfcreader.HISTORY_CAPACITY";
+
+    /** A dispatched tap is only timed if {@code onPause} came this shortly before it. */
+    private static final long MAX_REENTRY_NANOS = 1000L * 1000 * 1000;
+
+    // stages of a tap traced by mTracer
+    private static final int STAGE_DELIVER = 0;
+    private static final int STAGE_QUEUE = 1;
+    private static final int STAGE_READ = 2;
+    private static final int STAGE_LOOKUP = 3;
+    private static final int STAGE_PARSE = 4;
+    private static final int STAGE_VIEWS = 5;
+    private static final int STAGE_VIBRATE = 6;
+    private static final int STAGE_TOTAL = 7;
+    private static final String[] STAGES = {
+            "deliver", "queue", "read", "lookup", "parse", "views", "vibrate", "total",
+    };
+    private static final int TRACED_SPANS = 1024;
+
+    /** The scan journal's directory in the app's files, see {@link ScanJournal#readAll(File)}. */
+    private static final String JOURNAL_DIR = "journal";
+
+    /** Where "Dump trace" writes the trace, in the app's external files. */
+    private static final String TRACE_FILE = "nfcreader-trace.txt";
+
+    /** Sessions waiting for the I/O thread; a tap on a busy reader replaces the oldest. */
+    private static final int QUEUED_TAPS = 2;
+
     private static final DateFormat TIME_FORMAT = SimpleDateFormat.getDateTimeInstance();
-    private LinearLayout mTagContent;
+    /** the scan history shown in the list, bounded by its capacity */
+    private ScanHistoryAdapter mHistory;
 
     private NfcAdapter mAdapter;
     private PendingIntent mPendingIntent;
     private NdefMessage mNdefPushMessage;
 
     private AlertDialog mDialog;
+
+    /** closed.txt and all1.uids (or all1.csv), reloaded in the background when they change */
+    private UidListWatcher mUidLists;
+
+    /** every scan, kept across restarts for auditing gate events */
+    private ScanJournal mJournal;
+    /** the journal failure last logged, only touched by the tap sessions */
+    private IOException mJournalError;
+
+    /** Reads and parses tags off the main thread, one tap at a time */
+    private TagSessionExecutor mSessions;
+
+    private boolean mReaderMode;
+    private ReaderModeOptions mReaderModeOptions;
+    private final TapTimings mTimings = new TapTimings();
+    private final SpanTracer mTracer = new SpanTracer(STAGES, TRACED_SPANS);
+    /** when the activity last paused, 0 once resumed */
+    private long mPausedNanos;
+
     /**
      * ATTENTION: This was auto-generated to implement the App Indexing API.
      * See https://g.co/AppIndexing/AndroidStudio for more information.
@@ -76,10 +159,37 @@ public class MainActivity extends Activity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.tag_viewer);
-        mTagContent = (LinearLayout) findViewById(R.id.list);
-        resolveIntent(getIntent());
+        mHistory = new ScanHistoryAdapter(LayoutInflater.from(this), TIME_FORMAT,
+                getIntent().getIntExtra(EXTRA_HISTORY_CAPACITY, getResources().getInteger(R.integer.history_capacity)));
+        ((ListView) findViewById(R.id.history)).setAdapter(mHistory);
 
         verifyStoragePermissions(this);
+        File sdcard = Environment.getExternalStorageDirectory();
+        mUidLists = new UidListWatcher.Builder()
+                .setTextList(new File(sdcard, "/closed/closed.txt"))
+                .setCsvList(new File(sdcard, "/all1.csv"))
+                .setCompiledList(new File(sdcard, "/all1.uids"), getCacheDir())
+                .setBloomFilter(0.01)
+                .build();
+        mUidLists.start();
+        mJournal = new ScanJournal.Builder(new File(getFilesDir(), JOURNAL_DIR)).build();
+        mJournal.start();
+
+        mSessions = new TagSessionExecutor("NfcReader-io", QUEUED_TAPS, TagSessionExecutor.POLICY_DROP_OLDEST,
+                new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        runOnUiThread(command);
+                    }
+                });
+        Intent launch = getIntent();
+        mReaderMode = launch.getBooleanExtra(EXTRA_READER_MODE, false);
+        mReaderModeOptions = new ReaderModeOptions.Builder()
+                .setTechFlags(launch.getIntExtra(EXTRA_READER_TECH_FLAGS, ReaderModeOptions.TECH_ALL))
+                .setPresenceCheckDelayMillis(launch.getIntExtra(EXTRA_PRESENCE_CHECK_DELAY,
+                        ReaderModeOptions.DEFAULT_PRESENCE_CHECK_DELAY_MILLIS))
+                .build();
+        resolveIntent(launch, 0);
 
         mDialog = new AlertDialog.Builder(this).setNeutralButton("Ok", null).create();
 
@@ -106,18 +216,9 @@ public class MainActivity extends Activity {
     }
 
     private NdefRecord newTextRecord(String text, Locale locale, boolean encodeInUtf8) {
-        byte[] langBytes = locale.getLanguage().getBytes(Charset.forName("US-ASCII"));
-
-        Charset utfEncoding = encodeInUtf8 ? Charset.forName("UTF-8") : Charset.forName("UTF-16");
-        byte[] textBytes = text.getBytes(utfEncoding);
-
-        int utfBit = encodeInUtf8 ? 0 : (1 << 7);
-        char status = (char) (utfBit + langBytes.length);
-
-        byte[] data = new byte[1 + langBytes.length + textBytes.length];
-        data[0] = (byte) status;
-        System.arraycopy(langBytes, 0, data, 1, langBytes.length);
-        System.arraycopy(textBytes, 0, data, 1 + langBytes.length, textBytes.length);
+        String language = locale.getLanguage();
+        byte[] data = new byte[NdefText.payloadLength(language, text, encodeInUtf8)];
+        NdefText.writePayload(ByteBuffer.wrap(data), language, text, encodeInUtf8);
 
         return new NdefRecord(NdefRecord.TNF_WELL_KNOWN, NdefRecord.RTD_TEXT, new byte[0], data);
     }
@@ -129,20 +230,82 @@ public class MainActivity extends Activity {
             if (!mAdapter.isEnabled()) {
                 showWirelessSettingsDialog();
             }
-            mAdapter.enableForegroundDispatch(this, mPendingIntent, null, null);
+            enableTapPath();
             mAdapter.isNdefPushEnabled();
 
         }
+        mPausedNanos = 0;
     }
 
     @Override
     protected void onPause() {
+        // a dispatched tap pauses the activity on its way to onNewIntent
+        mPausedNanos = System.nanoTime();
         super.onPause();
         if (mAdapter != null) {
+            disableTapPath();
+        }
+    }
+
+    private boolean isReaderMode() {
+        return mReaderMode && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+    }
+
+    /** Starts delivering taps through the selected path; only while resumed. */
+    private void enableTapPath() {
+        if (isReaderMode()) {
+            new ReaderModePath().enable();
+        } else {
+            mAdapter.enableForegroundDispatch(this, mPendingIntent, null, null);
+        }
+    }
+
+    private void disableTapPath() {
+        if (isReaderMode()) {
+            mAdapter.disableReaderMode(this);
+        } else {
             mAdapter.disableForegroundDispatch(this);
         }
     }
 
+    /** Switches the tap path while resumed. */
+    private void selectTapPath(boolean readerMode, ReaderModeOptions options) {
+        if (mAdapter == null) {
+            return;
+        }
+        disableTapPath();
+        mReaderMode = readerMode;
+        mReaderModeOptions = options;
+        enableTapPath();
+        Log.i(TAG, isReaderMode() ? "Reader mode, " + options : "Foreground dispatch");
+    }
+
+    /** Reader mode, on Android 4.4 and later only. */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private final class ReaderModePath implements NfcAdapter.ReaderCallback {
+
+        void enable() {
+            Bundle extras = new Bundle();
+            extras.putInt(NfcAdapter.EXTRA_READER_PRESENCE_CHECK_DELAY, mReaderModeOptions.getPresenceCheckDelayMillis());
+            mAdapter.enableReaderMode(MainActivity.this, this, mReaderModeOptions.getFlags(), extras);
+        }
+
+        /** Called on a binder thread, without going through the activity. */
+        @Override
+        public void onTagDiscovered(Tag tag) {
+            resolveTag(tag, System.nanoTime());
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mSessions.shutdown();
+        // what is queued is still written, in the background
+        mJournal.stop();
+        mUidLists.stop();
+    }
+
     private void showWirelessSettingsDialog() {
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
         builder.setMessage(R.string.nfc_disabled);
@@ -160,31 +323,70 @@ public class MainActivity extends Activity {
         builder.create().show();
     }
 
-    private void resolveIntent(Intent intent) {
+    /**
+     * Reads and parses the tag on the I/O thread, and adds its records to the list when
+     * they are ready. The tap is acknowledged right away.
+     *
+     * @param pausedNanos when the tap paused the activity, 0 if the tap is not timed
+     */
+    private void resolveIntent(final Intent intent, final long pausedNanos) {
         String action = intent.getAction();
         if (NfcAdapter.ACTION_TAG_DISCOVERED.equals(action)
                 || NfcAdapter.ACTION_TECH_DISCOVERED.equals(action)
                 || NfcAdapter.ACTION_NDEF_DISCOVERED.equals(action)) {
-            Parcelable[] rawMsgs = intent.getParcelableArrayExtra(NfcAdapter.EXTRA_NDEF_MESSAGES);
-            NdefMessage[] msgs;
-            if (rawMsgs != null) {
-                msgs = new NdefMessage[rawMsgs.length];
-                for (int i = 0; i < rawMsgs.length; i++) {
-                    msgs[i] = (NdefMessage) rawMsgs[i];
-                }
-            } else {
-                // Unknown tag type
-                byte[] empty = new byte[0];
-                byte[] id = intent.getByteArrayExtra(NfcAdapter.EXTRA_ID);
-                Parcelable tag = intent.getParcelableExtra(NfcAdapter.EXTRA_TAG);
-                byte[] payload = dumpTagData(tag).getBytes();
-                NdefRecord record = new NdefRecord(NdefRecord.TNF_UNKNOWN, empty, id, payload);
-                NdefMessage msg = new NdefMessage(new NdefRecord[]{record});
-                msgs = new NdefMessage[]{msg};
+            final long tap = mTracer.newTap();
+            final long received = System.nanoTime();
+            if (pausedNanos != 0) {
+                mTracer.record(STAGE_DELIVER, tap, pausedNanos, received - pausedNanos);
             }
-            // Setup the views
-            buildTagViews(msgs);
+            mSessions.submit(intent.getByteArrayExtra(NfcAdapter.EXTRA_ID),
+                    new TagSessionExecutor.Task<List<ParsedNdefRecord>>() {
+                        @Override
+                        public List<ParsedNdefRecord> run() {
+                            Parcelable[] rawMsgs = intent.getParcelableArrayExtra(NfcAdapter.EXTRA_NDEF_MESSAGES);
+                            return readRecords(rawMsgs, intent.getByteArrayExtra(NfcAdapter.EXTRA_ID),
+                                    intent.getParcelableExtra(NfcAdapter.EXTRA_TAG), tap);
+                        }
+                    }, new TagSessionExecutor.Callback<List<ParsedNdefRecord>>() {
+                        @Override
+                        public void onResult(SessionResult<List<ParsedNdefRecord>> result) {
+                            showRecords(result, TapTimings.PATH_DISPATCH, tap, pausedNanos, received);
+                        }
+                    });
+            long start = System.nanoTime();
+            vibrate();
+            mTracer.span(STAGE_VIBRATE, tap, start);
+            return;
         }
+        vibrate();
+    }
+
+    /**
+     * Reader mode: like {@link #resolveIntent}, for a tag handed over by the platform on a
+     * binder thread. With the NDEF check skipped the tag has no message and only its UID
+     * is looked up.
+     */
+    private void resolveTag(final Tag tag, final long seenNanos) {
+        final long tap = mTracer.newTap();
+        mSessions.submit(tag.getId(), new TagSessionExecutor.Task<List<ParsedNdefRecord>>() {
+            @Override
+            public List<ParsedNdefRecord> run() {
+                Ndef ndef = Ndef.get(tag);
+                NdefMessage cached = ndef == null ? null : ndef.getCachedNdefMessage();
+                return readRecords(cached == null ? null : new Parcelable[]{cached}, tag.getId(), tag, tap);
+            }
+        }, new TagSessionExecutor.Callback<List<ParsedNdefRecord>>() {
+            @Override
+            public void onResult(SessionResult<List<ParsedNdefRecord>> result) {
+                showRecords(result, TapTimings.PATH_READER_MODE, tap, seenNanos, seenNanos);
+            }
+        });
+        long start = System.nanoTime();
+        vibrate();
+        mTracer.span(STAGE_VIBRATE, tap, start);
+    }
+
+    private void vibrate() {
         // play ringtone when reading tag
         //Uri notification = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION);
         // Ringtone r = RingtoneManager.getRingtone(getApplicationContext(), notification);
@@ -198,7 +400,91 @@ public class MainActivity extends Activity {
 
     }
 
-    private String dumpTagData(Parcelable p) {
+    /**
+     * The records of the first message on the tag, on the I/O thread, or of the tag's UID
+     * and list status if it has none.
+     */
+    private List<ParsedNdefRecord> readRecords(Parcelable[] rawMsgs, byte[] id, Parcelable tag, long tap) {
+        long start = System.nanoTime();
+        int decision = id == null ? UidLookup.STATUS_UNKNOWN : mUidLists.lookup(id);
+        mTracer.span(STAGE_LOOKUP, tap, start);
+        NdefMessage[] msgs;
+        if (rawMsgs != null) {
+            msgs = new NdefMessage[rawMsgs.length];
+            for (int i = 0; i < rawMsgs.length; i++) {
+                msgs[i] = (NdefMessage) rawMsgs[i];
+            }
+        } else {
+            // Unknown tag type
+            byte[] empty = new byte[0];
+            byte[] payload = dumpTagData(tag, decision).getBytes();
+            NdefRecord record = new NdefRecord(NdefRecord.TNF_UNKNOWN, empty, id, payload);
+            NdefMessage msg = new NdefMessage(new NdefRecord[]{record});
+            msgs = new NdefMessage[]{msg};
+        }
+        List<ParsedNdefRecord> records = Collections.emptyList();
+        if (msgs.length > 0) {
+            // Parse the first message in the list
+            start = System.nanoTime();
+            records = parse(msgs[0]);
+            mTracer.span(STAGE_PARSE, tap, start);
+        }
+        String[] techList = tag instanceof Tag ? ((Tag) tag).getTechList() : new String[0];
+        mJournal.append(new ScanEvent(System.currentTimeMillis(), id == null ? new byte[0] : id,
+                ScanEvent.techMask(techList), decision, rawMsgs != null ? summarize(records) : ""));
+        IOException journalError = mJournal.getError();
+        if (journalError != null && journalError != mJournalError) {
+            mJournalError = journalError;
+            Log.w(TAG, "Cannot write the scan journal", journalError);
+        }
+        return Collections.unmodifiableList(records);
+    }
+
+    /** The text and URIs of the records, for the journal. */
+    private static String summarize(List<ParsedNdefRecord> records) {
+        StringBuilder summary = new StringBuilder();
+        for (ParsedNdefRecord record : records) {
+            if (summary.length() > 0) {
+                summary.append('\n');
+            }
+            if (record instanceof TextRecord) {
+                summary.append(((TextRecord) record).getText());
+            } else if (record instanceof UriRecord) {
+                summary.append(((UriRecord) record).getUri());
+            } else {
+                summary.append('?');
+            }
+        }
+        return summary.toString();
+    }
+
+    /**
+     * @param seenNanos     when the tap was first seen, onPause for a dispatched tap, 0 if
+     *                      it is not timed
+     * @param receivedNanos when the tap reached onNewIntent or the reader mode callback
+     */
+    private void showRecords(SessionResult<List<ParsedNdefRecord>> result, int path, long tap, long seenNanos,
+                             long receivedNanos) {
+        mTracer.record(STAGE_QUEUE, tap, receivedNanos, result.getQueueNanos());
+        mTracer.record(STAGE_READ, tap, receivedNanos + result.getQueueNanos(), result.getIoNanos());
+        if (!result.isDone()) {
+            if (result.getOutcome() == SessionResult.OUTCOME_FAILED) {
+                Log.w(TAG, "Cannot read tag", result.getError());
+            }
+            return;
+        }
+        // Setup the views
+        long start = System.nanoTime();
+        buildTagViews(result.getValue());
+        mTracer.span(STAGE_VIEWS, tap, start);
+        mTracer.span(STAGE_TOTAL, tap, seenNanos != 0 ? seenNanos : receivedNanos);
+        if (seenNanos != 0) {
+            long reentryNanos = path == TapTimings.PATH_DISPATCH ? receivedNanos - seenNanos : -1;
+            mTimings.record(path, reentryNanos, System.nanoTime() - seenNanos);
+        }
+    }
+
+    private String dumpTagData(Parcelable p, int status) {
         StringBuilder sb = new StringBuilder();
         Tag tag = (Tag) p;
         byte[] id = tag.getId();
@@ -222,66 +508,10 @@ public class MainActivity extends Activity {
         }
 
         sb.append("Read Status: ");
-
-        /* Opencsv tp parse csv uid data
-        List<String[]> uid = new ArrayList<>();
-        String next[];
-        List<String> uidClose = new ArrayList<>();
-        List<String> uidOpen = new ArrayList<>();
-
-        try {
-            //InputStreamReader csvStreamReader = new InputStreamReader(getAssets().open("all.csv"));
-            File myFile = new File(Environment.getExternalStorageDirectory() + "/all1.csv");
-            CSVReader reader = new CSVReader(new BufferedReader(new FileReader(myFile)));
-
-
-            for (; ; ) {
-                next = reader.readNext();
-                if (next != null) {
-                    uid.add(next);
-                } else {
-                    break;
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        for (int i = 0; i < uid.size(); i++) {
-            uidClose.add(uid.get(i)[0]);
-            uidOpen.add(uid.get(i)[1]);
+        if (!mUidLists.isLoaded()) {
+            sb.append("List loading! ");
         }
-
-        for (String str : uidClose) {
-            if (str.contains(getHex(id))) {
-                sb.append("Close! ");
-            }
-        }
-        for (String str : uidOpen) {
-            if (str.contains(getHex(id))) {
-                sb.append("Open! ");
-            }
-        }
-        */
-
-
-        // read text uid data
-        StringBuilder text = new StringBuilder();
-        try {
-            File sdcard = Environment.getExternalStorageDirectory();
-            File fileClosed = new File(sdcard, "/closed/closed.txt");
-
-            BufferedReader br = new BufferedReader(new FileReader(fileClosed));
-            String line;
-            while ((line = br.readLine()) != null) {
-                text.append(line);
-                text.append('\n');
-            }
-            br.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        if (text.toString().contains(getHex(id))) {
+        if (status == UidLookup.STATUS_CLOSED) {
             sb.append("Closed! ");
         } else {
             sb.append("Open! ");
@@ -314,26 +544,9 @@ public class MainActivity extends Activity {
     */
 
 
-    void buildTagViews(NdefMessage[] msgs) {
-        if (msgs == null || msgs.length == 0) {
-            return;
-        }
-        LayoutInflater inflater = LayoutInflater.from(this);
-        LinearLayout content = mTagContent;
-
-        // Parse the first message in the list
-        // Build views for all of the sub records
-        Date now = new Date();
-        List<ParsedNdefRecord> records = parse(msgs[0]);
-        final int size = records.size();
-        for (int i = 0; i < size; i++) {
-            TextView timeView = new TextView(this);
-            timeView.setText(TIME_FORMAT.format(now));
-            content.addView(timeView, 0);
-            ParsedNdefRecord record = records.get(i);
-            content.addView(record.getView(this, inflater, content, i), 1 + i);
-            content.addView(inflater.inflate(R.layout.tag_divider, content, false), 2 + i);
-        }
+    void buildTagViews(List<ParsedNdefRecord> records) {
+        // one row for each of the sub records, bound as the list shows them
+        mHistory.add(System.currentTimeMillis(), records);
     }
 
     @Override
@@ -343,10 +556,49 @@ public class MainActivity extends Activity {
         return true;
     }
 
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        boolean readerModeSupported = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+        menu.findItem(R.id.menu_main_reader_mode).setVisible(readerModeSupported).setChecked(isReaderMode());
+        menu.findItem(R.id.menu_main_skip_ndef_check).setVisible(readerModeSupported)
+                .setEnabled(isReaderMode()).setChecked(mReaderModeOptions.isSkipNdefCheck());
+        menu.findItem(R.id.menu_main_no_platform_sounds).setVisible(readerModeSupported)
+                .setEnabled(isReaderMode()).setChecked(mReaderModeOptions.isNoPlatformSounds());
+        return super.onPrepareOptionsMenu(menu);
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         // Handle item selection
         switch (item.getItemId()) {
+            case R.id.menu_main_reader_mode:
+                selectTapPath(!mReaderMode, mReaderModeOptions);
+                return true;
+            case R.id.menu_main_skip_ndef_check:
+                selectTapPath(mReaderMode, mReaderModeOptions.buildUpon()
+                        .setSkipNdefCheck(!mReaderModeOptions.isSkipNdefCheck()).build());
+                return true;
+            case R.id.menu_main_no_platform_sounds:
+                selectTapPath(mReaderMode, mReaderModeOptions.buildUpon()
+                        .setNoPlatformSounds(!mReaderModeOptions.isNoPlatformSounds()).build());
+                return true;
+            case R.id.menu_main_tap_timings:
+                String timings = mTimings.format();
+                Log.i(TAG, timings);
+                mDialog.setTitle("Tap timings");
+                mDialog.setMessage(timings);
+                mDialog.show();
+                return true;
+            case R.id.menu_main_list_stats:
+                String stats = formatListStats();
+                Log.i(TAG, stats);
+                mDialog.setTitle("UID list stats");
+                mDialog.setMessage(stats);
+                mDialog.show();
+                return true;
+            case R.id.menu_main_dump_trace:
+                dumpTrace();
+                return true;
             case R.id.menu_main_clear:
                 menuMainClearClick();
             default:
@@ -354,19 +606,49 @@ public class MainActivity extends Activity {
         }
     }
 
-    private void menuMainClearClick() {
-        for (int i = mTagContent.getChildCount() - 1; i >= 0; i--) {
-            View view = mTagContent.getChildAt(i);
-            if (view.getId() != R.id.text) {
-                mTagContent.removeViewAt(i);
+    /** The list size and the Bloom filter counters, for tuning the false positive rate. */
+    private String formatListStats() {
+        FilteredUidLookup.Stats stats = mUidLists.getFilterStats();
+        return String.format(Locale.US, "%d ids%s\nfilter rejected %d, hits %d, false positives %d (%.2f%%)",
+                mUidLists.size(), mUidLists.isLoaded() ? "" : ", loading", stats.getRejected(),
+                stats.getHits(), stats.getFalsePositives(), stats.getFalsePositiveRate() * 100);
+    }
+
+    /** Writes the tap trace to {@link #TRACE_FILE}, off the main thread. */
+    private void dumpTrace() {
+        File dir = getExternalFilesDir(null);
+        final File file = new File(dir != null ? dir : getFilesDir(), TRACE_FILE);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+                    try {
+                        out.write("# sessions " + mSessions.getMetrics().format() + "\n");
+                        mTracer.dump(out);
+                    } finally {
+                        out.close();
+                    }
+                    Log.i(TAG, "Trace dumped to " + file);
+                } catch (IOException e) {
+                    Log.e(TAG, "Cannot dump the trace to " + file, e);
+                }
             }
-        }
+        }, "NfcReader-trace").start();
+    }
+
+    private void menuMainClearClick() {
+        mHistory.clear();
     }
 
     @Override
     public void onNewIntent(Intent intent) {
+        long pausedNanos = mPausedNanos;
+        if (pausedNanos != 0 && System.nanoTime() - pausedNanos > MAX_REENTRY_NANOS) {
+            pausedNanos = 0;
+        }
         setIntent(intent);
-        resolveIntent(intent);
+        resolveIntent(intent, pausedNanos);
     }
 
 
@@ -408,19 +690,26 @@ public class MainActivity extends Activity {
     public static List<ParsedNdefRecord> getRecords(NdefRecord[] records) {
         List<ParsedNdefRecord> elements = new ArrayList<>();
         for (final NdefRecord record : records) {
-            if (UriRecord.isUri(record)) {
-                elements.add(UriRecord.parse(record));
-            } else if (TextRecord.isText(record)) {
-                elements.add(TextRecord.parse(record));
+            // one lookup by TNF and type, one parse
+            ParsedNdefRecord parsed = RecordParsers.getDefault().parse(record);
+            if (parsed != null) {
+                elements.add(parsed);
             } else {
+                final String payload = new String(record.getPayload());
                 elements.add(new ParsedNdefRecord() {
                     @Override
                     public View getView(Activity activity, LayoutInflater inflater, ViewGroup parent, int offset) {
                         TextView text = (TextView) inflater.inflate(R.layout.tag_text, parent, false);
-                        text.setText(new String(record.getPayload()));
+                        bindView(text);
                         return text;
                     }
 
+                    @Override
+                    public void bindView(TextView text) {
+                        text.setAutoLinkMask(0);
+                        text.setText(payload);
+                    }
+
                 });
             }
         }
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2016 Joey
+ *
+ */
+package com.iot.nfcreader.history;
+
+import java.util.Arrays;
+
+/**
+ * The most recent scans, newest first, in a ring of fixed capacity: adding one is O(1) and
+ * overwrites the oldest once the ring is full, so the history takes the same memory
+ * however long the reader runs. Used on the main thread only.
+ */
+public final class ScanHistory<T> {
+
+    private final Object[] mEntries;
+    // index of the slot the next entry goes into
+    private int mHead;
+    private int mSize;
+
+    /**
+     * @param capacity the number of entries kept, at least 1
+     */
+    public ScanHistory(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity " + capacity);
+        }
+        mEntries = new Object[capacity];
+    }
+
+    public void add(T entry) {
+        mEntries[mHead] = entry;
+        mHead = mHead + 1 == mEntries.length ? 0 : mHead + 1;
+        if (mSize < mEntries.length) {
+            mSize++;
+        }
+    }
+
+    /** Returns the entry at {@code position}, 0 being the newest. */
+    @SuppressWarnings("unchecked")
+    public T get(int position) {
+        if (position < 0 || position >= mSize) {
+            throw new IndexOutOfBoundsException("Position " + position + " of " + mSize);
+        }
+        int index = mHead - 1 - position;
+        return (T) mEntries[index < 0 ? index + mEntries.length : index];
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public int getCapacity() {
+        return mEntries.length;
+    }
+
+    public void clear() {
+        Arrays.fill(mEntries, null);
+        mHead = 0;
+        mSize = 0;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2016 Joey
+ *
+ */
+package com.iot.nfcreader.history;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+import com.iot.nfcreader.R;
+import com.iot.nfcreader.record.ParsedNdefRecord;
+
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Shows a {@link ScanHistory} in a list, one row per record with the time it was scanned.
+ * Only the visible rows exist as views, and rows scrolled out are rebound to other
+ * records, so the cost of the list does not grow with the number of scans.
+ */
+public final class ScanHistoryAdapter extends BaseAdapter {
+
+    /** A record and when it was scanned. */
+    static final class Scan {
+        final long mTimeMillis;
+        final ParsedNdefRecord mRecord;
+
+        Scan(long timeMillis, ParsedNdefRecord record) {
+            mTimeMillis = timeMillis;
+            mRecord = record;
+        }
+    }
+
+    private static final class Row {
+        final TextView mTime;
+        final TextView mRecord;
+
+        Row(View view) {
+            mTime = (TextView) view.findViewById(R.id.time);
+            mRecord = (TextView) view.findViewById(R.id.text);
+        }
+    }
+
+    private final ScanHistory<Scan> mHistory;
+    private final LayoutInflater mInflater;
+    private final DateFormat mTimeFormat;
+    private final Date mDate = new Date();
+
+    /**
+     * @param capacity the number of records kept, newer ones replacing the oldest
+     */
+    public ScanHistoryAdapter(LayoutInflater inflater, DateFormat timeFormat, int capacity) {
+        mHistory = new ScanHistory<>(capacity);
+        mInflater = inflater;
+        mTimeFormat = timeFormat;
+    }
+
+    /** Adds the records of one scan at the top, in their order in the message. */
+    public void add(long timeMillis, List<ParsedNdefRecord> records) {
+        for (int i = records.size() - 1; i >= 0; i--) {
+            mHistory.add(new Scan(timeMillis, records.get(i)));
+        }
+        notifyDataSetChanged();
+    }
+
+    public void clear() {
+        mHistory.clear();
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public int getCount() {
+        return mHistory.size();
+    }
+
+    @Override
+    public Object getItem(int position) {
+        return mHistory.get(position).mRecord;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        View view = convertView;
+        if (view == null) {
+            view = mInflater.inflate(R.layout.tag_history_item, parent, false);
+            view.setTag(new Row(view));
+        }
+        Row row = (Row) view.getTag();
+        Scan scan = mHistory.get(position);
+        mDate.setTime(scan.mTimeMillis);
+        row.mTime.setText(mTimeFormat.format(mDate));
+        scan.mRecord.bindView(row.mRecord);
+        return view;
+    }
+}
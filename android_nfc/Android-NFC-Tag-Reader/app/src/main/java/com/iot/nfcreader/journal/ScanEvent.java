@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2016 Joey
+ *
+ */
+package com.iot.nfcreader.journal;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One scan as it is kept in the {@link ScanJournal}: when, which tag, its technologies,
+ * the UID list decision and a short summary of its records.
+ *
+ * Encoded as the time in milliseconds (8 bytes), the UID length and UID, the technologies
+ * as a bit mask of {@link #TECHS} (2 bytes), the decision (1 byte) and the summary as a
+ * length (2 bytes) and UTF-8, at most {@link #MAX_SUMMARY_BYTES}.
+ */
+public final class ScanEvent {
+
+    /** The technologies of android.nfc.tech, by bit in the mask; others are not kept. */
+    public static final String[] TECHS = {
+            "NfcA", "NfcB", "NfcF", "NfcV", "IsoDep", "Ndef", "NdefFormatable", "MifareClassic",
+            "MifareUltralight", "NfcBarcode",
+    };
+
+    public static final int MAX_SUMMARY_BYTES = 1024;
+    static final int MAX_UID_BYTES = 255;
+
+    private static final String TECH_PREFIX = "android.nfc.tech.";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final long mTimeMillis;
+    private final byte[] mUid;
+    private final int mTechs;
+    private final int mDecision;
+    private final String mSummary;
+
+    /**
+     * @param techs    bit mask of {@link #TECHS}, see {@link #techMask(String[])}
+     * @param decision one of the UidLookup STATUS constants
+     */
+    public ScanEvent(long timeMillis, byte[] uid, int techs, int decision, String summary) {
+        if (uid.length > MAX_UID_BYTES) {
+            throw new IllegalArgumentException("UID of " + uid.length + " bytes");
+        }
+        mTimeMillis = timeMillis;
+        mUid = uid.clone();
+        mTechs = techs;
+        mDecision = decision;
+        mSummary = summary;
+    }
+
+    /** Returns the bit mask of a Tag's tech list, e.g. {"android.nfc.tech.NfcA", ...}. */
+    public static int techMask(String[] techList) {
+        int mask = 0;
+        for (String tech : techList) {
+            String name = tech.startsWith(TECH_PREFIX) ? tech.substring(TECH_PREFIX.length()) : tech;
+            for (int i = 0; i < TECHS.length; i++) {
+                if (TECHS[i].equals(name)) {
+                    mask |= 1 << i;
+                }
+            }
+        }
+        return mask;
+    }
+
+    public long getTimeMillis() {
+        return mTimeMillis;
+    }
+
+    public byte[] getUid() {
+        return mUid.clone();
+    }
+
+    public int getTechs() {
+        return mTechs;
+    }
+
+    /** The names of the technologies in the mask, e.g. {"NfcA", "MifareUltralight"}. */
+    public List<String> getTechNames() {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < TECHS.length; i++) {
+            if ((mTechs & 1 << i) != 0) {
+                names.add(TECHS[i]);
+            }
+        }
+        return names;
+    }
+
+    public int getDecision() {
+        return mDecision;
+    }
+
+    public String getSummary() {
+        return mSummary;
+    }
+
+    /** Writes the event at the position of {@code out}, which must have room for it. */
+    void encode(ByteBuffer out, byte[] summary) {
+        out.putLong(mTimeMillis);
+        out.put((byte) mUid.length);
+        out.put(mUid);
+        out.putShort((short) mTechs);
+        out.put((byte) mDecision);
+        out.putShort((short) summary.length);
+        out.put(summary);
+    }
+
+    /** Returns the summary in UTF-8, cut to {@link #MAX_SUMMARY_BYTES}. */
+    byte[] summaryBytes() {
+        byte[] bytes = mSummary.getBytes(UTF_8);
+        if (bytes.length <= MAX_SUMMARY_BYTES) {
+            return bytes;
+        }
+        // cut before a continuation byte, so the summary stays valid UTF-8
+        int end = MAX_SUMMARY_BYTES;
+        while (end > 0 && (bytes[end] & 0xc0) == 0x80) {
+            end--;
+        }
+        return Arrays.copyOf(bytes, end);
+    }
+
+    /** The encoded size with {@code summaryBytes} of summary. */
+    int encodedSize(int summaryBytes) {
+        return 8 + 1 + mUid.length + 2 + 1 + 2 + summaryBytes;
+    }
+
+    /**
+     * Reads an event from the remaining bytes of {@code in}.
+     *
+     * @throws IllegalArgumentException if they are not exactly one event
+     */
+    static ScanEvent decode(ByteBuffer in) {
+        try {
+            long time = in.getLong();
+            byte[] uid = new byte[in.get() & 0xff];
+            in.get(uid);
+            int techs = in.getShort() & 0xffff;
+            int decision = in.get();
+            byte[] summary = new byte[in.getShort() & 0xffff];
+            in.get(summary);
+            if (in.hasRemaining()) {
+                throw new IllegalArgumentException(in.remaining() + " bytes after the event");
+            }
+            return new ScanEvent(time, uid, techs, decision, new String(summary, UTF_8));
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated event", e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof ScanEvent)) {
+            return false;
+        }
+        ScanEvent other = (ScanEvent) o;
+        return mTimeMillis == other.mTimeMillis && Arrays.equals(mUid, other.mUid) && mTechs == other.mTechs
+                && mDecision == other.mDecision && mSummary.equals(other.mSummary);
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (mTimeMillis ^ mTimeMillis >>> 32) * 31 + Arrays.hashCode(mUid);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder uid = new StringBuilder();
+        for (byte b : mUid) {
+            uid.append(String.format("%02X", b & 0xff));
+        }
+        return mTimeMillis + " " + uid + " " + getTechNames() + " " + mDecision + " " + mSummary;
+    }
+}
@@ -0,0 +1,482 @@
+/*
+ * Copyright (C) 2016 Joey
+ *
+ */
+package com.iot.nfcreader.journal;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of {@link ScanEvent}s in a directory of segment files, written on
+ * a background thread.
+ *
+ * {@link #append(ScanEvent)} only offers the event to a bounded queue and never blocks;
+ * when the writer falls that far behind, events are dropped and counted. The writer
+ * encodes events into a buffer and forces it to disk once {@code syncBytes} are pending or
+ * the oldest pending event is {@code syncMillis} old, so a crash loses at most that much.
+ *
+ * A segment starts with {@link #MAGIC}, followed by records of the payload length
+ * (4 bytes), its CRC32 (4 bytes) and the encoded event. A segment is closed once it
+ * reaches {@code segmentBytes}, and the oldest segments beyond {@code maxSegments} are
+ * deleted. On start, the last segment is checked record by record and cut after the last
+ * intact one, so a record torn by a crash is dropped and appending continues after it.
+ *
+ * If writing fails, the events not yet synced are lost and the writer carries on in a new
+ * segment. If that fails too, it stops and appends are dropped; {@link #getError()} keeps
+ * the last failure either way.
+ */
+public final class ScanJournal {
+
+    public static final int MAGIC = 0x4e464a31; // "NFJ1"
+
+    static final String SEGMENT_PREFIX = "scans-";
+    static final String SEGMENT_SUFFIX = ".journal";
+    private static final int HEADER_BYTES = 4;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 64 * 1024;
+    private static final long IDLE_POLL_MILLIS = 1000;
+
+    /** Queued by {@link #stop()} to wake the writer; not written. */
+    private static final ScanEvent WAKE_UP = new ScanEvent(0, new byte[0], 0, 0, "");
+
+    private final File mDirectory;
+    private final long mSegmentBytes;
+    private final int mMaxSegments;
+    private final int mSyncBytes;
+    private final long mSyncMillis;
+    private final BlockingQueue<ScanEvent> mQueue;
+
+    private final AtomicLong mWritten = new AtomicLong();
+    private final AtomicLong mDropped = new AtomicLong();
+    private final AtomicLong mSyncs = new AtomicLong();
+    private volatile boolean mStopping;
+    private volatile IOException mError;
+    private Thread mWriter;
+
+    // only touched on the writer thread
+    private final ByteBuffer mBuffer;
+    private final CRC32 mCrc = new CRC32();
+    private FileChannel mSegment;
+    private int mSegmentNumber;
+    private long mSegmentSize;
+    private int mPending;
+    private long mPendingBytes;
+    private long mPendingSince;
+
+    private ScanJournal(Builder builder) {
+        mDirectory = builder.mDirectory;
+        mSegmentBytes = builder.mSegmentBytes;
+        mMaxSegments = builder.mMaxSegments;
+        mSyncBytes = builder.mSyncBytes;
+        mSyncMillis = builder.mSyncMillis;
+        mQueue = new ArrayBlockingQueue<>(builder.mQueueCapacity);
+        // a sync is due before the buffer fills, unless syncBytes is large
+        mBuffer = ByteBuffer.allocate(Math.min(mSyncBytes, MAX_RECORD_BYTES) + MAX_RECORD_BYTES);
+    }
+
+    /**
+     * Starts the writer thread, which recovers the last segment before writing anything.
+     */
+    public synchronized void start() {
+        if (mWriter != null) {
+            throw new IllegalStateException("Already started");
+        }
+        mWriter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    open();
+                    try {
+                        write();
+                    } catch (IOException e) {
+                        mError = e;
+                        reopen();
+                        write();
+                    }
+                } catch (IOException e) {
+                    // nothing more is written; appends are dropped
+                    mError = e;
+                    mStopping = true;
+                    mQueue.clear();
+                }
+            }
+        }, "NfcReader-journal");
+        mWriter.setDaemon(true);
+        mWriter.start();
+    }
+
+    /**
+     * Queues {@code event} for the writer.
+     *
+     * @return false if the queue was full and the event is dropped
+     */
+    public boolean append(ScanEvent event) {
+        if (mStopping || !mQueue.offer(event)) {
+            mDropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /** Writes and syncs what is queued, then ends the writer thread. Returns at once. */
+    public void stop() {
+        mStopping = true;
+        mQueue.offer(WAKE_UP);
+    }
+
+    /**
+     * Waits for the writer thread to end after {@link #stop()}.
+     *
+     * @return false if it did not end in time
+     */
+    public boolean awaitStopped(long timeoutMillis) throws InterruptedException {
+        Thread writer;
+        synchronized (this) {
+            writer = mWriter;
+        }
+        if (writer != null) {
+            writer.join(timeoutMillis);
+            return !writer.isAlive();
+        }
+        return true;
+    }
+
+    /** Events written to the journal, synced or not. */
+    public long getWritten() {
+        return mWritten.get();
+    }
+
+    public long getDropped() {
+        return mDropped.get();
+    }
+
+    public long getSyncs() {
+        return mSyncs.get();
+    }
+
+    /** Returns the last failure of the writer, or null if it never failed. */
+    public IOException getError() {
+        return mError;
+    }
+
+    private void open() throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Cannot create " + mDirectory);
+        }
+        openLastSegment();
+    }
+
+    /** Drops what was not synced and starts a new segment after a failed write. */
+    private void reopen() throws IOException {
+        mBuffer.clear();
+        mPending = 0;
+        mPendingBytes = 0;
+        openSegment(mSegmentNumber + 1);
+        deleteOldSegments();
+    }
+
+    /** Writes events until stopped, then closes the segment. */
+    private void write() throws IOException {
+        try {
+            while (true) {
+                long timeout = mPending > 0
+                        ? Math.max(0, mPendingSince + mSyncMillis - System.currentTimeMillis())
+                        : IDLE_POLL_MILLIS;
+                ScanEvent event;
+                try {
+                    event = mQueue.poll(timeout, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    mStopping = true;
+                    event = null;
+                }
+                while (event != null) {
+                    if (event != WAKE_UP) {
+                        writeEvent(event);
+                    }
+                    event = mQueue.poll();
+                }
+                if (mPending > 0 && System.currentTimeMillis() - mPendingSince >= mSyncMillis) {
+                    sync();
+                }
+                if (mStopping && mQueue.isEmpty()) {
+                    break;
+                }
+            }
+            sync();
+        } finally {
+            mSegment.close();
+        }
+    }
+
+    private void writeEvent(ScanEvent event) throws IOException {
+        byte[] summary = event.summaryBytes();
+        int size = event.encodedSize(summary.length);
+        if (mBuffer.remaining() < RECORD_HEADER_BYTES + size) {
+            flush();
+        }
+        int start = mBuffer.position();
+        mBuffer.position(start + RECORD_HEADER_BYTES);
+        event.encode(mBuffer, summary);
+        mCrc.reset();
+        mCrc.update(mBuffer.array(), start + RECORD_HEADER_BYTES, size);
+        mBuffer.putInt(start, size);
+        mBuffer.putInt(start + 4, (int) mCrc.getValue());
+        if (mPending == 0) {
+            mPendingSince = System.currentTimeMillis();
+        }
+        mPending++;
+        mPendingBytes += RECORD_HEADER_BYTES + size;
+        mSegmentSize += RECORD_HEADER_BYTES + size;
+        mWritten.incrementAndGet();
+        if (mPendingBytes >= mSyncBytes) {
+            sync();
+        }
+        if (mSegmentSize >= mSegmentBytes) {
+            sync();
+            mSegment.close();
+            openSegment(mSegmentNumber + 1);
+            deleteOldSegments();
+        }
+    }
+
+    private void flush() throws IOException {
+        mBuffer.flip();
+        while (mBuffer.hasRemaining()) {
+            mSegment.write(mBuffer);
+        }
+        mBuffer.clear();
+    }
+
+    private void sync() throws IOException {
+        if (mPending == 0) {
+            return;
+        }
+        flush();
+        mSegment.force(false);
+        mPending = 0;
+        mPendingBytes = 0;
+        mSyncs.incrementAndGet();
+    }
+
+    /** Opens the last segment, cut after its last intact record, or a first one. */
+    private void openLastSegment() throws IOException {
+        int[] numbers = segmentNumbers(mDirectory);
+        if (numbers.length == 0) {
+            openSegment(1);
+            return;
+        }
+        mSegmentNumber = numbers[numbers.length - 1];
+        mSegment = new RandomAccessFile(segmentFile(mDirectory, mSegmentNumber), "rw").getChannel();
+        long end = intactLength(mSegment);
+        if (end < 0) {
+            // not even the header made it
+            mSegment.truncate(0);
+            writeHeader();
+        } else if (end < mSegment.size()) {
+            mSegment.truncate(end);
+            mSegment.force(false);
+        }
+        mSegmentSize = mSegment.size();
+        mSegment.position(mSegmentSize);
+    }
+
+    private void openSegment(int number) throws IOException {
+        mSegmentNumber = number;
+        mSegment = new RandomAccessFile(segmentFile(mDirectory, number), "rw").getChannel();
+        mSegment.truncate(0);
+        writeHeader();
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).flip();
+        mSegment.position(0);
+        while (header.hasRemaining()) {
+            mSegment.write(header);
+        }
+        mSegment.force(false);
+        mSegmentSize = HEADER_BYTES;
+    }
+
+    private void deleteOldSegments() {
+        int[] numbers = segmentNumbers(mDirectory);
+        for (int i = 0; i < numbers.length - mMaxSegments; i++) {
+            segmentFile(mDirectory, numbers[i]).delete();
+        }
+    }
+
+    /**
+     * Returns the length of the segment up to the end of its last intact record, or -1 if
+     * it has no valid header.
+     */
+    private static long intactLength(FileChannel segment) throws IOException {
+        long size = segment.size();
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+        if (!readFully(segment, header, 0, HEADER_BYTES) || header.getInt(0) != MAGIC) {
+            return -1;
+        }
+        CRC32 crc = new CRC32();
+        ByteBuffer payload = ByteBuffer.allocate(MAX_RECORD_BYTES);
+        long position = HEADER_BYTES;
+        while (position < size) {
+            if (!readFully(segment, header, position, RECORD_HEADER_BYTES)) {
+                break;
+            }
+            int length = header.getInt(0);
+            if (length <= 0 || length > MAX_RECORD_BYTES
+                    || !readFully(segment, payload, position + RECORD_HEADER_BYTES, length)) {
+                break;
+            }
+            crc.reset();
+            crc.update(payload.array(), 0, length);
+            if ((int) crc.getValue() != header.getInt(4)) {
+                break;
+            }
+            position += RECORD_HEADER_BYTES + length;
+        }
+        return position;
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position, int length)
+            throws IOException {
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads every intact event in {@code directory}, oldest first. Each segment is read up
+     * to its first damaged record.
+     */
+    public static List<ScanEvent> readAll(File directory) throws IOException {
+        List<ScanEvent> events = new ArrayList<>();
+        for (int number : segmentNumbers(directory)) {
+            FileChannel segment = new FileInputStream(segmentFile(directory, number)).getChannel();
+            try {
+                long end = intactLength(segment);
+                if (end < 0) {
+                    continue;
+                }
+                ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+                long position = HEADER_BYTES;
+                while (position < end) {
+                    if (!readFully(segment, header, position, RECORD_HEADER_BYTES)) {
+                        throw new EOFException("Segment " + number + " shrank while read");
+                    }
+                    int length = header.getInt(0);
+                    ByteBuffer payload = ByteBuffer.allocate(length);
+                    if (!readFully(segment, payload, position + RECORD_HEADER_BYTES, length)) {
+                        throw new EOFException("Segment " + number + " shrank while read");
+                    }
+                    payload.flip();
+                    try {
+                        events.add(ScanEvent.decode(payload));
+                    } catch (IllegalArgumentException e) {
+                        throw new IOException("Bad event in segment " + number + " at " + position, e);
+                    }
+                    position += RECORD_HEADER_BYTES + length;
+                }
+            } finally {
+                segment.close();
+            }
+        }
+        return events;
+    }
+
+    static File segmentFile(File directory, int number) {
+        return new File(directory, String.format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    /** The numbers of the segments in {@code directory}, in ascending order. */
+    static int[] segmentNumbers(File directory) {
+        String[] names = directory.list();
+        if (names == null) {
+            return new int[0];
+        }
+        int[] numbers = new int[names.length];
+        int count = 0;
+        for (String name : names) {
+            if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                try {
+                    numbers[count++] = Integer.parseInt(
+                            name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                } catch (NumberFormatException e) {
+                    count--;
+                }
+            }
+        }
+        numbers = Arrays.copyOf(numbers, count);
+        Arrays.sort(numbers);
+        return numbers;
+    }
+
+    public static final class Builder {
+
+        private File mDirectory;
+        private long mSegmentBytes = 1024 * 1024;
+        private int mMaxSegments = 16;
+        private int mSyncBytes = 16 * 1024;
+        private long mSyncMillis = 200;
+        private int mQueueCapacity = 4096;
+
+        public Builder(File directory) {
+            mDirectory = directory;
+        }
+
+        /** Size after which a segment is closed and the next one started, 1 MB by default. */
+        public Builder setSegmentBytes(long segmentBytes) {
+            mSegmentBytes = segmentBytes;
+            return this;
+        }
+
+        /** Segments kept, the oldest being deleted, 16 by default. */
+        public Builder setMaxSegments(int maxSegments) {
+            if (maxSegments < 1) {
+                throw new IllegalArgumentException("Max segments " + maxSegments);
+            }
+            mMaxSegments = maxSegments;
+            return this;
+        }
+
+        /**
+         * Syncs once this many bytes or events this old are pending, 16 KB and 200 ms by
+         * default.
+         */
+        public Builder setSync(int syncBytes, long syncMillis) {
+            if (syncBytes < 1 || syncMillis < 0) {
+                throw new IllegalArgumentException("Sync after " + syncBytes + " bytes, " + syncMillis + "ms");
+            }
+            mSyncBytes = syncBytes;
+            mSyncMillis = syncMillis;
+            return this;
+        }
+
+        /** Events which may wait for the writer before appends are dropped, 4096 by default. */
+        public Builder setQueueCapacity(int queueCapacity) {
+            mQueueCapacity = queueCapacity;
+            return this;
+        }
+
+        public ScanJournal build() {
+            return new ScanJournal(this);
+        }
+    }
+}
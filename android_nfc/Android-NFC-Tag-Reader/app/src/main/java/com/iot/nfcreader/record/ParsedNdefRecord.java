@@ -9,6 +9,7 @@ import android.app.Activity;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.TextView;
 
 
 public interface ParsedNdefRecord {
@@ -18,4 +19,10 @@ public interface ParsedNdefRecord {
      */
     View getView(Activity activity, LayoutInflater inflater, ViewGroup parent, int offset);
 
+    /**
+     * Shows this record in a recycled {@code tag_text} view, which may have shown a record
+     * of another type before.
+     */
+    void bindView(TextView text);
+
 }
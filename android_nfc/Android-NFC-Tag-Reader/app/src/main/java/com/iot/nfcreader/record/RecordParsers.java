@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2016 Joey
+ *
+ */
+package com.iot.nfcreader.record;
+
+import android.nfc.NdefRecord;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Routes an {@link NdefRecord} to the one parser registered for its TNF and type, so each
+ * record is parsed once and a record nobody knows costs a single map lookup rather than an
+ * attempt at every parser. A parser may also be registered for every type of a TNF, e.g.
+ * for absolute URIs, whose type is the URI itself; an exact type takes precedence.
+ */
+public final class RecordParsers {
+
+    /** Parses records of the types it was registered for. */
+    public interface Parser {
+
+        /**
+         * Returns the parsed record, or null if it is malformed. Must not throw for bad
+         * payloads: tags are written by anybody.
+         */
+        ParsedNdefRecord parse(NdefRecord record);
+    }
+
+    private static final int TNFS = 8;
+
+    // per TNF: type -> parser, and the parser for any other type
+    private final List<Map<Type, Parser>> mByType;
+    private final Parser[] mAnyType;
+
+    private RecordParsers(List<Map<Type, Parser>> byType, Parser[] anyType) {
+        mByType = byType;
+        mAnyType = anyType;
+    }
+
+    /** Returns the parser for records with {@code tnf} and {@code type}, or null if none. */
+    public Parser get(int tnf, byte[] type) {
+        if (tnf < 0 || tnf >= TNFS) {
+            return null;
+        }
+        Parser parser = type == null ? null : mByType.get(tnf).get(new Type(type));
+        return parser != null ? parser : mAnyType[tnf];
+    }
+
+    /** Parses {@code record}, or returns null if its type is unknown or it is malformed. */
+    public ParsedNdefRecord parse(NdefRecord record) {
+        Parser parser = get(record.getTnf(), record.getType());
+        return parser == null ? null : parser.parse(record);
+    }
+
+    /** The parsers of the reader app: well-known Text and URI records and absolute URIs. */
+    public static RecordParsers getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    // not built before it is used, so that tests of the registry need no NdefRecord
+    private static final class DefaultHolder {
+        static final RecordParsers INSTANCE = new Builder()
+                .add(NdefRecord.TNF_WELL_KNOWN, NdefRecord.RTD_TEXT, new Parser() {
+                    @Override
+                    public ParsedNdefRecord parse(NdefRecord record) {
+                        return TextRecord.decode(record);
+                    }
+                })
+                .add(NdefRecord.TNF_WELL_KNOWN, NdefRecord.RTD_URI, new Parser() {
+                    @Override
+                    public ParsedNdefRecord parse(NdefRecord record) {
+                        return UriRecord.decode(record);
+                    }
+                })
+                .addAnyType(NdefRecord.TNF_ABSOLUTE_URI, new Parser() {
+                    @Override
+                    public ParsedNdefRecord parse(NdefRecord record) {
+                        return UriRecord.decode(record);
+                    }
+                })
+                .build();
+    }
+
+    public static final class Builder {
+
+        private final List<Map<Type, Parser>> mByType = new ArrayList<>(TNFS);
+        private final Parser[] mAnyType = new Parser[TNFS];
+
+        public Builder() {
+            for (int tnf = 0; tnf < TNFS; tnf++) {
+                mByType.add(new HashMap<Type, Parser>());
+            }
+        }
+
+        /** Registers {@code parser} for {@code tnf} and {@code type}, replacing an earlier one. */
+        public Builder add(int tnf, byte[] type, Parser parser) {
+            mByType.get(checkTnf(tnf)).put(new Type(type.clone()), parser);
+            return this;
+        }
+
+        /** Registers {@code parser} for the types of {@code tnf} without a parser of their own. */
+        public Builder addAnyType(int tnf, Parser parser) {
+            mAnyType[checkTnf(tnf)] = parser;
+            return this;
+        }
+
+        public RecordParsers build() {
+            List<Map<Type, Parser>> byType = new ArrayList<>(TNFS);
+            for (Map<Type, Parser> types : mByType) {
+                byType.add(new HashMap<>(types));
+            }
+            return new RecordParsers(byType, mAnyType.clone());
+        }
+
+        private static int checkTnf(int tnf) {
+            // 7 is reserved
+            if (tnf < 0 || tnf >= TNFS - 1) {
+                throw new IllegalArgumentException("TNF " + tnf);
+            }
+            return tnf;
+        }
+    }
+
+    /** A record type as a map key. */
+    private static final class Type {
+        private final byte[] mBytes;
+        private final int mHash;
+
+        Type(byte[] bytes) {
+            mBytes = bytes;
+            mHash = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Type && Arrays.equals(mBytes, ((Type) o).mBytes);
+        }
+    }
+}
@@ -4,7 +4,7 @@
  */
 package com.iot.nfcreader.record;
 
-import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import com.iot.nfcreader.R;
@@ -17,6 +17,8 @@ import android.widget.TextView;
 
 import com.google.common.base.Preconditions;
 
+import io.github.mylittleswift.nfc_codec.NdefText;
+
 /**
  * An NFC Text Record
  */
@@ -34,10 +36,15 @@ public class TextRecord implements ParsedNdefRecord {
 
     public View getView(Activity activity, LayoutInflater inflater, ViewGroup parent, int offset) {
         TextView text = (TextView) inflater.inflate(R.layout.tag_text, parent, false);
-        text.setText(mText);
+        bindView(text);
         return text;
     }
 
+    public void bindView(TextView text) {
+        text.setAutoLinkMask(0);
+        text.setText(mText);
+    }
+
     public String getText() {
         return mText;
     }
@@ -50,43 +57,40 @@ public class TextRecord implements ParsedNdefRecord {
     }
 
     // TODO: deal with text fields which span multiple NdefRecords
+    /**
+     * @throws IllegalArgumentException if the record is not a valid Text record
+     */
     public static TextRecord parse(NdefRecord record) {
-        Preconditions.checkArgument(record.getTnf() == NdefRecord.TNF_WELL_KNOWN);
-        Preconditions.checkArgument(Arrays.equals(record.getType(), NdefRecord.RTD_TEXT));
-        try {
-            byte[] payload = record.getPayload();
-            /*
-             * payload[0] contains the "Status Byte Encodings" field, per the
-             * NFC Forum "Text Record Type Definition" section 3.2.1.
-             *
-             * bit7 is the Text Encoding Field.
-             *
-             * if (Bit_7 == 0): The text is encoded in UTF-8 if (Bit_7 == 1):
-             * The text is encoded in UTF16
-             *
-             * Bit_6 is reserved for future use and must be set to zero.
-             *
-             * Bits 5 to 0 are the length of the IANA language code.
-             */
-            String textEncoding = ((payload[0] & 0200) == 0) ? "UTF-8" : "UTF-16";
-            int languageCodeLength = payload[0] & 0077;
-            String languageCode = new String(payload, 1, languageCodeLength, "US-ASCII");
-            String text =
-                new String(payload, languageCodeLength + 1,
-                    payload.length - languageCodeLength - 1, textEncoding);
-            return new TextRecord(languageCode, text);
-        } catch (UnsupportedEncodingException e) {
-            // should never happen unless we get a malformed tag.
-            throw new IllegalArgumentException(e);
+        TextRecord text = decode(record);
+        Preconditions.checkArgument(text != null, "Not a text record");
+        return text;
+    }
+
+    /**
+     * Returns the Text record, or null if {@code record} is not a valid one.
+     */
+    public static TextRecord decode(NdefRecord record) {
+        if (record.getTnf() != NdefRecord.TNF_WELL_KNOWN
+                || !Arrays.equals(record.getType(), NdefRecord.RTD_TEXT)) {
+            return null;
+        }
+        byte[] payload = record.getPayload();
+        /*
+         * payload[0] contains the "Status Byte Encodings" field, per the
+         * NFC Forum "Text Record Type Definition" section 3.2.1: the encoding
+         * in bit 7 and the length of the IANA language code in bits 5 to 0.
+         */
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        String languageCode = NdefText.decodeLanguage(buffer, 0, payload.length);
+        String text = NdefText.decode(buffer, 0, payload.length);
+        if (languageCode == null || text == null) {
+            // a malformed tag
+            return null;
         }
+        return new TextRecord(languageCode, text);
     }
 
     public static boolean isText(NdefRecord record) {
-        try {
-            parse(record);
-            return true;
-        } catch (IllegalArgumentException e) {
-            return false;
-        }
+        return decode(record) != null;
     }
 }
@@ -4,6 +4,7 @@
  */
 package com.iot.nfcreader.record;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 
@@ -18,9 +19,8 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.BiMap;
-import com.google.common.collect.ImmutableBiMap;
-import com.google.common.primitives.Bytes;
+
+import io.github.mylittleswift.nfc_codec.NdefUri;
 
 /**
  * A parsed record containing a Uri.
@@ -31,51 +31,6 @@ public class UriRecord implements ParsedNdefRecord {
 
     public static final String RECORD_TYPE = "UriRecord";
 
-    /**
-     * NFC Forum "URI Record Type Definition"
-     *
-     * This is a mapping of "URI Identifier Codes" to URI string prefixes,
-     * per section 3.2.2 of the NFC Forum URI Record Type Definition document.
-     */
-    private static final BiMap<Byte, String> URI_PREFIX_MAP = ImmutableBiMap.<Byte, String>builder()
-            .put((byte) 0x00, "")
-            .put((byte) 0x01, "http://www.")
-            .put((byte) 0x02, "https://www.")
-            .put((byte) 0x03, "http://")
-            .put((byte) 0x04, "https://")
-            .put((byte) 0x05, "tel:")
-            .put((byte) 0x06, "mailto:")
-            .put((byte) 0x07, "ftp://anonymous:anonymous@")
-            .put((byte) 0x08, "ftp://ftp.")
-            .put((byte) 0x09, "ftps://")
-            .put((byte) 0x0A, "sftp://")
-            .put((byte) 0x0B, "smb://")
-            .put((byte) 0x0C, "nfs://")
-            .put((byte) 0x0D, "ftp://")
-            .put((byte) 0x0E, "dav://")
-            .put((byte) 0x0F, "news:")
-            .put((byte) 0x10, "telnet://")
-            .put((byte) 0x11, "imap:")
-            .put((byte) 0x12, "rtsp://")
-            .put((byte) 0x13, "urn:")
-            .put((byte) 0x14, "pop:")
-            .put((byte) 0x15, "sip:")
-            .put((byte) 0x16, "sips:")
-            .put((byte) 0x17, "tftp:")
-            .put((byte) 0x18, "btspp://")
-            .put((byte) 0x19, "btl2cap://")
-            .put((byte) 0x1A, "btgoep://")
-            .put((byte) 0x1B, "tcpobex://")
-            .put((byte) 0x1C, "irdaobex://")
-            .put((byte) 0x1D, "file://")
-            .put((byte) 0x1E, "urn:epc:id:")
-            .put((byte) 0x1F, "urn:epc:tag:")
-            .put((byte) 0x20, "urn:epc:pat:")
-            .put((byte) 0x21, "urn:epc:raw:")
-            .put((byte) 0x22, "urn:epc:")
-            .put((byte) 0x23, "urn:nfc:")
-            .build();
-
     private final Uri mUri;
 
     private UriRecord(Uri uri) {
@@ -84,9 +39,13 @@ public class UriRecord implements ParsedNdefRecord {
 
     public View getView(Activity activity, LayoutInflater inflater, ViewGroup parent, int offset) {
         TextView text = (TextView) inflater.inflate(R.layout.tag_text, parent, false);
+        bindView(text);
+        return text;
+    }
+
+    public void bindView(TextView text) {
         text.setAutoLinkMask(Linkify.ALL);
         text.setText(mUri.toString());
-        return text;
     }
 
     public Uri getUri() {
@@ -101,25 +60,38 @@ public class UriRecord implements ParsedNdefRecord {
      *         containing a URI.
      */
     public static UriRecord parse(NdefRecord record) {
+        UriRecord uri = decode(record);
+        Preconditions.checkArgument(uri != null, "Not a URI record");
+        return uri;
+    }
+
+    /**
+     * Like {@link #parse}, but returns null if the record does not contain a URI.
+     */
+    public static UriRecord decode(NdefRecord record) {
         short tnf = record.getTnf();
         if (tnf == NdefRecord.TNF_WELL_KNOWN) {
             return parseWellKnown(record);
         } else if (tnf == NdefRecord.TNF_ABSOLUTE_URI) {
             return parseAbsolute(record);
         }
-        throw new IllegalArgumentException("Unknown TNF " + tnf);
+        return null;
     }
 
     /** Parse and absolute URI record */
     private static UriRecord parseAbsolute(NdefRecord record) {
-        byte[] payload = record.getPayload();
-        Uri uri = Uri.parse(new String(payload, Charset.forName("UTF-8")));
+        // the URI is the type, though some writers leave that empty and use the payload
+        byte[] type = record.getType();
+        byte[] bytes = type != null && type.length > 0 ? type : record.getPayload();
+        Uri uri = Uri.parse(new String(bytes, Charset.forName("UTF-8")));
         return new UriRecord(uri);
     }
 
     /** Parse an well known URI record */
     private static UriRecord parseWellKnown(NdefRecord record) {
-        Preconditions.checkArgument(Arrays.equals(record.getType(), NdefRecord.RTD_URI));
+        if (!Arrays.equals(record.getType(), NdefRecord.RTD_URI)) {
+            return null;
+        }
         byte[] payload = record.getPayload();
         /*
          * payload[0] contains the URI Identifier Code, per the
@@ -128,21 +100,12 @@ public class UriRecord implements ParsedNdefRecord {
          * payload[1]...payload[payload.length - 1] contains the rest of
          * the URI.
          */
-        String prefix = URI_PREFIX_MAP.get(payload[0]);
-        byte[] fullUri =
-            Bytes.concat(prefix.getBytes(Charset.forName("UTF-8")), Arrays.copyOfRange(payload, 1,
-                payload.length));
-        Uri uri = Uri.parse(new String(fullUri, Charset.forName("UTF-8")));
-        return new UriRecord(uri);
+        String uri = NdefUri.decode(ByteBuffer.wrap(payload), 0, payload.length);
+        return uri == null ? null : new UriRecord(Uri.parse(uri));
     }
 
     public static boolean isUri(NdefRecord record) {
-        try {
-            parse(record);
-            return true;
-        } catch (IllegalArgumentException e) {
-            return false;
-        }
+        return decode(record) != null;
     }
 
     private static final byte[] EMPTY = new byte[0];
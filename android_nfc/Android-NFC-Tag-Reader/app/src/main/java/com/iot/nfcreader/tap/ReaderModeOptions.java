@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2016 Joey
+ *
+ */
+package com.iot.nfcreader.tap;
+
+import android.nfc.NfcAdapter;
+
+/**
+ * The flags and extras {@code NfcAdapter.enableReaderMode} is called with.
+ *
+ * In reader mode the tag is handed to a callback on a binder thread as soon as it is
+ * polled, instead of going through an intent and {@code onNewIntent}. Only the technologies
+ * in the flags are polled. With the NDEF check skipped the platform does not read the NDEF
+ * message before delivering the tag, so the tag carries no cached message and no Ndef
+ * technology; that suits taps which only look up the UID. The presence check delay is
+ * how often the platform pings a tag still in the field to notice it leaving.
+ */
+public final class ReaderModeOptions {
+
+    public static final int TECH_ALL = NfcAdapter.FLAG_READER_NFC_A | NfcAdapter.FLAG_READER_NFC_B
+            | NfcAdapter.FLAG_READER_NFC_F | NfcAdapter.FLAG_READER_NFC_V | NfcAdapter.FLAG_READER_NFC_BARCODE;
+
+    /**
+     * Twice the platform's 125 ms: a tap reads the tag once and then only has to notice it
+     * leaving, and fewer presence checks leave the tag to the session's own reads.
+     */
+    public static final int DEFAULT_PRESENCE_CHECK_DELAY_MILLIS = 250;
+
+    private final int mTechFlags;
+    private final boolean mSkipNdefCheck;
+    private final boolean mNoPlatformSounds;
+    private final int mPresenceCheckDelayMillis;
+
+    private ReaderModeOptions(Builder builder) {
+        mTechFlags = builder.mTechFlags;
+        mSkipNdefCheck = builder.mSkipNdefCheck;
+        mNoPlatformSounds = builder.mNoPlatformSounds;
+        mPresenceCheckDelayMillis = builder.mPresenceCheckDelayMillis;
+    }
+
+    /** The flags argument of {@code enableReaderMode}. */
+    public int getFlags() {
+        int flags = mTechFlags;
+        if (mSkipNdefCheck) {
+            flags |= NfcAdapter.FLAG_READER_SKIP_NDEF_CHECK;
+        }
+        if (mNoPlatformSounds) {
+            flags |= NfcAdapter.FLAG_READER_NO_PLATFORM_SOUNDS;
+        }
+        return flags;
+    }
+
+    public int getTechFlags() {
+        return mTechFlags;
+    }
+
+    public boolean isSkipNdefCheck() {
+        return mSkipNdefCheck;
+    }
+
+    public boolean isNoPlatformSounds() {
+        return mNoPlatformSounds;
+    }
+
+    /** The value of {@code NfcAdapter.EXTRA_READER_PRESENCE_CHECK_DELAY}. */
+    public int getPresenceCheckDelayMillis() {
+        return mPresenceCheckDelayMillis;
+    }
+
+    /** Returns a builder starting from these options. */
+    public Builder buildUpon() {
+        return new Builder()
+                .setTechFlags(mTechFlags)
+                .setSkipNdefCheck(mSkipNdefCheck)
+                .setNoPlatformSounds(mNoPlatformSounds)
+                .setPresenceCheckDelayMillis(mPresenceCheckDelayMillis);
+    }
+
+    @Override
+    public String toString() {
+        return "flags 0x" + Integer.toHexString(getFlags()) + ", presence check " + mPresenceCheckDelayMillis + "ms";
+    }
+
+    public static final class Builder {
+
+        private int mTechFlags = TECH_ALL;
+        private boolean mSkipNdefCheck;
+        private boolean mNoPlatformSounds;
+        private int mPresenceCheckDelayMillis = DEFAULT_PRESENCE_CHECK_DELAY_MILLIS;
+
+        /** The NfcAdapter FLAG_READER_NFC_* technologies to poll for, all by default. */
+        public Builder setTechFlags(int techFlags) {
+            if (techFlags == 0 || (techFlags & ~TECH_ALL) != 0) {
+                throw new IllegalArgumentException("Not a set of technologies: 0x" + Integer.toHexString(techFlags));
+            }
+            mTechFlags = techFlags;
+            return this;
+        }
+
+        public Builder setSkipNdefCheck(boolean skipNdefCheck) {
+            mSkipNdefCheck = skipNdefCheck;
+            return this;
+        }
+
+        /** Leaves the tap feedback to the app, which vibrates. */
+        public Builder setNoPlatformSounds(boolean noPlatformSounds) {
+            mNoPlatformSounds = noPlatformSounds;
+            return this;
+        }
+
+        public Builder setPresenceCheckDelayMillis(int presenceCheckDelayMillis) {
+            if (presenceCheckDelayMillis <= 0) {
+                throw new IllegalArgumentException("Presence check delay " + presenceCheckDelayMillis);
+            }
+            mPresenceCheckDelayMillis = presenceCheckDelayMillis;
+            return this;
+        }
+
+        public ReaderModeOptions build() {
+            return new ReaderModeOptions(this);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2016 Joey
+ *
+ */
+package com.iot.nfcreader.tap;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import io.github.mylittleswift.nfc_session.SessionMetrics;
+
+/**
+ * Compares how long taps take to reach the screen through foreground dispatch and through
+ * reader mode.
+ *
+ * A tap is timed from the first moment the app sees it until its records are on screen.
+ * With foreground dispatch that is {@code onPause}, which the platform calls before
+ * delivering the intent to {@code onNewIntent}; the time up to {@code onNewIntent} is also
+ * recorded on its own as the re-entry time. In reader mode it is the reader callback. The
+ * platform's own NDEF check happens before either and cannot be timed from the app; it
+ * shows as the difference in reading the tag, which the times include.
+ *
+ * Times go into the power of two buckets of microseconds of {@link SessionMetrics}.
+ */
+public final class TapTimings {
+
+    public static final int PATH_DISPATCH = 0;
+    public static final int PATH_READER_MODE = 1;
+    public static final int PATHS = 2;
+
+    private static final String[] PATH_NAMES = {"foreground dispatch", "reader mode"};
+
+    private final AtomicLongArray mReentry = new AtomicLongArray(PATHS * SessionMetrics.BUCKETS);
+    private final AtomicLongArray mToView = new AtomicLongArray(PATHS * SessionMetrics.BUCKETS);
+
+    public static String pathName(int path) {
+        return PATH_NAMES[path];
+    }
+
+    /**
+     * Records one tap.
+     *
+     * @param reentryNanos the time from {@code onPause} to {@code onNewIntent}, or -1 if
+     *                     the tap did not go through the activity
+     * @param toViewNanos  the time from the first sight of the tap to its records on screen
+     */
+    public void record(int path, long reentryNanos, long toViewNanos) {
+        if (reentryNanos >= 0) {
+            mReentry.incrementAndGet(path * SessionMetrics.BUCKETS + SessionMetrics.bucket(reentryNanos / 1000));
+        }
+        mToView.incrementAndGet(path * SessionMetrics.BUCKETS + SessionMetrics.bucket(toViewNanos / 1000));
+    }
+
+    public long getCount(int path) {
+        return SessionMetrics.count(mToView, path * SessionMetrics.BUCKETS);
+    }
+
+    /** Upper bucket limit in microseconds below which a fraction {@code q} of the taps reached the screen. */
+    public long getToViewPercentileMicros(int path, double q) {
+        return SessionMetrics.percentileMicros(mToView, path * SessionMetrics.BUCKETS, q);
+    }
+
+    /** Like {@link #getToViewPercentileMicros}, for the re-entry of dispatched taps. */
+    public long getReentryPercentileMicros(int path, double q) {
+        return SessionMetrics.percentileMicros(mReentry, path * SessionMetrics.BUCKETS, q);
+    }
+
+    /**
+     * One line per path, e.g.
+     * "foreground dispatch: 20 taps, re-entry p50 16384us p99 32768us, to view p50 65536us p99 131072us".
+     */
+    public String format() {
+        StringBuilder text = new StringBuilder();
+        for (int path = 0; path < PATHS; path++) {
+            if (path > 0) {
+                text.append('\n');
+            }
+            text.append(PATH_NAMES[path]).append(": ").append(getCount(path)).append(" taps");
+            if (SessionMetrics.count(mReentry, path * SessionMetrics.BUCKETS) > 0) {
+                text.append(String.format(Locale.US, ", re-entry p50 %dus p99 %dus",
+                        getReentryPercentileMicros(path, 0.5), getReentryPercentileMicros(path, 0.99)));
+            }
+            text.append(String.format(Locale.US, ", to view p50 %dus p99 %dus",
+                    getToViewPercentileMicros(path, 0.5), getToViewPercentileMicros(path, 0.99)));
+        }
+        return text.toString();
+    }
+}
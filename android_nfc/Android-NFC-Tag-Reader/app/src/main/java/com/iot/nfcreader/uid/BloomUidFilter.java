@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2016 Joey
+ *
+ */
+package com.iot.nfcreader.uid;
+
+/**
+ * A Bloom filter over tag ids. {@link #mightContain(byte[])} never answers false for an id
+ * which was added, and answers true for other ids with roughly the configured false
+ * positive rate. Probing is allocation free.
+ *
+ * The filter is blocked: all probes for one id fall into the same 512 bit block (one cache
+ * line), so a lookup costs a single memory access however large the list is. This needs
+ * slightly more bits than a classic filter for the same false positive rate, which
+ * {@link #create(int, double)} accounts for. The block is chosen by the upper 32 bits of
+ * the hash and the probes within it by the lower 32 bits only, so ids sharing a block do
+ * not share their probe sequences.
+ *
+ * Only {@link #put(byte[], int, int)} mutates the filter; it is meant to be filled on the
+ * loader thread and published as part of an immutable snapshot.
+ */
+public final class BloomUidFilter {
+
+    private static final double LN2 = Math.log(2);
+
+    /** Block size in longs (512 bits). */
+    private static final int BLOCK_LONGS = 8;
+    private static final int BLOCK_BITS = BLOCK_LONGS * 64;
+
+    /** Extra bits a blocked filter needs to match a classic filter's false positive rate. */
+    private static final double BLOCK_OVERHEAD = 1.2;
+
+    private final long[] mBits;
+    private final int mBlockCount;
+    private final int mHashCount;
+
+    /**
+     * @param bitCount  size of the filter in bits, rounded up to whole 512 bit blocks
+     * @param hashCount number of probes per id
+     */
+    public BloomUidFilter(long bitCount, int hashCount) {
+        if (bitCount <= 0 || bitCount > (long) BLOCK_BITS * (Integer.MAX_VALUE / BLOCK_LONGS)) {
+            throw new IllegalArgumentException("Bad bit count " + bitCount);
+        }
+        if (hashCount <= 0 || hashCount > 32) {
+            throw new IllegalArgumentException("Bad hash count " + hashCount);
+        }
+        mBlockCount = (int) ((bitCount + BLOCK_BITS - 1) / BLOCK_BITS);
+        mBits = new long[mBlockCount * BLOCK_LONGS];
+        mHashCount = hashCount;
+    }
+
+    /**
+     * Creates a filter sized for {@code expectedIds} ids at the given false positive rate.
+     */
+    public static BloomUidFilter create(int expectedIds, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Bad false positive rate " + falsePositiveRate);
+        }
+        int n = Math.max(expectedIds, 1);
+        double bitsPerId = -Math.log(falsePositiveRate) / (LN2 * LN2);
+        int hashes = Math.max(1, (int) Math.round(bitsPerId * LN2));
+        return new BloomUidFilter((long) Math.ceil(n * bitsPerId * BLOCK_OVERHEAD),
+                Math.min(hashes, 32));
+    }
+
+    public void put(byte[] uid, int offset, int length) {
+        long hash = hash(uid, offset, length);
+        int base = block(hash);
+        int h1 = (int) hash;
+        int h2 = (int) hash >>> 16 | 1;
+        for (int i = 0; i < mHashCount; i++) {
+            int bit = (h1 + i * h2) & (BLOCK_BITS - 1);
+            mBits[base + (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(byte[] uid) {
+        long hash = hash(uid, 0, uid.length);
+        int base = block(hash);
+        int h1 = (int) hash;
+        int h2 = (int) hash >>> 16 | 1;
+        for (int i = 0; i < mHashCount; i++) {
+            int bit = (h1 + i * h2) & (BLOCK_BITS - 1);
+            if ((mBits[base + (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getBitCount() {
+        return (long) mBits.length * 64;
+    }
+
+    public int getHashCount() {
+        return mHashCount;
+    }
+
+    /** Index of the first long of the id's block, from the upper hash bits. */
+    private int block(long hash) {
+        // multiply-shift maps the upper 32 bits onto [0, mBlockCount) without a division
+        return (int) (((hash >>> 32) * mBlockCount) >>> 32) * BLOCK_LONGS;
+    }
+
+    /** FNV-1a over the id bytes, finished with MurmurHash3 fmix64. */
+    private static long hash(byte[] bytes, int offset, int length) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = offset; i < offset + length; i++) {
+            h ^= bytes[i] & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2016 Joey
+ *
+ */
+package com.iot.nfcreader.uid;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Puts a {@link BloomUidFilter} in front of an authoritative {@link UidLookup}. An id the
+ * filter rejects is on no list, so {@link #STATUS_UNKNOWN} is returned after a few hash
+ * probes; only filter hits reach the store.
+ */
+public final class FilteredUidLookup implements UidLookup {
+
+    private final BloomUidFilter mFilter;
+    private final UidLookup mStore;
+    private final Stats mStats;
+
+    public FilteredUidLookup(BloomUidFilter filter, UidLookup store, Stats stats) {
+        mFilter = filter;
+        mStore = store;
+        mStats = stats;
+    }
+
+    @Override
+    public int lookup(byte[] uid) {
+        if (!mFilter.mightContain(uid)) {
+            mStats.mRejected.incrementAndGet();
+            return STATUS_UNKNOWN;
+        }
+        int status = mStore.lookup(uid);
+        if (status == STATUS_UNKNOWN) {
+            mStats.mFalsePositives.incrementAndGet();
+        } else {
+            mStats.mHits.incrementAndGet();
+        }
+        return status;
+    }
+
+    @Override
+    public int size() {
+        return mStore.size();
+    }
+
+    public BloomUidFilter getFilter() {
+        return mFilter;
+    }
+
+    /**
+     * Filter counters. One instance can be shared by successive snapshots so the counts
+     * survive list reloads.
+     */
+    public static final class Stats {
+
+        private final AtomicLong mRejected = new AtomicLong();
+        private final AtomicLong mHits = new AtomicLong();
+        private final AtomicLong mFalsePositives = new AtomicLong();
+
+        /** Lookups answered by the filter alone. */
+        public long getRejected() {
+            return mRejected.get();
+        }
+
+        /** Lookups which passed the filter and were found in the store. */
+        public long getHits() {
+            return mHits.get();
+        }
+
+        /** Lookups which passed the filter but were not in the store. */
+        public long getFalsePositives() {
+            return mFalsePositives.get();
+        }
+
+        /** Observed false positive rate among ids not on any list. */
+        public double getFalsePositiveRate() {
+            long falsePositives = mFalsePositives.get();
+            long negatives = mRejected.get() + falsePositives;
+            return negatives == 0 ? 0 : (double) falsePositives / negatives;
+        }
+
+        public void reset() {
+            mRejected.set(0);
+            mHits.set(0);
+            mFalsePositives.set(0);
+        }
+
+        @Override
+        public String toString() {
+            return "rejected=" + getRejected() + " hits=" + getHits()
+                    + " falsePositives=" + getFalsePositives();
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2016 Joey
+ *
+ */
+package com.iot.nfcreader.uid;
+
+/**
+ * A {@link UidLookup} backed by an open-addressing hash table with linear probing.
+ *
+ * Tag ids are packed into primitive longs: the first 8 bytes go to {@code mKeys}, and the
+ * bytes 8..14 of longer ids (e.g. ISO 14443 triple size UIDs) go to {@code mHighKeys},
+ * which is only allocated when such an id has been added. A per-slot meta byte holds the
+ * id length and status, so a zero meta byte marks an empty slot.
+ */
+public final class HashUidLookup implements UidLookup {
+
+    /** Longest tag id which can be stored, in bytes. */
+    public static final int MAX_UID_LENGTH = 15;
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] mKeys;
+    private long[] mHighKeys;
+    private byte[] mMeta;
+    private int mSize;
+
+    private HashUidLookup(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3L < expectedSize * 4L) {
+            capacity <<= 1;
+        }
+        mKeys = new long[capacity];
+        mMeta = new byte[capacity];
+    }
+
+    @Override
+    public int lookup(byte[] uid) {
+        int length = uid.length;
+        if (length == 0 || length > MAX_UID_LENGTH) {
+            return STATUS_UNKNOWN;
+        }
+        long low = pack(uid, 0, Math.min(length, 8));
+        long high = length > 8 ? pack(uid, 8, length) : 0L;
+        int mask = mKeys.length - 1;
+        for (int i = hash(low, high, length) & mask; ; i = (i + 1) & mask) {
+            int meta = mMeta[i];
+            if (meta == 0) {
+                return STATUS_UNKNOWN;
+            }
+            if ((meta >>> 2) == length && mKeys[i] == low
+                    && (mHighKeys == null || mHighKeys[i] == high)) {
+                return meta & 0x03;
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Adds every id held by this lookup to {@code filter}.
+     */
+    void addKeysTo(BloomUidFilter filter) {
+        byte[] uid = new byte[MAX_UID_LENGTH];
+        for (int i = 0; i < mMeta.length; i++) {
+            int length = mMeta[i] >>> 2;
+            if (length == 0) {
+                continue;
+            }
+            unpack(mKeys[i], uid, 0, Math.min(length, 8));
+            if (length > 8) {
+                unpack(mHighKeys[i], uid, 8, length);
+            }
+            filter.put(uid, 0, length);
+        }
+    }
+
+    private void put(byte[] uid, int offset, int length, int status) {
+        if ((mSize + 1) * 4L > mKeys.length * 3L) {
+            resize(mKeys.length << 1);
+        }
+        long low = pack(uid, offset, offset + Math.min(length, 8));
+        long high = length > 8 ? pack(uid, offset + 8, offset + length) : 0L;
+        // whatever the tail, even all zero: without mHighKeys the tails are not compared
+        if (length > 8 && mHighKeys == null) {
+            mHighKeys = new long[mKeys.length];
+        }
+        if (insert(low, high, length, (byte) ((length << 2) | status))) {
+            mSize++;
+        }
+    }
+
+    /** Returns true if a new slot was taken, false if an existing entry was updated. */
+    private boolean insert(long low, long high, int length, byte meta) {
+        int mask = mKeys.length - 1;
+        for (int i = hash(low, high, length) & mask; ; i = (i + 1) & mask) {
+            int current = mMeta[i];
+            if (current == 0) {
+                mKeys[i] = low;
+                if (mHighKeys != null) {
+                    mHighKeys[i] = high;
+                }
+                mMeta[i] = meta;
+                return true;
+            }
+            if ((current >>> 2) == length && mKeys[i] == low
+                    && (mHighKeys == null || mHighKeys[i] == high)) {
+                mMeta[i] = meta;
+                return false;
+            }
+        }
+    }
+
+    private void resize(int capacity) {
+        long[] keys = mKeys;
+        long[] highKeys = mHighKeys;
+        byte[] meta = mMeta;
+        mKeys = new long[capacity];
+        mHighKeys = highKeys != null ? new long[capacity] : null;
+        mMeta = new byte[capacity];
+        for (int i = 0; i < keys.length; i++) {
+            if (meta[i] != 0) {
+                insert(keys[i], highKeys != null ? highKeys[i] : 0L, meta[i] >>> 2, meta[i]);
+            }
+        }
+    }
+
+    private static long pack(byte[] bytes, int from, int to) {
+        long value = 0L;
+        for (int i = from; i < to; i++) {
+            value = (value << 8) | (bytes[i] & 0xff);
+        }
+        return value;
+    }
+
+    private static void unpack(long value, byte[] bytes, int from, int to) {
+        for (int i = to - 1; i >= from; i--) {
+            bytes[i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    /** MurmurHash3 fmix64 over the packed key. */
+    private static int hash(long low, long high, int length) {
+        long h = low ^ (high * 0x9E3779B97F4A7C15L) ^ length;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    /**
+     * Collects tag ids and builds an immutable {@link HashUidLookup}. A builder must not be
+     * used after {@link #build()} has been called.
+     */
+    public static final class Builder {
+
+        private HashUidLookup mTable;
+
+        public Builder() {
+            this(MIN_CAPACITY);
+        }
+
+        public Builder(int expectedSize) {
+            mTable = new HashUidLookup(expectedSize);
+        }
+
+        /**
+         * Adds a tag id with the given status. A later call for the same id replaces
+         * the earlier status.
+         *
+         * @throws IllegalArgumentException if the id is empty or longer than
+         *         {@link #MAX_UID_LENGTH}, or the status is not a known status.
+         */
+        public Builder add(byte[] uid, int status) {
+            return add(uid, 0, uid.length, status);
+        }
+
+        public Builder add(byte[] uid, int offset, int length, int status) {
+            if (length <= 0 || length > MAX_UID_LENGTH) {
+                throw new IllegalArgumentException("Bad uid length " + length);
+            }
+            if (status != STATUS_CLOSED && status != STATUS_OPEN) {
+                throw new IllegalArgumentException("Bad status " + status);
+            }
+            checkNotBuilt().put(uid, offset, length, status);
+            return this;
+        }
+
+        public HashUidLookup build() {
+            HashUidLookup table = checkNotBuilt();
+            mTable = null;
+            return table;
+        }
+
+        private HashUidLookup checkNotBuilt() {
+            if (mTable == null) {
+                throw new IllegalStateException("build() already called");
+            }
+            return mTable;
+        }
+    }
+}
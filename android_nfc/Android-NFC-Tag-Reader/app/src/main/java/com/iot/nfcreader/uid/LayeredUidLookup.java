@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2016 Joey
+ *
+ */
+package com.iot.nfcreader.uid;
+
+/**
+ * Combines two lookups: an id known to the first one takes its status from there,
+ * otherwise the second one answers.
+ */
+public final class LayeredUidLookup implements UidLookup {
+
+    private final UidLookup mFirst;
+    private final UidLookup mSecond;
+
+    public LayeredUidLookup(UidLookup first, UidLookup second) {
+        mFirst = first;
+        mSecond = second;
+    }
+
+    @Override
+    public int lookup(byte[] uid) {
+        int status = mFirst.lookup(uid);
+        return status != STATUS_UNKNOWN ? status : mSecond.lookup(uid);
+    }
+
+    /**
+     * Returns the sum of both sizes; an id held by both is counted twice.
+     */
+    @Override
+    public int size() {
+        return mFirst.size() + mSecond.size();
+    }
+}
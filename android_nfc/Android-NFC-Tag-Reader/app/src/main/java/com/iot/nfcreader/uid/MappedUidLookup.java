@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2016 Joey
+ *
+ */
+package com.iot.nfcreader.uid;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * A {@link UidLookup} over a memory-mapped snapshot compiled by {@link UidSnapshotCompiler}.
+ * Opening only maps the file, and lookups binary-search the sorted entries in place, so
+ * neither startup time nor heap grows with the size of the list.
+ *
+ * The mapped file must not be modified while it is in use: replace it by writing a new
+ * file and renaming it, or map a private copy (as {@link UidListWatcher} does).
+ */
+public final class MappedUidLookup implements UidLookup {
+
+    private final ByteBuffer mEntries;
+    private final int mKeyWidth;
+    private final int mEntrySize;
+    private final int mCount;
+
+    private MappedUidLookup(ByteBuffer entries, int keyWidth, int count) {
+        mEntries = entries;
+        mKeyWidth = keyWidth;
+        mEntrySize = UidSnapshot.entrySize(keyWidth);
+        mCount = count;
+    }
+
+    /**
+     * Maps a compiled snapshot.
+     *
+     * @param verifyChecksum whether to check the entry region against the header CRC32.
+     *                       This reads the whole file once.
+     * @throws IOException if the file cannot be read or is not a valid snapshot
+     */
+    public static MappedUidLookup open(File file, boolean verifyChecksum) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size < UidSnapshot.HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Bad snapshot size " + size + ": " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt(0) != UidSnapshot.MAGIC) {
+                throw new IOException("Not a UID snapshot: " + file);
+            }
+            int version = buffer.getShort(UidSnapshot.OFFSET_VERSION) & 0xffff;
+            if (version != UidSnapshot.VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + file);
+            }
+            int keyWidth = buffer.get(UidSnapshot.OFFSET_KEY_WIDTH) & 0xff;
+            long count = buffer.getInt(UidSnapshot.OFFSET_COUNT) & 0xffffffffL;
+            if (keyWidth == 0 && count > 0
+                    || UidSnapshot.HEADER_SIZE + count * UidSnapshot.entrySize(keyWidth) != size) {
+                throw new IOException("Truncated or corrupt snapshot: " + file);
+            }
+            buffer.position(UidSnapshot.HEADER_SIZE);
+            ByteBuffer entries = buffer.slice();
+            if (verifyChecksum && checksum(entries) != buffer.getInt(UidSnapshot.OFFSET_CHECKSUM)) {
+                throw new IOException("Snapshot checksum mismatch: " + file);
+            }
+            return new MappedUidLookup(entries, keyWidth, (int) count);
+        } finally {
+            // the mapping stays valid after the channel is closed
+            raf.close();
+        }
+    }
+
+    @Override
+    public int lookup(byte[] uid) {
+        int length = uid.length;
+        if (length == 0 || length > mKeyWidth) {
+            return STATUS_UNKNOWN;
+        }
+        int low = 0;
+        int high = mCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(mid * mEntrySize, uid);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mEntries.get(mid * mEntrySize + 1 + mKeyWidth);
+            }
+        }
+        return STATUS_UNKNOWN;
+    }
+
+    @Override
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * Adds every id held by this lookup to {@code filter}.
+     */
+    void addKeysTo(BloomUidFilter filter) {
+        byte[] uid = new byte[mKeyWidth];
+        for (int offset = 0; offset < mCount * mEntrySize; offset += mEntrySize) {
+            int length = mEntries.get(offset) & 0xff;
+            for (int i = 0; i < length; i++) {
+                uid[i] = mEntries.get(offset + 1 + i);
+            }
+            filter.put(uid, 0, length);
+        }
+    }
+
+    /** Compares the entry at {@code offset} with {@code uid}, by length first. */
+    private int compare(int offset, byte[] uid) {
+        int length = mEntries.get(offset) & 0xff;
+        if (length != uid.length) {
+            return length < uid.length ? -1 : 1;
+        }
+        for (int i = 0; i < length; i++) {
+            int a = mEntries.get(offset + 1 + i) & 0xff;
+            int b = uid[i] & 0xff;
+            if (a != b) {
+                return a < b ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    static int checksum(ByteBuffer entries) {
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[8192];
+        ByteBuffer view = entries.duplicate();
+        view.clear();
+        while (view.hasRemaining()) {
+            int n = Math.min(chunk.length, view.remaining());
+            view.get(chunk, 0, n);
+            crc.update(chunk, 0, n);
+        }
+        return (int) crc.getValue();
+    }
+}
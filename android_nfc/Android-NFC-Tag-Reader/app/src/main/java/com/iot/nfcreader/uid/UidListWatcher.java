@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2016 Joey
+ *
+ */
+package com.iot.nfcreader.uid;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps an immutable {@link UidLookup} snapshot of the UID list files up to date.
+ *
+ * A single background thread polls the files' size and modification time. Once a change
+ * has been stable for one poll interval (so a list which is still being copied is not
+ * picked up), a new snapshot is built on that thread and published with one atomic
+ * reference swap. {@link #lookup(byte[])} only reads the current snapshot, so the tap path
+ * never blocks and never sees a partly built list. If a reload fails the previous snapshot
+ * stays in place and the load is retried on every poll until it succeeds.
+ *
+ * The text list marks its ids closed and is checked first. Behind it sits either the
+ * compiled list, which is copied to a private cache directory and memory-mapped (see
+ * {@link MappedUidLookup}), or, if there is no compiled list, the CSV list read with
+ * {@link UidLists#readCsvList(File, HashUidLookup.Builder)}. Missing files count as empty.
+ *
+ * Optionally a {@link BloomUidFilter} over all listed ids is built with every snapshot and
+ * put in front of it, so ids on no list are rejected without touching the lists.
+ */
+public final class UidListWatcher implements UidLookup {
+
+    public static final long DEFAULT_POLL_MILLIS = 5000;
+
+    private static final String TAG = "UidListWatcher";
+    private static final UidLookup EMPTY = new HashUidLookup.Builder().build();
+    private static final String CACHE_PREFIX = "uids-";
+
+    private final File mTextList;
+    private final File mCsvList;
+    private final File mCompiledList;
+    private final File mCacheDir;
+    private final long mPollMillis;
+    private final double mFalsePositiveRate;
+    private final FilteredUidLookup.Stats mFilterStats = new FilteredUidLookup.Stats();
+
+    private final AtomicReference<UidLookup> mSnapshot = new AtomicReference<UidLookup>(EMPTY);
+    private volatile boolean mLoaded;
+
+    private ScheduledExecutorService mExecutor;
+
+    // only touched on the executor thread
+    private long mLoadedSignature;
+    private long mSeenSignature;
+    private File mMappedCopy;
+    private int mGeneration;
+
+    private UidListWatcher(Builder builder) {
+        mTextList = builder.mTextList;
+        mCsvList = builder.mCsvList;
+        mCompiledList = builder.mCompiledList;
+        mCacheDir = builder.mCacheDir;
+        mPollMillis = builder.mPollMillis;
+        mFalsePositiveRate = builder.mFalsePositiveRate;
+    }
+
+    /**
+     * Loads the lists in the background and starts watching them for changes.
+     */
+    public synchronized void start() {
+        if (mExecutor != null) {
+            return;
+        }
+        mExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "UidListWatcher");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                deleteStaleCopies();
+                reloadIfChanged(true);
+            }
+        });
+        mExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                reloadIfChanged(false);
+            }
+        }, mPollMillis, mPollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops watching. The last published snapshot stays readable.
+     */
+    public synchronized void stop() {
+        if (mExecutor != null) {
+            mExecutor.shutdownNow();
+            mExecutor = null;
+        }
+    }
+
+    /**
+     * Rebuilds the snapshot now, without waiting for the next poll.
+     *
+     * @return a future which completes once the new snapshot is published
+     */
+    public synchronized Future<?> reload() {
+        if (mExecutor == null) {
+            throw new IllegalStateException("not started");
+        }
+        return mExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                reloadIfChanged(true);
+            }
+        });
+    }
+
+    @Override
+    public int lookup(byte[] uid) {
+        return mSnapshot.get().lookup(uid);
+    }
+
+    @Override
+    public int size() {
+        return mSnapshot.get().size();
+    }
+
+    /**
+     * Returns the current snapshot. It never changes, so callers can hold on to it to get
+     * consistent answers across several lookups.
+     */
+    public UidLookup snapshot() {
+        return mSnapshot.get();
+    }
+
+    /**
+     * Returns the Bloom filter counters, accumulated across reloads.
+     */
+    public FilteredUidLookup.Stats getFilterStats() {
+        return mFilterStats;
+    }
+
+    /**
+     * Returns true once the first snapshot has been published.
+     */
+    public boolean isLoaded() {
+        return mLoaded;
+    }
+
+    private void reloadIfChanged(boolean force) {
+        long signature = (signature(mTextList) * 31 + signature(mCsvList)) * 31
+                + signature(mCompiledList);
+        if (!force) {
+            if (signature == mLoadedSignature) {
+                return;
+            }
+            if (signature != mSeenSignature) {
+                // wait until the file has stopped changing
+                mSeenSignature = signature;
+                return;
+            }
+        }
+        mSeenSignature = signature;
+        File previousCopy = mMappedCopy;
+        try {
+            mSnapshot.set(load());
+        } catch (IOException | RuntimeException e) {
+            // e.g. a list caught halfway through a copy; keep the old snapshot and retry
+            Log.w(TAG, "Cannot load the UID lists", e);
+            if (mMappedCopy != previousCopy) {
+                // mapped, but a later list failed; the published snapshot still uses the old copy
+                mMappedCopy.delete();
+                mMappedCopy = previousCopy;
+            }
+            return;
+        }
+        mLoaded = true;
+        mLoadedSignature = signature;
+        if (previousCopy != null && previousCopy != mMappedCopy) {
+            // readers still holding the old snapshot keep the unlinked file mapped
+            previousCopy.delete();
+        }
+    }
+
+    private UidLookup load() throws IOException {
+        HashUidLookup hashed = null;
+        MappedUidLookup mapped = null;
+        if (mCompiledList != null && mCompiledList.isFile()) {
+            File copy = new File(mCacheDir, CACHE_PREFIX + (++mGeneration));
+            copy(mCompiledList, copy);
+            try {
+                mapped = MappedUidLookup.open(copy, true);
+            } catch (IOException e) {
+                copy.delete();
+                throw e;
+            }
+            mMappedCopy = copy;
+        } else if (mCsvList != null && mCsvList.isFile()) {
+            HashUidLookup.Builder builder = new HashUidLookup.Builder(mSnapshot.get().size());
+            UidLists.readCsvList(mCsvList, builder);
+            hashed = builder.build();
+        }
+        HashUidLookup text = null;
+        if (mTextList != null && mTextList.isFile()) {
+            HashUidLookup.Builder builder = new HashUidLookup.Builder();
+            UidLists.readTextList(mTextList, UidLookup.STATUS_CLOSED, builder);
+            text = builder.build();
+        }
+
+        UidLookup base = mapped != null ? mapped : hashed != null ? hashed : EMPTY;
+        UidLookup snapshot = text == null ? base
+                : base == EMPTY ? text : new LayeredUidLookup(text, base);
+        if (mFalsePositiveRate <= 0) {
+            return snapshot;
+        }
+        BloomUidFilter filter = BloomUidFilter.create(snapshot.size(), mFalsePositiveRate);
+        if (mapped != null) {
+            mapped.addKeysTo(filter);
+        }
+        if (hashed != null) {
+            hashed.addKeysTo(filter);
+        }
+        if (text != null) {
+            text.addKeysTo(filter);
+        }
+        return new FilteredUidLookup(filter, snapshot, mFilterStats);
+    }
+
+    private void deleteStaleCopies() {
+        File[] files = mCacheDir != null ? mCacheDir.listFiles() : null;
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().startsWith(CACHE_PREFIX)) {
+                file.delete();
+            }
+        }
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        FileChannel in = new FileInputStream(from).getChannel();
+        try {
+            FileChannel out = new FileOutputStream(to).getChannel();
+            try {
+                long size = in.size();
+                long position = 0;
+                while (position < size) {
+                    position += in.transferTo(position, size - position, out);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static long signature(File file) {
+        if (file == null || !file.isFile()) {
+            return 0L;
+        }
+        return file.lastModified() * 0x9E3779B97F4A7C15L + file.length();
+    }
+
+    /**
+     * Configures the files watched by a {@link UidListWatcher}. Every list is optional.
+     */
+    public static final class Builder {
+
+        private File mTextList;
+        private File mCsvList;
+        private File mCompiledList;
+        private File mCacheDir;
+        private long mPollMillis = DEFAULT_POLL_MILLIS;
+        private double mFalsePositiveRate;
+
+        /** Closed list with one id per line, e.g. closed.txt. */
+        public Builder setTextList(File textList) {
+            mTextList = textList;
+            return this;
+        }
+
+        /** Close/open list, e.g. all1.csv. Ignored while a compiled list is present. */
+        public Builder setCsvList(File csvList) {
+            mCsvList = csvList;
+            return this;
+        }
+
+        /**
+         * List compiled by {@link UidSnapshotCompiler}. It is copied into {@code cacheDir}
+         * before being mapped, so the original can be replaced at any time.
+         */
+        public Builder setCompiledList(File compiledList, File cacheDir) {
+            mCompiledList = compiledList;
+            mCacheDir = cacheDir;
+            return this;
+        }
+
+        public Builder setPollMillis(long pollMillis) {
+            mPollMillis = pollMillis;
+            return this;
+        }
+
+        /**
+         * Builds a Bloom filter with the given false positive rate (e.g. 0.01) in front of
+         * every snapshot. Off by default.
+         */
+        public Builder setBloomFilter(double falsePositiveRate) {
+            if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+                throw new IllegalArgumentException("Bad false positive rate " + falsePositiveRate);
+            }
+            mFalsePositiveRate = falsePositiveRate;
+            return this;
+        }
+
+        public UidListWatcher build() {
+            return new UidListWatcher(this);
+        }
+    }
+}
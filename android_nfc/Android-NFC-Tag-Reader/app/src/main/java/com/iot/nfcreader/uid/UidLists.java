@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2016 Joey
+ *
+ */
+package com.iot.nfcreader.uid;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+import au.com.bytecode.opencsv.CSVReader;
+
+/**
+ * Loads the UID list files kept on external storage into a {@link UidLookup}.
+ */
+public final class UidLists {
+
+    private UidLists() {
+    }
+
+    /**
+     * Reads a text list with one hex tag id per line (e.g. closed.txt) and marks every id
+     * with the given status. Bytes may be separated by ':', '-' or spaces, and lines which
+     * are not a valid id are skipped.
+     */
+    public static HashUidLookup loadTextList(File file, int status) throws IOException {
+        HashUidLookup.Builder builder = new HashUidLookup.Builder();
+        readTextList(file, status, builder);
+        return builder.build();
+    }
+
+    /**
+     * Adds every id of a text list to {@code builder}, see {@link #loadTextList(File, int)}.
+     */
+    public static void readTextList(File file, int status, HashUidLookup.Builder builder)
+            throws IOException {
+        byte[] uid = new byte[HashUidLookup.MAX_UID_LENGTH];
+        BufferedReader br = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = br.readLine()) != null) {
+                int length = parseHex(line, uid);
+                if (length > 0) {
+                    builder.add(uid, 0, length, status);
+                }
+            }
+        } finally {
+            br.close();
+        }
+    }
+
+    /**
+     * Adds every id of a CSV list (e.g. all1.csv) to {@code builder}. Column 0 holds closed
+     * ids and column 1 open ids; empty cells and cells which are not a valid id (such as a
+     * header row) are skipped. An id in both columns ends up closed.
+     */
+    public static void readCsvList(File file, HashUidLookup.Builder builder) throws IOException {
+        byte[] uid = new byte[HashUidLookup.MAX_UID_LENGTH];
+        CSVReader reader = new CSVReader(new BufferedReader(new FileReader(file)));
+        try {
+            String[] next;
+            while ((next = reader.readNext()) != null) {
+                int length = next.length > 1 ? parseHex(next[1], uid) : -1;
+                if (length > 0) {
+                    builder.add(uid, 0, length, UidLookup.STATUS_OPEN);
+                }
+                length = next.length > 0 ? parseHex(next[0], uid) : -1;
+                if (length > 0) {
+                    builder.add(uid, 0, length, UidLookup.STATUS_CLOSED);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Decodes a hex tag id into {@code out}.
+     *
+     * @return the number of bytes written, or -1 if the text is not a tag id which fits
+     *         into {@code out}.
+     */
+    public static int parseHex(CharSequence text, byte[] out) {
+        int length = 0;
+        int high = -1;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == ':' || c == '-' || c == ' ' || c == '\t') {
+                if (high >= 0) {
+                    return -1;
+                }
+                continue;
+            }
+            int digit = Character.digit(c, 16);
+            if (digit < 0) {
+                return -1;
+            }
+            if (high < 0) {
+                high = digit;
+            } else {
+                if (length == out.length) {
+                    return -1;
+                }
+                out[length++] = (byte) ((high << 4) | digit);
+                high = -1;
+            }
+        }
+        return high < 0 ? length : -1;
+    }
+}
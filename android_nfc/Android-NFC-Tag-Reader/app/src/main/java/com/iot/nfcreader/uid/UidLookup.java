@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2016 Joey
+ *
+ */
+package com.iot.nfcreader.uid;
+
+/**
+ * Answers open/closed for a tag id. Implementations are immutable once built and
+ * {@link #lookup(byte[])} must not allocate, since it runs on every tap.
+ */
+public interface UidLookup {
+
+    /** The tag id is not on any list. */
+    int STATUS_UNKNOWN = 0;
+
+    /** The tag id is on the closed list. */
+    int STATUS_CLOSED = 1;
+
+    /** The tag id is on the open list. */
+    int STATUS_OPEN = 2;
+
+    /**
+     * Returns one of {@link #STATUS_UNKNOWN}, {@link #STATUS_CLOSED} or {@link #STATUS_OPEN}.
+     */
+    int lookup(byte[] uid);
+
+    /**
+     * Returns the number of tag ids held by this lookup.
+     */
+    int size();
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2016 Joey
+ *
+ */
+package com.iot.nfcreader.uid;
+
+/**
+ * Layout of a compiled UID list snapshot, written by {@link UidSnapshotCompiler} and read
+ * by {@link MappedUidLookup}. All values are big-endian.
+ *
+ * <pre>
+ * header (16 bytes)
+ *   0  magic        "UIDS"
+ *   4  version      u16
+ *   6  key width    u8, longest uid in the list
+ *   7  reserved     u8, 0
+ *   8  entry count  u32
+ *   12 checksum     CRC32 of the entry region
+ * entries (key width + 2 bytes each), sorted by uid length, then uid bytes unsigned
+ *   0  uid length   u8
+ *   1  uid          key width bytes, zero padded
+ *   n  status       u8, {@link UidLookup#STATUS_CLOSED} or {@link UidLookup#STATUS_OPEN}
+ * </pre>
+ */
+final class UidSnapshot {
+
+    static final int MAGIC = 0x55494453; // "UIDS"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+
+    static final int OFFSET_VERSION = 4;
+    static final int OFFSET_KEY_WIDTH = 6;
+    static final int OFFSET_COUNT = 8;
+    static final int OFFSET_CHECKSUM = 12;
+
+    private UidSnapshot() {
+    }
+
+    static int entrySize(int keyWidth) {
+        return keyWidth + 2;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2016 Joey
+ *
+ */
+package com.iot.nfcreader.uid;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import au.com.bytecode.opencsv.CSVReader;
+
+/**
+ * Offline tool which compiles a close/open CSV list (all1.csv) into the binary snapshot
+ * format described in {@link UidSnapshot}, so devices can map it with
+ * {@link MappedUidLookup} instead of parsing the CSV.
+ *
+ * Run with {@code ./gradlew :app:compileUidSnapshot -Pcsv=all1.csv -Pout=all1.uids}.
+ */
+public final class UidSnapshotCompiler {
+
+    /** Orders records the same way {@link MappedUidLookup} searches them. */
+    private static final Comparator<byte[]> RECORD_ORDER = new Comparator<byte[]>() {
+        @Override
+        public int compare(byte[] a, byte[] b) {
+            if (a[0] != b[0]) {
+                return a[0] < b[0] ? -1 : 1;
+            }
+            for (int i = 1; i <= a[0]; i++) {
+                int x = a[i] & 0xff;
+                int y = b[i] & 0xff;
+                if (x != y) {
+                    return x < y ? -1 : 1;
+                }
+            }
+            return 0;
+        }
+    };
+
+    private UidSnapshotCompiler() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: UidSnapshotCompiler <list.csv> <out.uids>");
+            System.exit(2);
+        }
+        long start = System.nanoTime();
+        int count = compile(new File(args[0]), new File(args[1]));
+        System.out.println("Wrote " + count + " uids to " + args[1] + " in "
+                + (System.nanoTime() - start) / 1000000 + "ms");
+    }
+
+    /**
+     * Compiles {@code csv} into {@code out}. Column 0 holds closed ids and column 1 open ids,
+     * as read by {@link UidLists#readCsvList(File, HashUidLookup.Builder)}; an id in both
+     * columns is compiled as closed.
+     *
+     * @return the number of distinct ids written
+     */
+    public static int compile(File csv, File out) throws IOException {
+        // record: [length][uid bytes][status]
+        List<byte[]> records = new ArrayList<>();
+        byte[] uid = new byte[HashUidLookup.MAX_UID_LENGTH];
+        int keyWidth = 0;
+        CSVReader reader = new CSVReader(new BufferedReader(new FileReader(csv)));
+        try {
+            String[] next;
+            while ((next = reader.readNext()) != null) {
+                for (int column = 0; column < 2 && column < next.length; column++) {
+                    int length = UidLists.parseHex(next[column], uid);
+                    if (length <= 0) {
+                        continue;
+                    }
+                    byte[] record = new byte[length + 2];
+                    record[0] = (byte) length;
+                    System.arraycopy(uid, 0, record, 1, length);
+                    record[length + 1] = (byte) (column == 0
+                            ? UidLookup.STATUS_CLOSED : UidLookup.STATUS_OPEN);
+                    records.add(record);
+                    keyWidth = Math.max(keyWidth, length);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        Collections.sort(records, RECORD_ORDER);
+
+        int entrySize = UidSnapshot.entrySize(keyWidth);
+        byte[] entry = new byte[entrySize];
+        CRC32 crc = new CRC32();
+        int count = 0;
+        DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(out)));
+        try {
+            output.writeInt(UidSnapshot.MAGIC);
+            output.writeShort(UidSnapshot.VERSION);
+            output.writeByte(keyWidth);
+            output.writeByte(0);
+            output.writeInt(0); // count, patched below
+            output.writeInt(0); // checksum, patched below
+            for (int i = 0; i < records.size(); i++) {
+                byte[] record = records.get(i);
+                int status = record[record[0] + 1];
+                // duplicates are adjacent; closed wins
+                while (i + 1 < records.size() && RECORD_ORDER.compare(record, records.get(i + 1)) == 0) {
+                    byte[] duplicate = records.get(++i);
+                    if (duplicate[duplicate[0] + 1] == UidLookup.STATUS_CLOSED) {
+                        status = UidLookup.STATUS_CLOSED;
+                    }
+                }
+                Arrays.fill(entry, (byte) 0);
+                System.arraycopy(record, 0, entry, 0, record[0] + 1);
+                entry[entrySize - 1] = (byte) status;
+                output.write(entry);
+                crc.update(entry, 0, entrySize);
+                count++;
+            }
+        } finally {
+            output.close();
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(out, "rw");
+        try {
+            raf.seek(UidSnapshot.OFFSET_COUNT);
+            raf.writeInt(count);
+            raf.writeInt((int) crc.getValue());
+        } finally {
+            raf.close();
+        }
+        return count;
+    }
+}
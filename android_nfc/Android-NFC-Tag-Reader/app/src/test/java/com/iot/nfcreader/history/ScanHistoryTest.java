@@ -0,0 +1,62 @@
+package com.iot.nfcreader.history;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ScanHistory}.
+ */
+public class ScanHistoryTest {
+
+    @Test
+    public void get_newestFirst() {
+        ScanHistory<String> history = new ScanHistory<>(4);
+        history.add("a");
+        history.add("b");
+        history.add("c");
+
+        assertEquals(3, history.size());
+        assertEquals("c", history.get(0));
+        assertEquals("b", history.get(1));
+        assertEquals("a", history.get(2));
+    }
+
+    @Test
+    public void add_overwritesTheOldestWhenFull() {
+        ScanHistory<Integer> history = new ScanHistory<>(3);
+        for (int i = 0; i < 10; i++) {
+            history.add(i);
+        }
+
+        assertEquals(3, history.size());
+        assertEquals(Integer.valueOf(9), history.get(0));
+        assertEquals(Integer.valueOf(8), history.get(1));
+        assertEquals(Integer.valueOf(7), history.get(2));
+    }
+
+    @Test
+    public void clear_emptiesTheHistory() {
+        ScanHistory<String> history = new ScanHistory<>(2);
+        history.add("a");
+        history.add("b");
+        history.add("c");
+        history.clear();
+        history.add("d");
+
+        assertEquals(1, history.size());
+        assertEquals("d", history.get(0));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void get_beyondTheSize() {
+        ScanHistory<String> history = new ScanHistory<>(4);
+        history.add("a");
+        history.get(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacity_atLeastOne() {
+        new ScanHistory<String>(0);
+    }
+}
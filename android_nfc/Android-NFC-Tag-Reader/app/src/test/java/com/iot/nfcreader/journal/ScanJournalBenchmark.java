@@ -0,0 +1,73 @@
+package com.iot.nfcreader.journal;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Sustained append throughput of {@link ScanJournal} on the local disk, with the default
+ * batching and with a sync after every event, and the time an append takes on the tap
+ * path. The producer retries appends the full queue refuses, so the rate is the writer's.
+ *
+ * Skipped unless run with {@code -Pbenchmark}, e.g.
+ * {@code ./gradlew :app:testDebugUnitTest -Pbenchmark --tests '*ScanJournalBenchmark'}.
+ */
+public class ScanJournalBenchmark {
+
+    private static final int EVENTS = 200000;
+    private static final byte[] UID = {0x04, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66};
+
+    @Test
+    public void appendThroughput() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("nfcreader.benchmark"));
+
+        double batched = run("batched", 16 * 1024, 200, EVENTS);
+        run("sync every event", 1, 0, EVENTS / 100);
+        assertTrue(batched > 1000);
+    }
+
+    private static double run(String name, int syncBytes, long syncMillis, int events) throws Exception {
+        File dir = File.createTempFile("journal", "");
+        assertTrue(dir.delete() && dir.mkdir());
+        try {
+            ScanJournal journal = new ScanJournal.Builder(dir)
+                    .setSync(syncBytes, syncMillis)
+                    .setSegmentBytes(4 * 1024 * 1024)
+                    .build();
+            ScanEvent[] samples = new ScanEvent[64];
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = new ScanEvent(1500000000000L + i, UID, 0x101, i % 3, "https://example.com/gate/" + i);
+            }
+            journal.start();
+            long start = System.nanoTime();
+            long appendNanos = 0;
+            int refused = 0;
+            for (int i = 0; i < events; i++) {
+                long t = System.nanoTime();
+                while (!journal.append(samples[i & (samples.length - 1)])) {
+                    refused++;
+                    Thread.yield();
+                }
+                appendNanos += System.nanoTime() - t;
+            }
+            journal.stop();
+            assertTrue(journal.awaitStopped(600000));
+            long nanos = System.nanoTime() - start;
+            double perSecond = events * 1e9 / nanos;
+            assertEquals(events, journal.getWritten());
+
+            System.out.println(String.format("ScanJournalBenchmark %s events=%d rate=%.0f/s syncs=%d "
+                            + "append=%.0fns/op refused=%d", name, events, perSecond, journal.getSyncs(),
+                    (double) appendNanos / events, refused));
+            return perSecond;
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.iot.nfcreader.journal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ScanJournal} and {@link ScanEvent}.
+ */
+public class ScanJournalTest {
+
+    private static final byte[] UID = {0x04, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66};
+
+    private File mDir;
+
+    @Before
+    public void setUp() throws Exception {
+        mDir = File.createTempFile("journal", "");
+        assertTrue(mDir.delete() && mDir.mkdir());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (File file : mDir.listFiles()) {
+            file.delete();
+        }
+        mDir.delete();
+    }
+
+    private static ScanEvent event(int i) {
+        return new ScanEvent(1500000000000L + i, UID, ScanEvent.techMask(new String[]{
+                "android.nfc.tech.NfcA", "android.nfc.tech.MifareUltralight"}), i % 3, "scan " + i);
+    }
+
+    private static void run(ScanJournal journal, int from, int to) throws Exception {
+        journal.start();
+        for (int i = from; i < to; i++) {
+            assertTrue(journal.append(event(i)));
+        }
+        journal.stop();
+        assertTrue(journal.awaitStopped(5000));
+    }
+
+    @Test
+    public void readAll_returnsTheEventsInOrder() throws Exception {
+        ScanJournal journal = new ScanJournal.Builder(mDir).build();
+        run(journal, 0, 100);
+
+        List<ScanEvent> events = ScanJournal.readAll(mDir);
+        assertEquals(100, events.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(event(i), events.get(i));
+        }
+        assertEquals(100, journal.getWritten());
+        assertEquals(Arrays.asList("NfcA", "MifareUltralight"), events.get(0).getTechNames());
+    }
+
+    @Test
+    public void restart_appendsToTheLastSegment() throws Exception {
+        run(new ScanJournal.Builder(mDir).build(), 0, 10);
+        run(new ScanJournal.Builder(mDir).build(), 10, 20);
+
+        assertEquals(1, ScanJournal.segmentNumbers(mDir).length);
+        assertEquals(20, ScanJournal.readAll(mDir).size());
+    }
+
+    @Test
+    public void segments_rotateAndTheOldestAreDeleted() throws Exception {
+        ScanJournal journal = new ScanJournal.Builder(mDir).setSegmentBytes(1000).setMaxSegments(3).build();
+        run(journal, 0, 200);
+
+        int[] segments = ScanJournal.segmentNumbers(mDir);
+        assertEquals(3, segments.length);
+        List<ScanEvent> events = ScanJournal.readAll(mDir);
+        // the kept segments hold the newest events, contiguous up to the last one
+        assertEquals(event(199), events.get(events.size() - 1));
+        long first = events.get(0).getTimeMillis();
+        for (int i = 0; i < events.size(); i++) {
+            assertEquals(first + i, events.get(i).getTimeMillis());
+        }
+    }
+
+    @Test
+    public void tornTail_isCutOnStart() throws Exception {
+        run(new ScanJournal.Builder(mDir).build(), 0, 10);
+        File segment = ScanJournal.segmentFile(mDir, 1);
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        try {
+            // the last record half written
+            file.setLength(file.length() - 5);
+        } finally {
+            file.close();
+        }
+        assertEquals(9, ScanJournal.readAll(mDir).size());
+
+        run(new ScanJournal.Builder(mDir).build(), 10, 12);
+
+        List<ScanEvent> events = ScanJournal.readAll(mDir);
+        assertEquals(11, events.size());
+        assertEquals(event(8), events.get(8));
+        assertEquals(event(10), events.get(9));
+    }
+
+    @Test
+    public void corruptRecord_endsTheIntactPart() throws Exception {
+        run(new ScanJournal.Builder(mDir).build(), 0, 3);
+        RandomAccessFile file = new RandomAccessFile(ScanJournal.segmentFile(mDir, 1), "rw");
+        try {
+            file.seek(file.length() - 1);
+            file.write('!');
+        } finally {
+            file.close();
+        }
+
+        assertEquals(2, ScanJournal.readAll(mDir).size());
+    }
+
+    @Test
+    public void fullQueue_dropsWithoutBlocking() throws Exception {
+        ScanJournal journal = new ScanJournal.Builder(mDir).setQueueCapacity(2).build();
+
+        // not started, so nothing drains the queue
+        assertTrue(journal.append(event(0)));
+        assertTrue(journal.append(event(1)));
+        assertFalse(journal.append(event(2)));
+        assertEquals(1, journal.getDropped());
+    }
+
+    @Test
+    public void failedWrite_continuesInANewSegment() throws Exception {
+        ScanJournal journal = new ScanJournal.Builder(mDir).setSegmentBytes(1000).build();
+        journal.start();
+        assertTrue(journal.append(event(0)));
+        while (journal.getWritten() == 0) {
+            Thread.sleep(10);
+        }
+        // the second segment cannot be opened
+        File blocked = ScanJournal.segmentFile(mDir, 2);
+        assertTrue(blocked.mkdir());
+        for (int i = 1; i < 100; i++) {
+            assertTrue(journal.append(event(i)));
+        }
+        journal.stop();
+        assertTrue(journal.awaitStopped(5000));
+
+        assertNotNull(journal.getError());
+        assertTrue(blocked.delete());
+        // the first segment was synced before the rotation failed
+        List<ScanEvent> events = ScanJournal.readAll(mDir);
+        assertEquals(100, events.size());
+        assertEquals(event(99), events.get(99));
+    }
+
+    @Test
+    public void failedStart_keepsTheErrorAndDrops() throws Exception {
+        File file = new File(mDir, "file");
+        assertTrue(file.createNewFile());
+        ScanJournal journal = new ScanJournal.Builder(file).build();
+        journal.start();
+        assertTrue(journal.awaitStopped(5000));
+
+        assertNotNull(journal.getError());
+        assertFalse(journal.append(event(0)));
+        assertEquals(1, journal.getDropped());
+    }
+
+    @Test
+    public void summary_isCutToValidUtf8() throws Exception {
+        char[] text = new char[ScanEvent.MAX_SUMMARY_BYTES];
+        Arrays.fill(text, 'é');
+        ScanEvent event = new ScanEvent(0, UID, 0, 0, new String(text));
+
+        byte[] summary = event.summaryBytes();
+        assertEquals(ScanEvent.MAX_SUMMARY_BYTES, summary.length);
+        assertEquals(ScanEvent.MAX_SUMMARY_BYTES / 2, new String(summary, "UTF-8").length());
+    }
+}
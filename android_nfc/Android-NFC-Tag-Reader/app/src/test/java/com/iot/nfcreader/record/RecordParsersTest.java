@@ -0,0 +1,75 @@
+package com.iot.nfcreader.record;
+
+import android.nfc.NdefRecord;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link RecordParsers}; the lookup itself needs no NdefRecord.
+ */
+public class RecordParsersTest {
+
+    private static final int TNF_WELL_KNOWN = 0x01;
+    private static final int TNF_ABSOLUTE_URI = 0x03;
+    private static final int TNF_EXTERNAL_TYPE = 0x04;
+
+    private static RecordParsers.Parser parser() {
+        return new RecordParsers.Parser() {
+            @Override
+            public ParsedNdefRecord parse(NdefRecord record) {
+                return null;
+            }
+        };
+    }
+
+    @Test
+    public void get_routesByTnfAndType() throws Exception {
+        RecordParsers.Parser text = parser();
+        RecordParsers.Parser uri = parser();
+        RecordParsers parsers = new RecordParsers.Builder()
+                .add(TNF_WELL_KNOWN, new byte[]{'T'}, text)
+                .add(TNF_WELL_KNOWN, new byte[]{'U'}, uri)
+                .build();
+
+        assertSame(text, parsers.get(TNF_WELL_KNOWN, new byte[]{'T'}));
+        assertSame(uri, parsers.get(TNF_WELL_KNOWN, new byte[]{'U'}));
+        assertNull(parsers.get(TNF_WELL_KNOWN, new byte[]{'S', 'p'}));
+        assertNull(parsers.get(TNF_EXTERNAL_TYPE, new byte[]{'T'}));
+        assertNull(parsers.get(TNF_WELL_KNOWN, null));
+        assertNull(parsers.get(7, new byte[]{'T'}));
+        assertNull(parsers.get(-1, new byte[]{'T'}));
+    }
+
+    @Test
+    public void get_fallsBackToAnyType() throws Exception {
+        RecordParsers.Parser absolute = parser();
+        RecordParsers.Parser geo = parser();
+        RecordParsers parsers = new RecordParsers.Builder()
+                .addAnyType(TNF_ABSOLUTE_URI, absolute)
+                .add(TNF_ABSOLUTE_URI, "geo:".getBytes("US-ASCII"), geo)
+                .build();
+
+        assertSame(absolute, parsers.get(TNF_ABSOLUTE_URI, "http://example.com".getBytes("US-ASCII")));
+        assertSame(absolute, parsers.get(TNF_ABSOLUTE_URI, new byte[0]));
+        assertSame(geo, parsers.get(TNF_ABSOLUTE_URI, "geo:".getBytes("US-ASCII")));
+    }
+
+    @Test
+    public void build_isNotChangedByTheBuilder() throws Exception {
+        byte[] type = {'T'};
+        RecordParsers.Builder builder = new RecordParsers.Builder().add(TNF_WELL_KNOWN, type, parser());
+        RecordParsers parsers = builder.build();
+        type[0] = 'X';
+        builder.add(TNF_WELL_KNOWN, new byte[]{'U'}, parser());
+
+        assertNotNull(parsers.get(TNF_WELL_KNOWN, new byte[]{'T'}));
+        assertNull(parsers.get(TNF_WELL_KNOWN, new byte[]{'U'}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void add_rejectsReservedTnf() throws Exception {
+        new RecordParsers.Builder().add(7, new byte[]{'T'}, parser());
+    }
+}
@@ -0,0 +1,57 @@
+package com.iot.nfcreader.tap;
+
+import android.nfc.NfcAdapter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ReaderModeOptions}.
+ */
+public class ReaderModeOptionsTest {
+
+    @Test
+    public void defaults_pollEveryTechnologyWithTheNdefCheck() {
+        ReaderModeOptions options = new ReaderModeOptions.Builder().build();
+
+        assertEquals(ReaderModeOptions.TECH_ALL, options.getFlags());
+        assertEquals(ReaderModeOptions.DEFAULT_PRESENCE_CHECK_DELAY_MILLIS, options.getPresenceCheckDelayMillis());
+    }
+
+    @Test
+    public void getFlags_addsSkipAndSounds() {
+        ReaderModeOptions options = new ReaderModeOptions.Builder()
+                .setTechFlags(NfcAdapter.FLAG_READER_NFC_A)
+                .setSkipNdefCheck(true)
+                .setNoPlatformSounds(true)
+                .build();
+
+        assertEquals(NfcAdapter.FLAG_READER_NFC_A | NfcAdapter.FLAG_READER_SKIP_NDEF_CHECK
+                | NfcAdapter.FLAG_READER_NO_PLATFORM_SOUNDS, options.getFlags());
+    }
+
+    @Test
+    public void buildUpon_keepsTheOtherOptions() {
+        ReaderModeOptions options = new ReaderModeOptions.Builder()
+                .setTechFlags(NfcAdapter.FLAG_READER_NFC_V)
+                .setPresenceCheckDelayMillis(500)
+                .build();
+        ReaderModeOptions skipping = options.buildUpon().setSkipNdefCheck(true).build();
+
+        assertTrue(skipping.isSkipNdefCheck());
+        assertFalse(options.isSkipNdefCheck());
+        assertEquals(NfcAdapter.FLAG_READER_NFC_V, skipping.getTechFlags());
+        assertEquals(500, skipping.getPresenceCheckDelayMillis());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setTechFlags_rejectsOtherFlags() {
+        new ReaderModeOptions.Builder().setTechFlags(NfcAdapter.FLAG_READER_SKIP_NDEF_CHECK);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setPresenceCheckDelay_rejectsZero() {
+        new ReaderModeOptions.Builder().setPresenceCheckDelayMillis(0);
+    }
+}
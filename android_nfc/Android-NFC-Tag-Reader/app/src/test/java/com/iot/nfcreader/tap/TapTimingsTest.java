@@ -0,0 +1,36 @@
+package com.iot.nfcreader.tap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link TapTimings}.
+ */
+public class TapTimingsTest {
+
+    @Test
+    public void record_keepsThePathsApart() {
+        TapTimings timings = new TapTimings();
+        timings.record(TapTimings.PATH_DISPATCH, 20000000, 60000000);
+        timings.record(TapTimings.PATH_READER_MODE, -1, 30000000);
+        timings.record(TapTimings.PATH_READER_MODE, -1, 30000000);
+
+        assertEquals(1, timings.getCount(TapTimings.PATH_DISPATCH));
+        assertEquals(2, timings.getCount(TapTimings.PATH_READER_MODE));
+        // 60 ms and 30 ms in the buckets up to 65.5 ms and 32.8 ms
+        assertEquals(65536, timings.getToViewPercentileMicros(TapTimings.PATH_DISPATCH, 0.5));
+        assertEquals(32768, timings.getToViewPercentileMicros(TapTimings.PATH_READER_MODE, 0.99));
+        assertEquals(32768, timings.getReentryPercentileMicros(TapTimings.PATH_DISPATCH, 0.5));
+        assertEquals(0, timings.getReentryPercentileMicros(TapTimings.PATH_READER_MODE, 0.5));
+    }
+
+    @Test
+    public void format_oneLinePerPath() {
+        TapTimings timings = new TapTimings();
+        timings.record(TapTimings.PATH_DISPATCH, 1000, 3000);
+
+        assertEquals("foreground dispatch: 1 taps, re-entry p50 2us p99 2us, to view p50 4us p99 4us\n"
+                + "reader mode: 0 taps, to view p50 0us p99 0us", timings.format());
+    }
+}
@@ -0,0 +1,81 @@
+package com.iot.nfcreader.uid;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link BloomUidFilter} and {@link FilteredUidLookup}.
+ */
+public class BloomUidFilterTest {
+
+    @Test
+    public void create_sizesForRate() throws Exception {
+        BloomUidFilter filter = BloomUidFilter.create(1000000, 0.01);
+
+        // about 9.6 bits per id at 1%, plus the blocked filter overhead
+        assertEquals(11502071, filter.getBitCount(), 512);
+        assertEquals(7, filter.getHashCount());
+    }
+
+    @Test
+    public void mightContain_noFalseNegativesAndBoundedFalsePositives() throws Exception {
+        BloomUidFilter filter = BloomUidFilter.create(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            byte[] uid = HashUidLookupTest.uid(i);
+            filter.put(uid, 0, uid.length);
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(filter.mightContain(HashUidLookupTest.uid(i)));
+        }
+        int falsePositives = 0;
+        for (int i = 10000; i < 110000; i++) {
+            if (filter.mightContain(HashUidLookupTest.uid(i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue("false positives " + falsePositives, falsePositives < 2000);
+    }
+
+    @Test
+    public void mightContain_keepsRateForLargeLists() throws Exception {
+        // enough blocks that the upper hash bits choosing them must not also pick the probes
+        int ids = 10000000;
+        BloomUidFilter filter = BloomUidFilter.create(ids, 0.01);
+        for (int i = 0; i < ids; i++) {
+            byte[] uid = HashUidLookupTest.uid(i);
+            filter.put(uid, 0, uid.length);
+        }
+        int falsePositives = 0;
+        for (int i = ids; i < ids + 1000000; i++) {
+            if (filter.mightContain(HashUidLookupTest.uid(i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue("false positives " + falsePositives, falsePositives < 9000);
+    }
+
+    @Test
+    public void filteredLookup_countsRejectsHitsAndFalsePositives() throws Exception {
+        HashUidLookup.Builder builder = new HashUidLookup.Builder();
+        for (int i = 0; i < 1000; i++) {
+            builder.add(HashUidLookupTest.uid(i), UidLookup.STATUS_CLOSED);
+        }
+        HashUidLookup store = builder.build();
+        BloomUidFilter filter = BloomUidFilter.create(store.size(), 0.05);
+        store.addKeysTo(filter);
+        FilteredUidLookup.Stats stats = new FilteredUidLookup.Stats();
+        FilteredUidLookup lookup = new FilteredUidLookup(filter, store, stats);
+
+        for (int i = 0; i < 2000; i++) {
+            assertEquals(i < 1000 ? UidLookup.STATUS_CLOSED : UidLookup.STATUS_UNKNOWN,
+                    lookup.lookup(HashUidLookupTest.uid(i)));
+        }
+
+        assertEquals(1000, stats.getHits());
+        assertEquals(1000, stats.getRejected() + stats.getFalsePositives());
+        assertTrue(stats.getFalsePositiveRate() < 0.15);
+        stats.reset();
+        assertEquals(0, stats.getHits());
+    }
+}
@@ -0,0 +1,90 @@
+package com.iot.nfcreader.uid;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link HashUidLookup} and {@link UidLists}.
+ */
+public class HashUidLookupTest {
+
+    @Test
+    public void lookup_findsAddedIds() throws Exception {
+        HashUidLookup lookup = new HashUidLookup.Builder()
+                .add(new byte[]{0x04, 0x1A, 0x2B, 0x3C, 0x4D, 0x5E, 0x6F}, UidLookup.STATUS_CLOSED)
+                .add(new byte[]{(byte) 0xDE, (byte) 0xAD, (byte) 0xBE, (byte) 0xEF}, UidLookup.STATUS_OPEN)
+                .build();
+
+        assertEquals(2, lookup.size());
+        assertEquals(UidLookup.STATUS_CLOSED,
+                lookup.lookup(new byte[]{0x04, 0x1A, 0x2B, 0x3C, 0x4D, 0x5E, 0x6F}));
+        assertEquals(UidLookup.STATUS_OPEN,
+                lookup.lookup(new byte[]{(byte) 0xDE, (byte) 0xAD, (byte) 0xBE, (byte) 0xEF}));
+        assertEquals(UidLookup.STATUS_UNKNOWN,
+                lookup.lookup(new byte[]{(byte) 0xDE, (byte) 0xAD, (byte) 0xBE, (byte) 0xEE}));
+        assertEquals(UidLookup.STATUS_UNKNOWN, lookup.lookup(new byte[0]));
+    }
+
+    @Test
+    public void lookup_distinguishesLengthAndLongIds() throws Exception {
+        byte[] tenBytes = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        HashUidLookup lookup = new HashUidLookup.Builder()
+                .add(new byte[]{0x00, 0x01}, UidLookup.STATUS_CLOSED)
+                .add(tenBytes, UidLookup.STATUS_CLOSED)
+                .build();
+
+        assertEquals(UidLookup.STATUS_CLOSED, lookup.lookup(new byte[]{0x00, 0x01}));
+        assertEquals(UidLookup.STATUS_UNKNOWN, lookup.lookup(new byte[]{0x01}));
+        assertEquals(UidLookup.STATUS_UNKNOWN, lookup.lookup(new byte[]{0x00, 0x00, 0x01}));
+        assertEquals(UidLookup.STATUS_CLOSED, lookup.lookup(tenBytes.clone()));
+        assertEquals(UidLookup.STATUS_UNKNOWN,
+                lookup.lookup(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 11}));
+
+        // the only long id ends in zero bytes
+        byte[] zeroTail = {1, 2, 3, 4, 5, 6, 7, 8, 0, 0};
+        HashUidLookup zeroTailLookup = new HashUidLookup.Builder()
+                .add(zeroTail, UidLookup.STATUS_CLOSED)
+                .build();
+        assertEquals(UidLookup.STATUS_CLOSED, zeroTailLookup.lookup(zeroTail.clone()));
+        assertEquals(UidLookup.STATUS_UNKNOWN, zeroTailLookup.lookup(tenBytes));
+        assertEquals(UidLookup.STATUS_UNKNOWN,
+                zeroTailLookup.lookup(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 0, 1}));
+    }
+
+    @Test
+    public void builder_growsAndKeepsLatestStatus() throws Exception {
+        HashUidLookup.Builder builder = new HashUidLookup.Builder();
+        for (int i = 0; i < 10000; i++) {
+            builder.add(uid(i), UidLookup.STATUS_CLOSED);
+        }
+        builder.add(uid(42), UidLookup.STATUS_OPEN);
+        HashUidLookup lookup = builder.build();
+
+        assertEquals(10000, lookup.size());
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(i == 42 ? UidLookup.STATUS_OPEN : UidLookup.STATUS_CLOSED,
+                    lookup.lookup(uid(i)));
+        }
+        assertEquals(UidLookup.STATUS_UNKNOWN, lookup.lookup(uid(10000)));
+    }
+
+    @Test
+    public void parseHex_acceptsSeparatorsAndRejectsGarbage() throws Exception {
+        byte[] out = new byte[HashUidLookup.MAX_UID_LENGTH];
+
+        assertEquals(4, UidLists.parseHex("DEADbeef", out));
+        assertEquals((byte) 0xDE, out[0]);
+        assertEquals((byte) 0xEF, out[3]);
+        assertEquals(3, UidLists.parseHex("04:1a:2B", out));
+        assertEquals(0, UidLists.parseHex("", out));
+        assertEquals(-1, UidLists.parseHex("ABC", out));
+        assertEquals(-1, UidLists.parseHex("Tag ID", out));
+        assertEquals(-1, UidLists.parseHex("00112233445566778899AABBCCDDEEFF", out));
+    }
+
+    static byte[] uid(int i) {
+        return new byte[]{0x04, (byte) (i >>> 24), (byte) (i >>> 16), (byte) (i >>> 8), (byte) i,
+                (byte) 0x80, (byte) 0x11};
+    }
+}
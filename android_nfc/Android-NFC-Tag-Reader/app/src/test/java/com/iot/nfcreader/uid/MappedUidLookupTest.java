@@ -0,0 +1,120 @@
+package com.iot.nfcreader.uid;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link UidSnapshotCompiler} and {@link MappedUidLookup}.
+ */
+public class MappedUidLookupTest {
+
+    private File mCsv;
+    private File mSnapshot;
+
+    @Before
+    public void setUp() throws Exception {
+        mCsv = File.createTempFile("all1", ".csv");
+        mSnapshot = File.createTempFile("all1", ".uids");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mCsv.delete();
+        mSnapshot.delete();
+    }
+
+    @Test
+    public void compile_thenLookup() throws Exception {
+        write(mCsv, "close,open\n"
+                + "04112233445566,DEADBEEF\n"
+                + "0A0B0C0D,\n"
+                + ",01020304050607080910\n"
+                + "DEADBEEF,\n");
+
+        assertEquals(4, UidSnapshotCompiler.compile(mCsv, mSnapshot));
+        // header + 4 entries of 10 byte keys
+        assertEquals(16 + 4 * 12, mSnapshot.length());
+
+        MappedUidLookup lookup = MappedUidLookup.open(mSnapshot, true);
+        assertEquals(4, lookup.size());
+        assertEquals(UidLookup.STATUS_CLOSED,
+                lookup.lookup(new byte[]{0x04, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66}));
+        assertEquals(UidLookup.STATUS_CLOSED, lookup.lookup(new byte[]{0x0A, 0x0B, 0x0C, 0x0D}));
+        // listed open and closed: closed wins
+        assertEquals(UidLookup.STATUS_CLOSED,
+                lookup.lookup(new byte[]{(byte) 0xDE, (byte) 0xAD, (byte) 0xBE, (byte) 0xEF}));
+        assertEquals(UidLookup.STATUS_OPEN,
+                lookup.lookup(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 0x10}));
+        assertEquals(UidLookup.STATUS_UNKNOWN, lookup.lookup(new byte[]{0x0A, 0x0B, 0x0C}));
+        assertEquals(UidLookup.STATUS_UNKNOWN, lookup.lookup(new byte[]{0x0A, 0x0B, 0x0C, 0x0E}));
+        assertEquals(UidLookup.STATUS_UNKNOWN, lookup.lookup(new byte[11]));
+    }
+
+    @Test
+    public void lookup_agreesWithHashLookup() throws Exception {
+        StringBuilder csv = new StringBuilder();
+        HashUidLookup.Builder builder = new HashUidLookup.Builder();
+        for (int i = 0; i < 5000; i++) {
+            byte[] uid = HashUidLookupTest.uid(i * 7919);
+            csv.append(i % 3 == 0 ? hex(uid) + "," : "," + hex(uid)).append('\n');
+            builder.add(uid, i % 3 == 0 ? UidLookup.STATUS_CLOSED : UidLookup.STATUS_OPEN);
+        }
+        write(mCsv, csv.toString());
+        UidSnapshotCompiler.compile(mCsv, mSnapshot);
+
+        HashUidLookup expected = builder.build();
+        MappedUidLookup lookup = MappedUidLookup.open(mSnapshot, true);
+        for (int i = 0; i < 20000; i++) {
+            byte[] uid = HashUidLookupTest.uid(i * 7919 / 4);
+            assertEquals(expected.lookup(uid), lookup.lookup(uid));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void open_rejectsCorruptEntries() throws Exception {
+        write(mCsv, "04112233445566,DEADBEEF\n");
+        UidSnapshotCompiler.compile(mCsv, mSnapshot);
+        RandomAccessFile raf = new RandomAccessFile(mSnapshot, "rw");
+        raf.seek(18);
+        raf.write(0x7F);
+        raf.close();
+
+        MappedUidLookup.open(mSnapshot, true);
+    }
+
+    @Test(expected = IOException.class)
+    public void open_rejectsTruncatedFile() throws Exception {
+        write(mCsv, "04112233445566,DEADBEEF\n");
+        UidSnapshotCompiler.compile(mCsv, mSnapshot);
+        RandomAccessFile raf = new RandomAccessFile(mSnapshot, "rw");
+        raf.setLength(raf.length() - 1);
+        raf.close();
+
+        MappedUidLookup.open(mSnapshot, false);
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02X", b & 0xff));
+        }
+        return sb.toString();
+    }
+
+    private static void write(File file, String text) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(text);
+        } finally {
+            writer.close();
+        }
+    }
+}
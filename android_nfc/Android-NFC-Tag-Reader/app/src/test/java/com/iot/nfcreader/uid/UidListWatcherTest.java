@@ -0,0 +1,229 @@
+package com.iot.nfcreader.uid;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link UidListWatcher}.
+ */
+public class UidListWatcherTest {
+
+    private static final byte[] UID_A = {0x04, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66};
+    private static final byte[] UID_B = {(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE};
+
+    private File mDir;
+    private UidListWatcher mWatcher;
+
+    @Before
+    public void setUp() throws Exception {
+        mDir = File.createTempFile("uidlists", "");
+        assertTrue(mDir.delete() && mDir.mkdir());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (mWatcher != null) {
+            mWatcher.stop();
+        }
+        for (File file : mDir.listFiles()) {
+            file.delete();
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void reload_publishesNewSnapshot() throws Exception {
+        File closed = new File(mDir, "closed.txt");
+        File csv = new File(mDir, "all1.csv");
+        write(closed, "04112233445566\n");
+        write(csv, "closed,open\n,CAFEBABE\n");
+
+        mWatcher = new UidListWatcher.Builder()
+                .setTextList(closed)
+                .setCsvList(csv)
+                .setPollMillis(TimeUnit.HOURS.toMillis(1))
+                .build();
+        assertFalse(mWatcher.isLoaded());
+        assertEquals(UidLookup.STATUS_UNKNOWN, mWatcher.lookup(UID_A));
+
+        mWatcher.start();
+        mWatcher.reload().get(10, TimeUnit.SECONDS);
+        assertTrue(mWatcher.isLoaded());
+        UidLookup first = mWatcher.snapshot();
+        assertEquals(UidLookup.STATUS_CLOSED, mWatcher.lookup(UID_A));
+        assertEquals(UidLookup.STATUS_OPEN, mWatcher.lookup(UID_B));
+
+        write(closed, "04112233445566\nCAFEBABE\n");
+        mWatcher.reload().get(10, TimeUnit.SECONDS);
+        assertEquals(UidLookup.STATUS_CLOSED, mWatcher.lookup(UID_B));
+
+        // the earlier snapshot is immutable
+        assertEquals(UidLookup.STATUS_OPEN, first.lookup(UID_B));
+    }
+
+    @Test
+    public void reload_missingFilesAreEmpty() throws Exception {
+        mWatcher = new UidListWatcher.Builder()
+                .setTextList(new File(mDir, "missing.txt"))
+                .setPollMillis(TimeUnit.HOURS.toMillis(1))
+                .build();
+        mWatcher.start();
+        mWatcher.reload().get(10, TimeUnit.SECONDS);
+
+        assertTrue(mWatcher.isLoaded());
+        assertEquals(0, mWatcher.size());
+    }
+
+    @Test
+    public void reload_prefersCompiledList() throws Exception {
+        File closed = new File(mDir, "closed.txt");
+        File csv = new File(mDir, "all1.csv");
+        File compiled = new File(mDir, "all1.uids");
+        File cache = new File(mDir, "cache");
+        assertTrue(cache.mkdir());
+        write(closed, "CAFEBABE\n");
+        write(csv, "04112233445566,CAFEBABE\n");
+        UidSnapshotCompiler.compile(csv, compiled);
+        write(csv, "");
+
+        mWatcher = new UidListWatcher.Builder()
+                .setTextList(closed)
+                .setCsvList(csv)
+                .setCompiledList(compiled, cache)
+                .setBloomFilter(0.01)
+                .setPollMillis(TimeUnit.HOURS.toMillis(1))
+                .build();
+        mWatcher.start();
+        mWatcher.reload().get(10, TimeUnit.SECONDS);
+
+        assertEquals(UidLookup.STATUS_CLOSED, mWatcher.lookup(UID_A));
+        // closed.txt overrides the compiled list
+        assertEquals(UidLookup.STATUS_CLOSED, mWatcher.lookup(UID_B));
+        assertEquals(UidLookup.STATUS_UNKNOWN, mWatcher.lookup(new byte[]{1, 2, 3, 4}));
+        assertEquals(2, mWatcher.getFilterStats().getHits());
+
+        mWatcher.reload().get(10, TimeUnit.SECONDS);
+        assertEquals(1, cache.listFiles().length);
+        mWatcher.stop();
+        for (File file : cache.listFiles()) {
+            file.delete();
+        }
+        cache.delete();
+    }
+
+    @Test
+    public void reload_keepsSnapshotWhenListIsBad() throws Exception {
+        File csv = new File(mDir, "all1.csv");
+        File compiled = new File(mDir, "all1.uids");
+        File cache = new File(mDir, "cache");
+        assertTrue(cache.mkdir());
+        write(csv, "04112233445566\n");
+        UidSnapshotCompiler.compile(csv, compiled);
+
+        mWatcher = new UidListWatcher.Builder()
+                .setCompiledList(compiled, cache)
+                .setPollMillis(TimeUnit.HOURS.toMillis(1))
+                .build();
+        mWatcher.start();
+        mWatcher.reload().get(10, TimeUnit.SECONDS);
+        assertEquals(UidLookup.STATUS_CLOSED, mWatcher.lookup(UID_A));
+
+        write(compiled, "not a snapshot");
+        mWatcher.reload().get(10, TimeUnit.SECONDS);
+        assertEquals(UidLookup.STATUS_CLOSED, mWatcher.lookup(UID_A));
+        assertEquals(1, cache.listFiles().length);
+
+        write(csv, ",CAFEBABE\n");
+        UidSnapshotCompiler.compile(csv, compiled);
+        mWatcher.reload().get(10, TimeUnit.SECONDS);
+        assertEquals(UidLookup.STATUS_UNKNOWN, mWatcher.lookup(UID_A));
+        assertEquals(UidLookup.STATUS_OPEN, mWatcher.lookup(UID_B));
+
+        mWatcher.stop();
+        for (File file : cache.listFiles()) {
+            file.delete();
+        }
+        cache.delete();
+    }
+
+    @Test
+    public void poll_retriesFailedLoadOfUnchangedFile() throws Exception {
+        File csv = new File(mDir, "all1.csv");
+        File compiled = new File(mDir, "all1.uids");
+        File cache = new File(mDir, "cache");
+        assertTrue(cache.mkdir());
+        write(csv, "04112233445566\n");
+        UidSnapshotCompiler.compile(csv, compiled);
+        byte[] good = read(compiled);
+        long modified = compiled.lastModified();
+
+        // same size and time as the good list, so only a retry can pick up the fixed one
+        byte[] bad = good.clone();
+        bad[bad.length - 1] ^= 1;
+        write(compiled, bad);
+        assertTrue(compiled.setLastModified(modified));
+
+        mWatcher = new UidListWatcher.Builder()
+                .setCompiledList(compiled, cache)
+                .setPollMillis(10)
+                .build();
+        mWatcher.start();
+        Thread.sleep(100);
+        assertFalse(mWatcher.isLoaded());
+
+        write(compiled, good);
+        assertTrue(compiled.setLastModified(modified));
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!mWatcher.isLoaded() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(mWatcher.isLoaded());
+        assertEquals(UidLookup.STATUS_CLOSED, mWatcher.lookup(UID_A));
+
+        mWatcher.stop();
+        for (File file : cache.listFiles()) {
+            file.delete();
+        }
+        cache.delete();
+    }
+
+    private static byte[] read(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(bytes);
+        } finally {
+            in.close();
+        }
+        return bytes;
+    }
+
+    private static void write(File file, byte[] bytes) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void write(File file, String text) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(text);
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.iot.nfcreader.uid;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Lookup latency of {@link HashUidLookup} at 10k, 1M and 10M entries, bare and behind a
+ * 1% {@link BloomUidFilter}.
+ *
+ * Skipped unless run with {@code -Pbenchmark}, e.g.
+ * {@code ./gradlew :app:testDebugUnitTest -Pbenchmark --tests '*UidLookupBenchmark'}.
+ * The 10M table needs a test heap of about 1 GB, see app/build.gradle.
+ */
+public class UidLookupBenchmark {
+
+    private static final int LOOKUPS = 2000000;
+
+    @Test
+    public void lookupLatency() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("nfcreader.benchmark"));
+
+        for (int entries : new int[]{10000, 1000000, 10000000}) {
+            run(entries);
+        }
+    }
+
+    private static void run(int entries) {
+        long start = System.nanoTime();
+        HashUidLookup.Builder builder = new HashUidLookup.Builder(entries);
+        Random random = new Random(entries);
+        byte[] uid = new byte[7];
+        for (int i = 0; i < entries; i++) {
+            random.nextBytes(uid);
+            builder.add(uid, UidLookup.STATUS_CLOSED);
+        }
+        HashUidLookup lookup = builder.build();
+        long buildNanos = System.nanoTime() - start;
+
+        // Half of the probes are on the list, half are not: taps at the gate are mostly misses.
+        byte[][] probes = new byte[4096][];
+        Random replay = new Random(entries);
+        Random misses = new Random(-entries);
+        for (int i = 0; i < probes.length; i++) {
+            probes[i] = new byte[7];
+            if ((i & 1) == 0) {
+                replay.nextBytes(probes[i]);
+            } else {
+                misses.nextBytes(probes[i]);
+            }
+        }
+
+        int hits = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            hits += lookup.lookup(probes[i & (probes.length - 1)]);
+        }
+        start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            hits += lookup.lookup(probes[i & (probes.length - 1)]);
+        }
+        long lookupNanos = System.nanoTime() - start;
+        assertTrue(hits > 0);
+
+        BloomUidFilter filter = BloomUidFilter.create(entries, 0.01);
+        lookup.addKeysTo(filter);
+        FilteredUidLookup.Stats stats = new FilteredUidLookup.Stats();
+        FilteredUidLookup filtered = new FilteredUidLookup(filter, lookup, stats);
+        for (int i = 0; i < LOOKUPS; i++) {
+            hits += filtered.lookup(probes[i & (probes.length - 1)]);
+        }
+        start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            hits += filtered.lookup(probes[i & (probes.length - 1)]);
+        }
+        long filteredNanos = System.nanoTime() - start;
+
+        System.out.println(String.format("UidLookupBenchmark entries=%d build=%dms lookup=%.1fns/op"
+                        + " filtered=%.1fns/op (%s)", entries, buildNanos / 1000000,
+                (double) lookupNanos / LOOKUPS, (double) filteredNanos / LOOKUPS, stats));
+    }
+}
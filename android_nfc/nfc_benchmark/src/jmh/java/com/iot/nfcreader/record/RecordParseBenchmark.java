@@ -0,0 +1,51 @@
+package com.iot.nfcreader.record;
+
+import android.nfc.NdefRecord;
+
+import io.github.mylittleswift.nfc_benchmark.NdefCorpus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The reader app's {@link TextRecord} and {@link UriRecord} parsers, one record per
+ * operation, including the records they reject.
+ */
+@State(Scope.Thread)
+public class RecordParseBenchmark {
+
+    @Param({"shortUri", "longUtf16Text", "malformed"})
+    public String corpus;
+
+    private NdefRecord[] mRecords;
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        mRecords = NdefCorpus.records(corpus);
+    }
+
+    @Benchmark
+    public void textRecordParse(Blackhole blackhole) {
+        NdefRecord record = mRecords[mNext++ & (NdefCorpus.SIZE - 1)];
+        try {
+            blackhole.consume(TextRecord.parse(record));
+        } catch (RuntimeException e) {
+            blackhole.consume(e);
+        }
+    }
+
+    @Benchmark
+    public void uriRecordParse(Blackhole blackhole) {
+        NdefRecord record = mRecords[mNext++ & (NdefCorpus.SIZE - 1)];
+        try {
+            blackhole.consume(UriRecord.parse(record));
+        } catch (RuntimeException e) {
+            blackhole.consume(e);
+        }
+    }
+}
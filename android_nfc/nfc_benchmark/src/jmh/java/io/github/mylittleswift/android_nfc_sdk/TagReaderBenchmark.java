@@ -0,0 +1,64 @@
+package io.github.mylittleswift.android_nfc_sdk;
+
+import android.nfc.NdefRecord;
+
+import io.github.mylittleswift.nfc_benchmark.NdefCorpus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The SDK's {@link TagReader} decoders, one record per operation. Records a decoder rejects
+ * are part of the corpus on purpose: the exception is what the tap pays for them.
+ */
+@State(Scope.Thread)
+public class TagReaderBenchmark {
+
+    @Param({"shortUri", "longUtf16Text", "malformed"})
+    public String corpus;
+
+    private NdefRecord[] mRecords;
+    private byte[][] mKovioIds;
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        mRecords = NdefCorpus.records(corpus);
+        mKovioIds = NdefCorpus.kovioIds();
+    }
+
+    @Benchmark
+    public void parseTextRecord(Blackhole blackhole) {
+        NdefRecord record = mRecords[mNext++ & (NdefCorpus.SIZE - 1)];
+        try {
+            blackhole.consume(TagReader.parseTextRecord(record));
+        } catch (RuntimeException e) {
+            blackhole.consume(e);
+        }
+    }
+
+    @Benchmark
+    public void parseWellKnown(Blackhole blackhole) {
+        NdefRecord record = mRecords[mNext++ & (NdefCorpus.SIZE - 1)];
+        try {
+            blackhole.consume(TagReader.parseWellKnown(record));
+        } catch (RuntimeException e) {
+            blackhole.consume(e);
+        }
+    }
+
+    /** Kovio IDs do not depend on the corpus parameter. */
+    @Benchmark
+    public void decodeUri(Blackhole blackhole) {
+        byte[] id = mKovioIds[mNext++ & (NdefCorpus.SIZE - 1)];
+        try {
+            blackhole.consume(TagReader.decodeUri(id));
+        } catch (Exception e) {
+            blackhole.consume(e);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package io.github.mylittleswift.nfc_benchmark;
+
+import android.nfc.NdefRecord;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Payloads as they come off real tags. Every corpus has {@link #SIZE} entries, a power of
+ * two, so a benchmark can cycle through one with a mask and measure one record per
+ * operation.
+ */
+public final class NdefCorpus {
+
+    public static final int SIZE = 64;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset UTF_16 = Charset.forName("UTF-16");
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    private static final String[] HOSTS = {
+            "example.com/", "nfc-forum.org/", "goo.gl/", "t.co/", "bit.ly/", "linkmob.cc/p/",
+    };
+
+    private NdefCorpus() {
+    }
+
+    /** Looks up a corpus by the names used in the benchmark parameters. */
+    public static NdefRecord[] records(String name) {
+        if ("shortUri".equals(name)) {
+            return shortUris();
+        } else if ("longUtf16Text".equals(name)) {
+            return longUtf16Texts();
+        } else if ("malformed".equals(name)) {
+            return malformed();
+        }
+        throw new IllegalArgumentException("No corpus " + name);
+    }
+
+    /** Well-known URI records with an abbreviated scheme and a short path, e.g. on posters. */
+    public static NdefRecord[] shortUris() {
+        Random random = new Random(1);
+        NdefRecord[] records = new NdefRecord[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            String rest = HOSTS[i % HOSTS.length] + Integer.toString(random.nextInt(1 << 20), 36);
+            records[i] = uri((byte) (1 + i % 4), rest.getBytes(UTF_8));
+        }
+        return records;
+    }
+
+    /** Text records of 400 to 1,000 mostly CJK characters in UTF-16 with a byte order mark. */
+    public static NdefRecord[] longUtf16Texts() {
+        Random random = new Random(2);
+        NdefRecord[] records = new NdefRecord[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            StringBuilder text = new StringBuilder();
+            int length = 400 + random.nextInt(600);
+            for (int j = 0; j < length; j++) {
+                text.append(j % 7 == 6 ? ' ' : (char) (0x4E00 + random.nextInt(0x5000)));
+            }
+            records[i] = text(i % 2 == 0 ? "zh" : "zh-CN", text.toString().getBytes(UTF_16), true);
+        }
+        return records;
+    }
+
+    /**
+     * Records which fail decoding in the ways seen on cheap or half-written tags: the wrong
+     * type, an empty payload, a language code longer than the payload, an unknown URI
+     * prefix code, and a URI record where text was expected and vice versa.
+     */
+    public static NdefRecord[] malformed() {
+        NdefRecord[] kinds = {
+                new NdefRecord(NdefRecord.TNF_WELL_KNOWN, NdefRecord.RTD_TEXT, null, new byte[0]),
+                new NdefRecord(NdefRecord.TNF_WELL_KNOWN, NdefRecord.RTD_TEXT, null, new byte[]{0x3f, 'e', 'n'}),
+                new NdefRecord(NdefRecord.TNF_WELL_KNOWN, NdefRecord.RTD_URI, null, new byte[0]),
+                uri((byte) 0x7f, "example.com".getBytes(UTF_8)),
+                new NdefRecord(NdefRecord.TNF_MIME_MEDIA, "text/plain".getBytes(US_ASCII), null, "hello".getBytes(UTF_8)),
+                new NdefRecord(NdefRecord.TNF_UNKNOWN, null, null, new byte[]{1, 2, 3}),
+                uri((byte) 0x03, "example.com".getBytes(UTF_8)),
+                text("en", "hello".getBytes(UTF_8), false),
+        };
+        NdefRecord[] records = new NdefRecord[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            records[i] = kinds[i % kinds.length];
+        }
+        return records;
+    }
+
+    /**
+     * Kovio NfcBarcode tag IDs: manufacturer, URI prefix code, URI terminated by FE unless it
+     * fills the tag, and a two byte CRC. A quarter are 32 bytes with a zeroed second half,
+     * as some MediaTek stacks report them, and a few carry no URI at all.
+     */
+    public static byte[][] kovioIds() {
+        Random random = new Random(3);
+        byte[][] ids = new byte[SIZE][];
+        for (int i = 0; i < SIZE; i++) {
+            byte[] id = new byte[i % 4 == 3 ? 32 : 16];
+            id[0] = 0x04;
+            id[1] = (byte) (i % 8 == 7 ? 0x00 : 1 + i % 4);
+            byte[] uri = ("k.io/" + Integer.toString(random.nextInt(1 << 16), 36)).getBytes(US_ASCII);
+            int length = Math.min(uri.length, 12);
+            System.arraycopy(uri, 0, id, 2, length);
+            if (2 + length < 14) {
+                id[2 + length] = (byte) 0xfe;
+            }
+            id[14] = (byte) random.nextInt(256);
+            id[15] = (byte) random.nextInt(256);
+            ids[i] = id;
+        }
+        return ids;
+    }
+
+    static NdefRecord uri(byte prefix, byte[] rest) {
+        byte[] payload = new byte[rest.length + 1];
+        payload[0] = prefix;
+        System.arraycopy(rest, 0, payload, 1, rest.length);
+        return new NdefRecord(NdefRecord.TNF_WELL_KNOWN, NdefRecord.RTD_URI, null, payload);
+    }
+
+    static NdefRecord text(String language, byte[] encoded, boolean utf16) {
+        byte[] code = language.getBytes(US_ASCII);
+        byte[] payload = Arrays.copyOf(new byte[]{(byte) ((utf16 ? 0x80 : 0) | code.length)},
+                1 + code.length + encoded.length);
+        System.arraycopy(code, 0, payload, 1, code.length);
+        System.arraycopy(encoded, 0, payload, 1 + code.length, encoded.length);
+        return new NdefRecord(NdefRecord.TNF_WELL_KNOWN, NdefRecord.RTD_TEXT, null, payload);
+    }
+}
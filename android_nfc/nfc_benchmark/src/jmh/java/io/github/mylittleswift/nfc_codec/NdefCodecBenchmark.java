@@ -0,0 +1,90 @@
+package io.github.mylittleswift.nfc_codec;
+
+import android.nfc.NdefRecord;
+
+import io.github.mylittleswift.nfc_benchmark.NdefCorpus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The shared codec on the corpora of {@link NdefCorpus}, each record framed as a message of
+ * its own: walking and decoding it in place, and encoding URI and text records into a
+ * reused buffer, which should allocate nothing.
+ */
+@State(Scope.Thread)
+public class NdefCodecBenchmark {
+
+    @Param({"shortUri", "longUtf16Text", "malformed"})
+    public String corpus;
+
+    private ByteBuffer[] mMessages;
+    private String[] mUris;
+    private String[] mTexts;
+    private final NdefRecordView mRecord = new NdefRecordView();
+    private final ByteBuffer mOut = ByteBuffer.allocate(4096);
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        NdefRecord[] records = NdefCorpus.records(corpus);
+        mMessages = new ByteBuffer[NdefCorpus.SIZE];
+        mUris = new String[NdefCorpus.SIZE];
+        mTexts = new String[NdefCorpus.SIZE];
+        for (int i = 0; i < NdefCorpus.SIZE; i++) {
+            NdefRecord record = records[i];
+            byte[] payload = record.getPayload();
+            ByteBuffer message = ByteBuffer.allocate(NdefWriter.recordLength(record.getType().length, 0, payload.length));
+            NdefWriter.writeRecord(message, Ndef.FLAG_MB | Ndef.FLAG_ME, record.getTnf(), record.getType(), null,
+                    payload, 0, payload.length);
+            message.flip();
+            mMessages[i] = message;
+            mRecord.wrap(message);
+            mRecord.next();
+            String uri = NdefUri.decode(mRecord);
+            String text = NdefText.decode(mRecord);
+            mUris[i] = uri != null ? uri : "http://www.example.com/" + i;
+            mTexts[i] = text != null ? text : "text " + i;
+        }
+    }
+
+    @Benchmark
+    public void walk(Blackhole blackhole) {
+        mRecord.wrap(mMessages[mNext++ & (NdefCorpus.SIZE - 1)]);
+        while (mRecord.next()) {
+            blackhole.consume(mRecord.getPayloadLength());
+        }
+    }
+
+    @Benchmark
+    public void decode(Blackhole blackhole) {
+        mRecord.wrap(mMessages[mNext++ & (NdefCorpus.SIZE - 1)]);
+        while (mRecord.next()) {
+            if (NdefText.isText(mRecord)) {
+                blackhole.consume(NdefText.decode(mRecord));
+            } else {
+                blackhole.consume(NdefUri.decode(mRecord));
+            }
+        }
+    }
+
+    @Benchmark
+    public void encodeUri(Blackhole blackhole) {
+        mOut.clear();
+        NdefUri.writeRecord(mOut, Ndef.FLAG_MB | Ndef.FLAG_ME, mUris[mNext++ & (NdefCorpus.SIZE - 1)]);
+        blackhole.consume(mOut.position());
+    }
+
+    @Benchmark
+    public void encodeText(Blackhole blackhole) {
+        mOut.clear();
+        NdefText.writeRecord(mOut, Ndef.FLAG_MB | Ndef.FLAG_ME, "zh", mTexts[mNext++ & (NdefCorpus.SIZE - 1)], true);
+        blackhole.consume(mOut.position());
+    }
+}
@@ -0,0 +1,34 @@
+package android.net;
+
+/**
+ * The parts of the platform Uri the decoders use. The platform parse() only keeps the
+ * string and splits it lazily, which is what this does too.
+ */
+public abstract class Uri implements Comparable<Uri> {
+
+    public static Uri parse(String uriString) {
+        return new StringUri(uriString);
+    }
+
+    @Override
+    public int compareTo(Uri other) {
+        return toString().compareTo(other.toString());
+    }
+
+    private static final class StringUri extends Uri {
+
+        private final String mUriString;
+
+        StringUri(String uriString) {
+            if (uriString == null) {
+                throw new NullPointerException("uriString");
+            }
+            mUriString = uriString;
+        }
+
+        @Override
+        public String toString() {
+            return mUriString;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package android.nfc;
+
+import java.util.Arrays;
+
+/**
+ * The parts of the platform NdefRecord the decoders use. Like the platform class, the
+ * constructor and every getter copy their arrays, since those copies are part of what
+ * the benchmarks measure.
+ */
+public final class NdefRecord {
+
+    public static final short TNF_EMPTY = 0x00;
+    public static final short TNF_WELL_KNOWN = 0x01;
+    public static final short TNF_MIME_MEDIA = 0x02;
+    public static final short TNF_ABSOLUTE_URI = 0x03;
+    public static final short TNF_EXTERNAL_TYPE = 0x04;
+    public static final short TNF_UNKNOWN = 0x05;
+    public static final short TNF_UNCHANGED = 0x06;
+
+    public static final byte[] RTD_TEXT = {0x54};
+    public static final byte[] RTD_URI = {0x55};
+    public static final byte[] RTD_SMART_POSTER = {0x53, 0x70};
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final short mTnf;
+    private final byte[] mType;
+    private final byte[] mId;
+    private final byte[] mPayload;
+
+    public NdefRecord(short tnf, byte[] type, byte[] id, byte[] payload) {
+        if (tnf < TNF_EMPTY || tnf > TNF_UNCHANGED) {
+            throw new IllegalArgumentException("unexpected tnf value");
+        }
+        mTnf = tnf;
+        mType = type == null ? EMPTY : type.clone();
+        mId = id == null ? EMPTY : id.clone();
+        mPayload = payload == null ? EMPTY : payload.clone();
+    }
+
+    public short getTnf() {
+        return mTnf;
+    }
+
+    public byte[] getType() {
+        return mType.clone();
+    }
+
+    public byte[] getId() {
+        return mId.clone();
+    }
+
+    public byte[] getPayload() {
+        return mPayload.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "NdefRecord tnf=" + mTnf + " type=" + Arrays.toString(mType)
+                + " payload=" + Arrays.toString(mPayload);
+    }
+}
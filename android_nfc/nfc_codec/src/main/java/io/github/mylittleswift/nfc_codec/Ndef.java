@@ -0,0 +1,35 @@
+package io.github.mylittleswift.nfc_codec;
+
+/**
+ * Constants of the NFC Forum NDEF format: the record header flags, the TNF values and the
+ * well-known record types used in this project.
+ */
+public final class Ndef {
+
+    /** Message begin. */
+    public static final int FLAG_MB = 0x80;
+    /** Message end. */
+    public static final int FLAG_ME = 0x40;
+    /** Chunked. */
+    public static final int FLAG_CF = 0x20;
+    /** Short record, the payload length is one byte. */
+    public static final int FLAG_SR = 0x10;
+    /** The ID length is present. */
+    public static final int FLAG_IL = 0x08;
+    public static final int TNF_MASK = 0x07;
+
+    public static final int TNF_EMPTY = 0x00;
+    public static final int TNF_WELL_KNOWN = 0x01;
+    public static final int TNF_MIME_MEDIA = 0x02;
+    public static final int TNF_ABSOLUTE_URI = 0x03;
+    public static final int TNF_EXTERNAL_TYPE = 0x04;
+    public static final int TNF_UNKNOWN = 0x05;
+    public static final int TNF_UNCHANGED = 0x06;
+
+    public static final byte[] RTD_TEXT = {0x54};
+    public static final byte[] RTD_URI = {0x55};
+    public static final byte[] RTD_SMART_POSTER = {0x53, 0x70};
+
+    private Ndef() {
+    }
+}
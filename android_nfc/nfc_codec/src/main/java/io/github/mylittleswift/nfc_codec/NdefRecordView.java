@@ -0,0 +1,192 @@
+package io.github.mylittleswift.nfc_codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A reusable view of one record of an NDEF message in a {@link ByteBuffer}. The view only
+ * holds offsets into the buffer: walking a message with {@link #next()} copies and
+ * allocates nothing, and the type, ID and payload are read in place.
+ *
+ * <pre>
+ * NdefRecordView record = new NdefRecordView().wrap(ByteBuffer.wrap(message.toByteArray()));
+ * while (record.next()) {
+ *     if (NdefText.isText(record)) { ... NdefText.decode(record) ... }
+ * }
+ * if (record.isMalformed()) { ... }
+ * </pre>
+ *
+ * The buffer's position and limit are not used after {@link #wrap} and never changed.
+ */
+public final class NdefRecordView {
+
+    private ByteBuffer mBuffer;
+    private int mLimit;
+    private int mNext;
+    private boolean mEnd;
+    private boolean mMalformed;
+
+    private int mOffset = -1;
+    private int mHeader;
+    private int mTypeOffset;
+    private int mTypeLength;
+    private int mIdOffset;
+    private int mIdLength;
+    private int mPayloadOffset;
+    private int mPayloadLength;
+
+    /** Views the message between the buffer's position and limit. */
+    public NdefRecordView wrap(ByteBuffer buffer) {
+        return wrap(buffer, buffer.position(), buffer.remaining());
+    }
+
+    /** Views the message of {@code length} bytes at absolute {@code offset} in {@code buffer}. */
+    public NdefRecordView wrap(ByteBuffer buffer, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > buffer.limit()) {
+            throw new IndexOutOfBoundsException("offset " + offset + " length " + length);
+        }
+        mBuffer = buffer;
+        mNext = offset;
+        mLimit = offset + length;
+        mEnd = false;
+        mMalformed = false;
+        mOffset = -1;
+        return this;
+    }
+
+    /**
+     * Moves to the next record. Returns false after the record flagged ME, at the end of the
+     * buffer, or if the next record is malformed, which {@link #isMalformed()} tells apart.
+     */
+    public boolean next() {
+        if (mEnd || mMalformed || mBuffer == null) {
+            return false;
+        }
+        if (mNext >= mLimit) {
+            // a message must end with an ME record
+            mMalformed = mOffset >= 0 || mNext > mLimit;
+            mEnd = true;
+            return false;
+        }
+        int p = mNext;
+        int header = mBuffer.get(p++) & 0xff;
+        if ((header & Ndef.TNF_MASK) == 0x07 || (mOffset < 0 && (header & Ndef.FLAG_MB) == 0)) {
+            return malformed();
+        }
+        int fixed = 1 + ((header & Ndef.FLAG_SR) != 0 ? 1 : 4) + ((header & Ndef.FLAG_IL) != 0 ? 1 : 0);
+        if (mLimit - p < fixed) {
+            return malformed();
+        }
+        int typeLength = mBuffer.get(p++) & 0xff;
+        long payloadLength;
+        if ((header & Ndef.FLAG_SR) != 0) {
+            payloadLength = mBuffer.get(p++) & 0xff;
+        } else {
+            payloadLength = mBuffer.getInt(p) & 0xffffffffL;
+            p += 4;
+        }
+        int idLength = (header & Ndef.FLAG_IL) != 0 ? mBuffer.get(p++) & 0xff : 0;
+        if ((long) typeLength + idLength + payloadLength > mLimit - p) {
+            return malformed();
+        }
+        mOffset = mNext;
+        mHeader = header;
+        mTypeOffset = p;
+        mTypeLength = typeLength;
+        mIdOffset = p + typeLength;
+        mIdLength = idLength;
+        mPayloadOffset = mIdOffset + idLength;
+        mPayloadLength = (int) payloadLength;
+        mNext = mPayloadOffset + mPayloadLength;
+        mEnd = (header & Ndef.FLAG_ME) != 0;
+        return true;
+    }
+
+    private boolean malformed() {
+        mMalformed = true;
+        return false;
+    }
+
+    /** Whether {@link #next()} stopped at a record which is not valid NDEF. */
+    public boolean isMalformed() {
+        return mMalformed;
+    }
+
+    public ByteBuffer getBuffer() {
+        return mBuffer;
+    }
+
+    public int getTnf() {
+        return mHeader & Ndef.TNF_MASK;
+    }
+
+    public boolean isMessageBegin() {
+        return (mHeader & Ndef.FLAG_MB) != 0;
+    }
+
+    public boolean isMessageEnd() {
+        return (mHeader & Ndef.FLAG_ME) != 0;
+    }
+
+    public boolean isChunked() {
+        return (mHeader & Ndef.FLAG_CF) != 0;
+    }
+
+    /** Absolute offset of the record header in the buffer. */
+    public int getRecordOffset() {
+        return mOffset;
+    }
+
+    /** Length of the whole record, header included. */
+    public int getRecordLength() {
+        return mNext - mOffset;
+    }
+
+    public int getTypeOffset() {
+        return mTypeOffset;
+    }
+
+    public int getTypeLength() {
+        return mTypeLength;
+    }
+
+    public int getIdOffset() {
+        return mIdOffset;
+    }
+
+    public int getIdLength() {
+        return mIdLength;
+    }
+
+    public int getPayloadOffset() {
+        return mPayloadOffset;
+    }
+
+    public int getPayloadLength() {
+        return mPayloadLength;
+    }
+
+    /** Compares the record type with {@code type} in place. */
+    public boolean typeEquals(byte[] type) {
+        if (type.length != mTypeLength) {
+            return false;
+        }
+        for (int i = 0; i < type.length; i++) {
+            if (mBuffer.get(mTypeOffset + i) != type[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Whether this is a well-known record of type {@code rtd}, e.g. {@link Ndef#RTD_TEXT}. */
+    public boolean isWellKnown(byte[] rtd) {
+        return getTnf() == Ndef.TNF_WELL_KNOWN && typeEquals(rtd);
+    }
+
+    /** Copies the payload into {@code dst} at {@code offset}, e.g. for handing it to a UI. */
+    public void getPayload(byte[] dst, int offset) {
+        for (int i = 0; i < mPayloadLength; i++) {
+            dst[offset + i] = mBuffer.get(mPayloadOffset + i);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package io.github.mylittleswift.nfc_codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * The well-known Text record (NFC Forum RTD Text): a status byte holding the encoding in
+ * bit 7 (0 UTF-8, 1 UTF-16) and the language code length in bits 5..0, the language code,
+ * then the text.
+ */
+public final class NdefText {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset UTF_16 = Charset.forName("UTF-16");
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    private static final int STATUS_UTF16 = 0x80;
+    private static final int STATUS_LANGUAGE_LENGTH = 0x3f;
+
+    private NdefText() {
+    }
+
+    public static boolean isText(NdefRecordView record) {
+        return record.isWellKnown(Ndef.RTD_TEXT);
+    }
+
+    /** Decodes the text of a Text record, or returns null if it is not a valid one. */
+    public static String decode(NdefRecordView record) {
+        if (!isText(record)) {
+            return null;
+        }
+        return decode(record.getBuffer(), record.getPayloadOffset(), record.getPayloadLength());
+    }
+
+    /**
+     * Decodes the text of the Text payload of {@code length} bytes at absolute {@code offset},
+     * or returns null if it is not valid.
+     */
+    public static String decode(ByteBuffer buffer, int offset, int length) {
+        if (length < 1) {
+            return null;
+        }
+        int status = buffer.get(offset) & 0xff;
+        int languageLength = status & STATUS_LANGUAGE_LENGTH;
+        if (1 + languageLength > length) {
+            return null;
+        }
+        return string(buffer, offset + 1 + languageLength, length - 1 - languageLength,
+                (status & STATUS_UTF16) != 0 ? UTF_16 : UTF_8);
+    }
+
+    /** Returns the language code of a Text payload, or null if it is not valid. */
+    public static String decodeLanguage(ByteBuffer buffer, int offset, int length) {
+        if (length < 1) {
+            return null;
+        }
+        int languageLength = buffer.get(offset) & STATUS_LANGUAGE_LENGTH;
+        if (1 + languageLength > length) {
+            return null;
+        }
+        return string(buffer, offset + 1, languageLength, US_ASCII);
+    }
+
+    static String string(ByteBuffer buffer, int offset, int length, Charset charset) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + offset, length, charset);
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return new String(bytes, charset);
+    }
+
+    /**
+     * Returns the payload length of a Text record.
+     *
+     * @param language an ASCII language code such as "en"
+     * @param utf8 false for UTF-16, written big endian after a byte order mark like
+     *             {@code String.getBytes("UTF-16")} does
+     */
+    public static int payloadLength(String language, CharSequence text, boolean utf8) {
+        checkLanguage(language);
+        return 1 + language.length() + (utf8 ? Utf8.length(text) : text.length() == 0 ? 0 : 2 + 2 * text.length());
+    }
+
+    /** Writes a Text payload at the buffer's position. */
+    public static void writePayload(ByteBuffer out, String language, CharSequence text, boolean utf8) {
+        checkLanguage(language);
+        out.put((byte) ((utf8 ? 0 : STATUS_UTF16) | language.length()));
+        for (int i = 0; i < language.length(); i++) {
+            out.put((byte) language.charAt(i));
+        }
+        if (utf8) {
+            Utf8.encode(text, out);
+        } else if (text.length() > 0) {
+            out.putChar('\uFEFF');
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    out.putChar(c);
+                    out.putChar(text.charAt(++i));
+                } else {
+                    // an unpaired surrogate becomes U+FFFD, like String.getBytes("UTF-16") does
+                    out.putChar(Character.isSurrogate(c) ? '\uFFFD' : c);
+                }
+            }
+        }
+    }
+
+    /** Returns the length of the Text record {@link #writeRecord} writes. */
+    public static int recordLength(String language, CharSequence text, boolean utf8) {
+        return NdefWriter.recordLength(Ndef.RTD_TEXT.length, 0, payloadLength(language, text, utf8));
+    }
+
+    /** Writes a whole Text record at the buffer's position. */
+    public static void writeRecord(ByteBuffer out, int flags, String language, CharSequence text, boolean utf8) {
+        NdefWriter.writeHeader(out, flags, Ndef.TNF_WELL_KNOWN, Ndef.RTD_TEXT, null,
+                payloadLength(language, text, utf8));
+        writePayload(out, language, text, utf8);
+    }
+
+    private static void checkLanguage(String language) {
+        if (language.length() > STATUS_LANGUAGE_LENGTH) {
+            throw new IllegalArgumentException("Language code too long: " + language);
+        }
+        for (int i = 0; i < language.length(); i++) {
+            if (language.charAt(i) >= 0x80) {
+                throw new IllegalArgumentException("Language code not ASCII: " + language);
+            }
+        }
+    }
+}
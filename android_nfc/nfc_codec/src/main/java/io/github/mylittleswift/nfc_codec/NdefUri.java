@@ -0,0 +1,145 @@
+package io.github.mylittleswift.nfc_codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * URI records: the well-known URI record (NFC Forum RTD URI), whose payload is a URI
+ * identifier code standing for a prefix followed by the rest of the URI in UTF-8, and the
+ * absolute URI record.
+ */
+public final class NdefUri {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * The URI identifier codes, section 3.2.2 of the NFC Forum URI Record Type Definition:
+     * the prefix of code {@code i} is {@code PREFIXES[i]}.
+     */
+    private static final String[] PREFIXES = {
+            "",
+            "http://www.",
+            "https://www.",
+            "http://",
+            "https://",
+            "tel:",
+            "mailto:",
+            "ftp://anonymous:anonymous@",
+            "ftp://ftp.",
+            "ftps://",
+            "sftp://",
+            "smb://",
+            "nfs://",
+            "ftp://",
+            "dav://",
+            "news:",
+            "telnet://",
+            "imap:",
+            "rtsp://",
+            "urn:",
+            "pop:",
+            "sip:",
+            "sips:",
+            "tftp:",
+            "btspp://",
+            "btl2cap://",
+            "btgoep://",
+            "tcpobex://",
+            "irdaobex://",
+            "file://",
+            "urn:epc:id:",
+            "urn:epc:tag:",
+            "urn:epc:pat:",
+            "urn:epc:raw:",
+            "urn:epc:",
+            "urn:nfc:",
+    };
+
+    private static final UriPrefixTrie TRIE = new UriPrefixTrie(PREFIXES);
+
+    private NdefUri() {
+    }
+
+    /** Returns the prefix URI identifier code {@code code} stands for, or null if none. */
+    public static String prefix(int code) {
+        return code >= 0 && code < PREFIXES.length ? PREFIXES[code] : null;
+    }
+
+    public static boolean isUri(NdefRecordView record) {
+        return record.isWellKnown(Ndef.RTD_URI) || record.getTnf() == Ndef.TNF_ABSOLUTE_URI;
+    }
+
+    /**
+     * Decodes the URI of a well-known URI or an absolute URI record, or returns null if the
+     * record is neither or not valid. An absolute URI is read from the type field, or from
+     * the payload if the type is empty, as some writers put it there.
+     */
+    public static String decode(NdefRecordView record) {
+        if (record.isWellKnown(Ndef.RTD_URI)) {
+            return decode(record.getBuffer(), record.getPayloadOffset(), record.getPayloadLength());
+        }
+        if (record.getTnf() == Ndef.TNF_ABSOLUTE_URI) {
+            if (record.getTypeLength() > 0) {
+                return NdefText.string(record.getBuffer(), record.getTypeOffset(), record.getTypeLength(), UTF_8);
+            }
+            return NdefText.string(record.getBuffer(), record.getPayloadOffset(), record.getPayloadLength(), UTF_8);
+        }
+        return null;
+    }
+
+    /**
+     * Decodes the well-known URI payload of {@code length} bytes at absolute {@code offset},
+     * or returns null if it is empty or its identifier code is unknown.
+     */
+    public static String decode(ByteBuffer buffer, int offset, int length) {
+        if (length < 1) {
+            return null;
+        }
+        String prefix = prefix(buffer.get(offset));
+        if (prefix == null) {
+            return null;
+        }
+        String rest = NdefText.string(buffer, offset + 1, length - 1, UTF_8);
+        return prefix.isEmpty() ? rest : prefix.concat(rest);
+    }
+
+    /**
+     * Returns the identifier code to abbreviate {@code uri} with: the one with the longest
+     * prefix it starts with, ignoring case, or 0. "http://www.example.com" gets 0x01
+     * rather than 0x03, "urn:nfc:..." 0x23 rather than 0x13.
+     */
+    public static int prefixCode(CharSequence uri) {
+        return TRIE.longestMatch(uri);
+    }
+
+    /** Returns the payload length of a well-known URI record for {@code uri}. */
+    public static int payloadLength(CharSequence uri) {
+        return payloadLength(uri, prefixCode(uri));
+    }
+
+    private static int payloadLength(CharSequence uri, int code) {
+        return 1 + Utf8.length(uri, PREFIXES[code].length(), uri.length());
+    }
+
+    /** Writes a well-known URI payload at the buffer's position. */
+    public static void writePayload(ByteBuffer out, CharSequence uri) {
+        writePayload(out, uri, prefixCode(uri));
+    }
+
+    private static void writePayload(ByteBuffer out, CharSequence uri, int code) {
+        out.put((byte) code);
+        Utf8.encode(uri, PREFIXES[code].length(), uri.length(), out);
+    }
+
+    /** Returns the length of the record {@link #writeRecord} writes. */
+    public static int recordLength(CharSequence uri) {
+        return NdefWriter.recordLength(Ndef.RTD_URI.length, 0, payloadLength(uri));
+    }
+
+    /** Writes a whole well-known URI record at the buffer's position. */
+    public static void writeRecord(ByteBuffer out, int flags, CharSequence uri) {
+        int code = prefixCode(uri);
+        NdefWriter.writeHeader(out, flags, Ndef.TNF_WELL_KNOWN, Ndef.RTD_URI, null, payloadLength(uri, code));
+        writePayload(out, uri, code);
+    }
+}
@@ -0,0 +1,77 @@
+package io.github.mylittleswift.nfc_codec;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes NDEF records into a caller supplied {@link ByteBuffer}, at its position. A record
+ * is written as its header followed by the payload, which the caller may write in place
+ * after {@link #writeHeader}; the short record form is used whenever the payload fits.
+ *
+ * A message is a sequence of records, the first flagged {@link Ndef#FLAG_MB} and the last
+ * {@link Ndef#FLAG_ME}. Sizes are known up front from {@link #recordLength}, so a message
+ * can be written into an exactly sized array, or into a buffer reused from tag to tag.
+ */
+public final class NdefWriter {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private NdefWriter() {
+    }
+
+    /** Returns the length of a record with these field lengths. */
+    public static int recordLength(int typeLength, int idLength, int payloadLength) {
+        return headerLength(idLength, payloadLength) + typeLength + idLength + payloadLength;
+    }
+
+    private static int headerLength(int idLength, int payloadLength) {
+        return 2 + (payloadLength < 256 ? 1 : 4) + (idLength > 0 ? 1 : 0);
+    }
+
+    /**
+     * Writes the header, type and ID of a record; the next {@code payloadLength} bytes must
+     * then be the payload.
+     *
+     * @param flags {@link Ndef#FLAG_MB} and/or {@link Ndef#FLAG_ME}
+     * @param id the record ID, or null
+     * @throws BufferOverflowException if the record does not fit
+     */
+    public static void writeHeader(ByteBuffer out, int flags, int tnf, byte[] type, byte[] id, int payloadLength) {
+        if (id == null) {
+            id = EMPTY;
+        }
+        if (type.length > 255 || id.length > 255 || payloadLength < 0) {
+            throw new IllegalArgumentException("type " + type.length + " id " + id.length
+                    + " payload " + payloadLength);
+        }
+        if (out.remaining() < recordLength(type.length, id.length, payloadLength)) {
+            throw new BufferOverflowException();
+        }
+        int header = (flags & (Ndef.FLAG_MB | Ndef.FLAG_ME)) | (tnf & Ndef.TNF_MASK);
+        if (payloadLength < 256) {
+            header |= Ndef.FLAG_SR;
+        }
+        if (id.length > 0) {
+            header |= Ndef.FLAG_IL;
+        }
+        out.put((byte) header);
+        out.put((byte) type.length);
+        if (payloadLength < 256) {
+            out.put((byte) payloadLength);
+        } else {
+            out.putInt(payloadLength);
+        }
+        if (id.length > 0) {
+            out.put((byte) id.length);
+        }
+        out.put(type);
+        out.put(id);
+    }
+
+    /** Writes a whole record with {@code length} bytes of {@code payload} at {@code offset}. */
+    public static void writeRecord(ByteBuffer out, int flags, int tnf, byte[] type, byte[] id,
+                                   byte[] payload, int offset, int length) {
+        writeHeader(out, flags, tnf, type, id, length);
+        out.put(payload, offset, length);
+    }
+}
@@ -0,0 +1,105 @@
+package io.github.mylittleswift.nfc_codec;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The URI identifier code prefixes compiled into a trie over their lower case characters,
+ * so the longest prefix of a URI is found in one pass over it, ignoring case, without
+ * building any string.
+ *
+ * Node 0 is the root. The children of node {@code n} are
+ * {@code mChildren[mFirst[n] .. mFirst[n + 1])}, labelled by the same range of
+ * {@code mLabels}; there are a handful at most, so they are scanned.
+ */
+final class UriPrefixTrie {
+
+    private final char[] mLabels;
+    private final int[] mChildren;
+    private final int[] mFirst;
+    /** identifier code of the prefix ending at each node, 0 if none */
+    private final byte[] mCodes;
+
+    /** @param prefixes lower case ASCII prefixes indexed by code, 0 being the empty one */
+    UriPrefixTrie(String[] prefixes) {
+        // build a pointer trie first, then lay it out breadth first
+        Node root = new Node();
+        for (int code = 1; code < prefixes.length; code++) {
+            Node node = root;
+            String prefix = prefixes[code];
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.child(prefix.charAt(i));
+            }
+            node.mCode = code;
+        }
+        List<Node> order = new ArrayList<>();
+        order.add(root);
+        for (int i = 0; i < order.size(); i++) {
+            order.get(i).mIndex = i;
+            order.addAll(order.get(i).mChildren);
+        }
+        int nodes = order.size();
+        mLabels = new char[nodes];
+        mChildren = new int[nodes];
+        mFirst = new int[nodes + 1];
+        mCodes = new byte[nodes];
+        int edge = 0;
+        for (int n = 0; n < nodes; n++) {
+            Node node = order.get(n);
+            mFirst[n] = edge;
+            mCodes[n] = (byte) node.mCode;
+            for (Node child : node.mChildren) {
+                mLabels[edge] = child.mLabel;
+                mChildren[edge] = child.mIndex;
+                edge++;
+            }
+        }
+        mFirst[nodes] = edge;
+    }
+
+    /** Returns the code of the longest prefix {@code uri} starts with, ignoring case, or 0. */
+    int longestMatch(CharSequence uri) {
+        int code = 0;
+        int node = 0;
+        for (int i = 0, n = uri.length(); i < n; i++) {
+            char c = uri.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            int next = -1;
+            for (int e = mFirst[node], end = mFirst[node + 1]; e < end; e++) {
+                if (mLabels[e] == c) {
+                    next = mChildren[e];
+                    break;
+                }
+            }
+            if (next < 0) {
+                break;
+            }
+            node = next;
+            if (mCodes[node] != 0) {
+                code = mCodes[node];
+            }
+        }
+        return code;
+    }
+
+    private static final class Node {
+        final List<Node> mChildren = new ArrayList<>();
+        char mLabel;
+        int mCode;
+        int mIndex;
+
+        Node child(char label) {
+            for (Node child : mChildren) {
+                if (child.mLabel == label) {
+                    return child;
+                }
+            }
+            Node child = new Node();
+            child.mLabel = label;
+            mChildren.add(child);
+            return child;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package io.github.mylittleswift.nfc_codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * UTF-8 sizing and encoding of a {@link CharSequence} straight into a {@link ByteBuffer},
+ * without the intermediate byte array of {@link String#getBytes(String)}. An unpaired
+ * surrogate is encoded as '?', like {@code String.getBytes} does.
+ */
+public final class Utf8 {
+
+    private Utf8() {
+    }
+
+    /** Returns the number of bytes {@link #encode} writes for {@code s}. */
+    public static int length(CharSequence s) {
+        return length(s, 0, s.length());
+    }
+
+    /** Returns the number of bytes {@link #encode} writes for chars {@code start} to {@code end}. */
+    public static int length(CharSequence s, int start, int end) {
+        int length = end - start;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    length += 1;
+                } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    // four bytes for the pair
+                    length += 2;
+                    i++;
+                } else if (Character.isSurrogate(c)) {
+                    // '?'
+                } else {
+                    length += 2;
+                }
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Writes {@code s} at the buffer's position and advances it.
+     *
+     * @throws java.nio.BufferOverflowException if fewer than {@link #length} bytes remain
+     */
+    public static void encode(CharSequence s, ByteBuffer out) {
+        encode(s, 0, s.length(), out);
+    }
+
+    /** Writes chars {@code start} to {@code end} of {@code s}. */
+    public static void encode(CharSequence s, int start, int end, ByteBuffer out) {
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xc0 | c >> 6));
+                out.put((byte) (0x80 | c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                out.put((byte) (0xf0 | cp >> 18));
+                out.put((byte) (0x80 | cp >> 12 & 0x3f));
+                out.put((byte) (0x80 | cp >> 6 & 0x3f));
+                out.put((byte) (0x80 | cp & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                out.put((byte) '?');
+            } else {
+                out.put((byte) (0xe0 | c >> 12));
+                out.put((byte) (0x80 | c >> 6 & 0x3f));
+                out.put((byte) (0x80 | c & 0x3f));
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package io.github.mylittleswift.nfc_codec;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NdefRecordViewTest {
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    private static byte[] message() {
+        byte[] payload = new byte[300];
+        Arrays.fill(payload, (byte) 7);
+        ByteBuffer out = ByteBuffer.allocate(400);
+        NdefWriter.writeRecord(out, Ndef.FLAG_MB, Ndef.TNF_MIME_MEDIA, "text/plain".getBytes(US_ASCII),
+                null, "hi".getBytes(US_ASCII), 0, 2);
+        NdefWriter.writeRecord(out, 0, Ndef.TNF_EXTERNAL_TYPE, "a.b:c".getBytes(US_ASCII),
+                new byte[]{9}, payload, 0, payload.length);
+        NdefWriter.writeRecord(out, Ndef.FLAG_ME, Ndef.TNF_EMPTY, new byte[0], null, payload, 0, 0);
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    @Test
+    public void walksRecordsInPlace() {
+        byte[] message = message();
+        NdefRecordView record = new NdefRecordView().wrap(ByteBuffer.wrap(message));
+
+        assertTrue(record.next());
+        assertTrue(record.isMessageBegin());
+        assertEquals(Ndef.TNF_MIME_MEDIA, record.getTnf());
+        assertTrue(record.typeEquals("text/plain".getBytes(US_ASCII)));
+        assertEquals(0, record.getIdLength());
+        assertEquals(2, record.getPayloadLength());
+        assertEquals('h', message[record.getPayloadOffset()]);
+        // short record: header, type length, payload length
+        assertEquals(3 + 10 + 2, record.getRecordLength());
+
+        assertTrue(record.next());
+        assertEquals(Ndef.TNF_EXTERNAL_TYPE, record.getTnf());
+        assertEquals(1, record.getIdLength());
+        assertEquals(9, message[record.getIdOffset()]);
+        assertEquals(300, record.getPayloadLength());
+        byte[] payload = new byte[300];
+        record.getPayload(payload, 0);
+        assertEquals(7, payload[299]);
+
+        assertTrue(record.next());
+        assertTrue(record.isMessageEnd());
+        assertEquals(Ndef.TNF_EMPTY, record.getTnf());
+        assertFalse(record.next());
+        assertFalse(record.isMalformed());
+    }
+
+    @Test
+    public void stopsAtMessageEnd() {
+        byte[] message = message();
+        byte[] trailing = Arrays.copyOf(message, message.length + 4);
+        NdefRecordView record = new NdefRecordView().wrap(ByteBuffer.wrap(trailing));
+        int count = 0;
+        while (record.next()) {
+            count++;
+        }
+        assertEquals(3, count);
+        assertFalse(record.isMalformed());
+    }
+
+    @Test
+    public void viewsPartOfBuffer() {
+        byte[] message = message();
+        byte[] framed = new byte[message.length + 6];
+        System.arraycopy(message, 0, framed, 3, message.length);
+        NdefRecordView record = new NdefRecordView().wrap(ByteBuffer.wrap(framed), 3, message.length);
+        assertTrue(record.next());
+        assertEquals(3, record.getRecordOffset());
+        assertTrue(record.typeEquals("text/plain".getBytes(US_ASCII)));
+    }
+
+    @Test
+    public void rejectsMalformed() {
+        byte[] message = message();
+        // every truncation of the message
+        for (int length = 1; length < message.length; length++) {
+            NdefRecordView record = new NdefRecordView().wrap(ByteBuffer.wrap(message, 0, length));
+            while (record.next()) {
+            }
+            assertTrue("length " + length, record.isMalformed());
+        }
+        // no MB on the first record
+        byte[] copy = message.clone();
+        copy[0] &= ~Ndef.FLAG_MB;
+        assertMalformed(copy);
+        // reserved TNF
+        copy = message.clone();
+        copy[0] |= 0x07;
+        assertMalformed(copy);
+        // payload length past the end
+        copy = message.clone();
+        copy[2] = (byte) 0xff;
+        assertMalformed(copy);
+    }
+
+    @Test
+    public void emptyBufferIsNoMessage() {
+        NdefRecordView record = new NdefRecordView().wrap(ByteBuffer.allocate(0));
+        assertFalse(record.next());
+        assertFalse(record.isMalformed());
+    }
+
+    @Test
+    public void writesLongRecordHeader() {
+        byte[] payload = new byte[256];
+        ByteBuffer out = ByteBuffer.allocate(NdefWriter.recordLength(1, 0, payload.length));
+        NdefWriter.writeRecord(out, Ndef.FLAG_MB | Ndef.FLAG_ME, Ndef.TNF_WELL_KNOWN, Ndef.RTD_TEXT, null,
+                payload, 0, payload.length);
+        assertEquals(0, out.remaining());
+        assertArrayEquals(new byte[]{(byte) 0xc1, 1, 0, 0, 1, 0, 0x54},
+                Arrays.copyOf(out.array(), 7));
+    }
+
+    private static void assertMalformed(byte[] message) {
+        NdefRecordView record = new NdefRecordView().wrap(ByteBuffer.wrap(message));
+        while (record.next()) {
+        }
+        assertTrue(record.isMalformed());
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.mylittleswift.nfc_codec;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NdefTextTest {
+
+    private static final String[] TEXTS = {
+            "", "hello", "naïve café", "中文标签 NFC", "emoji 😀 pair", "lone \uD800 surrogate",
+    };
+
+    @Test
+    public void encodesLikeTheOldRecordBuilder() throws Exception {
+        for (String text : TEXTS) {
+            for (boolean utf8 : new boolean[]{true, false}) {
+                byte[] expected = oldPayload("zh", text, utf8);
+                ByteBuffer out = ByteBuffer.allocate(NdefText.payloadLength("zh", text, utf8));
+                NdefText.writePayload(out, "zh", text, utf8);
+                assertEquals(text, 0, out.remaining());
+                assertArrayEquals(text, expected, out.array());
+            }
+        }
+    }
+
+    @Test
+    public void roundTripsRecords() {
+        for (String text : TEXTS) {
+            for (boolean utf8 : new boolean[]{true, false}) {
+                ByteBuffer out = ByteBuffer.allocate(NdefText.recordLength("en", text, utf8));
+                NdefText.writeRecord(out, Ndef.FLAG_MB | Ndef.FLAG_ME, "en", text, utf8);
+                assertEquals(0, out.remaining());
+                out.flip();
+                NdefRecordView record = new NdefRecordView().wrap(out);
+                assertTrue(record.next());
+                assertTrue(NdefText.isText(record));
+                String expected = text.replace('\uD800', utf8 ? '?' : '\uFFFD');
+                assertEquals(expected, NdefText.decode(record));
+                assertEquals("en", NdefText.decodeLanguage(out, record.getPayloadOffset(), record.getPayloadLength()));
+                assertFalse(record.next());
+            }
+        }
+    }
+
+    @Test
+    public void decodesDirectBuffers() {
+        byte[] payload = {0x02, 'e', 'n', 'h', 'i'};
+        ByteBuffer direct = ByteBuffer.allocateDirect(payload.length);
+        direct.put(payload);
+        assertEquals("hi", NdefText.decode(direct, 0, payload.length));
+    }
+
+    @Test
+    public void rejectsMalformedPayloads() {
+        assertNull(NdefText.decode(ByteBuffer.wrap(new byte[0]), 0, 0));
+        assertNull(NdefText.decode(ByteBuffer.wrap(new byte[]{0x3f, 'e', 'n'}), 0, 3));
+        assertNull(NdefText.decodeLanguage(ByteBuffer.wrap(new byte[]{0x03, 'e'}), 0, 2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsLongLanguage() {
+        char[] language = new char[64];
+        Arrays.fill(language, 'x');
+        NdefText.payloadLength(new String(language), "", true);
+    }
+
+    /** The byte array MainActivity.newTextRecord used to build. */
+    private static byte[] oldPayload(String language, String text, boolean utf8) throws Exception {
+        byte[] langBytes = language.getBytes("US-ASCII");
+        byte[] textBytes = text.getBytes(Charset.forName(utf8 ? "UTF-8" : "UTF-16"));
+        byte[] data = new byte[1 + langBytes.length + textBytes.length];
+        data[0] = (byte) ((utf8 ? 0 : 0x80) + langBytes.length);
+        System.arraycopy(langBytes, 0, data, 1, langBytes.length);
+        System.arraycopy(textBytes, 0, data, 1 + langBytes.length, textBytes.length);
+        return data;
+    }
+}
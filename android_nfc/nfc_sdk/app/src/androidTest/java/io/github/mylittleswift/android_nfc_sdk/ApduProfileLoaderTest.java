@@ -0,0 +1,92 @@
+package io.github.mylittleswift.android_nfc_sdk;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import io.github.mylittleswift.android_nfc_sdk.apdu.SessionProfile;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumentation tests for {@link ApduProfileLoader}, which parses with the platform's
+ * JsonReader and Base64 and so runs on a device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ApduProfileLoaderTest {
+
+    private static final byte[] OK = {(byte) 0x90, 0x00};
+    private static final byte[] SELECT = {0x00, (byte) 0xA4, 0x04, 0x00, 0x07,
+            (byte) 0xF0, 0x01, 0x02, 0x03, 0x04, 0x05, 0x06};
+    private static final byte[] GET_DATA = {0x00, (byte) 0xCA, 0x00, 0x00};
+    private static final byte[] READ = {0x00, (byte) 0xB0, 0x00, 0x10, 0x10};
+    private static final byte[] CHALLENGE = {0x00, (byte) 0x84, 0x00, 0x00, 0x08};
+
+    @Test
+    public void load_mixedTableAndRules() throws Exception {
+        SessionProfile profile = load("["
+                + "{\"request\": \"AMoAAA==\", \"response\": \"kAA=\"},"
+                + "{\"header\": \"00B00000\", \"mask\": \"FFFF0000\", \"response\": \"aoI=\"},"
+                + "{\"request\": \"AKQEAAfwAQIDBAUG\", \"next\": \"SELECTED\", \"response\": \"kAA=\"},"
+                + "{\"header\": \"00840000\", \"state\": \"SELECTED\", \"handler\": \"challenge\","
+                + " \"comment\": [\"skipped\"]}"
+                + "]");
+
+        assertEquals(4, profile.size());
+        assertTrue(profile.isStateful());
+        assertArrayEquals(OK, profile.getProfile().lookup(GET_DATA));
+        assertArrayEquals(new byte[]{0x6A, (byte) 0x82}, profile.getProfile().lookup(READ));
+
+        assertEquals(-1, profile.match(SessionProfile.INITIAL, CHALLENGE));
+        int select = profile.match(SessionProfile.INITIAL, SELECT);
+        assertArrayEquals(OK, profile.getRule(select).getResponse());
+        int selected = profile.getNextState(select);
+        assertEquals("SELECTED", profile.getStateName(selected));
+        int challenge = profile.match(selected, CHALLENGE);
+        assertEquals("challenge", profile.getRule(challenge).getHandler());
+    }
+
+    @Test
+    public void load_emptyProfile() throws Exception {
+        SessionProfile profile = load("[]");
+
+        assertEquals(0, profile.size());
+        assertFalse(profile.isStateful());
+        assertNull(profile.getProfile().lookup(GET_DATA));
+    }
+
+    @Test
+    public void load_rejectsMalformedProfiles() throws Exception {
+        String[] malformed = {
+                "",
+                "{}",
+                "[{\"request\": \"AMoAAA==\", \"response\": ",
+                // no response, no request, or both a request and a header
+                "[{\"request\": \"AMoAAA==\"}]",
+                "[{\"response\": \"kAA=\"}]",
+                "[{\"request\": \"AMoAAA==\", \"header\": \"00CA0000\", \"response\": \"kAA=\"}]",
+                // an empty command, plain and in a session
+                "[{\"request\": \"\", \"response\": \"kAA=\"}]",
+                "[{\"request\": \"\", \"next\": \"SELECTED\", \"response\": \"kAA=\"}]",
+                "[{\"request\": \"!!!\", \"response\": \"kAA=\"}]",
+                "[{\"header\": \"00B0\", \"response\": \"kAA=\"}]",
+                "[{\"header\": \"00B0000Z\", \"response\": \"kAA=\"}]",
+                "[{\"header\": \"00B00000\", \"maxData\": \"many\", \"response\": \"kAA=\"}]",
+        };
+        for (String profile : malformed) {
+            try {
+                load(profile);
+                fail("Loaded " + profile);
+            } catch (IOException expected) {
+            }
+        }
+    }
+
+    private static SessionProfile load(String json) throws IOException {
+        return ApduProfileLoader.load(new ByteArrayInputStream(json.getBytes("UTF-8")));
+    }
+}
@@ -0,0 +1,69 @@
+package io.github.mylittleswift.android_nfc_sdk;
+
+/**
+ * Compiles an authoring profile (faketag.json, see {@link ApduProfileLoader}) into the
+ * binary profile mapped by {@link MappedApduProfile}. Decoding the Base64 and building the
+ * index happens once here instead of on every service start.
+ */
+
+import android.util.Log;
+
+import io.github.mylittleswift.android_nfc_sdk.apdu.ApduRule;
+import io.github.mylittleswift.android_nfc_sdk.apdu.ApduTable;
+import io.github.mylittleswift.android_nfc_sdk.apdu.CompiledProfileWriter;
+import io.github.mylittleswift.android_nfc_sdk.apdu.MappedApduProfile;
+import io.github.mylittleswift.android_nfc_sdk.apdu.SessionProfile;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class ApduProfileCompiler {
+
+    private static final String TAG = "ApduProfileCompiler";
+
+    private ApduProfileCompiler() {
+    }
+
+    public static void compile(File json, File out) throws IOException {
+        ApduTable.Builder table = new ApduTable.Builder();
+        List<ApduRule> rules = new ArrayList<>();
+        ApduProfileLoader.load(new BufferedInputStream(new FileInputStream(json)), table, rules);
+        CompiledProfileWriter.write(table.build(), rules, out);
+    }
+
+    /**
+     * Maps {@code compiled}, first recompiling it from {@code json} if the JSON is newer or
+     * the compiled profile cannot be opened, e.g. because it was written by an older
+     * version. Without a JSON profile an existing compiled profile is used as is. The rules
+     * are compiled as described in {@link SessionProfile#create}.
+     *
+     * @throws IOException if neither file yields a profile
+     */
+    public static SessionProfile openCompiled(File json, File compiled) throws IOException {
+        if (json.isFile() && (!compiled.isFile() || compiled.lastModified() < json.lastModified())) {
+            compileLogged(json, compiled);
+        }
+        MappedApduProfile mapped;
+        try {
+            mapped = MappedApduProfile.open(compiled);
+        } catch (IOException e) {
+            if (!json.isFile()) {
+                throw e;
+            }
+            Log.w(TAG, "Recompiling " + compiled + ": " + e.getMessage());
+            compileLogged(json, compiled);
+            mapped = MappedApduProfile.open(compiled);
+        }
+        return SessionProfile.create(mapped, mapped.getRules());
+    }
+
+    private static void compileLogged(File json, File compiled) throws IOException {
+        long start = System.nanoTime();
+        compile(json, compiled);
+        Log.i(TAG, "Compiled " + json + " in " + (System.nanoTime() - start) / 1000000 + "ms");
+    }
+}
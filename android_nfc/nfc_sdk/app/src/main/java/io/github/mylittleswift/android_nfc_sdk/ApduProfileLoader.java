@@ -0,0 +1,180 @@
+package io.github.mylittleswift.android_nfc_sdk;
+
+/**
+ * Reads a card emulation profile (faketag.json) into an {@link ApduTable} and a list of
+ * {@link ApduRule}s.
+ *
+ * The profile is a JSON array of objects holding a Base64 "request" and "response":
+ *
+ *   [{"request": "AKQEAAc=", "response": "kAA="}, ...]
+ *
+ * An entry with a hex "header" instead of a "request" is a rule. The optional "mask"
+ * (default FFFFFFFF), "minData", "maxData" and hex "prefix" are described in
+ * {@link ApduRule}; rules are tried in file order after the exact requests:
+ *
+ *   {"header": "00B00000", "mask": "FFFF0000", "response": "aoI="}
+ *
+ * Either kind of entry may take part in the card session (see {@link SessionProfile}):
+ * "state" limits it to a state, "next" names the state to move to, and "handler" names the
+ * handler computing the response, which then need not be given. Session entries are checked
+ * before all others; a "request" among them matches whatever its Le.
+ *
+ *   {"request": "AKQEAAfwAQIDBAUG", "next": "SELECTED", "response": "kAA="}
+ *   {"header": "00840000", "state": "SELECTED", "handler": "challenge"}
+ *
+ * It is parsed with a streaming {@link JsonReader}, so only one entry at a time is held in
+ * memory besides the table being built.
+ */
+
+import android.util.Base64;
+import android.util.JsonReader;
+
+import io.github.mylittleswift.android_nfc_sdk.apdu.ApduRule;
+import io.github.mylittleswift.android_nfc_sdk.apdu.ApduTable;
+import io.github.mylittleswift.android_nfc_sdk.apdu.SessionProfile;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class ApduProfileLoader {
+
+    private ApduProfileLoader() {
+    }
+
+    public static SessionProfile load(File profile) throws IOException {
+        return load(new BufferedInputStream(new FileInputStream(profile)));
+    }
+
+    /**
+     * Parses a profile and closes the stream.
+     *
+     * @throws IOException if the stream cannot be read or is not a valid profile
+     */
+    public static SessionProfile load(InputStream in) throws IOException {
+        ApduTable.Builder builder = new ApduTable.Builder();
+        List<ApduRule> rules = new ArrayList<>();
+        load(in, builder, rules);
+        return SessionProfile.create(builder.build(), rules);
+    }
+
+    /**
+     * Parses a profile into {@code table} and {@code rules} and closes the stream.
+     *
+     * @throws IOException if the stream cannot be read or is not a valid profile
+     */
+    public static void load(InputStream in, ApduTable.Builder table, List<ApduRule> rules)
+            throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            reader.beginArray();
+            for (int entry = 0; reader.hasNext(); entry++) {
+                String request = null;
+                String response = null;
+                String header = null;
+                String mask = "FFFFFFFF";
+                String prefix = "";
+                String state = null;
+                String next = null;
+                String handler = null;
+                int minData = 0;
+                int maxData = ApduRule.MAX_DATA;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if ("request".equals(name)) {
+                        request = reader.nextString();
+                    } else if ("response".equals(name)) {
+                        response = reader.nextString();
+                    } else if ("header".equals(name)) {
+                        header = reader.nextString();
+                    } else if ("mask".equals(name)) {
+                        mask = reader.nextString();
+                    } else if ("prefix".equals(name)) {
+                        prefix = reader.nextString();
+                    } else if ("minData".equals(name)) {
+                        minData = reader.nextInt();
+                    } else if ("maxData".equals(name)) {
+                        maxData = reader.nextInt();
+                    } else if ("state".equals(name)) {
+                        state = reader.nextString();
+                    } else if ("next".equals(name)) {
+                        next = reader.nextString();
+                    } else if ("handler".equals(name)) {
+                        handler = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                if ((request == null) == (header == null) || (response == null && handler == null)) {
+                    throw new IOException("Entry " + entry + " needs a response and either a request or a header");
+                }
+                boolean stateful = state != null || next != null || handler != null;
+                if (request != null && !stateful) {
+                    try {
+                        table.put(decode(request), decode(response));
+                    } catch (IllegalArgumentException e) {
+                        throw new IOException("Bad request at entry " + entry + ": " + e.getMessage());
+                    }
+                    continue;
+                }
+                try {
+                    ApduRule.Builder rule = new ApduRule.Builder()
+                            .setState(state)
+                            .setNext(next)
+                            .setHandler(handler);
+                    if (request != null) {
+                        rule.setCommand(decode(request));
+                    } else {
+                        rule.setHeader(decodeHex(header))
+                                .setMask(decodeHex(mask))
+                                .setDataLength(minData, maxData)
+                                .setDataPrefix(decodeHex(prefix));
+                    }
+                    if (response != null) {
+                        rule.setResponse(decode(response));
+                    }
+                    rules.add(rule.build());
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Bad rule at entry " + entry + ": " + e.getMessage());
+                }
+            }
+            reader.endArray();
+        } catch (IllegalStateException | NumberFormatException e) {
+            // JsonReader reports unexpected tokens this way
+            throw new IOException(e.getMessage());
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static byte[] decode(String base64) throws IOException {
+        try {
+            return Base64.decode(base64, Base64.DEFAULT);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Bad Base64: " + base64);
+        }
+    }
+
+    private static byte[] decodeHex(String hex) throws IOException {
+        if (hex.length() % 2 != 0) {
+            throw new IOException("Bad hex: " + hex);
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IOException("Bad hex: " + hex);
+            }
+            bytes[i] = (byte) (high << 4 | low);
+        }
+        return bytes;
+    }
+}
@@ -12,80 +12,178 @@ package io.github.mylittleswift.android_nfc_sdk;
  *Android 4.4 comes with a convenience Service class that can be used as a basis for
  *implementing a HCE service: the HostApduService class.
  *
+ * The emulated card is described by faketag.json on external storage. It is compiled once
+ * into a binary profile in the app's files directory (see {@link ApduProfileCompiler}),
+ * which is memory-mapped on a background thread as soon as the service is created, so the
+ * first APDU does not pay for file I/O or parsing. An APDU which arrives while the profile is still loading is
+ * answered through {@link #sendResponseApdu(byte[])} once loading completes; if the reader
+ * goes away first, the pending APDU is dropped in {@link #onDeactivated(int)}. If the
+ * profile cannot be loaded for any reason, an empty one is published and every command is
+ * answered with 6800.
+ *
+ * Profiles may declare session states and transitions (see {@link ApduProfileLoader}). The
+ * session starts in IDLE and is reset in {@link #onDeactivated(int)}, so every activation
+ * starts over, e.g. with a SELECT before anything can be read. Fixed responses are returned
+ * inline; a response computed by a handler (see {@link #computeResponse}) is computed on a
+ * worker thread and sent through {@link #sendResponseApdu(byte[])}, so a slow computation
+ * does not block the binder thread.
+ *
+ * Every command and deactivation is counted in {@link #getMetrics()}, which
+ * {@link CardEmulationMetricsService} makes available to other components.
+ *
+ * The command logic itself lives in {@link ApduDispatcher}, so that it can be exercised
+ * without a device.
  */
 
 import android.nfc.cardemulation.HostApduService;
 import android.os.Bundle;
 import android.os.Environment;
-import android.util.Base64;
+import android.os.SystemClock;
 import android.util.Log;
 
-import org.json.JSONArray;
-import org.json.JSONException;
+import io.github.mylittleswift.android_nfc_sdk.apdu.ApduDispatcher;
+import io.github.mylittleswift.android_nfc_sdk.apdu.ApduMetrics;
+import io.github.mylittleswift.android_nfc_sdk.apdu.ApduRule;
+import io.github.mylittleswift.android_nfc_sdk.apdu.ApduSession;
+import io.github.mylittleswift.android_nfc_sdk.apdu.ApduTable;
+import io.github.mylittleswift.android_nfc_sdk.apdu.SessionProfile;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.util.HashMap;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 public class CardEmulation extends HostApduService {
 
-    private HashMap<String, String> cmdMap = null;
-    private boolean initialized = false;
+    private static final String TAG = "CardEmulation";
+
+    /** Built-in handler answering GET CHALLENGE with Le random bytes, kept as "challenge". */
+    public static final String HANDLER_CHALLENGE = "challenge";
+
+    private static final ApduMetrics sMetrics = new ApduMetrics();
+
+    /** computes handler responses, one at a time like the reader sends commands */
+    private ExecutorService mWorker;
+
+    private ApduDispatcher mDispatcher;
+
+    private SecureRandom mRandom;
+
+    private volatile long mLoadTimeMillis = -1;
 
     @Override
-    public byte[]  processCommandApdu(byte[] apdu, Bundle extras) {
-        // is initialized?
-        if (!initialized) {
-            parseJSONFile();
-            initialized = true;
-        }
+    public void onCreate() {
+        super.onCreate();
+        mWorker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "CardEmulation-worker");
+            }
+        });
+        mDispatcher = new ApduDispatcher(new ApduDispatcher.Callback() {
+            @Override
+            public void sendResponseApdu(byte[] response) {
+                CardEmulation.this.sendResponseApdu(response);
+            }
 
-        // get apdu bytes from cmdMap
-        byte[] bytes = cmdMap.get(apdu.toString()).getBytes();
-        if (bytes != null) {
-            return bytes;
-        }
-        else { // command not supported by json file
-            return new byte[]{0x68,0x00}; // => "The request function is not supported by the card."
-        }
+            @Override
+            public byte[] computeResponse(String handler, byte[] apdu, byte[] fixed, ApduSession session) {
+                try {
+                    return CardEmulation.this.computeResponse(handler, apdu, fixed, session);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Handler " + handler + " failed", e);
+                    return null;
+                }
+            }
+        }, mWorker, sMetrics);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long start = SystemClock.elapsedRealtime();
+                SessionProfile profile = loadProfile();
+                mLoadTimeMillis = SystemClock.elapsedRealtime() - start;
+                Log.i(TAG, "Loaded " + profile.size() + " APDUs in " + mLoadTimeMillis + "ms");
+                mDispatcher.publish(profile);
+            }
+        }, "CardEmulation-load").start();
+    }
+
+    @Override
+    public void onDestroy() {
+        mWorker.shutdownNow();
+        super.onDestroy();
+    }
+
+    @Override
+    public byte[]  processCommandApdu(byte[] apdu, Bundle extras) {
+        return mDispatcher.processCommandApdu(apdu);
     }
 
     @Override
     public void onDeactivated(int reason) {
+        mDispatcher.onDeactivated(reason);
+    }
 
+    /**
+     * Returns the counters shared by all instances of the service since the process started.
+     */
+    public static ApduMetrics getMetrics() {
+        return sMetrics;
+    }
 
+    /**
+     * Returns how long loading the profile took, or -1 while it is still loading.
+     */
+    public long getLoadTimeMillis() {
+        return mLoadTimeMillis;
     }
 
-    public void parseJSONFile() {
-        try
-        {
-            File jsonfile = new File(Environment.getExternalStorageDirectory(), "faketag.json");
-            InputStream jsonReader = new FileInputStream(jsonfile);
-            int size = jsonReader.available();
-
-            byte[] buffer = new byte[size];
-            jsonReader.read(buffer);
-            jsonReader.close();
-            String json = new String(buffer, "UTF-8");
-
-            JSONArray jsonArray = new JSONArray(json); //jsonBuilder.toString());
-            for (int index = 0; index < jsonArray.length(); index++) {
-                //add values to map
-                byte[] request = Base64.decode(jsonArray.getJSONObject(index).getString("request"), Base64.DEFAULT);
-                byte[] response = Base64.decode(jsonArray.getJSONObject(index).getString("response"), Base64.DEFAULT);
-                cmdMap.put(request.toString(), response.toString());
+    /**
+     * Computes the response of a rule naming {@code handler}, on the worker thread. The
+     * rule's next state is entered only if the response ends in 9000, so e.g. a failed
+     * authentication leaves the session where it was. Subclasses add handlers by overriding
+     * this and calling through for the names they do not know.
+     *
+     * @param fixed the response given in the profile, empty if none
+     * @return the response, null for 6800
+     */
+    protected byte[] computeResponse(String handler, byte[] apdu, byte[] fixed, ApduSession session) {
+        if (HANDLER_CHALLENGE.equals(handler)) {
+            // Le, where 00 (or none) asks for the usual 8 bytes
+            int length = apdu.length == 5 && apdu[4] != 0 ? apdu[4] & 0xff : 8;
+            if (mRandom == null) {
+                // seeding may block, which is why handlers do not run on the binder thread
+                mRandom = new SecureRandom();
             }
+            byte[] challenge = new byte[length];
+            mRandom.nextBytes(challenge);
+            session.put(HANDLER_CHALLENGE, challenge);
+            byte[] response = Arrays.copyOf(challenge, length + 2);
+            response[length] = (byte) 0x90;
+            return response;
+        }
+        Log.w(TAG, "No handler " + handler);
+        return null;
+    }
+
+    private SessionProfile loadProfile() {
+        File jsonfile = new File(Environment.getExternalStorageDirectory(), "faketag.json");
+        File compiled = new File(getFilesDir(), "faketag.bin");
+        try {
+            return ApduProfileCompiler.openCompiled(jsonfile, compiled);
         } catch (FileNotFoundException e) {
             Log.e("jsonFile", "file not found");
         } catch (IOException e) {
-            Log.e("jsonFile", "ioerror");
-        } catch (JSONException e) {
-            e.printStackTrace();
+            Log.e("jsonFile", "ioerror", e);
+        } catch (RuntimeException e) {
+            // anything but an empty profile would leave every APDU waiting for the load
+            Log.e(TAG, "Cannot load the profile", e);
         }
+        return SessionProfile.create(ApduTable.EMPTY, Collections.<ApduRule>emptyList());
     }
-
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,56 @@
+package io.github.mylittleswift.android_nfc_sdk;
+
+/**
+ * Makes the {@link CardEmulation} counters available to other components of the app.
+ * HostApduService does not allow binding to the emulation service itself, so this service
+ * has to be declared next to it in the manifest:
+ *
+ *   <service android:name="io.github.mylittleswift.android_nfc_sdk.CardEmulationMetricsService"
+ *       android:exported="false" />
+ *
+ * and is bound with {@link android.content.Context#bindService}; the binder is a
+ * {@link LocalBinder}.
+ */
+
+import android.app.Service;
+import android.content.Intent;
+import android.os.Binder;
+import android.os.IBinder;
+
+import io.github.mylittleswift.android_nfc_sdk.apdu.ApduMetrics;
+
+import java.io.File;
+import java.io.IOException;
+
+public class CardEmulationMetricsService extends Service {
+
+    private final LocalBinder mBinder = new LocalBinder();
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return mBinder;
+    }
+
+    public class LocalBinder extends Binder {
+
+        public ApduMetrics.Snapshot getSnapshot() {
+            return CardEmulation.getMetrics().snapshot();
+        }
+
+        public void reset() {
+            CardEmulation.getMetrics().reset();
+        }
+
+        /**
+         * Writes a snapshot to {@code file}, or to apdu-metrics.txt in the app's files
+         * directory if {@code file} is null, and returns the file written.
+         */
+        public File export(File file) throws IOException {
+            if (file == null) {
+                file = new File(getFilesDir(), "apdu-metrics.txt");
+            }
+            getSnapshot().writeTo(file);
+            return file;
+        }
+    }
+}
@@ -40,40 +40,196 @@ import android.nfc.tech.Ndef;
 import android.nfc.tech.NfcBarcode;
 import android.os.Bundle;
 import android.os.Parcelable;
+import android.util.Log;
 import android.util.SparseArray;
+import android.view.View;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import io.github.mylittleswift.android_nfc_sdk.ultralight.AndroidUltralightPages;
+import io.github.mylittleswift.android_nfc_sdk.ultralight.UltralightDump;
+import io.github.mylittleswift.android_nfc_sdk.ultralight.UltralightPages;
+
+import io.github.mylittleswift.nfc_codec.NdefRecordView;
+import io.github.mylittleswift.nfc_codec.NdefText;
+import io.github.mylittleswift.nfc_codec.NdefUri;
+
+import io.github.mylittleswift.nfc_session.SessionResult;
+import io.github.mylittleswift.nfc_session.SpanTracer;
+import io.github.mylittleswift.nfc_session.TagSessionExecutor;
+
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.concurrent.Executor;
 
 
 
 public class TagReader extends Activity {
+
+    private static final String TAG = "TagReader";
+
+    /**
+     * Boolean extra: also read every MifareUltralight tag page by page and show how that
+     * compares to FAST_READ. Off by default, as it reads the tag twice.
+     */
+    public static final String EXTRA_COMPARE_READS = "io.github.mylittleswift.android_nfc_sdk.COMPARE_READS";
+
+    /** Sessions waiting for the I/O thread; a tap on a busy reader replaces the oldest. */
+    private static final int QUEUED_TAPS = 2;
+
+    // stages of a tap traced by mTracer
+    private static final int STAGE_QUEUE = 0;
+    private static final int STAGE_READ = 1;
+    private static final int STAGE_NDEF = 2;
+    private static final int STAGE_ULTRALIGHT = 3;
+    private static final int STAGE_DUMP = 4;
+    private static final int STAGE_BARCODE = 5;
+    private static final int STAGE_SHOW = 6;
+    private static final int STAGE_TOTAL = 7;
+    private static final String[] STAGES = {
+            "queue", "read", "ndef", "ultralight", "dump", "barcode", "show", "total",
+    };
+    private static final int TRACED_SPANS = 1024;
+
+    /** Where a long press on the reading dumps the trace, in the app's external files. */
+    private static final String TRACE_FILE = "tagreader-trace.txt";
+
     private TextView mNfcText;
-    private String mTagText;
     Activity mActivity;
+    private TagSessionExecutor mSessions;
+    private boolean mCompareReads;
+    private final SpanTracer mTracer = new SpanTracer(STAGES, TRACED_SPANS);
+
+    /** What one tap read, built on the I/O thread and shown on the UI thread. */
+    private static final class Reading {
+        final String mText;
+        /** shown as a toast, null for none */
+        final String mToast;
+        /** how the Ultralight memory was read, null if not dumped */
+        final String mDump;
+
+        Reading(String text, String toast, String dump) {
+            mText = text;
+            mToast = toast;
+            mDump = dump;
+        }
+    }
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
         mNfcText = (TextView) findViewById(R.id.tagReader);
+        mCompareReads = getIntent().getBooleanExtra(EXTRA_COMPARE_READS, false);
+        mSessions = new TagSessionExecutor("TagReader-io", QUEUED_TAPS, TagSessionExecutor.POLICY_DROP_OLDEST,
+                new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        runOnUiThread(command);
+                    }
+                });
+        mNfcText.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                dumpTrace();
+                return true;
+            }
+        });
     }
 
+    /** Writes the tap trace to {@link #TRACE_FILE}, off the main thread. */
+    private void dumpTrace() {
+        File dir = getExternalFilesDir(null);
+        final File file = new File(dir != null ? dir : getFilesDir(), TRACE_FILE);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+                    try {
+                        out.write("# sessions " + mSessions.getMetrics().format() + "\n");
+                        mTracer.dump(out);
+                    } finally {
+                        out.close();
+                    }
+                    Log.i(TAG, "Trace dumped to " + file);
+                } catch (IOException e) {
+                    Log.e(TAG, "Cannot dump the trace to " + file, e);
+                }
+            }
+        }, "TagReader-trace").start();
+    }
+
+    @Override
+    protected void onDestroy() {
+        mSessions.shutdown();
+        super.onDestroy();
+    }
+
+    /** Reads the tag on the I/O thread; see {@link #read(Intent, Tag)}. */
     @Override
-    public void onNewIntent(Intent intent) {
-        Tag detectedTag = intent.getParcelableExtra(NfcAdapter.EXTRA_TAG);
+    public void onNewIntent(final Intent intent) {
+        final Tag detectedTag = intent.getParcelableExtra(NfcAdapter.EXTRA_TAG);
+        if (detectedTag == null) {
+            return;
+        }
+        final long tap = mTracer.newTap();
+        final long received = System.nanoTime();
+        mSessions.submit(detectedTag.getId(), new TagSessionExecutor.Task<Reading>() {
+            @Override
+            public Reading run() {
+                return read(intent, detectedTag, tap);
+            }
+        }, new TagSessionExecutor.Callback<Reading>() {
+            @Override
+            public void onResult(SessionResult<Reading> result) {
+                long start = System.nanoTime();
+                mTracer.record(STAGE_QUEUE, tap, received, result.getQueueNanos());
+                mTracer.record(STAGE_READ, tap, received + result.getQueueNanos(), result.getIoNanos());
+                show(result);
+                mTracer.span(STAGE_SHOW, tap, start);
+                mTracer.span(STAGE_TOTAL, tap, received);
+            }
+        });
+    }
+
+    private void show(SessionResult<Reading> result) {
+        if (!result.isDone()) {
+            if (result.getOutcome() == SessionResult.OUTCOME_FAILED) {
+                Log.w(TAG, "Cannot read tag", result.getError());
+            }
+            return;
+        }
+        Reading reading = result.getValue();
+        mNfcText.setText(reading.mText);
+        if (reading.mToast != null) {
+            Toast.makeText(this, reading.mToast, Toast.LENGTH_SHORT).show();
+        }
+        if (reading.mDump != null) {
+            mNfcText.append("\n\n" + reading.mDump);
+        }
+    }
+
+    /** Everything read from one tap, on the I/O thread. */
+    private Reading read(Intent intent, Tag detectedTag, long tap) {
+        long start = System.nanoTime();
+        StringBuilder text = new StringBuilder();
         Ndef ndef = Ndef.get(detectedTag);
-        mTagText = ndef.getType() + "\nmaxsize:" + ndef.getMaxSize() + "bytes\n\n";
-        readNfcTag(intent);
-        mNfcText.setText(mTagText);
+        if (ndef != null) {
+            text.append(ndef.getType()).append("\nmaxsize:").append(ndef.getMaxSize()).append("bytes\n\n");
+        }
+        readNfcTag(intent, text);
+        mTracer.span(STAGE_NDEF, tap, start);
 
 
         //read MifareUltralight tag
@@ -86,49 +242,64 @@ public class TagReader extends Activity {
             }
         }
         if (!haveMifareUltralight) {
-            Toast.makeText(this, "MifareUltralight Not Supported", Toast.LENGTH_SHORT).show();
-            return;
+            return new Reading(text.toString(), "MifareUltralight Not Supported", null);
+        }
+        // the whole memory in one connection, which also holds the pages readMUTag reads
+        start = System.nanoTime();
+        UltralightDump dump = dumpMUTag(detectedTag);
+        String data = dump != null ? pagesText(dump, 4) : readMUTag(detectedTag);
+        mTracer.span(STAGE_ULTRALIGHT, tap, start);
+        String described = dump != null ? dump.toString() : null;
+        if (mCompareReads) {
+            start = System.nanoTime();
+            described = compareMUTag(detectedTag);
+            mTracer.span(STAGE_DUMP, tap, start);
         }
-        String data = readMUTag(detectedTag);
-        if (data != null)
-            Toast.makeText(this, data, Toast.LENGTH_SHORT).show();
 
 
+        start = System.nanoTime();
         String barcode = readNfcBarcode(detectedTag);
+        mTracer.span(STAGE_BARCODE, tap, start);
         if (barcode != null) {
             readNfcBarcode(detectedTag);
 
         }
-
+        return new Reading(text.toString(), data, described);
     }
 
 
 
-    private void readNfcTag(Intent intent) {
+    private static void readNfcTag(Intent intent, StringBuilder text) {
         if (NfcAdapter.ACTION_NDEF_DISCOVERED.equals(intent.getAction())) {
             Parcelable[] rawMsgs = intent.getParcelableArrayExtra(
                     NfcAdapter.EXTRA_NDEF_MESSAGES);
             NdefMessage msgs[] = null;
+            byte[] first = null;
             int contentSize = 0;
             if (rawMsgs != null) {
                 msgs = new NdefMessage[rawMsgs.length];
                 for (int i = 0; i < rawMsgs.length; i++) {
                     msgs[i] = (NdefMessage) rawMsgs[i];
-                    contentSize += msgs[i].toByteArray().length;
+                    byte[] bytes = msgs[i].toByteArray();
+                    if (i == 0) {
+                        first = bytes;
+                    }
+                    contentSize += bytes.length;
                 }
             }
-            try {
-                if (msgs != null) {
-                    NdefRecord record = msgs[0].getRecords()[0];
-                    String textRecord = parseTextRecord(record);
-                    mTagText += textRecord + "\n\ntext\n" + contentSize + " bytes";
-                }
-                if (msgs != null) {
-                    NdefRecord ndefRecord = msgs[0].getRecords()[0];
-                    Uri uri = parse(ndefRecord);
-                    mTagText += uri.toString() + "\n\nUri\n" + contentSize + " bytes";
+            if (first != null) {
+                // decode the first record in place rather than through NdefRecord copies
+                NdefRecordView record = new NdefRecordView().wrap(ByteBuffer.wrap(first));
+                if (record.next()) {
+                    String textRecord = NdefText.decode(record);
+                    if (textRecord != null) {
+                        text.append(textRecord).append("\n\ntext\n").append(contentSize).append(" bytes");
+                    }
+                    String uri = NdefUri.decode(record);
+                    if (uri != null) {
+                        text.append(uri).append("\n\nUri\n").append(contentSize).append(" bytes");
+                    }
                 }
-            } catch (Exception e) {
             }
         }
     }
@@ -152,6 +323,66 @@ public class TagReader extends Activity {
     }
 
 
+    /** The four pages from {@code page} as readMUTag decodes them. */
+    private static String pagesText(UltralightDump dump, int page) {
+        byte[] image = dump.getImage();
+        return new String(image, page * UltralightPages.PAGE_SIZE, 4 * UltralightPages.PAGE_SIZE,
+                Charset.forName("GB2312"));
+    }
+
+    /**
+     * Dumps the whole user memory of a MifareUltralight tag, with FAST_READ where the chip
+     * supports it.
+     *
+     * @return the dump, or null if the tag could not be read
+     */
+    public UltralightDump dumpMUTag(Tag mutag) {
+        AndroidUltralightPages pages = AndroidUltralightPages.get(mutag);
+        if (pages == null) {
+            return null;
+        }
+        try {
+            pages.connect();
+            return UltralightDump.read(pages);
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot dump tag", e);
+        } finally {
+            try {
+                pages.close();
+            } catch (IOException e) {
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads a MifareUltralight tag with FAST_READ and again page by page, for
+     * {@link #EXTRA_COMPARE_READS}.
+     *
+     * @return the round trips and time both reads took, or null if the tag could not be read
+     */
+    public String compareMUTag(Tag mutag) {
+        AndroidUltralightPages pages = AndroidUltralightPages.get(mutag);
+        if (pages == null) {
+            return null;
+        }
+        try {
+            pages.connect();
+            String timing = UltralightDump.compare(pages);
+            Log.i(TAG, timing);
+            return timing;
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot compare reads", e);
+        } finally {
+            try {
+                pages.close();
+            } catch (IOException e) {
+            }
+        }
+        return null;
+    }
+
+
     private String readNfcBarcode(Tag tag) {
         byte[] result = null;
         NfcAdapter adapter = NfcAdapter.getDefaultAdapter(mActivity);
@@ -168,7 +399,8 @@ public class TagReader extends Activity {
 
 
 
-    private static String parseTextRecord(NdefRecord ndefRecord) {
+    // package-private for nfc_benchmark
+    static String parseTextRecord(NdefRecord ndefRecord) {
 
         if (ndefRecord.getTnf() != NdefRecord.TNF_WELL_KNOWN) {
             return null;
@@ -177,97 +409,24 @@ public class TagReader extends Activity {
         if (!Arrays.equals(ndefRecord.getType(), NdefRecord.RTD_TEXT)) {
             return null;
         }
-        try {
-
-            byte[] payload = ndefRecord.getPayload();
-            String textEncoding = ((payload[0] & 0x80) == 0) ? "UTF-8" : "UTF-16";
-
-            int languageCodeLength = payload[0] & 0x3f;
-
-            String languageCode = new String(payload, 1, languageCodeLength, "US-ASCII");
-
-            String textRecord = new String(payload, languageCodeLength + 1,
-                    payload.length - languageCodeLength - 1, textEncoding);
-            return textRecord;
-        } catch (Exception e) {
+        byte[] payload = ndefRecord.getPayload();
+        String textRecord = NdefText.decode(ByteBuffer.wrap(payload), 0, payload.length);
+        if (textRecord == null) {
             throw new IllegalArgumentException();
         }
+        return textRecord;
     }
 
 
 
-    private static Uri parse(NdefRecord record) {
-        short tnf = record.getTnf();
-        if (tnf == NdefRecord.TNF_WELL_KNOWN) {
-            return parseWellKnown(record);
-        } else if (tnf == NdefRecord.TNF_ABSOLUTE_URI) {
-            return parseAbsolute(record);
-        }
-        throw new IllegalArgumentException("Unknown TNF " + tnf);
-    }
-
-
-    private static Uri parseAbsolute(NdefRecord ndefRecord) {
-        byte[] payload = ndefRecord.getPayload();
-        Uri uri = Uri.parse(new String(payload, Charset.forName("UTF-8")));
-        return uri;
-    }
-
-
-    private static Uri parseWellKnown(NdefRecord ndefRecord) {
+    // package-private for nfc_benchmark
+    static Uri parseWellKnown(NdefRecord ndefRecord) {
         if (!Arrays.equals(ndefRecord.getType(), NdefRecord.RTD_URI))
             return null;
 
         byte[] payload = ndefRecord.getPayload();
-        String prefix = URI_PREFIX_MAP.get(payload[0]);
-        byte[] prefixBytes = prefix.getBytes(Charset.forName("UTF-8"));
-        byte[] fullUri = new byte[prefixBytes.length + payload.length - 1];
-        System.arraycopy(prefixBytes, 0, fullUri, 0, prefixBytes.length);
-        System.arraycopy(payload, 1, fullUri, prefixBytes.length, payload.length - 1);
-        Uri uri = Uri.parse(new String(fullUri, Charset.forName("UTF-8")));
-        return uri;
-    }
-
-
-    private static final Map<Byte, String> URI_PREFIX_MAP = new HashMap<>();
-
-    static {
-        URI_PREFIX_MAP.put((byte) 0x00, "");
-        URI_PREFIX_MAP.put((byte) 0x01, "http://www.");
-        URI_PREFIX_MAP.put((byte) 0x02, "https://www.");
-        URI_PREFIX_MAP.put((byte) 0x03, "http://");
-        URI_PREFIX_MAP.put((byte) 0x04, "https://");
-        URI_PREFIX_MAP.put((byte) 0x05, "tel:");
-        URI_PREFIX_MAP.put((byte) 0x06, "mailto:");
-        URI_PREFIX_MAP.put((byte) 0x07, "ftp://anonymous:anonymous@");
-        URI_PREFIX_MAP.put((byte) 0x08, "ftp://ftp.");
-        URI_PREFIX_MAP.put((byte) 0x09, "ftps://");
-        URI_PREFIX_MAP.put((byte) 0x0A, "sftp://");
-        URI_PREFIX_MAP.put((byte) 0x0B, "smb://");
-        URI_PREFIX_MAP.put((byte) 0x0C, "nfs://");
-        URI_PREFIX_MAP.put((byte) 0x0D, "ftp://");
-        URI_PREFIX_MAP.put((byte) 0x0E, "dav://");
-        URI_PREFIX_MAP.put((byte) 0x0F, "news:");
-        URI_PREFIX_MAP.put((byte) 0x10, "telnet://");
-        URI_PREFIX_MAP.put((byte) 0x11, "imap:");
-        URI_PREFIX_MAP.put((byte) 0x12, "rtsp://");
-        URI_PREFIX_MAP.put((byte) 0x13, "urn:");
-        URI_PREFIX_MAP.put((byte) 0x14, "pop:");
-        URI_PREFIX_MAP.put((byte) 0x15, "sip:");
-        URI_PREFIX_MAP.put((byte) 0x16, "sips:");
-        URI_PREFIX_MAP.put((byte) 0x17, "tftp:");
-        URI_PREFIX_MAP.put((byte) 0x18, "btspp://");
-        URI_PREFIX_MAP.put((byte) 0x19, "btl2cap://");
-        URI_PREFIX_MAP.put((byte) 0x1A, "btgoep://");
-        URI_PREFIX_MAP.put((byte) 0x1B, "tcpobex://");
-        URI_PREFIX_MAP.put((byte) 0x1C, "irdaobex://");
-        URI_PREFIX_MAP.put((byte) 0x1D, "file://");
-        URI_PREFIX_MAP.put((byte) 0x1E, "urn:epc:id:");
-        URI_PREFIX_MAP.put((byte) 0x1F, "urn:epc:tag:");
-        URI_PREFIX_MAP.put((byte) 0x20, "urn:epc:pat:");
-        URI_PREFIX_MAP.put((byte) 0x21, "urn:epc:raw:");
-        URI_PREFIX_MAP.put((byte) 0x22, "urn:epc:");
-        URI_PREFIX_MAP.put((byte) 0x23, "urn:nfc:");
+        String uri = NdefUri.decode(ByteBuffer.wrap(payload), 0, payload.length);
+        return uri == null ? null : Uri.parse(uri);
     }
 
 
@@ -287,7 +446,8 @@ public class TagReader extends Activity {
     }
 
 
-    private static Uri decodeUri(byte[] tagId) throws IOException {
+    // package-private for nfc_benchmark
+    static Uri decodeUri(byte[] tagId) throws IOException {
         final byte URI_PREFIX_HTTP_WWW = (byte) 0x01; // "http://www."
         final byte URI_PREFIX_HTTPS_WWW = (byte) 0x02; // "https://www."
         final byte URI_PREFIX_HTTP = (byte) 0x03; // "http://"
@@ -327,16 +487,7 @@ public class TagReader extends Activity {
             byte[] payload = new byte[end - 2]; // Skip two bytes (manufacturer ID, uri prefix code)
             System.arraycopy(tagId, 2, payload, 0, payload.length);
 
-            String uriPrefix = null;
-            if (tagId[1] == URI_PREFIX_HTTP_WWW) {
-                uriPrefix = "http://www.";
-            } else if (tagId[1] == URI_PREFIX_HTTPS_WWW) {
-                uriPrefix = "https://www.";
-            } else if (tagId[1] == URI_PREFIX_HTTP) {
-                uriPrefix = "http://";
-            } else if (tagId[1] == URI_PREFIX_HTTPS) {
-                uriPrefix = "https://";
-            }
+            String uriPrefix = NdefUri.prefix(tagId[1]);
 
             try {
                 return Uri.parse(new URL(uriPrefix + new String(payload, "US-ASCII")).toString());
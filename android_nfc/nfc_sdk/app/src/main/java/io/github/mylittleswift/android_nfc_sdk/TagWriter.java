@@ -6,15 +6,32 @@ import android.nfc.NdefMessage;
 import android.nfc.NdefRecord;
 import android.nfc.NfcAdapter;
 import android.nfc.Tag;
-import android.nfc.tech.Ndef;
-import android.nfc.tech.NdefFormatable;
 import android.os.Bundle;
+import android.os.Handler;
+import android.util.Log;
+import android.view.View;
+import android.widget.TextView;
 import android.widget.Toast;
 
-import java.nio.charset.Charset;
-import java.util.HashMap;
+import io.github.mylittleswift.android_nfc_sdk.provision.BatchProvisioner;
+import io.github.mylittleswift.android_nfc_sdk.provision.ProvisioningBatch;
+import io.github.mylittleswift.android_nfc_sdk.ultralight.UltralightNdefConnection;
+import io.github.mylittleswift.android_nfc_sdk.write.AndroidNdefConnection;
+import io.github.mylittleswift.android_nfc_sdk.write.DifferentialWriter;
+import io.github.mylittleswift.android_nfc_sdk.write.NdefConnection;
+import io.github.mylittleswift.android_nfc_sdk.write.NdefWriteTransaction;
+import io.github.mylittleswift.android_nfc_sdk.write.WriteResult;
+
+import io.github.mylittleswift.nfc_codec.NdefText;
+import io.github.mylittleswift.nfc_codec.NdefUri;
+import io.github.mylittleswift.nfc_session.SessionResult;
+import io.github.mylittleswift.nfc_session.TagSessionExecutor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Locale;
-import java.util.Map;
+import java.util.concurrent.Executor;
 
 /**
  * NFC tags are based on a number of independently developed technologies and
@@ -45,30 +62,233 @@ import java.util.Map;
 
 
 public class TagWriter extends Activity {
+
+    private static final String TAG = "TagWriter";
+
+    /**
+     * Path of a {@link ProvisioningBatch} file to provision tags from, one message per tag.
+     * Assignments are logged next to it, in the same path with ".log" appended.
+     */
+    public static final String EXTRA_BATCH_FILE = "io.github.mylittleswift.android_nfc_sdk.BATCH_FILE";
+
+    /** Whether batch mode reads every tag back after writing it, true by default. */
+    public static final String EXTRA_VERIFY = "io.github.mylittleswift.android_nfc_sdk.VERIFY";
+
+    private static final long READOUT_INTERVAL_MILLIS = 1000;
+
+    /** How long a tag just written is trusted to still hold its message when tapped again. */
+    private static final long REWRITE_AFTER_MILLIS = 30 * 1000;
+    private static final int REMEMBERED_TAGS = 64;
+    /** Taps waiting behind the one being written; older ones are dropped. */
+    private static final int QUEUED_TAPS = 2;
+
     private String mPackageName = "com.android.mms";
     private String mUri = "https://...";
 
+    /** batch mode: null until the batch is loaded */
+    private BatchProvisioner mProvisioner;
+    private boolean mVerifyBatch;
+    private final DifferentialWriter mWriter = new DifferentialWriter(REWRITE_AFTER_MILLIS, REMEMBERED_TAGS);
+    private TagSessionExecutor mSessions;
+    private TextView mReadout;
+    private final Handler mHandler = new Handler();
+    private final Runnable mUpdateReadout = new Runnable() {
+        @Override
+        public void run() {
+            updateReadout();
+            mHandler.postDelayed(this, READOUT_INTERVAL_MILLIS);
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+        mReadout = (TextView) findViewById(R.id.tagWriter);
+        // the session outcomes and times, on demand rather than on every tap
+        mReadout.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                String metrics = mSessions.getMetrics().format();
+                Log.i(TAG, metrics);
+                Toast.makeText(TagWriter.this, metrics, Toast.LENGTH_LONG).show();
+                return true;
+            }
+        });
+        mSessions = new TagSessionExecutor("TagWriter-io", QUEUED_TAPS, TagSessionExecutor.POLICY_DROP_OLDEST,
+                new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        runOnUiThread(command);
+                    }
+                });
+        final String batch = getIntent().getStringExtra(EXTRA_BATCH_FILE);
+        mVerifyBatch = getIntent().getBooleanExtra(EXTRA_VERIFY, true);
+        if (batch != null) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    loadBatch(new File(batch));
+                }
+            }, "TagWriter-load").start();
+        }
+    }
+
+    /** Reads and checks the encoded batch, off the main thread. */
+    private void loadBatch(File batch) {
+        try {
+            final BatchProvisioner provisioner = BatchProvisioner.open(batch, new File(batch.getPath() + ".log"));
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    mProvisioner = provisioner;
+                    updateReadout();
+                }
+            });
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot load batch " + batch, e);
+        }
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+        mHandler.post(mUpdateReadout);
+    }
+
+    @Override
+    protected void onPause() {
+        mHandler.removeCallbacks(mUpdateReadout);
+        super.onPause();
+    }
+
+    @Override
+    protected void onDestroy() {
+        mSessions.shutdown();
+        if (mProvisioner != null) {
+            try {
+                mProvisioner.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot close the batch log", e);
+            }
+        }
+        super.onDestroy();
+    }
+
+    /** Writes the tag on the I/O thread, the next message of the batch in batch mode. */
     @Override
     public void onNewIntent(Intent intent) {
+        final Tag detectedTag = intent.getParcelableExtra(NfcAdapter.EXTRA_TAG);
+        if (detectedTag == null) {
+            return;
+        }
+        final BatchProvisioner provisioner = mProvisioner;
+        if (provisioner != null) {
+            mSessions.submit(detectedTag.getId(), new TagSessionExecutor.Task<WriteResult>() {
+                @Override
+                public WriteResult run() {
+                    return provision(provisioner, detectedTag);
+                }
+            }, new TagSessionExecutor.Callback<WriteResult>() {
+                @Override
+                public void onResult(SessionResult<WriteResult> result) {
+                    showProvisioned(result);
+                }
+            });
+            return;
+        }
         if (mPackageName == null)
             return;
 
-        Tag detectedTag = intent.getParcelableExtra(NfcAdapter.EXTRA_TAG);
-        writeNFCTag(detectedTag);
+        // the URI and the application record in one message, written over one connection
+        final NdefMessage ndefMessage = new NdefMessage(new NdefRecord[]{createUriRecord(mUri),
+                NdefRecord.createApplicationRecord(mPackageName)});
+        mSessions.submit(detectedTag.getId(), new TagSessionExecutor.Task<WriteResult>() {
+            @Override
+            public WriteResult run() {
+                return mWriter.write(detectedTag.getId(), connection(detectedTag),
+                        ndefMessage.toByteArray(), false, System.currentTimeMillis());
+            }
+        }, new TagSessionExecutor.Callback<WriteResult>() {
+            @Override
+            public void onResult(SessionResult<WriteResult> result) {
+                showWritten(result);
+            }
+        });
+    }
 
-        NdefMessage ndefMessage = new NdefMessage(new NdefRecord[]{createUriRecord(mUri)});
-        boolean result = writeTag(ndefMessage, detectedTag);
-        if (result) {
+    private void showWritten(SessionResult<WriteResult> session) {
+        if (!session.isDone()) {
+            if (session.getOutcome() == SessionResult.OUTCOME_FAILED) {
+                Log.w(TAG, "Cannot write tag", session.getError());
+            }
+            return;
+        }
+        WriteResult result = session.getValue();
+        if (result.isWritten()) {
             Toast.makeText(this, "写入成功", Toast.LENGTH_SHORT).show();
+        } else if (result.isSkipped()) {
+            Toast.makeText(this, "内容相同，无需写入", Toast.LENGTH_SHORT).show();
         } else {
-            Toast.makeText(this, "写入失败", Toast.LENGTH_SHORT).show();
+            Log.w(TAG, "Write failed: " + result);
+            Toast.makeText(this, "写入失败: " + result.getStatusName(), Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    /**
+     * Batch mode, on the I/O thread: writes the next message of the batch to {@code tag},
+     * unless it holds it already, and logs the outcome. A tag which already got a message
+     * in this run, e.g. tapped twice, keeps it and uses up nothing.
+     *
+     * @return the outcome, or null if nothing was written because the tag was provisioned
+     *         before or the batch is complete
+     */
+    private WriteResult provision(BatchProvisioner provisioner, Tag tag) {
+        int previous = provisioner.getProvisioned(tag.getId());
+        if (previous >= 0) {
+            try {
+                provisioner.recordRepeated(tag.getId(), System.currentTimeMillis());
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot log message " + previous, e);
+            }
+            return null;
+        }
+        if (provisioner.isDone()) {
+            return null;
+        }
+        int index = provisioner.getNext();
+        WriteResult result = mWriter.write(tag.getId(), connection(tag),
+                provisioner.getBatch().get(index), mVerifyBatch, System.currentTimeMillis());
+        try {
+            if (result.isWritten()) {
+                provisioner.recordWritten(index, tag.getId(), System.currentTimeMillis());
+            } else if (result.isSkipped()) {
+                provisioner.recordSkipped(index, tag.getId(), System.currentTimeMillis());
+            } else {
+                provisioner.recordFailed(index, tag.getId(), result.getStatusName(), System.currentTimeMillis());
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot log message " + index, e);
+        }
+        return result;
+    }
+
+    private void showProvisioned(SessionResult<WriteResult> session) {
+        if (session.getOutcome() == SessionResult.OUTCOME_FAILED) {
+            Log.w(TAG, "Cannot provision tag", session.getError());
+        } else if (session.isDone() && session.getValue() == null) {
+            Toast.makeText(this, mProvisioner.isDone() ? "Batch complete" : "Tag already provisioned",
+                    Toast.LENGTH_SHORT).show();
+        }
+        updateReadout();
+    }
+
+    private void updateReadout() {
+        if (mProvisioner == null) {
+            return;
         }
+        mReadout.setText(mProvisioner.getNext() + " / " + mProvisioner.size() + "\n"
+                + mProvisioner.getStats().format(System.currentTimeMillis()));
     }
 
 
@@ -78,51 +298,23 @@ public class TagWriter extends Activity {
         }
         NdefMessage ndefMessage = new NdefMessage(new NdefRecord[]{NdefRecord
                 .createApplicationRecord(mPackageName)});
-
-        int size = ndefMessage.toByteArray().length;
-        try {
-            Ndef ndef = Ndef.get(tag);
-            if (ndef != null) {
-                ndef.connect();
-                if (!ndef.isWritable()) {
-                    return;
-                }
-                if (ndef.getMaxSize() < size) {
-                    return;
-                }
-                ndef.writeNdefMessage(ndefMessage);
-                Toast.makeText(this, "写入成功", Toast.LENGTH_SHORT).show();
-            } else {
-                NdefFormatable format = NdefFormatable.get(tag);
-                if (format != null) {
-                    format.connect();
-                    format.format(ndefMessage);
-                    Toast.makeText(this, "写入成功", Toast.LENGTH_SHORT).show();
-                } else {
-                    Toast.makeText(this, "写入失败", Toast.LENGTH_SHORT).show();
-                }
-            }
-        } catch (Exception e) {
+        WriteResult result = write(tag, ndefMessage, false);
+        if (result.isWritten()) {
+            Toast.makeText(this, "写入成功", Toast.LENGTH_SHORT).show();
+        } else {
+            Toast.makeText(this, "写入失败", Toast.LENGTH_SHORT).show();
         }
     }
 
 
 
+    /**
+     * Returns a well-known URI record abbreviated with the longest matching URI identifier
+     * code, the rest of the URI in UTF-8.
+     */
     public static NdefRecord createUriRecord(String uriStr) {
-        byte prefix = 0;
-        for (Byte b : URI_PREFIX_MAP.keySet()) {
-            String prefixStr = URI_PREFIX_MAP.get(b).toLowerCase();
-            if ("".equals(prefixStr))
-                continue;
-            if (uriStr.toLowerCase().startsWith(prefixStr)) {
-                prefix = b;
-                uriStr = uriStr.substring(prefixStr.length());
-                break;
-            }
-        }
-        byte[] data = new byte[1 + uriStr.length()];
-        data[0] = prefix;
-        System.arraycopy(uriStr.getBytes(), 0, data, 1, uriStr.length());
+        byte[] data = new byte[NdefUri.payloadLength(uriStr)];
+        NdefUri.writePayload(ByteBuffer.wrap(data), uriStr);
         NdefRecord record = new NdefRecord(NdefRecord.TNF_WELL_KNOWN, NdefRecord.RTD_URI, new byte[0], data);
         return record;
     }
@@ -130,15 +322,9 @@ public class TagWriter extends Activity {
 
 
     public static NdefRecord createTextRecord(String text) {
-        byte[] langBytes = Locale.CHINA.getLanguage().getBytes(Charset.forName("US-ASCII"));
-        Charset utfEncoding = Charset.forName("UTF-8");
-        byte[] textBytes = text.getBytes(utfEncoding);
-        int utfBit = 0;
-        char status = (char) (utfBit + langBytes.length);
-        byte[] data = new byte[1 + langBytes.length + textBytes.length];
-        data[0] = (byte) status;
-        System.arraycopy(langBytes, 0, data, 1, langBytes.length);
-        System.arraycopy(textBytes, 0, data, 1 + langBytes.length, textBytes.length);
+        String language = Locale.CHINA.getLanguage();
+        byte[] data = new byte[NdefText.payloadLength(language, text, true)];
+        NdefText.writePayload(ByteBuffer.wrap(data), language, text, true);
         NdefRecord ndefRecord = new NdefRecord(NdefRecord.TNF_WELL_KNOWN,
                 NdefRecord.RTD_TEXT, new byte[0], data);
         return ndefRecord;
@@ -147,66 +333,33 @@ public class TagWriter extends Activity {
 
 
 
+    /**
+     * Writes {@code message} to {@code tag} unless the tag was discovered holding it already.
+     *
+     * @return whether the tag now holds {@code message}
+     */
     public static boolean writeTag(NdefMessage message, Tag tag) {
-        int size = message.toByteArray().length;
-        try {
-            Ndef ndef = Ndef.get(tag);
-            if (ndef != null) {
-                ndef.connect();
-                if (!ndef.isWritable()) {
-                    return false;
-                }
-                if (ndef.getMaxSize() < size) {
-                    return false;
-                }
-                ndef.writeNdefMessage(message);
-                return true;
-            }
-        } catch (Exception e) {
-        }
-        return false;
-    }
-
-
-
-    private static final Map<Byte, String> URI_PREFIX_MAP = new HashMap<Byte, String>();
-
-    static {
-        URI_PREFIX_MAP.put((byte) 0x00, "");
-        URI_PREFIX_MAP.put((byte) 0x01, "http://www.");
-        URI_PREFIX_MAP.put((byte) 0x02, "https://www.");
-        URI_PREFIX_MAP.put((byte) 0x03, "http://");
-        URI_PREFIX_MAP.put((byte) 0x04, "https://");
-        URI_PREFIX_MAP.put((byte) 0x05, "tel:");
-        URI_PREFIX_MAP.put((byte) 0x06, "mailto:");
-        URI_PREFIX_MAP.put((byte) 0x07, "ftp://anonymous:anonymous@");
-        URI_PREFIX_MAP.put((byte) 0x08, "ftp://ftp.");
-        URI_PREFIX_MAP.put((byte) 0x09, "ftps://");
-        URI_PREFIX_MAP.put((byte) 0x0A, "sftp://");
-        URI_PREFIX_MAP.put((byte) 0x0B, "smb://");
-        URI_PREFIX_MAP.put((byte) 0x0C, "nfs://");
-        URI_PREFIX_MAP.put((byte) 0x0D, "ftp://");
-        URI_PREFIX_MAP.put((byte) 0x0E, "dav://");
-        URI_PREFIX_MAP.put((byte) 0x0F, "news:");
-        URI_PREFIX_MAP.put((byte) 0x10, "telnet://");
-        URI_PREFIX_MAP.put((byte) 0x11, "imap:");
-        URI_PREFIX_MAP.put((byte) 0x12, "rtsp://");
-        URI_PREFIX_MAP.put((byte) 0x13, "urn:");
-        URI_PREFIX_MAP.put((byte) 0x14, "pop:");
-        URI_PREFIX_MAP.put((byte) 0x15, "sip:");
-        URI_PREFIX_MAP.put((byte) 0x16, "sips:");
-        URI_PREFIX_MAP.put((byte) 0x17, "tftp:");
-        URI_PREFIX_MAP.put((byte) 0x18, "btspp://");
-        URI_PREFIX_MAP.put((byte) 0x19, "btl2cap://");
-        URI_PREFIX_MAP.put((byte) 0x1A, "btgoep://");
-        URI_PREFIX_MAP.put((byte) 0x1B, "tcpobex://");
-        URI_PREFIX_MAP.put((byte) 0x1C, "irdaobex://");
-        URI_PREFIX_MAP.put((byte) 0x1D, "file://");
-        URI_PREFIX_MAP.put((byte) 0x1E, "urn:epc:id:");
-        URI_PREFIX_MAP.put((byte) 0x1F, "urn:epc:tag:");
-        URI_PREFIX_MAP.put((byte) 0x20, "urn:epc:pat:");
-        URI_PREFIX_MAP.put((byte) 0x21, "urn:epc:raw:");
-        URI_PREFIX_MAP.put((byte) 0x22, "urn:epc:");
-        URI_PREFIX_MAP.put((byte) 0x23, "urn:nfc:");
+        WriteResult result = NdefWriteTransaction.writeIfChanged(connection(tag),
+                message.toByteArray(), false);
+        return result.isWritten() || result.isSkipped();
+    }
+
+    /**
+     * Writes {@code message} to {@code tag} over a single connection, formatting a blank tag,
+     * and closes it again; see {@link NdefWriteTransaction}.
+     *
+     * @param verify read the message back and compare
+     */
+    public static WriteResult write(Tag tag, NdefMessage message, boolean verify) {
+        return NdefWriteTransaction.write(connection(tag), message.toByteArray(), verify);
+    }
+
+    /**
+     * Returns a connection writing only the changed pages to an Ultralight or NTAG, and a
+     * whole-message connection to other tags; null if the tag supports no NDEF technology.
+     */
+    private static NdefConnection connection(Tag tag) {
+        NdefConnection ultralight = UltralightNdefConnection.get(tag);
+        return ultralight != null ? ultralight : AndroidNdefConnection.get(tag);
     }
 }
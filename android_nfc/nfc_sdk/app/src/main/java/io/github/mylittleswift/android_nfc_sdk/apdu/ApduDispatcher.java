@@ -0,0 +1,205 @@
+package io.github.mylittleswift.android_nfc_sdk.apdu;
+
+import java.util.concurrent.Executor;
+
+/**
+ * The command logic of a card emulation service, without the Android service around it:
+ * {@code CardEmulation} forwards {@code processCommandApdu} and {@code onDeactivated} here,
+ * and tests drive it directly.
+ *
+ * Until a profile is {@link #publish published}, the last command received is kept and
+ * answered through {@link Callback#sendResponseApdu(byte[])} once it is. Stateful rules are
+ * matched in the current {@link ApduSession} state; fixed responses are returned inline,
+ * handler responses are computed on the worker and sent through the callback unless the
+ * session ended meanwhile. Every command and deactivation is recorded in the
+ * {@link ApduMetrics}.
+ */
+public final class ApduDispatcher {
+
+    /** "The request function is not supported by the card." */
+    private static final byte[] SW_FUNC_NOT_SUPPORTED = {0x68, 0x00};
+
+    /** What the dispatcher needs from the service. */
+    public interface Callback {
+
+        /** Sends a response for a command {@link #processCommandApdu} returned null for. */
+        void sendResponseApdu(byte[] response);
+
+        /**
+         * Computes the response of a rule naming {@code handler}, on the worker thread.
+         *
+         * @param fixed the response given in the profile, empty if none
+         * @return the response, null for 6800
+         */
+        byte[] computeResponse(String handler, byte[] apdu, byte[] fixed, ApduSession session);
+    }
+
+    private final Callback mCallback;
+    private final Executor mWorker;
+    private final ApduMetrics mMetrics;
+    private final ApduSession mSession = new ApduSession();
+
+    private final Object mLoadLock = new Object();
+
+    /** null until the profile has been published */
+    private volatile SessionProfile mProfile;
+
+    /** APDU received before the profile was published and when, guarded by mLoadLock */
+    private byte[] mPendingApdu;
+    private long mPendingNanos;
+
+    public ApduDispatcher(Callback callback, Executor worker, ApduMetrics metrics) {
+        mCallback = callback;
+        mWorker = worker;
+        mMetrics = metrics;
+    }
+
+    /** Starts answering with {@code profile}, beginning with a command left waiting for it. */
+    public void publish(SessionProfile profile) {
+        byte[] pending;
+        long received;
+        synchronized (mLoadLock) {
+            mProfile = profile;
+            pending = mPendingApdu;
+            received = mPendingNanos;
+            mPendingApdu = null;
+        }
+        if (pending != null) {
+            byte[] response = dispatch(profile, pending, received);
+            if (response != null) {
+                mCallback.sendResponseApdu(response);
+                mMetrics.recordCommand(ins(pending), System.nanoTime() - received, ApduMetrics.OUTCOME_DEFERRED);
+            }
+        }
+    }
+
+    public boolean isLoaded() {
+        return mProfile != null;
+    }
+
+    public ApduSession getSession() {
+        return mSession;
+    }
+
+    /**
+     * Returns the response to {@code apdu}, or null if it will be sent through the callback.
+     */
+    public byte[] processCommandApdu(byte[] apdu) {
+        long received = System.nanoTime();
+        // is initialized?
+        SessionProfile profile = mProfile;
+        if (profile == null) {
+            synchronized (mLoadLock) {
+                profile = mProfile;
+                if (profile == null) {
+                    // answered by publish()
+                    mPendingApdu = apdu;
+                    mPendingNanos = received;
+                    return null;
+                }
+            }
+        }
+        int rule = match(profile, apdu);
+        if (rule >= 0) {
+            byte[] response = applyRule(profile, rule, apdu, received);
+            if (response != null) {
+                mMetrics.recordCommand(ins(apdu), System.nanoTime() - received, ApduMetrics.OUTCOME_HIT);
+            }
+            return response;
+        }
+        byte[] response = profile.getProfile().lookup(apdu);
+        mMetrics.recordCommand(ins(apdu), System.nanoTime() - received,
+                response != null ? ApduMetrics.OUTCOME_HIT : ApduMetrics.OUTCOME_MISS);
+        return response != null ? response : SW_FUNC_NOT_SUPPORTED;
+    }
+
+    public void onDeactivated(int reason) {
+        mMetrics.recordDeactivation(reason);
+        synchronized (mLoadLock) {
+            mPendingApdu = null;
+        }
+        // a handler still running for this session will see the new generation and not answer
+        synchronized (mSession) {
+            mSession.reset();
+        }
+    }
+
+    /** Returns the response to {@code apdu}, or null if it was handed to the worker. */
+    private byte[] dispatch(SessionProfile profile, byte[] apdu, long received) {
+        int rule = match(profile, apdu);
+        if (rule >= 0) {
+            return applyRule(profile, rule, apdu, received);
+        }
+        byte[] response = profile.getProfile().lookup(apdu);
+        // command not supported by json file
+        return response != null ? response : SW_FUNC_NOT_SUPPORTED;
+    }
+
+    /** The stateful rule matching {@code apdu} in the current state, or -1 to use the table. */
+    private int match(SessionProfile profile, byte[] apdu) {
+        return profile.isStateful() ? profile.match(mSession.getState(), apdu) : -1;
+    }
+
+    /** Returns the fixed response of a matched rule, or null once its handler is queued. */
+    private byte[] applyRule(SessionProfile profile, int rule, byte[] apdu, long received) {
+        ApduRule matched = profile.getRule(rule);
+        int next = profile.getNextState(rule);
+        if (matched.getHandler() == null) {
+            if (next != SessionProfile.STAY) {
+                mSession.setState(next);
+            }
+            return matched.getResponse();
+        }
+        mWorker.execute(new HandlerTask(matched, next, apdu, received, mSession.getGeneration()));
+        return null;
+    }
+
+    private final class HandlerTask implements Runnable {
+        private final ApduRule mRule;
+        private final int mNext;
+        private final byte[] mApdu;
+        private final long mReceived;
+        private final int mGeneration;
+
+        HandlerTask(ApduRule rule, int next, byte[] apdu, long received, int generation) {
+            mRule = rule;
+            mNext = next;
+            mApdu = apdu;
+            mReceived = received;
+            mGeneration = generation;
+        }
+
+        @Override
+        public void run() {
+            byte[] response;
+            try {
+                response = mCallback.computeResponse(mRule.getHandler(), mApdu, mRule.getResponse(), mSession);
+            } catch (RuntimeException e) {
+                response = null;
+            }
+            if (response == null) {
+                response = SW_FUNC_NOT_SUPPORTED;
+            }
+            synchronized (mSession) {
+                if (mSession.getGeneration() != mGeneration) {
+                    // the reader went away, this answer is for nobody
+                    return;
+                }
+                if (mNext != SessionProfile.STAY && isSuccess(response)) {
+                    mSession.setState(mNext);
+                }
+                mCallback.sendResponseApdu(response);
+            }
+            mMetrics.recordCommand(ins(mApdu), System.nanoTime() - mReceived, ApduMetrics.OUTCOME_COMPUTED);
+        }
+    }
+
+    private static int ins(byte[] apdu) {
+        return apdu.length > 1 ? apdu[1] : 0;
+    }
+
+    private static boolean isSuccess(byte[] response) {
+        int length = response.length;
+        return length >= 2 && response[length - 2] == (byte) 0x90 && response[length - 1] == 0x00;
+    }
+}
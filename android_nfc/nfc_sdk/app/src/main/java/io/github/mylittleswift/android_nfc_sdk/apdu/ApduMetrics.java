@@ -0,0 +1,238 @@
+package io.github.mylittleswift.android_nfc_sdk.apdu;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters for a card emulation service: a latency histogram per INS byte, how each
+ * command was answered, and why sessions ended.
+ *
+ * Latencies go into fixed power of two buckets of microseconds, bucket {@code b} holding
+ * [2^(b-1), 2^b) µs and the last one everything slower. All counters are
+ * {@link AtomicLongArray}s updated with a single add, so recording takes no lock and
+ * allocates nothing; {@link #snapshot()} copies them for reading.
+ */
+public final class ApduMetrics {
+
+    public static final int BUCKETS = 24;
+
+    /** Answered with a fixed response from the profile. */
+    public static final int OUTCOME_HIT = 0;
+    /** Not in the profile, answered with 6800. */
+    public static final int OUTCOME_MISS = 1;
+    /** Answered by a handler on the worker thread. */
+    public static final int OUTCOME_COMPUTED = 2;
+    /** Arrived while the profile was loading and was answered once it was loaded. */
+    public static final int OUTCOME_DEFERRED = 3;
+    public static final int OUTCOMES = 4;
+
+    // HostApduService.DEACTIVATION_LINK_LOSS and DEACTIVATION_DESELECTED
+    public static final int DEACTIVATION_LINK_LOSS = 0;
+    public static final int DEACTIVATION_DESELECTED = 1;
+    public static final int DEACTIVATION_REASONS = 2;
+
+    private static final String[] OUTCOME_NAMES = {"hit", "miss", "computed", "deferred"};
+    private static final String[] DEACTIVATION_NAMES = {"link_loss", "deselected"};
+
+    private final AtomicLongArray mLatency = new AtomicLongArray(256 * BUCKETS);
+    private final AtomicLongArray mLatencySum = new AtomicLongArray(256);
+    private final AtomicLongArray mOutcomes = new AtomicLongArray(OUTCOMES);
+    private final AtomicLongArray mDeactivations = new AtomicLongArray(DEACTIVATION_REASONS);
+    private volatile long mSince = System.currentTimeMillis();
+
+    /**
+     * Records one command.
+     *
+     * @param ins the INS byte
+     * @param nanos from receiving the command until its response was handed back
+     * @param outcome one of the OUTCOME constants
+     */
+    public void recordCommand(int ins, long nanos, int outcome) {
+        ins &= 0xff;
+        mLatency.incrementAndGet(ins * BUCKETS + bucket(nanos / 1000));
+        mLatencySum.addAndGet(ins, nanos);
+        mOutcomes.incrementAndGet(outcome);
+    }
+
+    /** Records a deactivation with one of the DEACTIVATION constants; others are ignored. */
+    public void recordDeactivation(int reason) {
+        if (reason >= 0 && reason < DEACTIVATION_REASONS) {
+            mDeactivations.incrementAndGet(reason);
+        }
+    }
+
+    static int bucket(long micros) {
+        if (micros <= 0) {
+            return 0;
+        }
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    /** Returns the upper bound of bucket {@code b} in microseconds, the last one being open. */
+    public static long bucketLimitMicros(int b) {
+        return b == BUCKETS - 1 ? Long.MAX_VALUE : 1L << b;
+    }
+
+    /**
+     * Copies the counters. Commands recorded meanwhile may be partly included.
+     */
+    public Snapshot snapshot() {
+        long[] latency = new long[mLatency.length()];
+        for (int i = 0; i < latency.length; i++) {
+            latency[i] = mLatency.get(i);
+        }
+        long[] sum = new long[mLatencySum.length()];
+        for (int i = 0; i < sum.length; i++) {
+            sum[i] = mLatencySum.get(i);
+        }
+        long[] outcomes = new long[OUTCOMES];
+        for (int i = 0; i < outcomes.length; i++) {
+            outcomes[i] = mOutcomes.get(i);
+        }
+        long[] deactivations = new long[DEACTIVATION_REASONS];
+        for (int i = 0; i < deactivations.length; i++) {
+            deactivations[i] = mDeactivations.get(i);
+        }
+        return new Snapshot(mSince, System.currentTimeMillis(), latency, sum, outcomes, deactivations);
+    }
+
+    /** Zeroes all counters. */
+    public void reset() {
+        for (int i = 0; i < mLatency.length(); i++) {
+            mLatency.set(i, 0);
+        }
+        for (int i = 0; i < mLatencySum.length(); i++) {
+            mLatencySum.set(i, 0);
+        }
+        for (int i = 0; i < OUTCOMES; i++) {
+            mOutcomes.set(i, 0);
+        }
+        for (int i = 0; i < DEACTIVATION_REASONS; i++) {
+            mDeactivations.set(i, 0);
+        }
+        mSince = System.currentTimeMillis();
+    }
+
+    /** Counters at one point in time. */
+    public static final class Snapshot {
+
+        private final long mSince;
+        private final long mTaken;
+        private final long[] mLatency;
+        private final long[] mLatencySum;
+        private final long[] mOutcomes;
+        private final long[] mDeactivations;
+
+        Snapshot(long since, long taken, long[] latency, long[] latencySum, long[] outcomes,
+                 long[] deactivations) {
+            mSince = since;
+            mTaken = taken;
+            mLatency = latency;
+            mLatencySum = latencySum;
+            mOutcomes = outcomes;
+            mDeactivations = deactivations;
+        }
+
+        /** Wall clock time the counters were started or last reset. */
+        public long getSince() {
+            return mSince;
+        }
+
+        public long getTaken() {
+            return mTaken;
+        }
+
+        public long getCount(int ins) {
+            long count = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                count += mLatency[ins * BUCKETS + b];
+            }
+            return count;
+        }
+
+        public long getBucket(int ins, int bucket) {
+            return mLatency[ins * BUCKETS + bucket];
+        }
+
+        public long getMeanNanos(int ins) {
+            long count = getCount(ins);
+            return count == 0 ? 0 : mLatencySum[ins] / count;
+        }
+
+        /**
+         * Returns the upper bucket limit, in microseconds, below which a fraction {@code q}
+         * of the commands with {@code ins} were answered, or 0 if there were none.
+         */
+        public long getPercentileMicros(int ins, double q) {
+            long count = getCount(ins);
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(q * count);
+            long seen = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += mLatency[ins * BUCKETS + b];
+                if (seen >= rank && seen > 0) {
+                    return bucketLimitMicros(b);
+                }
+            }
+            return bucketLimitMicros(BUCKETS - 1);
+        }
+
+        public long getOutcome(int outcome) {
+            return mOutcomes[outcome];
+        }
+
+        public long getDeactivations(int reason) {
+            return mDeactivations[reason];
+        }
+
+        /**
+         * Writes the snapshot as text: the outcome and deactivation counts, then one line per
+         * INS seen with its count, mean, p50/p99 and the non-empty buckets.
+         */
+        public void writeTo(PrintWriter out) {
+            out.println("since " + mSince + " taken " + mTaken);
+            for (int i = 0; i < OUTCOMES; i++) {
+                out.println(OUTCOME_NAMES[i] + " " + mOutcomes[i]);
+            }
+            for (int i = 0; i < DEACTIVATION_REASONS; i++) {
+                out.println("deactivated_" + DEACTIVATION_NAMES[i] + " " + mDeactivations[i]);
+            }
+            for (int ins = 0; ins < 256; ins++) {
+                long count = getCount(ins);
+                if (count == 0) {
+                    continue;
+                }
+                StringBuilder line = new StringBuilder(String.format("ins %02X count %d mean_us %d p50_us %d p99_us %d buckets",
+                        ins, count, getMeanNanos(ins) / 1000, getPercentileMicros(ins, 0.5),
+                        getPercentileMicros(ins, 0.99)));
+                for (int b = 0; b < BUCKETS; b++) {
+                    long n = mLatency[ins * BUCKETS + b];
+                    if (n != 0) {
+                        line.append(' ').append(b == BUCKETS - 1 ? "inf" : String.valueOf(bucketLimitMicros(b)))
+                                .append(':').append(n);
+                    }
+                }
+                out.println(line);
+            }
+        }
+
+        /** Writes the snapshot to {@code file}, replacing it. */
+        public void writeTo(File file) throws IOException {
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+            try {
+                writeTo(out);
+            } finally {
+                out.close();
+            }
+            if (out.checkError()) {
+                throw new IOException("Cannot write " + file);
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package io.github.mylittleswift.android_nfc_sdk.apdu;
+
+/**
+ * Answers command APDUs of an emulated card. Implementations are immutable once built,
+ * safe to share with the binder thread, and must not allocate on a lookup once warm.
+ */
+public interface ApduProfile {
+
+    /**
+     * Returns the response for {@code apdu}, or null if the command is unknown. The returned
+     * array is shared and must not be modified.
+     */
+    byte[] lookup(byte[] apdu);
+
+    /**
+     * Returns the number of commands the profile answers.
+     */
+    int size();
+}
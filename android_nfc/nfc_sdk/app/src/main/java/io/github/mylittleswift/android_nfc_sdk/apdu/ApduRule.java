@@ -0,0 +1,271 @@
+package io.github.mylittleswift.android_nfc_sdk.apdu;
+
+import java.util.Arrays;
+
+/**
+ * A command pattern and the response it produces. A rule matches an APDU when
+ * <ul>
+ * <li>each of CLA, INS, P1 and P2 equals the rule's value on the bits set in its mask,</li>
+ * <li>the length of the command data field (Nc) is within [minData, maxData], and</li>
+ * <li>the command data starts with the rule's data prefix.</li>
+ * </ul>
+ * Rules are matched in bulk by an {@link ApduRuleSet}; {@link #matches(byte[])} is the
+ * straightforward reference implementation.
+ *
+ * A rule can also take part in a card session (see {@link SessionProfile}): it may only
+ * apply in a given state, move the session to a next state, and name a handler which
+ * computes the response instead of the fixed one.
+ */
+public final class ApduRule {
+
+    public static final int HEADER_LENGTH = 4;
+    public static final int MAX_DATA = 65535;
+
+    private final byte[] mHeader;
+    private final byte[] mMask;
+    private final int mMinData;
+    private final int mMaxData;
+    private final byte[] mPrefix;
+    private final byte[] mResponse;
+    private final String mState;
+    private final String mNext;
+    private final String mHandler;
+
+    private ApduRule(Builder builder) {
+        mHeader = builder.mHeader.clone();
+        mMask = builder.mMask.clone();
+        mMinData = builder.mMinData;
+        mMaxData = builder.mMaxData;
+        mPrefix = builder.mPrefix.clone();
+        mResponse = builder.mResponse.clone();
+        mState = builder.mState;
+        mNext = builder.mNext;
+        mHandler = builder.mHandler;
+    }
+
+    /** Header byte {@code i} (0 CLA, 1 INS, 2 P1, 3 P2), already masked. */
+    public int header(int i) {
+        return mHeader[i] & mMask[i] & 0xff;
+    }
+
+    public int mask(int i) {
+        return mMask[i] & 0xff;
+    }
+
+    public int getMinData() {
+        return mMinData;
+    }
+
+    public int getMaxData() {
+        return mMaxData;
+    }
+
+    public int getPrefixLength() {
+        return mPrefix.length;
+    }
+
+    public int prefix(int i) {
+        return mPrefix[i] & 0xff;
+    }
+
+    /** Returns the response. The array is shared and must not be modified. */
+    public byte[] getResponse() {
+        return mResponse;
+    }
+
+    /** Returns the session state the rule is limited to, or null for any state. */
+    public String getState() {
+        return mState;
+    }
+
+    /** Returns the state the session moves to after this rule, or null to stay. */
+    public String getNext() {
+        return mNext;
+    }
+
+    /** Returns the name of the handler computing the response, or null for the fixed one. */
+    public String getHandler() {
+        return mHandler;
+    }
+
+    /** Whether the rule depends on or changes the session state, or computes its response. */
+    public boolean isStateful() {
+        return mState != null || mNext != null || mHandler != null;
+    }
+
+    byte[] prefixBytes() {
+        return mPrefix;
+    }
+
+    /**
+     * Checks this rule against {@code apdu} one field at a time.
+     */
+    public boolean matches(byte[] apdu) {
+        if (apdu.length < HEADER_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < HEADER_LENGTH; i++) {
+            if ((apdu[i] & mMask[i] & 0xff) != header(i)) {
+                return false;
+            }
+        }
+        int offset = dataOffset(apdu);
+        int length = dataLength(apdu, offset);
+        if (length < mMinData || length > mMaxData || length < mPrefix.length) {
+            return false;
+        }
+        for (int i = 0; i < mPrefix.length; i++) {
+            if (apdu[offset + i] != mPrefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns where the command data field starts: after Lc, which is one byte, or three for
+     * an extended length APDU (Lc = 00 followed by two length bytes).
+     */
+    static int dataOffset(byte[] apdu) {
+        return apdu.length > 7 && apdu[4] == 0 ? 7 : 5;
+    }
+
+    /**
+     * Returns Nc, the length of the command data field, clamped to the bytes actually
+     * present. Commands without data (cases 1 and 2) have Nc 0.
+     */
+    static int dataLength(byte[] apdu, int offset) {
+        if (apdu.length <= 5) {
+            return 0;
+        }
+        int lc = offset == 7 ? ((apdu[5] & 0xff) << 8) | (apdu[6] & 0xff) : apdu[4] & 0xff;
+        return Math.min(lc, apdu.length - offset);
+    }
+
+    @Override
+    public String toString() {
+        return "ApduRule{header=" + Arrays.toString(mHeader) + " mask=" + Arrays.toString(mMask)
+                + " data=" + mMinData + ".." + mMaxData + " prefix=" + Arrays.toString(mPrefix)
+                + (mState != null ? " state=" + mState : "") + (mNext != null ? " next=" + mNext : "")
+                + (mHandler != null ? " handler=" + mHandler : "") + "}";
+    }
+
+    public static final class Builder {
+
+        private final byte[] mHeader = new byte[HEADER_LENGTH];
+        private final byte[] mMask = new byte[HEADER_LENGTH];
+        private int mMinData = 0;
+        private int mMaxData = MAX_DATA;
+        private byte[] mPrefix = new byte[0];
+        private byte[] mResponse;
+        private String mState;
+        private String mNext;
+        private String mHandler;
+
+        /** Sets the CLA, INS, P1 and P2 values; bits outside the mask are ignored. */
+        public Builder setHeader(int cla, int ins, int p1, int p2) {
+            mHeader[0] = (byte) cla;
+            mHeader[1] = (byte) ins;
+            mHeader[2] = (byte) p1;
+            mHeader[3] = (byte) p2;
+            return this;
+        }
+
+        /** Sets which header bits must match. The default mask 00000000 matches anything. */
+        public Builder setMask(int cla, int ins, int p1, int p2) {
+            mMask[0] = (byte) cla;
+            mMask[1] = (byte) ins;
+            mMask[2] = (byte) p1;
+            mMask[3] = (byte) p2;
+            return this;
+        }
+
+        public Builder setHeader(byte[] header) {
+            checkHeader(header);
+            System.arraycopy(header, 0, mHeader, 0, HEADER_LENGTH);
+            return this;
+        }
+
+        public Builder setMask(byte[] mask) {
+            checkHeader(mask);
+            System.arraycopy(mask, 0, mMask, 0, HEADER_LENGTH);
+            return this;
+        }
+
+        /** Limits Nc, the length of the command data field. */
+        public Builder setDataLength(int min, int max) {
+            if (min < 0 || max > MAX_DATA || min > max) {
+                throw new IllegalArgumentException("Bad data length " + min + ".." + max);
+            }
+            mMinData = min;
+            mMaxData = max;
+            return this;
+        }
+
+        public Builder setDataPrefix(byte[] prefix) {
+            if (prefix.length > MAX_DATA) {
+                throw new IllegalArgumentException("Prefix too long");
+            }
+            mPrefix = prefix.clone();
+            return this;
+        }
+
+        /**
+         * Matches exactly {@code apdu}: its header and its command data, whatever the Le.
+         */
+        public Builder setCommand(byte[] apdu) {
+            if (apdu.length < HEADER_LENGTH) {
+                throw new IllegalArgumentException("APDU shorter than its header");
+            }
+            System.arraycopy(apdu, 0, mHeader, 0, HEADER_LENGTH);
+            Arrays.fill(mMask, (byte) 0xff);
+            int offset = dataOffset(apdu);
+            int length = dataLength(apdu, offset);
+            mPrefix = Arrays.copyOfRange(apdu, offset, offset + length);
+            mMinData = length;
+            mMaxData = length;
+            return this;
+        }
+
+        public Builder setState(String state) {
+            mState = emptyToNull(state);
+            return this;
+        }
+
+        public Builder setNext(String next) {
+            mNext = emptyToNull(next);
+            return this;
+        }
+
+        /** Computes the response with the named handler; the fixed response becomes optional. */
+        public Builder setHandler(String handler) {
+            mHandler = emptyToNull(handler);
+            return this;
+        }
+
+        public Builder setResponse(byte[] response) {
+            mResponse = response.clone();
+            return this;
+        }
+
+        public ApduRule build() {
+            if (mResponse == null) {
+                if (mHandler == null) {
+                    throw new IllegalStateException("no response");
+                }
+                mResponse = new byte[0];
+            }
+            return new ApduRule(this);
+        }
+
+        private static String emptyToNull(String name) {
+            return name == null || name.isEmpty() ? null : name;
+        }
+
+        private static void checkHeader(byte[] header) {
+            if (header.length != HEADER_LENGTH) {
+                throw new IllegalArgumentException("Header must be " + HEADER_LENGTH + " bytes");
+            }
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package io.github.mylittleswift.android_nfc_sdk.apdu;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link ApduRule}s compiled into a deterministic decision tree over the APDU bytes.
+ *
+ * Each state stands for the set of rules which are still possible after reading some
+ * bytes: the four header bytes first, then the command data as far as the longest data
+ * prefix requires. A state maps the next byte to a child through a 256 entry jump table,
+ * or a sorted key array when it has few distinct children, plus a default child for bytes
+ * only wildcard rules accept. Matching therefore reads every byte once and does at most
+ * eight comparisons per byte, however many rules there are. At the end the first rule (in
+ * the order given to {@link #compile(List)}) of the final state whose Nc range fits wins.
+ *
+ * Compiling is done once at load time; the result is immutable and allocation free.
+ */
+public final class ApduRuleSet implements ApduProfile {
+
+    private static final int DEAD = -1;
+
+    /** States with at least this many children get a full jump table. */
+    private static final int DENSE_THRESHOLD = 48;
+
+    private static final int[] NO_RULES = new int[0];
+
+    private final ApduRule[] mRules;
+    private final byte[][] mResponses;
+
+    // per state
+    private final int[] mStart;
+    private final int[] mCount;
+    private final int[] mDefault;
+    private final boolean[] mDense;
+    private final boolean[] mTerminal;
+    private final int[][] mAccept;
+
+    // transitions, addressed through mStart/mCount
+    private final int[] mKeys;
+    private final int[] mTargets;
+
+    private ApduRuleSet(ApduRule[] rules, Compiler compiler) {
+        mRules = rules;
+        mResponses = new byte[rules.length][];
+        for (int i = 0; i < rules.length; i++) {
+            mResponses[i] = rules[i].getResponse();
+        }
+        int states = compiler.mStates.size();
+        mStart = new int[states];
+        mCount = new int[states];
+        mDefault = new int[states];
+        mDense = new boolean[states];
+        mTerminal = new boolean[states];
+        mAccept = new int[states][];
+        int transitions = 0;
+        for (State state : compiler.mStates) {
+            transitions += state.mDense ? 256 : state.mKeys.length;
+        }
+        mKeys = new int[transitions];
+        mTargets = new int[transitions];
+        int next = 0;
+        for (int id = 0; id < states; id++) {
+            State state = compiler.mStates.get(id);
+            mStart[id] = next;
+            mDefault[id] = state.mDefault;
+            mDense[id] = state.mDense;
+            mTerminal[id] = state.mTerminal;
+            mAccept[id] = state.mAccept;
+            if (state.mDense) {
+                mCount[id] = 256;
+                Arrays.fill(mTargets, next, next + 256, state.mDefault);
+                for (int i = 0; i < state.mKeys.length; i++) {
+                    mTargets[next + state.mKeys[i]] = state.mTargets[i];
+                }
+                next += 256;
+            } else {
+                mCount[id] = state.mKeys.length;
+                System.arraycopy(state.mKeys, 0, mKeys, next, state.mKeys.length);
+                System.arraycopy(state.mTargets, 0, mTargets, next, state.mKeys.length);
+                next += state.mKeys.length;
+            }
+        }
+    }
+
+    /**
+     * Compiles {@code rules}. Earlier rules take precedence over later ones.
+     */
+    public static ApduRuleSet compile(List<ApduRule> rules) {
+        ApduRule[] array = rules.toArray(new ApduRule[rules.size()]);
+        return new ApduRuleSet(array, new Compiler(array));
+    }
+
+    @Override
+    public byte[] lookup(byte[] apdu) {
+        int rule = match(apdu);
+        return rule < 0 ? null : mResponses[rule];
+    }
+
+    /**
+     * Returns the index of the first matching rule, or -1.
+     */
+    public int match(byte[] apdu) {
+        if (apdu.length < ApduRule.HEADER_LENGTH || mRules.length == 0) {
+            return -1;
+        }
+        int state = 0;
+        for (int i = 0; i < ApduRule.HEADER_LENGTH; i++) {
+            state = next(state, apdu[i] & 0xff);
+            if (state == DEAD) {
+                return -1;
+            }
+        }
+        int offset = ApduRule.dataOffset(apdu);
+        int length = ApduRule.dataLength(apdu, offset);
+        for (int i = 0; i < length && !mTerminal[state]; i++) {
+            int child = next(state, apdu[offset + i] & 0xff);
+            if (child == DEAD) {
+                return -1;
+            }
+            state = child;
+        }
+        int[] accept = mAccept[state];
+        for (int rule : accept) {
+            if (length >= mRules[rule].getMinData() && length <= mRules[rule].getMaxData()) {
+                return rule;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int size() {
+        return mRules.length;
+    }
+
+    /** Number of states of the compiled tree, for tuning. */
+    public int stateCount() {
+        return mStart.length;
+    }
+
+    private int next(int state, int b) {
+        int start = mStart[state];
+        if (mDense[state]) {
+            return mTargets[start + b];
+        }
+        int low = start;
+        int high = start + mCount[state] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int key = mKeys[mid];
+            if (key < b) {
+                low = mid + 1;
+            } else if (key > b) {
+                high = mid - 1;
+            } else {
+                return mTargets[mid];
+            }
+        }
+        return mDefault[state];
+    }
+
+    /** A state while compiling. */
+    private static final class State {
+        final int mDepth;
+        final int[] mRules;
+        int[] mKeys;
+        int[] mTargets;
+        int mDefault = DEAD;
+        boolean mDense;
+        boolean mTerminal;
+        int[] mAccept = NO_RULES;
+
+        State(int depth, int[] rules) {
+            mDepth = depth;
+            mRules = rules;
+        }
+    }
+
+    /** Identifies a state by its depth and rule set, so equal states are shared. */
+    private static final class StateKey {
+        final int mDepth;
+        final int[] mRules;
+        final int mHash;
+
+        StateKey(int depth, int[] rules) {
+            mDepth = depth;
+            mRules = rules;
+            mHash = 31 * depth + Arrays.hashCode(rules);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof StateKey)) {
+                return false;
+            }
+            StateKey other = (StateKey) o;
+            return mDepth == other.mDepth && Arrays.equals(mRules, other.mRules);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+    }
+
+    /** Builds the states breadth first, merging equal rule sets. */
+    private static final class Compiler {
+        final ApduRule[] mRules;
+        final List<State> mStates = new ArrayList<>();
+        final Map<StateKey, Integer> mIds = new HashMap<>();
+        final ArrayDeque<State> mQueue = new ArrayDeque<>();
+
+        Compiler(ApduRule[] rules) {
+            mRules = rules;
+            int[] all = new int[rules.length];
+            for (int i = 0; i < all.length; i++) {
+                all[i] = i;
+            }
+            stateFor(0, all);
+            while (!mQueue.isEmpty()) {
+                expand(mQueue.poll());
+            }
+        }
+
+        int stateFor(int depth, int[] rules) {
+            if (rules.length == 0) {
+                return DEAD;
+            }
+            StateKey key = new StateKey(depth, rules);
+            Integer id = mIds.get(key);
+            if (id == null) {
+                id = mStates.size();
+                State state = new State(depth, rules);
+                mStates.add(state);
+                mIds.put(key, id);
+                mQueue.add(state);
+            }
+            return id;
+        }
+
+        void expand(State state) {
+            int depth = state.mDepth;
+            int[] rules = state.mRules;
+            boolean data = depth >= ApduRule.HEADER_LENGTH;
+            int position = depth - ApduRule.HEADER_LENGTH;
+
+            // rules which accept any value at this depth, and per byte value the others
+            int[] wildcard = new int[rules.length];
+            int wildcards = 0;
+            int[][] buckets = new int[256][];
+            int[] bucketSizes = new int[256];
+            int satisfied = 0;
+            for (int rule : rules) {
+                ApduRule r = mRules[rule];
+                int value;
+                int mask;
+                if (!data) {
+                    value = r.header(depth);
+                    mask = r.mask(depth);
+                } else if (position < r.getPrefixLength()) {
+                    value = r.prefix(position);
+                    mask = 0xff;
+                } else {
+                    value = 0;
+                    mask = 0;
+                    satisfied++;
+                }
+                if (mask == 0) {
+                    wildcard[wildcards++] = rule;
+                } else if (mask == 0xff) {
+                    add(buckets, bucketSizes, value, rule);
+                } else {
+                    for (int b = 0; b < 256; b++) {
+                        if ((b & mask) == value) {
+                            add(buckets, bucketSizes, b, rule);
+                        }
+                    }
+                }
+            }
+
+            if (data) {
+                state.mAccept = Arrays.copyOf(wildcard, wildcards);
+                if (satisfied == rules.length) {
+                    // nothing left to read
+                    state.mTerminal = true;
+                    state.mKeys = NO_RULES;
+                    state.mTargets = NO_RULES;
+                    return;
+                }
+            }
+
+            int[] others = Arrays.copyOf(wildcard, wildcards);
+            int children = 0;
+            for (int b = 0; b < 256; b++) {
+                if (bucketSizes[b] > 0) {
+                    children++;
+                }
+            }
+            state.mKeys = new int[children];
+            state.mTargets = new int[children];
+            int child = 0;
+            for (int b = 0; b < 256; b++) {
+                if (bucketSizes[b] > 0) {
+                    state.mKeys[child] = b;
+                    state.mTargets[child] = stateFor(depth + 1,
+                            merge(buckets[b], bucketSizes[b], others));
+                    child++;
+                }
+            }
+            state.mDefault = stateFor(depth + 1, others);
+            state.mDense = children >= DENSE_THRESHOLD;
+        }
+
+        private static void add(int[][] buckets, int[] sizes, int b, int rule) {
+            int[] bucket = buckets[b];
+            if (bucket == null) {
+                bucket = buckets[b] = new int[4];
+            } else if (sizes[b] == bucket.length) {
+                bucket = buckets[b] = Arrays.copyOf(bucket, bucket.length * 2);
+            }
+            bucket[sizes[b]++] = rule;
+        }
+
+        /** Merges two ascending rule lists. */
+        private static int[] merge(int[] a, int aLength, int[] b) {
+            int[] out = new int[aLength + b.length];
+            int i = 0;
+            int j = 0;
+            int k = 0;
+            while (i < aLength && j < b.length) {
+                out[k++] = a[i] < b[j] ? a[i++] : b[j++];
+            }
+            while (i < aLength) {
+                out[k++] = a[i++];
+            }
+            while (j < b.length) {
+                out[k++] = b[j++];
+            }
+            return out;
+        }
+    }
+}
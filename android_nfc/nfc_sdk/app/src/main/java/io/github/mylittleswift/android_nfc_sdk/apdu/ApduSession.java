@@ -0,0 +1,48 @@
+package io.github.mylittleswift.android_nfc_sdk.apdu;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The state of one card session, from the reader selecting the service until it is
+ * deactivated. Handlers may keep values in it between commands, e.g. a challenge until
+ * the authentication command answering it arrives.
+ *
+ * The session is read on the binder thread and changed by handlers on a worker thread.
+ * {@link #getGeneration()} tells a handler finishing late whether the session it was
+ * computing for is still the current one.
+ */
+public final class ApduSession {
+
+    private volatile int mState = SessionProfile.INITIAL;
+    private volatile int mGeneration;
+    private final Map<String, Object> mValues = new HashMap<>();
+
+    public int getState() {
+        return mState;
+    }
+
+    public void setState(int state) {
+        mState = state;
+    }
+
+    /** Incremented by every {@link #reset()}. */
+    public int getGeneration() {
+        return mGeneration;
+    }
+
+    public synchronized Object get(String key) {
+        return mValues.get(key);
+    }
+
+    public synchronized void put(String key, Object value) {
+        mValues.put(key, value);
+    }
+
+    /** Ends the session: back to {@link SessionProfile#INITIAL} with no values. */
+    public synchronized void reset() {
+        mGeneration++;
+        mState = SessionProfile.INITIAL;
+        mValues.clear();
+    }
+}
@@ -0,0 +1,146 @@
+package io.github.mylittleswift.android_nfc_sdk.apdu;
+
+import java.util.Arrays;
+
+/**
+ * Maps raw command APDUs to prebuilt response APDUs.
+ *
+ * Commands are hashed by content and kept in an open-addressing table, so a lookup is
+ * constant time and allocates nothing. The table is immutable once built and only has
+ * final fields, so it can be shared with the binder thread without locking.
+ */
+public final class ApduTable implements ApduProfile {
+
+    public static final ApduTable EMPTY = new Builder().build();
+
+    private final byte[][] mCommands;
+    private final byte[][] mResponses;
+    private final int[] mHashes;
+    private final int mSize;
+
+    private ApduTable(byte[][] commands, byte[][] responses, int[] hashes, int size) {
+        mCommands = commands;
+        mResponses = responses;
+        mHashes = hashes;
+        mSize = size;
+    }
+
+    @Override
+    public byte[] lookup(byte[] apdu) {
+        int hash = hash(apdu);
+        int mask = mCommands.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            byte[] command = mCommands[i];
+            if (command == null) {
+                return null;
+            }
+            if (mHashes[i] == hash && Arrays.equals(command, apdu)) {
+                return mResponses[i];
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    /** Number of slots, for walking the table with {@link #commandAt(int)}. */
+    int capacity() {
+        return mCommands.length;
+    }
+
+    /** Command in slot {@code i}, or null for an empty slot. */
+    byte[] commandAt(int i) {
+        return mCommands[i];
+    }
+
+    byte[] responseAt(int i) {
+        return mResponses[i];
+    }
+
+    /** FNV-1a over the command bytes, finished with the MurmurHash3 fmix32 step. */
+    static int hash(byte[] bytes) {
+        int h = 0x811c9dc5;
+        for (byte b : bytes) {
+            h ^= b & 0xff;
+            h *= 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * Collects command/response pairs. Adding the same command twice keeps the last response.
+     */
+    public static final class Builder {
+
+        private byte[][] mCommands = new byte[16][];
+        private byte[][] mResponses = new byte[16][];
+        private int[] mHashes = new int[16];
+        private int mSize;
+
+        /**
+         * Adds a command and its response. Both arrays are copied.
+         */
+        public Builder put(byte[] command, byte[] response) {
+            if (command == null || command.length == 0) {
+                throw new IllegalArgumentException("empty command");
+            }
+            if (response == null) {
+                throw new IllegalArgumentException("null response");
+            }
+            if ((mSize + 1) * 2 > mCommands.length) {
+                resize(mCommands.length * 2);
+            }
+            if (insert(mCommands, mResponses, mHashes, command.clone(), response.clone(), hash(command))) {
+                mSize++;
+            }
+            return this;
+        }
+
+        public int size() {
+            return mSize;
+        }
+
+        public ApduTable build() {
+            return new ApduTable(mCommands.clone(), mResponses.clone(), mHashes.clone(), mSize);
+        }
+
+        private void resize(int capacity) {
+            byte[][] commands = new byte[capacity][];
+            byte[][] responses = new byte[capacity][];
+            int[] hashes = new int[capacity];
+            for (int i = 0; i < mCommands.length; i++) {
+                if (mCommands[i] != null) {
+                    insert(commands, responses, hashes, mCommands[i], mResponses[i], mHashes[i]);
+                }
+            }
+            mCommands = commands;
+            mResponses = responses;
+            mHashes = hashes;
+        }
+
+        /** Returns true if a new slot was taken, false if an existing command was replaced. */
+        private static boolean insert(byte[][] commands, byte[][] responses, int[] hashes,
+                                      byte[] command, byte[] response, int hash) {
+            int mask = commands.length - 1;
+            for (int i = hash & mask; ; i = (i + 1) & mask) {
+                if (commands[i] == null) {
+                    commands[i] = command;
+                    responses[i] = response;
+                    hashes[i] = hash;
+                    return true;
+                }
+                if (hashes[i] == hash && Arrays.equals(commands[i], command)) {
+                    responses[i] = response;
+                    return false;
+                }
+            }
+        }
+    }
+}
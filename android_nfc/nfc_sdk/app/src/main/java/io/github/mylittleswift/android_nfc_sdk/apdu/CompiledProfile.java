@@ -0,0 +1,56 @@
+package io.github.mylittleswift.android_nfc_sdk.apdu;
+
+/**
+ * Layout of a compiled APDU profile, written by {@link CompiledProfileWriter} and read by
+ * {@link MappedApduProfile}. All values are big-endian.
+ *
+ * <pre>
+ * header (24 bytes)
+ *   0  magic       "APDU"
+ *   4  version     u16
+ *   6  reserved    u16, 0
+ *   8  count       u32, number of commands
+ *   12 slot count  u32, power of two
+ *   16 rule offset u32, from the start of the file
+ *   20 rule count  u32
+ * index (slot count * 16 bytes), open addressing with linear probing on the command hash
+ *   0  hash              s32, {@link ApduTable#hash(byte[])} of the command
+ *   4  command offset    u32, from the start of the data region
+ *   8  command length    u16, 0 for an empty slot
+ *   10 response length   u16
+ *   12 response offset   u32, from the start of the data region
+ * data (up to the rule offset)
+ *   commands and responses, back to back
+ * rules, in precedence order, see {@link ApduRule}
+ *   0  header          4 bytes, CLA INS P1 P2
+ *   4  mask            4 bytes
+ *   8  min data        u16
+ *   10 max data        u16
+ *   12 prefix length   u16
+ *   14 response length u16
+ *   16 prefix, then response
+ *   then state, next and handler names, each a u16 length (0 for none) and UTF-8 bytes
+ * </pre>
+ */
+final class CompiledProfile {
+
+    static final int MAGIC = 0x41504455; // "APDU"
+    static final int VERSION = 3;
+    static final int HEADER_SIZE = 24;
+    static final int SLOT_SIZE = 16;
+
+    static final int OFFSET_VERSION = 4;
+    static final int OFFSET_COUNT = 8;
+    static final int OFFSET_SLOTS = 12;
+    static final int OFFSET_RULES = 16;
+    static final int OFFSET_RULE_COUNT = 20;
+
+    static final int SLOT_HASH = 0;
+    static final int SLOT_COMMAND_OFFSET = 4;
+    static final int SLOT_COMMAND_LENGTH = 8;
+    static final int SLOT_RESPONSE_LENGTH = 10;
+    static final int SLOT_RESPONSE_OFFSET = 12;
+
+    private CompiledProfile() {
+    }
+}
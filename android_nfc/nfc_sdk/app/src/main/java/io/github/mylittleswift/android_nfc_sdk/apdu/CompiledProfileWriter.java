@@ -0,0 +1,117 @@
+package io.github.mylittleswift.android_nfc_sdk.apdu;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes an {@link ApduTable} and its {@link ApduRule}s in the compiled profile format
+ * described in {@link CompiledProfile}.
+ */
+public final class CompiledProfileWriter {
+
+    private CompiledProfileWriter() {
+    }
+
+    /**
+     * Writes {@code table} to {@code out}. The file is written next to {@code out} first and
+     * renamed into place, so a reader mapping the old file never sees a partial one.
+     */
+    public static void write(ApduTable table, File out) throws IOException {
+        write(table, Collections.<ApduRule>emptyList(), out);
+    }
+
+    public static void write(ApduTable table, List<ApduRule> rules, File out) throws IOException {
+        int slots = 16;
+        while (slots < table.size() * 2) {
+            slots <<= 1;
+        }
+        ByteBuffer index = ByteBuffer.allocate(slots * CompiledProfile.SLOT_SIZE);
+        int dataSize = 0;
+        for (int i = 0; i < table.capacity(); i++) {
+            byte[] command = table.commandAt(i);
+            if (command == null) {
+                continue;
+            }
+            byte[] response = table.responseAt(i);
+            if (command.length > 0xffff || response.length > 0xffff) {
+                throw new IOException("APDU longer than 65535 bytes");
+            }
+            int hash = ApduTable.hash(command);
+            int slot = hash & (slots - 1);
+            while (index.getShort(slot * CompiledProfile.SLOT_SIZE
+                    + CompiledProfile.SLOT_COMMAND_LENGTH) != 0) {
+                slot = (slot + 1) & (slots - 1);
+            }
+            int base = slot * CompiledProfile.SLOT_SIZE;
+            index.putInt(base + CompiledProfile.SLOT_HASH, hash);
+            index.putInt(base + CompiledProfile.SLOT_COMMAND_OFFSET, dataSize);
+            index.putShort(base + CompiledProfile.SLOT_COMMAND_LENGTH, (short) command.length);
+            index.putShort(base + CompiledProfile.SLOT_RESPONSE_LENGTH, (short) response.length);
+            index.putInt(base + CompiledProfile.SLOT_RESPONSE_OFFSET, dataSize + command.length);
+            dataSize += command.length + response.length;
+        }
+
+        File tmp = new File(out.getPath() + ".tmp");
+        DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            output.writeInt(CompiledProfile.MAGIC);
+            output.writeShort(CompiledProfile.VERSION);
+            output.writeShort(0);
+            output.writeInt(table.size());
+            output.writeInt(slots);
+            output.writeInt(CompiledProfile.HEADER_SIZE + index.capacity() + dataSize);
+            output.writeInt(rules.size());
+            output.write(index.array());
+            // data in table order, matching the offsets above
+            for (int i = 0; i < table.capacity(); i++) {
+                byte[] command = table.commandAt(i);
+                if (command != null) {
+                    output.write(command);
+                    output.write(table.responseAt(i));
+                }
+            }
+            for (ApduRule rule : rules) {
+                if (rule.getResponse().length > 0xffff) {
+                    throw new IOException("APDU longer than 65535 bytes");
+                }
+                for (int i = 0; i < ApduRule.HEADER_LENGTH; i++) {
+                    output.writeByte(rule.header(i));
+                }
+                for (int i = 0; i < ApduRule.HEADER_LENGTH; i++) {
+                    output.writeByte(rule.mask(i));
+                }
+                output.writeShort(rule.getMinData());
+                output.writeShort(rule.getMaxData());
+                output.writeShort(rule.getPrefixLength());
+                output.writeShort(rule.getResponse().length);
+                output.write(rule.prefixBytes());
+                output.write(rule.getResponse());
+                writeName(output, rule.getState());
+                writeName(output, rule.getNext());
+                writeName(output, rule.getHandler());
+            }
+        } finally {
+            output.close();
+        }
+        if (!tmp.renameTo(out)) {
+            tmp.delete();
+            throw new IOException("Cannot rename " + tmp + " to " + out);
+        }
+    }
+
+    private static void writeName(DataOutputStream output, String name) throws IOException {
+        byte[] bytes = name == null ? new byte[0] : name.getBytes("UTF-8");
+        if (bytes.length > 0xffff) {
+            throw new IOException("Name longer than 65535 bytes");
+        }
+        output.writeShort(bytes.length);
+        output.write(bytes);
+    }
+}
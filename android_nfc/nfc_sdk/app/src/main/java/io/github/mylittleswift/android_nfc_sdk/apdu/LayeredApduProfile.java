@@ -0,0 +1,27 @@
+package io.github.mylittleswift.android_nfc_sdk.apdu;
+
+/**
+ * Asks a second profile only for commands the first one does not know, e.g. exact
+ * commands first and {@link ApduRuleSet} patterns behind them.
+ */
+public final class LayeredApduProfile implements ApduProfile {
+
+    private final ApduProfile mFirst;
+    private final ApduProfile mSecond;
+
+    public LayeredApduProfile(ApduProfile first, ApduProfile second) {
+        mFirst = first;
+        mSecond = second;
+    }
+
+    @Override
+    public byte[] lookup(byte[] apdu) {
+        byte[] response = mFirst.lookup(apdu);
+        return response != null ? response : mSecond.lookup(apdu);
+    }
+
+    @Override
+    public int size() {
+        return mFirst.size() + mSecond.size();
+    }
+}
@@ -0,0 +1,192 @@
+package io.github.mylittleswift.android_nfc_sdk.apdu;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An {@link ApduProfile} over a memory-mapped compiled profile (see {@link CompiledProfile}).
+ * Opening maps the file and checks the index, without decoding anything, and commands are
+ * compared against the mapped bytes in place.
+ *
+ * {@code HostApduService} needs each response as a byte[], so a
+ * response is copied out of the mapping the first time it is used and that array is
+ * reused afterwards: no per-APDU decoding or allocation, and heap only for responses that
+ * are actually sent.
+ */
+public final class MappedApduProfile implements ApduProfile {
+
+    private final ByteBuffer mIndex;
+    private final ByteBuffer mData;
+    private final int mCount;
+    private final int mSlots;
+    private final AtomicReferenceArray<byte[]> mResponses;
+    private final List<ApduRule> mRules;
+
+    private MappedApduProfile(ByteBuffer index, ByteBuffer data, int count, int slots,
+                              List<ApduRule> rules) {
+        mIndex = index;
+        mData = data;
+        mCount = count;
+        mSlots = slots;
+        mResponses = new AtomicReferenceArray<byte[]>(slots);
+        mRules = rules;
+    }
+
+    /**
+     * @throws IOException if the file cannot be read or is not a compiled profile
+     */
+    public static MappedApduProfile open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size < CompiledProfile.HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Bad profile size " + size + ": " + file);
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt(0) != CompiledProfile.MAGIC) {
+                throw new IOException("Not a compiled APDU profile: " + file);
+            }
+            int version = buffer.getShort(CompiledProfile.OFFSET_VERSION) & 0xffff;
+            if (version != CompiledProfile.VERSION) {
+                throw new IOException("Unsupported profile version " + version + ": " + file);
+            }
+            int count = buffer.getInt(CompiledProfile.OFFSET_COUNT);
+            int slots = buffer.getInt(CompiledProfile.OFFSET_SLOTS);
+            long indexEnd = CompiledProfile.HEADER_SIZE + (long) slots * CompiledProfile.SLOT_SIZE;
+            long rulesStart = buffer.getInt(CompiledProfile.OFFSET_RULES) & 0xffffffffL;
+            if (slots <= 0 || (slots & (slots - 1)) != 0 || count < 0 || count >= slots
+                    || indexEnd > rulesStart || rulesStart > size) {
+                throw new IOException("Corrupt profile index: " + file);
+            }
+            buffer.position(CompiledProfile.HEADER_SIZE).limit((int) indexEnd);
+            ByteBuffer index = buffer.slice();
+            buffer.limit((int) rulesStart).position((int) indexEnd);
+            ByteBuffer data = buffer.slice();
+            checkIndex(index, slots, data.capacity(), file);
+            buffer.limit((int) size).position((int) rulesStart);
+            List<ApduRule> rules = readRules(buffer, buffer.getInt(CompiledProfile.OFFSET_RULE_COUNT), file);
+            return new MappedApduProfile(index, data, count, slots, rules);
+        } finally {
+            // the mapping stays valid after the channel is closed
+            raf.close();
+        }
+    }
+
+    private static List<ApduRule> readRules(ByteBuffer buffer, int count, File file)
+            throws IOException {
+        List<ApduRule> rules = new ArrayList<>();
+        byte[] header = new byte[ApduRule.HEADER_LENGTH];
+        byte[] mask = new byte[ApduRule.HEADER_LENGTH];
+        try {
+            for (int i = 0; i < count; i++) {
+                buffer.get(header);
+                buffer.get(mask);
+                int minData = buffer.getShort() & 0xffff;
+                int maxData = buffer.getShort() & 0xffff;
+                byte[] prefix = new byte[buffer.getShort() & 0xffff];
+                byte[] response = new byte[buffer.getShort() & 0xffff];
+                buffer.get(prefix);
+                buffer.get(response);
+                rules.add(new ApduRule.Builder()
+                        .setHeader(header)
+                        .setMask(mask)
+                        .setDataLength(minData, maxData)
+                        .setDataPrefix(prefix)
+                        .setResponse(response)
+                        .setState(readName(buffer))
+                        .setNext(readName(buffer))
+                        .setHandler(readName(buffer))
+                        .build());
+            }
+        } catch (RuntimeException e) {
+            // BufferUnderflowException or a bad length range
+            throw new IOException("Corrupt profile rules: " + file);
+        }
+        return rules;
+    }
+
+    private static String readName(ByteBuffer buffer) throws IOException {
+        byte[] bytes = new byte[buffer.getShort() & 0xffff];
+        buffer.get(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    /** Makes sure every slot points inside the data region, so lookups cannot fail later. */
+    private static void checkIndex(ByteBuffer index, int slots, int dataSize, File file)
+            throws IOException {
+        for (int base = 0; base < slots * CompiledProfile.SLOT_SIZE; base += CompiledProfile.SLOT_SIZE) {
+            int commandLength = index.getShort(base + CompiledProfile.SLOT_COMMAND_LENGTH) & 0xffff;
+            if (commandLength == 0) {
+                continue;
+            }
+            long commandOffset = index.getInt(base + CompiledProfile.SLOT_COMMAND_OFFSET) & 0xffffffffL;
+            long responseOffset = index.getInt(base + CompiledProfile.SLOT_RESPONSE_OFFSET) & 0xffffffffL;
+            int responseLength = index.getShort(base + CompiledProfile.SLOT_RESPONSE_LENGTH) & 0xffff;
+            if (commandOffset + commandLength > dataSize || responseOffset + responseLength > dataSize) {
+                throw new IOException("Corrupt profile index: " + file);
+            }
+        }
+    }
+
+    @Override
+    public byte[] lookup(byte[] apdu) {
+        int hash = ApduTable.hash(apdu);
+        int mask = mSlots - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int base = slot * CompiledProfile.SLOT_SIZE;
+            int length = mIndex.getShort(base + CompiledProfile.SLOT_COMMAND_LENGTH) & 0xffff;
+            if (length == 0) {
+                return null;
+            }
+            if (length == apdu.length && mIndex.getInt(base + CompiledProfile.SLOT_HASH) == hash
+                    && matches(mIndex.getInt(base + CompiledProfile.SLOT_COMMAND_OFFSET), apdu)) {
+                return response(slot, base);
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * Returns the rules stored in the profile, to be compiled with
+     * {@link ApduRuleSet#compile(List)}. They are not consulted by {@link #lookup(byte[])}.
+     */
+    public List<ApduRule> getRules() {
+        return mRules;
+    }
+
+    private boolean matches(int offset, byte[] apdu) {
+        for (int i = 0; i < apdu.length; i++) {
+            if (mData.get(offset + i) != apdu[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] response(int slot, int base) {
+        byte[] response = mResponses.get(slot);
+        if (response == null) {
+            int offset = mIndex.getInt(base + CompiledProfile.SLOT_RESPONSE_OFFSET);
+            int length = mIndex.getShort(base + CompiledProfile.SLOT_RESPONSE_LENGTH) & 0xffff;
+            response = new byte[length];
+            ByteBuffer view = mData.duplicate();
+            view.position(offset);
+            view.get(response);
+            // racing threads copy the same bytes; either array may win
+            mResponses.compareAndSet(slot, null, response);
+            response = mResponses.get(slot);
+        }
+        return response;
+    }
+}
@@ -0,0 +1,132 @@
+package io.github.mylittleswift.android_nfc_sdk.apdu;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A card profile with session state. Stateless commands are answered by an
+ * {@link ApduProfile}; {@link ApduRule#isStateful() stateful} rules are checked before it,
+ * but only those declared for the current state or for any state.
+ *
+ * States are numbered in the order they are first named, {@link #INITIAL} being the state
+ * a session starts in after activation. Each state gets its own {@link ApduRuleSet}, so the
+ * stateful rules cost one tree walk per APDU whatever their number.
+ */
+public final class SessionProfile {
+
+    /** The state a session starts in, named "IDLE" in profiles. */
+    public static final int INITIAL = 0;
+    public static final String INITIAL_NAME = "IDLE";
+
+    /** {@link #getNextState(int)} of a rule which leaves the state alone. */
+    public static final int STAY = -1;
+
+    private final ApduProfile mProfile;
+    private final ApduRule[] mRules;
+    private final int[] mNext;
+    private final String[] mStateNames;
+
+    // per state: the rule set and the index of each of its rules in mRules
+    private final ApduRuleSet[] mRuleSets;
+    private final int[][] mRuleIds;
+
+    private SessionProfile(ApduProfile profile, List<ApduRule> rules) {
+        mProfile = profile;
+        mRules = rules.toArray(new ApduRule[rules.size()]);
+        Map<String, Integer> states = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        stateId(INITIAL_NAME, states, names);
+        mNext = new int[mRules.length];
+        for (int i = 0; i < mRules.length; i++) {
+            if (mRules[i].getState() != null) {
+                stateId(mRules[i].getState(), states, names);
+            }
+            mNext[i] = mRules[i].getNext() == null ? STAY : stateId(mRules[i].getNext(), states, names);
+        }
+        mStateNames = names.toArray(new String[names.size()]);
+
+        mRuleSets = new ApduRuleSet[mStateNames.length];
+        mRuleIds = new int[mStateNames.length][];
+        for (int state = 0; state < mStateNames.length; state++) {
+            List<ApduRule> applicable = new ArrayList<>();
+            int[] ids = new int[mRules.length];
+            for (int i = 0; i < mRules.length; i++) {
+                String required = mRules[i].getState();
+                if (required == null || required.equals(mStateNames[state])) {
+                    ids[applicable.size()] = i;
+                    applicable.add(mRules[i]);
+                }
+            }
+            mRuleSets[state] = ApduRuleSet.compile(applicable);
+            mRuleIds[state] = ids;
+        }
+    }
+
+    /**
+     * Combines {@code exact} with {@code rules}: stateless rules are layered behind the exact
+     * commands, stateful ones are checked first in their states. Rules keep their order.
+     */
+    public static SessionProfile create(ApduProfile exact, List<ApduRule> rules) {
+        List<ApduRule> stateless = new ArrayList<>();
+        List<ApduRule> stateful = new ArrayList<>();
+        for (ApduRule rule : rules) {
+            (rule.isStateful() ? stateful : stateless).add(rule);
+        }
+        ApduProfile profile = stateless.isEmpty()
+                ? exact : new LayeredApduProfile(exact, ApduRuleSet.compile(stateless));
+        return new SessionProfile(profile, stateful);
+    }
+
+    private static int stateId(String name, Map<String, Integer> states, List<String> names) {
+        Integer id = states.get(name);
+        if (id == null) {
+            id = names.size();
+            states.put(name, id);
+            names.add(name);
+        }
+        return id;
+    }
+
+    /** Returns the profile answering stateless commands. */
+    public ApduProfile getProfile() {
+        return mProfile;
+    }
+
+    /** Whether any rule depends on or changes the session state. */
+    public boolean isStateful() {
+        return mRules.length > 0;
+    }
+
+    /**
+     * Returns the index of the first stateful rule matching {@code apdu} in {@code state},
+     * or -1 if the stateless profile should answer it.
+     */
+    public int match(int state, byte[] apdu) {
+        int rule = mRuleSets[state].match(apdu);
+        return rule < 0 ? -1 : mRuleIds[state][rule];
+    }
+
+    public ApduRule getRule(int rule) {
+        return mRules[rule];
+    }
+
+    /** Returns the state rule {@code rule} moves to, or {@link #STAY}. */
+    public int getNextState(int rule) {
+        return mNext[rule];
+    }
+
+    public int getStateCount() {
+        return mStateNames.length;
+    }
+
+    public String getStateName(int state) {
+        return mStateNames[state];
+    }
+
+    /** Number of stateless commands and rules plus stateful rules. */
+    public int size() {
+        return mProfile.size() + mRules.length;
+    }
+}
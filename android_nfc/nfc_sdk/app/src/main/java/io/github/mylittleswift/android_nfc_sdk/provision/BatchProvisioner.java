@@ -0,0 +1,194 @@
+package io.github.mylittleswift.android_nfc_sdk.provision;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hands out the messages of a {@link ProvisioningBatch} one tag at a time and logs which
+ * tag got which message. A message is only used up once written, or skipped because the
+ * tag already held it: after a failure the same message goes to the next tag presented.
+ * A tag which got a message in this run keeps it; tapped again (see
+ * {@link #getProvisioned(byte[])}) it must not be given the next one.
+ *
+ * The log has one line per attempt, {@code millis,uid,index,result}, where result is
+ * {@link #RESULT_WRITTEN}, {@link #RESULT_SKIPPED}, {@link #RESULT_REPEATED} or why the
+ * write failed. It is flushed after every line, so an interrupted run can be resumed with
+ * {@link #open(File, File)}, which starts after the last message logged as written or
+ * skipped and remembers which tags got which message.
+ */
+public final class BatchProvisioner {
+
+    public static final String RESULT_WRITTEN = "written";
+    public static final String RESULT_SKIPPED = "skipped";
+    /** A tag which already got a message in this run was tapped again. */
+    public static final String RESULT_REPEATED = "repeated";
+
+    private final ProvisioningBatch mBatch;
+    private final Writer mLog;
+    private final ProvisioningStats mStats = new ProvisioningStats();
+    /** hex UID -> index of the message the tag got */
+    private final Map<String, Integer> mProvisioned;
+    private int mNext;
+
+    /**
+     * @param next index of the first message to hand out
+     * @param log where the assignments are appended
+     */
+    public BatchProvisioner(ProvisioningBatch batch, int next, Writer log) {
+        this(batch, next, new HashMap<String, Integer>(), log);
+    }
+
+    private BatchProvisioner(ProvisioningBatch batch, int next, Map<String, Integer> provisioned, Writer log) {
+        mBatch = batch;
+        mNext = next;
+        mProvisioned = provisioned;
+        mLog = log;
+    }
+
+    /** Opens {@code batch} and resumes where {@code log} left off, appending to it. */
+    public static BatchProvisioner open(File batch, File log) throws IOException {
+        ProvisioningBatch messages = ProvisioningBatch.read(batch);
+        int next = 0;
+        Map<String, Integer> provisioned = new HashMap<>();
+        if (log.exists()) {
+            Reader in = new InputStreamReader(new FileInputStream(log), "UTF-8");
+            try {
+                next = resumeIndex(in, provisioned);
+            } finally {
+                in.close();
+            }
+        }
+        Writer out = new OutputStreamWriter(new FileOutputStream(log, true), "UTF-8");
+        return new BatchProvisioner(messages, next, provisioned, out);
+    }
+
+    /** Returns the index after the last message {@code log} records as written or skipped. */
+    static int resumeIndex(Reader log) throws IOException {
+        return resumeIndex(log, new HashMap<String, Integer>());
+    }
+
+    /**
+     * Returns the index after the last message {@code log} records as written or skipped,
+     * and puts the tag each of those messages went to into {@code provisioned}.
+     */
+    static int resumeIndex(Reader log, Map<String, Integer> provisioned) throws IOException {
+        BufferedReader lines = new BufferedReader(log);
+        int next = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            String[] fields = line.split(",", 4);
+            if (fields.length == 4 && (RESULT_WRITTEN.equals(fields[3]) || RESULT_SKIPPED.equals(fields[3]))) {
+                try {
+                    int index = Integer.parseInt(fields[2]);
+                    next = Math.max(next, index + 1);
+                    provisioned.put(fields[1], index);
+                } catch (NumberFormatException e) {
+                    // a torn last line
+                }
+            }
+        }
+        return next;
+    }
+
+    public synchronized boolean isDone() {
+        return mNext >= mBatch.size();
+    }
+
+    /** Index of the message the next tag gets. */
+    public synchronized int getNext() {
+        return mNext;
+    }
+
+    /**
+     * Returns the index of the message the tag {@code uid} got in this run, or -1 if it has
+     * not been provisioned yet.
+     */
+    public synchronized int getProvisioned(byte[] uid) {
+        Integer index = mProvisioned.get(hex(uid));
+        return index != null ? index : -1;
+    }
+
+    public ProvisioningBatch getBatch() {
+        return mBatch;
+    }
+
+    public int size() {
+        return mBatch.size();
+    }
+
+    public ProvisioningStats getStats() {
+        return mStats;
+    }
+
+    /** Records that message {@code index} was written to the tag {@code uid} and moves on. */
+    public synchronized void recordWritten(int index, byte[] uid, long nowMillis) throws IOException {
+        advance(index, uid, RESULT_WRITTEN, nowMillis);
+        mStats.recordWritten(nowMillis);
+    }
+
+    /** Records that the tag {@code uid} already held message {@code index} and moves on. */
+    public synchronized void recordSkipped(int index, byte[] uid, long nowMillis) throws IOException {
+        advance(index, uid, RESULT_SKIPPED, nowMillis);
+        mStats.recordSkipped(nowMillis);
+    }
+
+    private void advance(int index, byte[] uid, String result, long nowMillis) throws IOException {
+        if (index != mNext) {
+            throw new IllegalStateException("Message " + index + " " + result + ", expected " + mNext);
+        }
+        Integer previous = mProvisioned.get(hex(uid));
+        if (previous != null) {
+            throw new IllegalStateException("Message " + index + " " + result + " to " + hex(uid)
+                    + ", which got " + previous);
+        }
+        log(nowMillis, uid, index, result);
+        mProvisioned.put(hex(uid), index);
+        mNext++;
+    }
+
+    /**
+     * Records that the tag {@code uid}, which already got a message in this run, was tapped
+     * again. Nothing is used up or counted.
+     */
+    public synchronized void recordRepeated(byte[] uid, long nowMillis) throws IOException {
+        int index = getProvisioned(uid);
+        if (index < 0) {
+            throw new IllegalStateException(hex(uid) + " was not provisioned");
+        }
+        log(nowMillis, uid, index, RESULT_REPEATED);
+    }
+
+    /** Records that writing message {@code index} to {@code uid} failed, for {@code reason}. */
+    public synchronized void recordFailed(int index, byte[] uid, String reason, long nowMillis) throws IOException {
+        log(nowMillis, uid, index, reason.replace(',', ';').replace('\n', ' '));
+        mStats.recordFailed(nowMillis);
+    }
+
+    private void log(long nowMillis, byte[] uid, int index, String result) throws IOException {
+        StringBuilder line = new StringBuilder(48).append(nowMillis).append(',').append(hex(uid))
+                .append(',').append(index).append(',').append(result).append('\n');
+        mLog.write(line.toString());
+        mLog.flush();
+    }
+
+    private static String hex(byte[] uid) {
+        StringBuilder hex = new StringBuilder(uid.length * 2);
+        for (byte b : uid) {
+            hex.append(Character.forDigit(b >> 4 & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    public synchronized void close() throws IOException {
+        mLog.close();
+    }
+}
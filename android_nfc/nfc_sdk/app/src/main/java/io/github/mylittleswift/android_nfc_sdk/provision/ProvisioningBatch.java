@@ -0,0 +1,128 @@
+package io.github.mylittleswift.android_nfc_sdk.provision;
+
+import io.github.mylittleswift.nfc_codec.NdefRecordView;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * The NDEF messages of a provisioning run, encoded ahead of time so writing a tag is only
+ * the radio write. A batch file is written by {@link ProvisioningBatchCompiler}:
+ *
+ * <pre>
+ * int magic "NBAT", int version, int count
+ * count times: int length, length bytes of NDEF message
+ * </pre>
+ *
+ * all big endian. Every message is checked to be well-formed NDEF when the batch is read.
+ */
+public final class ProvisioningBatch {
+
+    static final int MAGIC = 0x4E424154;
+    static final int VERSION = 1;
+
+    /** Larger than any NFC Forum tag. */
+    static final int MAX_MESSAGE_LENGTH = 0x10000;
+
+    private final byte[][] mMessages;
+
+    ProvisioningBatch(byte[][] messages) {
+        mMessages = messages;
+    }
+
+    public int size() {
+        return mMessages.length;
+    }
+
+    /** Returns message {@code index}; the array is shared, do not change it. */
+    public byte[] get(int index) {
+        return mMessages[index];
+    }
+
+    public static ProvisioningBatch read(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    public static ProvisioningBatch read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        try {
+            if (data.readInt() != MAGIC) {
+                throw new IOException("Not a provisioning batch");
+            }
+            int version = data.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported batch version " + version);
+            }
+            int count = data.readInt();
+            if (count < 0) {
+                throw new IOException("Bad message count " + count);
+            }
+            byte[][] messages = new byte[count][];
+            NdefRecordView record = new NdefRecordView();
+            for (int i = 0; i < count; i++) {
+                int length = data.readInt();
+                if (length <= 0 || length > MAX_MESSAGE_LENGTH) {
+                    throw new IOException("Bad length " + length + " of message " + i);
+                }
+                byte[] message = new byte[length];
+                data.readFully(message);
+                record.wrap(ByteBuffer.wrap(message));
+                while (record.next()) {
+                }
+                if (record.isMalformed()) {
+                    throw new IOException("Malformed message " + i);
+                }
+                messages[i] = message;
+            }
+            return new ProvisioningBatch(messages);
+        } catch (EOFException e) {
+            throw new IOException("Truncated batch", e);
+        }
+    }
+
+    /** Writes {@code messages} in the batch format. */
+    public static void write(List<byte[]> messages, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(messages.size());
+        for (byte[] message : messages) {
+            data.writeInt(message.length);
+            data.write(message);
+        }
+        data.flush();
+    }
+
+    /**
+     * Writes {@code messages} to {@code file}, through a temporary file renamed into place.
+     */
+    public static void write(List<byte[]> messages, File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        OutputStream out = new FileOutputStream(tmp);
+        try {
+            write(messages, out);
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Cannot rename " + tmp + " to " + file);
+        }
+    }
+}
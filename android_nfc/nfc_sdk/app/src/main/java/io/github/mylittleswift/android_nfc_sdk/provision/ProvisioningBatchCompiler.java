@@ -0,0 +1,78 @@
+package io.github.mylittleswift.android_nfc_sdk.provision;
+
+import io.github.mylittleswift.nfc_codec.Ndef;
+import io.github.mylittleswift.nfc_codec.NdefText;
+import io.github.mylittleswift.nfc_codec.NdefUri;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Offline tool which encodes a list of tag contents, one per line, into a
+ * {@link ProvisioningBatch} file. A line is a URI, written as a well-known URI record, or
+ * {@code text:} followed by text, written as a UTF-8 Text record; blank lines and lines
+ * starting with # are skipped.
+ *
+ * Run with {@code ./gradlew :app:compileProvisioningBatch -Plist=tags.txt -Pout=tags.batch}.
+ */
+public final class ProvisioningBatchCompiler {
+
+    static final String TEXT_PREFIX = "text:";
+
+    private ProvisioningBatchCompiler() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("usage: ProvisioningBatchCompiler <list.txt> <out.batch> [text language]");
+            System.exit(2);
+        }
+        long start = System.nanoTime();
+        Reader in = new InputStreamReader(new FileInputStream(args[0]), "UTF-8");
+        List<byte[]> messages;
+        try {
+            messages = compile(in, args.length == 3 ? args[2] : "en");
+        } finally {
+            in.close();
+        }
+        ProvisioningBatch.write(messages, new File(args[1]));
+        System.out.println("Wrote " + messages.size() + " messages to " + args[1] + " in "
+                + (System.nanoTime() - start) / 1000000 + "ms");
+    }
+
+    /** Encodes every content line of {@code in}, Text records in {@code language}. */
+    public static List<byte[]> compile(Reader in, String language) throws IOException {
+        BufferedReader lines = new BufferedReader(in);
+        List<byte[]> messages = new ArrayList<>();
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (line.trim().isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            messages.add(encode(line, language));
+        }
+        return messages;
+    }
+
+    /** Encodes one line as a single record message. */
+    public static byte[] encode(String line, String language) {
+        int flags = Ndef.FLAG_MB | Ndef.FLAG_ME;
+        if (line.startsWith(TEXT_PREFIX)) {
+            String text = line.substring(TEXT_PREFIX.length());
+            ByteBuffer out = ByteBuffer.allocate(NdefText.recordLength(language, text, true));
+            NdefText.writeRecord(out, flags, language, text, true);
+            return out.array();
+        }
+        String uri = line.trim();
+        ByteBuffer out = ByteBuffer.allocate(NdefUri.recordLength(uri));
+        NdefUri.writeRecord(out, flags, uri);
+        return out.array();
+    }
+}
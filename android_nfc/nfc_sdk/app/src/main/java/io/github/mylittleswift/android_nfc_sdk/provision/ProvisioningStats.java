@@ -0,0 +1,116 @@
+package io.github.mylittleswift.android_nfc_sdk.provision;
+
+import java.util.Locale;
+
+/**
+ * Throughput of a provisioning run: tags written, skipped because they already held their
+ * message, and failed, tags done per minute over the last minute and since the first tap,
+ * and the failure rate. Skipped tags count as done, but not as written. Times are passed in, in
+ * milliseconds, so the counters can be driven by a test clock.
+ */
+public final class ProvisioningStats {
+
+    static final long WINDOW_MILLIS = 60 * 1000;
+
+    /** Times tags were done in the last minute; more than this many tags a minute are not counted. */
+    private static final int WINDOW_CAPACITY = 1024;
+
+    private final long[] mRecent = new long[WINDOW_CAPACITY];
+    private int mRecentEnd;
+    private int mRecentCount;
+
+    private long mFirst = -1;
+    private long mWritten;
+    private long mSkipped;
+    private long mFailed;
+
+    public synchronized void recordWritten(long nowMillis) {
+        mWritten++;
+        recordDone(nowMillis);
+    }
+
+    /** Records a tag which already held its message. */
+    public synchronized void recordSkipped(long nowMillis) {
+        mSkipped++;
+        recordDone(nowMillis);
+    }
+
+    private void recordDone(long nowMillis) {
+        start(nowMillis);
+        mRecent[mRecentEnd] = nowMillis;
+        mRecentEnd = (mRecentEnd + 1) % WINDOW_CAPACITY;
+        mRecentCount = Math.min(mRecentCount + 1, WINDOW_CAPACITY);
+    }
+
+    public synchronized void recordFailed(long nowMillis) {
+        start(nowMillis);
+        mFailed++;
+    }
+
+    private void start(long nowMillis) {
+        if (mFirst < 0) {
+            mFirst = nowMillis;
+        }
+    }
+
+    public synchronized long getWritten() {
+        return mWritten;
+    }
+
+    public synchronized long getSkipped() {
+        return mSkipped;
+    }
+
+    /** Tags written or skipped. */
+    public synchronized long getDone() {
+        return mWritten + mSkipped;
+    }
+
+    public synchronized long getFailed() {
+        return mFailed;
+    }
+
+    /** Failed attempts over all attempts, 0 before the first. */
+    public synchronized double getFailureRate() {
+        long attempts = mWritten + mSkipped + mFailed;
+        return attempts == 0 ? 0 : (double) mFailed / attempts;
+    }
+
+    /**
+     * Tags done in the minute up to {@code nowMillis}, extrapolated to a minute while the
+     * run is younger than that.
+     */
+    public synchronized double getTagsPerMinute(long nowMillis) {
+        int count = 0;
+        for (int i = 0; i < mRecentCount; i++) {
+            long time = mRecent[(mRecentEnd - 1 - i + WINDOW_CAPACITY) % WINDOW_CAPACITY];
+            if (nowMillis - time >= WINDOW_MILLIS) {
+                break;
+            }
+            count++;
+        }
+        long span = Math.min(WINDOW_MILLIS, elapsed(nowMillis));
+        return span == 0 ? 0 : count * (double) WINDOW_MILLIS / span;
+    }
+
+    /** Tags done per minute since the first attempt. */
+    public synchronized double getAverageTagsPerMinute(long nowMillis) {
+        long elapsed = elapsed(nowMillis);
+        return elapsed == 0 ? 0 : getDone() * (double) WINDOW_MILLIS / elapsed;
+    }
+
+    private long elapsed(long nowMillis) {
+        // at least a second, so the first tag does not read as thousands a minute
+        return mFirst < 0 ? 0 : Math.max(1000, nowMillis - mFirst);
+    }
+
+    /**
+     * One line for the live readout, e.g.
+     * "120 written, 30 skipped, 2 failed (1.3%), 31.0/min, avg 28.4/min".
+     */
+    public synchronized String format(long nowMillis) {
+        return String.format(Locale.US, "%d written, %d skipped, %d failed (%.1f%%), %.1f/min, avg %.1f/min",
+                mWritten, mSkipped, mFailed, 100 * getFailureRate(), getTagsPerMinute(nowMillis),
+                getAverageTagsPerMinute(nowMillis));
+    }
+}
@@ -0,0 +1,73 @@
+package io.github.mylittleswift.android_nfc_sdk.ultralight;
+
+import android.nfc.Tag;
+import android.nfc.tech.MifareUltralight;
+
+import io.github.mylittleswift.android_nfc_sdk.write.TagLostException;
+
+import java.io.IOException;
+
+/**
+ * {@link UltralightPages} over the {@link MifareUltralight} technology of a discovered
+ * {@link Tag}.
+ */
+public final class AndroidUltralightPages implements UltralightPages {
+
+    private final MifareUltralight mUltralight;
+
+    private AndroidUltralightPages(MifareUltralight ultralight) {
+        mUltralight = ultralight;
+    }
+
+    /** Returns the pages of {@code tag}, or null if it is no MIFARE Ultralight. */
+    public static AndroidUltralightPages get(Tag tag) {
+        MifareUltralight ultralight = tag == null ? null : MifareUltralight.get(tag);
+        return ultralight == null ? null : new AndroidUltralightPages(ultralight);
+    }
+
+    @Override
+    public void connect() throws IOException {
+        try {
+            mUltralight.connect();
+        } catch (android.nfc.TagLostException e) {
+            throw new TagLostException("Tag lost while connecting", e);
+        }
+    }
+
+    @Override
+    public byte[] readPages(int page) throws IOException {
+        try {
+            return mUltralight.readPages(page);
+        } catch (android.nfc.TagLostException e) {
+            throw new TagLostException("Tag lost reading page " + page, e);
+        }
+    }
+
+    @Override
+    public void writePage(int page, byte[] data) throws IOException {
+        try {
+            mUltralight.writePage(page, data);
+        } catch (android.nfc.TagLostException e) {
+            throw new TagLostException("Tag lost writing page " + page, e);
+        }
+    }
+
+    @Override
+    public byte[] transceive(byte[] command) throws IOException {
+        try {
+            return mUltralight.transceive(command);
+        } catch (android.nfc.TagLostException e) {
+            throw new TagLostException("Tag lost in transceive", e);
+        }
+    }
+
+    @Override
+    public int getMaxTransceiveLength() {
+        return mUltralight.getMaxTransceiveLength();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mUltralight.close();
+    }
+}
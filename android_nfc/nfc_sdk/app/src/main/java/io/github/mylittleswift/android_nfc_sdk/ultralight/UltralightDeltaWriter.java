@@ -0,0 +1,264 @@
+package io.github.mylittleswift.android_nfc_sdk.ultralight;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static io.github.mylittleswift.android_nfc_sdk.ultralight.UltralightPages.PAGE_SIZE;
+
+/**
+ * Writes an NDEF message to a Type 2 tag page by page, writing only the pages whose bytes
+ * change. {@code Ndef.writeNdefMessage} rewrites the whole TLV; here the current data area
+ * is read (four pages per read), the NDEF TLV image is laid over it, and only the
+ * differing pages are written.
+ *
+ * Pages 0 to 3 (serial number, static lock bytes and capability container) are read but
+ * never written. The tag must be NDEF formatted (CC magic E1) and writable according to
+ * the CC; a page to be written which is locked by the static lock bits is refused before
+ * anything is written. Dynamic lock bits, beyond page 15, are not interpreted: writing a
+ * page they lock fails on the tag.
+ *
+ * TLVs before the NDEF TLV, such as lock or memory control TLVs, are kept. The write never
+ * leaves a torn TLV: unless a single page write does it, the TLV length is first set to 0
+ * (an empty message), then the message pages are written, and the pages holding the TLV
+ * header last, the one which makes the new message visible being the final write. If the
+ * tag is lost on the way, it holds the old message, an empty one, or the new one.
+ */
+public final class UltralightDeltaWriter {
+
+    static final int CC_PAGE = 3;
+    static final int DATA_PAGE = 4;
+
+    static final byte CC_MAGIC = (byte) 0xE1;
+
+    static final byte TLV_NULL = 0x00;
+    static final byte TLV_NDEF = 0x03;
+    static final byte TLV_TERMINATOR = (byte) 0xFE;
+
+    private UltralightDeltaWriter() {
+    }
+
+    /**
+     * Writes {@code message} to the connected {@code tag}.
+     *
+     * @return the number of pages written, 0 if the tag already held the message
+     * @throws io.github.mylittleswift.android_nfc_sdk.write.TagLostException if the tag left the field
+     * @throws IOException if the tag is not NDEF formatted, read-only, or too small
+     */
+    public static int write(UltralightPages tag, byte[] message) throws IOException {
+        byte[] header = tag.readPages(0);
+        int dataSize = dataSize(header);
+        if ((header[CC_PAGE * PAGE_SIZE + 3] & 0x0f) != 0) {
+            throw new IOException("Tag is read-only");
+        }
+        DataArea current = new DataArea(tag, dataSize);
+        int offset = findNdefTlv(current);
+        int lengthSize = message.length < 0xff ? 1 : 3;
+        int tlvEnd = offset + 1 + lengthSize + message.length;
+        if (offset < 0 || tlvEnd > dataSize) {
+            throw new IOException("Message of " + message.length + " bytes does not fit in " + dataSize);
+        }
+        // with a terminator if there is room for it
+        int end = tlvEnd < dataSize ? tlvEnd + 1 : tlvEnd;
+        int pages = (end + PAGE_SIZE - 1) / PAGE_SIZE;
+        byte[] now = current.readTo(pages * PAGE_SIZE);
+
+        byte[] target = Arrays.copyOf(now, pages * PAGE_SIZE);
+        target[offset] = TLV_NDEF;
+        if (lengthSize == 1) {
+            target[offset + 1] = (byte) message.length;
+        } else {
+            target[offset + 1] = (byte) 0xff;
+            target[offset + 2] = (byte) (message.length >> 8);
+            target[offset + 3] = (byte) message.length;
+        }
+        System.arraycopy(message, 0, target, offset + 1 + lengthSize, message.length);
+        if (tlvEnd < end) {
+            target[tlvEnd] = TLV_TERMINATOR;
+        }
+
+        // the pages holding the TLV header, and the byte after it which is a terminator
+        // while the message is emptied
+        int headFirst = offset / PAGE_SIZE;
+        int headLast = Math.min(offset + Math.max(2, lengthSize), target.length - 1) / PAGE_SIZE;
+        int lengthPage = (offset + 1) / PAGE_SIZE;
+
+        int changed = 0;
+        for (int page = headFirst; page < pages; page++) {
+            if (differs(now, target, page)) {
+                changed++;
+            }
+        }
+        if (changed == 0) {
+            return 0;
+        }
+        // a terminator, or an empty NDEF TLV, hides the new message until the header is
+        // written; NULL TLVs do not, a reader would go on into the message bytes
+        boolean empty = now[offset] == TLV_TERMINATOR || now[offset] == TLV_NDEF && now[offset + 1] == 0;
+        boolean emptyFirst = changed > 1 && !empty;
+
+        byte[] zero = null;
+        if (emptyFirst) {
+            zero = Arrays.copyOf(target, target.length);
+            zero[offset + 1] = 0;
+            if (offset + 2 < zero.length) {
+                zero[offset + 2] = TLV_TERMINATOR;
+            }
+        }
+        for (int page = headFirst; page < pages; page++) {
+            if (differs(now, target, page) || zero != null && page <= headLast && differs(now, zero, page)) {
+                checkUnlocked(header, DATA_PAGE + page);
+            }
+        }
+
+        int written = 0;
+        if (zero != null) {
+            // the length first, which empties the message
+            written += writeIfDiffers(tag, now, zero, lengthPage);
+            for (int page = headFirst; page <= headLast; page++) {
+                written += writeIfDiffers(tag, now, zero, page);
+            }
+        }
+        for (int page = headLast + 1; page < pages; page++) {
+            written += writeIfDiffers(tag, now, target, page);
+        }
+        // the header backwards, so that the page holding the start of the TLV goes last
+        for (int page = headLast; page >= headFirst; page--) {
+            written += writeIfDiffers(tag, now, target, page);
+        }
+        return written;
+    }
+
+    /**
+     * Reads the NDEF message from the connected {@code tag}.
+     *
+     * @return the message, or null if the tag holds none or an empty one
+     */
+    public static byte[] readNdefMessage(UltralightPages tag) throws IOException {
+        DataArea data = new DataArea(tag, dataSize(tag.readPages(0)));
+        int offset = findNdefTlv(data);
+        if (offset < 0 || data.byteAt(offset) != TLV_NDEF || offset + 2 > data.size()) {
+            return null;
+        }
+        int length = data.byteAt(offset + 1) & 0xff;
+        int start = offset + 2;
+        if (length == 0xff) {
+            if (offset + 4 > data.size()) {
+                return null;
+            }
+            length = (data.byteAt(offset + 2) & 0xff) << 8 | data.byteAt(offset + 3) & 0xff;
+            start = offset + 4;
+        }
+        if (length == 0 || start + length > data.size()) {
+            return null;
+        }
+        return Arrays.copyOfRange(data.readTo(start + length), start, start + length);
+    }
+
+    /** Returns the size of the data area from the capability container in page 3. */
+    static int dataSize(byte[] header) throws IOException {
+        int cc = CC_PAGE * PAGE_SIZE;
+        if (header.length < cc + PAGE_SIZE || header[cc] != CC_MAGIC) {
+            throw new IOException("Tag is not NDEF formatted");
+        }
+        return (header[cc + 2] & 0xff) * 8;
+    }
+
+    /**
+     * Returns the offset in the data area of the NDEF TLV, or where one goes: at the
+     * terminator, or after the last control TLV if only NULL TLVs follow it. Returns -1 if
+     * the control TLVs fill the data area.
+     */
+    static int findNdefTlv(DataArea data) throws IOException {
+        int offset = 0;
+        // start of the NULL TLVs up to offset, -1 if offset follows another TLV
+        int nulls = -1;
+        while (offset < data.size()) {
+            byte type = data.byteAt(offset);
+            if (type == TLV_NDEF || type == TLV_TERMINATOR) {
+                return offset;
+            }
+            if (type == TLV_NULL) {
+                if (nulls < 0) {
+                    nulls = offset;
+                }
+                offset++;
+                continue;
+            }
+            nulls = -1;
+            if (offset + 2 > data.size()) {
+                return -1;
+            }
+            int length = data.byteAt(offset + 1) & 0xff;
+            int header = 2;
+            if (length == 0xff) {
+                if (offset + 4 > data.size()) {
+                    return -1;
+                }
+                length = (data.byteAt(offset + 2) & 0xff) << 8 | data.byteAt(offset + 3) & 0xff;
+                header = 4;
+            }
+            offset += header + length;
+        }
+        return nulls;
+    }
+
+    /** Throws if the static lock bits in page 2 lock {@code page}. */
+    static void checkUnlocked(byte[] header, int page) throws IOException {
+        int lock0 = header[2 * PAGE_SIZE + 2] & 0xff;
+        int lock1 = header[2 * PAGE_SIZE + 3] & 0xff;
+        boolean locked = page < 8 ? (lock0 & 1 << page) != 0 : page < 16 && (lock1 & 1 << (page - 8)) != 0;
+        if (locked) {
+            throw new IOException("Page " + page + " is locked");
+        }
+    }
+
+    private static boolean differs(byte[] now, byte[] target, int page) {
+        for (int i = page * PAGE_SIZE; i < (page + 1) * PAGE_SIZE; i++) {
+            if (now[i] != target[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int writeIfDiffers(UltralightPages tag, byte[] now, byte[] target, int page) throws IOException {
+        if (!differs(now, target, page)) {
+            return 0;
+        }
+        byte[] data = Arrays.copyOfRange(target, page * PAGE_SIZE, (page + 1) * PAGE_SIZE);
+        tag.writePage(DATA_PAGE + page, data);
+        System.arraycopy(data, 0, now, page * PAGE_SIZE, PAGE_SIZE);
+        return 1;
+    }
+
+    /** The data area from page 4, read four pages at a time as far as it is looked at. */
+    static final class DataArea {
+        private final UltralightPages mTag;
+        private final byte[] mBytes;
+        private int mRead;
+
+        DataArea(UltralightPages tag, int size) {
+            mTag = tag;
+            mBytes = new byte[size];
+        }
+
+        int size() {
+            return mBytes.length;
+        }
+
+        byte byteAt(int offset) throws IOException {
+            return readTo(offset + 1)[offset];
+        }
+
+        /** Returns the data area, read at least up to {@code end}. */
+        byte[] readTo(int end) throws IOException {
+            while (mRead < end) {
+                byte[] pages = mTag.readPages(DATA_PAGE + mRead / PAGE_SIZE);
+                int n = Math.min(pages.length, mBytes.length - mRead);
+                System.arraycopy(pages, 0, mBytes, mRead, n);
+                mRead += n;
+            }
+            return mBytes;
+        }
+    }
+}
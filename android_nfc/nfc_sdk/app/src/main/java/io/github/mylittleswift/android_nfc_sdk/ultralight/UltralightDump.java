@@ -0,0 +1,204 @@
+package io.github.mylittleswift.android_nfc_sdk.ultralight;
+
+import io.github.mylittleswift.android_nfc_sdk.write.TagLostException;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static io.github.mylittleswift.android_nfc_sdk.ultralight.UltralightPages.PAGE_SIZE;
+
+/**
+ * An image of a MIFARE Ultralight or NTAG from page 0 to the end of its user memory, read
+ * in as few round trips as the chip allows.
+ *
+ * {@link #read} identifies the chip with GET_VERSION. NTAG21x and Ultralight EV1 chips
+ * answer it and support FAST_READ, which returns any range of pages in one response; the
+ * ranges are sized to {@link UltralightPages#getMaxTransceiveLength()}. Older chips do not
+ * answer, and are read with READ, four pages per round trip, up to the end of the data
+ * area their capability container declares. {@link #compare} reads the tag both ways and
+ * reports the round trips and time each took.
+ */
+public final class UltralightDump {
+
+    static final byte CMD_GET_VERSION = 0x60;
+    static final byte CMD_FAST_READ = 0x3A;
+
+    private static final byte VENDOR_NXP = 0x04;
+    private static final byte TYPE_ULTRALIGHT = 0x03;
+    private static final byte TYPE_NTAG = 0x04;
+
+    // GET_VERSION product type and storage size byte, and the chip's user memory end page
+    private static final int[][] VARIANTS = {
+            {TYPE_ULTRALIGHT, 0x0B, 16},
+            {TYPE_ULTRALIGHT, 0x0E, 36},
+            {TYPE_NTAG, 0x0B, 16},
+            {TYPE_NTAG, 0x0E, 36},
+            {TYPE_NTAG, 0x0F, 40},
+            {TYPE_NTAG, 0x11, 130},
+            {TYPE_NTAG, 0x13, 226},
+    };
+    private static final String[] VARIANT_NAMES = {
+            "MF0UL11", "MF0UL21", "NTAG210", "NTAG212", "NTAG213", "NTAG215", "NTAG216",
+    };
+
+    /** An original Ultralight, which has 16 pages. */
+    private static final int DEFAULT_PAGES = 16;
+
+    private final String mName;
+    private final byte[] mImage;
+    private final boolean mFastRead;
+    private final int mRoundTrips;
+    private final long mNanos;
+
+    private UltralightDump(String name, byte[] image, boolean fastRead, int roundTrips, long nanos) {
+        mName = name;
+        mImage = image;
+        mFastRead = fastRead;
+        mRoundTrips = roundTrips;
+        mNanos = nanos;
+    }
+
+    /**
+     * Reads the connected {@code tag}, with FAST_READ if it supports it. A tag which NAKs
+     * GET_VERSION or FAST_READ is reconnected and read with READ.
+     */
+    public static UltralightDump read(UltralightPages tag) throws IOException {
+        long start = System.nanoTime();
+        byte[] version;
+        try {
+            version = tag.transceive(new byte[]{CMD_GET_VERSION});
+        } catch (TagLostException e) {
+            throw e;
+        } catch (IOException e) {
+            version = null;
+        }
+        int variant = version == null ? -1 : variant(version);
+        if (variant < 0) {
+            if (version == null) {
+                reconnect(tag);
+            }
+            UltralightDump dump = readPages(tag, "unknown", pagesFromCc(tag));
+            // GET_VERSION and the read of the CC
+            return new UltralightDump(dump.mName, dump.mImage, false, 2 + dump.mRoundTrips,
+                    System.nanoTime() - start);
+        }
+        int pages = VARIANTS[variant][2];
+        byte[] image = new byte[pages * PAGE_SIZE];
+        int chunk = Math.max(1, tag.getMaxTransceiveLength() / PAGE_SIZE);
+        int roundTrips = 1;
+        try {
+            for (int page = 0; page < pages; page += chunk) {
+                int last = Math.min(pages, page + chunk) - 1;
+                byte[] data = tag.transceive(new byte[]{CMD_FAST_READ, (byte) page, (byte) last});
+                roundTrips++;
+                int length = (last - page + 1) * PAGE_SIZE;
+                if (data == null || data.length < length) {
+                    throw new IOException("Short FAST_READ of pages " + page + "-" + last);
+                }
+                System.arraycopy(data, 0, image, page * PAGE_SIZE, length);
+            }
+        } catch (TagLostException e) {
+            throw e;
+        } catch (IOException e) {
+            reconnect(tag);
+            UltralightDump dump = readPages(tag, VARIANT_NAMES[variant], pages);
+            return new UltralightDump(dump.mName, dump.mImage, false, roundTrips + dump.mRoundTrips,
+                    System.nanoTime() - start);
+        }
+        return new UltralightDump(VARIANT_NAMES[variant], image, true, roundTrips, System.nanoTime() - start);
+    }
+
+    /** Reads the first {@code pages} pages of the connected {@code tag} with READ. */
+    public static UltralightDump readPages(UltralightPages tag, String name, int pages) throws IOException {
+        long start = System.nanoTime();
+        byte[] image = new byte[pages * PAGE_SIZE];
+        int roundTrips = 0;
+        for (int page = 0; page < pages; page += 4) {
+            byte[] data = tag.readPages(page);
+            roundTrips++;
+            // the last READ wraps around past the end
+            System.arraycopy(data, 0, image, page * PAGE_SIZE, Math.min(data.length, image.length - page * PAGE_SIZE));
+        }
+        return new UltralightDump(name, image, false, roundTrips, System.nanoTime() - start);
+    }
+
+    /**
+     * Reads the connected {@code tag} with {@link #read} and again page by page, and returns
+     * a line comparing the two, e.g.
+     * "NTAG216 904 bytes: fast_read 5 round trips 21.3ms, read 57 round trips 160.4ms".
+     *
+     * @throws IOException also if the two reads differ
+     */
+    public static String compare(UltralightPages tag) throws IOException {
+        UltralightDump fast = read(tag);
+        UltralightDump slow = readPages(tag, fast.getName(), fast.getPages());
+        if (!Arrays.equals(fast.mImage, slow.mImage)) {
+            throw new IOException("Tag changed between the reads");
+        }
+        return String.format(Locale.US, "%s, read %d round trips %.1fms", fast, slow.mRoundTrips, slow.mNanos / 1e6);
+    }
+
+    /** Returns the index in VARIANTS of a GET_VERSION response, -1 if not known. */
+    static int variant(byte[] version) {
+        if (version.length < 8 || version[1] != VENDOR_NXP) {
+            return -1;
+        }
+        for (int i = 0; i < VARIANTS.length; i++) {
+            if (version[2] == VARIANTS[i][0] && version[6] == VARIANTS[i][1]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Pages up to the end of the data area the CC declares, by default 16. */
+    private static int pagesFromCc(UltralightPages tag) throws IOException {
+        byte[] header = tag.readPages(0);
+        try {
+            return UltralightDeltaWriter.DATA_PAGE + UltralightDeltaWriter.dataSize(header) / PAGE_SIZE;
+        } catch (IOException e) {
+            return DEFAULT_PAGES;
+        }
+    }
+
+    private static void reconnect(UltralightPages tag) throws IOException {
+        tag.close();
+        tag.connect();
+    }
+
+    /** The chip, e.g. "NTAG213", or "unknown" if it did not answer GET_VERSION. */
+    public String getName() {
+        return mName;
+    }
+
+    /** The memory from page 0 to the end of user memory. */
+    public byte[] getImage() {
+        return mImage.clone();
+    }
+
+    public int getPages() {
+        return mImage.length / PAGE_SIZE;
+    }
+
+    /** Whether the image was read with FAST_READ. */
+    public boolean isFastRead() {
+        return mFastRead;
+    }
+
+    /** Commands sent, including identification. */
+    public int getRoundTrips() {
+        return mRoundTrips;
+    }
+
+    public long getNanos() {
+        return mNanos;
+    }
+
+    /** E.g. "NTAG216 904 bytes: fast_read 5 round trips 21.3ms". */
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s %d bytes: %s %d round trips %.1fms",
+                mName, mImage.length, mFastRead ? "fast_read" : "read", mRoundTrips, mNanos / 1e6);
+    }
+}
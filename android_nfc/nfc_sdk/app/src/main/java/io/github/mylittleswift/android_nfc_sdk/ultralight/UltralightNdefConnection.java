@@ -0,0 +1,84 @@
+package io.github.mylittleswift.android_nfc_sdk.ultralight;
+
+import android.nfc.NdefMessage;
+import android.nfc.Tag;
+import android.nfc.tech.Ndef;
+
+import io.github.mylittleswift.android_nfc_sdk.write.NdefConnection;
+
+import java.io.IOException;
+
+/**
+ * {@link NdefConnection} to a MIFARE Ultralight or NTAG which writes through
+ * {@link UltralightDeltaWriter}, so that only the pages which change are written. The
+ * cached getters come from the tag's {@link Ndef} technology, the I/O goes through
+ * {@link UltralightPages}.
+ */
+public final class UltralightNdefConnection implements NdefConnection {
+
+    private final Ndef mNdef;
+    private final UltralightPages mPages;
+    private int mPagesWritten = -1;
+
+    UltralightNdefConnection(Ndef ndef, UltralightPages pages) {
+        mNdef = ndef;
+        mPages = pages;
+    }
+
+    /** Returns a connection to {@code tag}, or null if it is no NDEF formatted Ultralight. */
+    public static UltralightNdefConnection get(Tag tag) {
+        if (tag == null) {
+            return null;
+        }
+        Ndef ndef = Ndef.get(tag);
+        AndroidUltralightPages pages = AndroidUltralightPages.get(tag);
+        return ndef == null || pages == null ? null : new UltralightNdefConnection(ndef, pages);
+    }
+
+    @Override
+    public boolean isWritable() {
+        return mNdef.isWritable();
+    }
+
+    @Override
+    public int getMaxSize() {
+        return mNdef.getMaxSize();
+    }
+
+    @Override
+    public byte[] getCachedNdefMessage() {
+        NdefMessage message = mNdef.getCachedNdefMessage();
+        return message == null ? null : message.toByteArray();
+    }
+
+    @Override
+    public boolean canReadBack() {
+        return true;
+    }
+
+    @Override
+    public void connect() throws IOException {
+        mPages.connect();
+    }
+
+    @Override
+    public boolean writeNdefMessage(byte[] message) throws IOException {
+        mPagesWritten = UltralightDeltaWriter.write(mPages, message);
+        return mPagesWritten > 0;
+    }
+
+    @Override
+    public byte[] readNdefMessage() throws IOException {
+        return UltralightDeltaWriter.readNdefMessage(mPages);
+    }
+
+    /** Pages changed by the last write, -1 before the first. */
+    public int getPagesWritten() {
+        return mPagesWritten;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mPages.close();
+    }
+}
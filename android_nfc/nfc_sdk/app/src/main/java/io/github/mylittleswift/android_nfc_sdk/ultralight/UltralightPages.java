@@ -0,0 +1,40 @@
+package io.github.mylittleswift.android_nfc_sdk.ultralight;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Page access to an NFC Forum Type 2 tag such as MIFARE Ultralight or NTAG, in pages of
+ * {@link #PAGE_SIZE} bytes. Implemented over {@code android.nfc.tech.MifareUltralight} by
+ * {@link AndroidUltralightPages}, and by fakes in tests.
+ */
+public interface UltralightPages extends Closeable {
+
+    int PAGE_SIZE = 4;
+
+    void connect() throws IOException;
+
+    /**
+     * Reads the four pages starting at {@code page}, wrapping around at the end of memory.
+     *
+     * @throws io.github.mylittleswift.android_nfc_sdk.write.TagLostException if the tag left the field
+     */
+    byte[] readPages(int page) throws IOException;
+
+    /**
+     * Writes one page of {@link #PAGE_SIZE} bytes.
+     *
+     * @throws io.github.mylittleswift.android_nfc_sdk.write.TagLostException if the tag left the field
+     */
+    void writePage(int page, byte[] data) throws IOException;
+
+    /**
+     * Sends a raw command, CRC excluded, and returns the response.
+     *
+     * @throws IOException on a NAK or no response; the tag must then be reconnected
+     */
+    byte[] transceive(byte[] command) throws IOException;
+
+    /** Maximum length of a command or response of {@link #transceive(byte[])}. */
+    int getMaxTransceiveLength();
+}
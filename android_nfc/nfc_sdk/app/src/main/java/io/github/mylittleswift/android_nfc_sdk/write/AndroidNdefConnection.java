@@ -0,0 +1,116 @@
+package io.github.mylittleswift.android_nfc_sdk.write;
+
+import android.nfc.FormatException;
+import android.nfc.NdefMessage;
+import android.nfc.Tag;
+import android.nfc.tech.Ndef;
+import android.nfc.tech.NdefFormatable;
+
+import java.io.IOException;
+
+/**
+ * {@link NdefConnection} over a discovered {@link Tag}: its {@link Ndef} technology, or
+ * {@link NdefFormatable} for a blank tag, which is formatted with the message as its
+ * first write.
+ */
+public final class AndroidNdefConnection implements NdefConnection {
+
+    private final Ndef mNdef;
+    private final NdefFormatable mFormatable;
+
+    private AndroidNdefConnection(Ndef ndef, NdefFormatable formatable) {
+        mNdef = ndef;
+        mFormatable = formatable;
+    }
+
+    /** Returns a connection to {@code tag}, or null if it supports neither technology. */
+    public static AndroidNdefConnection get(Tag tag) {
+        if (tag == null) {
+            return null;
+        }
+        Ndef ndef = Ndef.get(tag);
+        if (ndef != null) {
+            return new AndroidNdefConnection(ndef, null);
+        }
+        NdefFormatable formatable = NdefFormatable.get(tag);
+        return formatable == null ? null : new AndroidNdefConnection(null, formatable);
+    }
+
+    @Override
+    public boolean isWritable() {
+        return mNdef == null || mNdef.isWritable();
+    }
+
+    /** Unknown before formatting, in which case the format fails if the message is too large. */
+    @Override
+    public int getMaxSize() {
+        return mNdef != null ? mNdef.getMaxSize() : Integer.MAX_VALUE;
+    }
+
+    /** Read by the system on discovery; a tag which needs formatting has none. */
+    @Override
+    public byte[] getCachedNdefMessage() {
+        NdefMessage message = mNdef != null ? mNdef.getCachedNdefMessage() : null;
+        return message == null ? null : message.toByteArray();
+    }
+
+    /** A tag formatted through NdefFormatable cannot be read through it. */
+    @Override
+    public boolean canReadBack() {
+        return mNdef != null;
+    }
+
+    @Override
+    public void connect() throws IOException {
+        try {
+            if (mNdef != null) {
+                mNdef.connect();
+            } else {
+                mFormatable.connect();
+            }
+        } catch (android.nfc.TagLostException e) {
+            throw new TagLostException("Tag lost while connecting", e);
+        }
+    }
+
+    @Override
+    public boolean writeNdefMessage(byte[] message) throws IOException {
+        try {
+            NdefMessage ndefMessage = new NdefMessage(message);
+            if (mNdef != null) {
+                mNdef.writeNdefMessage(ndefMessage);
+            } else {
+                mFormatable.format(ndefMessage);
+            }
+            return true;
+        } catch (android.nfc.TagLostException e) {
+            throw new TagLostException("Tag lost while writing", e);
+        } catch (FormatException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public byte[] readNdefMessage() throws IOException {
+        try {
+            if (mNdef == null) {
+                throw new IOException("Not readable before formatting");
+            }
+            NdefMessage message = mNdef.getNdefMessage();
+            return message == null ? null : message.toByteArray();
+        } catch (android.nfc.TagLostException e) {
+            throw new TagLostException("Tag lost while reading", e);
+        } catch (FormatException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mNdef != null) {
+            mNdef.close();
+        } else {
+            mFormatable.close();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package io.github.mylittleswift.android_nfc_sdk.write;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes a message only where the tag does not hold it yet. A tag is skipped if it is known
+ * to hold the message: either the same UID had exactly this message written to it, or
+ * confirmed, within the last {@code maxAgeMillis}, or the message the tag was discovered
+ * with is the same (see {@link NdefWriteTransaction#writeIfChanged}).
+ *
+ * The first check is for immediate re-taps and costs neither radio time nor a comparison
+ * of the messages: the cache only keeps a 64-bit hash of the last message per UID, for the
+ * {@code capacity} most recently seen tags. Entries expire because the tag may have been
+ * rewritten by someone else meanwhile, and are dropped when a write to the tag fails.
+ */
+public final class DifferentialWriter {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long mMaxAgeMillis;
+    private final Map<ByteBuffer, long[]> mLastWritten;
+
+    /**
+     * @param maxAgeMillis how long a tag is trusted to still hold what was written to it
+     * @param capacity the number of tags remembered
+     */
+    public DifferentialWriter(long maxAgeMillis, final int capacity) {
+        mMaxAgeMillis = maxAgeMillis;
+        mLastWritten = new LinkedHashMap<ByteBuffer, long[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, long[]> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /** FNV-1a over the whole message. */
+    public static long hash(byte[] message) {
+        long hash = FNV_OFFSET;
+        for (byte b : message) {
+            hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Writes {@code message} to the tag {@code uid} unless it already holds it.
+     *
+     * @param tag the tag, or null if it supports no NDEF technology
+     * @return {@link WriteResult#STATUS_SKIPPED} if nothing had to be written
+     */
+    public WriteResult write(byte[] uid, NdefConnection tag, byte[] message, boolean verify, long nowMillis) {
+        long hash = hash(message);
+        ByteBuffer key = ByteBuffer.wrap(uid.clone());
+        synchronized (mLastWritten) {
+            long[] last = mLastWritten.get(key);
+            if (last != null && last[0] == hash && nowMillis - last[1] < mMaxAgeMillis) {
+                return NdefWriteTransaction.skipped(message);
+            }
+        }
+        WriteResult result = NdefWriteTransaction.writeIfChanged(tag, message, verify);
+        synchronized (mLastWritten) {
+            if (result.isWritten() || result.isSkipped()) {
+                mLastWritten.put(key, new long[]{hash, nowMillis});
+            } else {
+                mLastWritten.remove(key);
+            }
+        }
+        return result;
+    }
+
+    /** Forgets what was written to every tag, so that the next write compares again. */
+    public void clear() {
+        synchronized (mLastWritten) {
+            mLastWritten.clear();
+        }
+    }
+}
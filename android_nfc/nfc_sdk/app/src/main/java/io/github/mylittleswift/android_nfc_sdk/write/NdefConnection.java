@@ -0,0 +1,44 @@
+package io.github.mylittleswift.android_nfc_sdk.write;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * The NDEF operations of a tag a write transaction needs, as raw message bytes.
+ * {@link #isWritable()}, {@link #getMaxSize()} and {@link #getCachedNdefMessage()} are
+ * cached from discovery and cost no radio time; the other methods need {@link #connect()} first.
+ *
+ * Implemented over {@code android.nfc.tech.Ndef} and {@code NdefFormatable} by
+ * {@link AndroidNdefConnection}, and by fakes in tests.
+ */
+public interface NdefConnection extends Closeable {
+
+    boolean isWritable();
+
+    /** Maximum NDEF message size in bytes. */
+    int getMaxSize();
+
+    /**
+     * Returns the message the tag held when it was discovered, or null if it had none or
+     * it is not known.
+     */
+    byte[] getCachedNdefMessage();
+
+    /** Whether {@link #readNdefMessage()} can read back what was just written. */
+    boolean canReadBack();
+
+    void connect() throws IOException;
+
+    /**
+     * @return false if the tag was found to hold the message already, so nothing was written
+     * @throws TagLostException if the tag left the field
+     */
+    boolean writeNdefMessage(byte[] message) throws IOException;
+
+    /**
+     * Returns the message on the tag, or null if it has none.
+     *
+     * @throws TagLostException if the tag left the field
+     */
+    byte[] readNdefMessage() throws IOException;
+}
@@ -0,0 +1,99 @@
+package io.github.mylittleswift.android_nfc_sdk.write;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Writes one NDEF message over one connection. Writability and capacity are checked from
+ * the cached getters before connecting, so a read-only or small tag costs no radio time;
+ * the message is then written once, optionally read back and compared, and the
+ * connection is closed whatever happened. A connection which finds the message already on
+ * the tag and writes nothing is reported {@link WriteResult#STATUS_SKIPPED}. Every outcome is a {@link WriteResult} rather
+ * than an exception.
+ */
+public final class NdefWriteTransaction {
+
+    private NdefWriteTransaction() {
+    }
+
+    /**
+     * @param tag the tag, or null if it supports no NDEF technology
+     * @param verify read the message back and compare it with what was written, if the
+     *               tag {@link NdefConnection#canReadBack() can}
+     */
+    public static WriteResult write(NdefConnection tag, byte[] message, boolean verify) {
+        if (tag == null) {
+            return result(WriteResult.STATUS_UNSUPPORTED, message, 0, 0, 0, null);
+        }
+        if (!tag.isWritable()) {
+            return result(WriteResult.STATUS_READ_ONLY, message, 0, 0, 0, null);
+        }
+        if (tag.getMaxSize() < message.length) {
+            return result(WriteResult.STATUS_TOO_LARGE, message, 0, 0, 0, null);
+        }
+        long start = System.nanoTime();
+        // -1 until the step completed
+        long connected = -1;
+        long written = -1;
+        try {
+            tag.connect();
+            connected = System.nanoTime();
+            boolean changed = tag.writeNdefMessage(message);
+            written = System.nanoTime();
+            if (!changed) {
+                // what the tag holds was just compared, there is nothing to verify
+                return result(WriteResult.STATUS_SKIPPED, message, connected - start, written - connected, 0, null);
+            }
+            if (!verify || !tag.canReadBack()) {
+                return result(WriteResult.STATUS_WRITTEN, message, connected - start, written - connected, 0, null);
+            }
+            byte[] read = tag.readNdefMessage();
+            long verified = System.nanoTime();
+            return result(Arrays.equals(message, read) ? WriteResult.STATUS_WRITTEN : WriteResult.STATUS_VERIFY_FAILED,
+                    message, connected - start, written - connected, verified - written, null);
+        } catch (TagLostException e) {
+            return failure(WriteResult.STATUS_TAG_LOST, message, start, connected, written, e);
+        } catch (IOException e) {
+            return failure(WriteResult.STATUS_FAILED, message, start, connected, written, e);
+        } finally {
+            try {
+                tag.close();
+            } catch (IOException e) {
+                // nothing left to do with the tag
+            }
+        }
+    }
+
+    /**
+     * Like {@link #write}, but skips the write if the message the tag was discovered with
+     * already is {@code message}. Comparing costs no radio time, and a read-only tag which
+     * holds the message is skipped rather than reported {@link WriteResult#STATUS_READ_ONLY}.
+     */
+    public static WriteResult writeIfChanged(NdefConnection tag, byte[] message, boolean verify) {
+        if (tag != null && Arrays.equals(message, tag.getCachedNdefMessage())) {
+            return skipped(message);
+        }
+        return write(tag, message, verify);
+    }
+
+    static WriteResult skipped(byte[] message) {
+        return result(WriteResult.STATUS_SKIPPED, message, 0, 0, 0, null);
+    }
+
+    private static WriteResult failure(int status, byte[] message, long start, long connected, long written,
+                                       Exception e) {
+        long now = System.nanoTime();
+        // the failing step is the first one not completed
+        if (connected < 0) {
+            return result(status, message, now - start, 0, 0, e);
+        } else if (written < 0) {
+            return result(status, message, connected - start, now - connected, 0, e);
+        }
+        return result(status, message, connected - start, written - connected, now - written, e);
+    }
+
+    private static WriteResult result(int status, byte[] message, long connectNanos, long writeNanos,
+                                      long verifyNanos, Exception error) {
+        return new WriteResult(status, message.length, connectNanos, writeNanos, verifyNanos, error);
+    }
+}
@@ -0,0 +1,17 @@
+package io.github.mylittleswift.android_nfc_sdk.write;
+
+import java.io.IOException;
+
+/**
+ * The tag left the field during an operation; {@code android.nfc.TagLostException} as
+ * reported by an {@link NdefConnection}, so the transaction logic does not depend on the
+ * platform class.
+ */
+public class TagLostException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public TagLostException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
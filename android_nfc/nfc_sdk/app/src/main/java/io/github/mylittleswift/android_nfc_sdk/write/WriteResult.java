@@ -0,0 +1,100 @@
+package io.github.mylittleswift.android_nfc_sdk.write;
+
+/**
+ * How a {@link NdefWriteTransaction} ended, with the time spent connected to the tag.
+ */
+public final class WriteResult {
+
+    /** The message was written, and read back equal if verification was asked for. */
+    public static final int STATUS_WRITTEN = 0;
+    /** Nothing was written: the tag already held the message. */
+    public static final int STATUS_SKIPPED = 1;
+    /** The message is larger than the tag's NDEF capacity. */
+    public static final int STATUS_TOO_LARGE = 2;
+    public static final int STATUS_READ_ONLY = 3;
+    /** The tag left the field before the transaction completed. */
+    public static final int STATUS_TAG_LOST = 4;
+    /** The write went through but reading back returned something else. */
+    public static final int STATUS_VERIFY_FAILED = 5;
+    /** Any other I/O error, see {@link #getError()}. */
+    public static final int STATUS_FAILED = 6;
+    /** Nothing was written: the tag supports neither NDEF nor NDEF formatting. */
+    public static final int STATUS_UNSUPPORTED = 7;
+    public static final int STATUSES = 8;
+
+    private static final String[] STATUS_NAMES = {
+            "written", "skipped", "too_large", "read_only", "tag_lost", "verify_failed", "failed", "unsupported",
+    };
+
+    private final int mStatus;
+    private final int mMessageLength;
+    private final long mConnectNanos;
+    private final long mWriteNanos;
+    private final long mVerifyNanos;
+    private final Exception mError;
+
+    WriteResult(int status, int messageLength, long connectNanos, long writeNanos, long verifyNanos,
+                Exception error) {
+        mStatus = status;
+        mMessageLength = messageLength;
+        mConnectNanos = connectNanos;
+        mWriteNanos = writeNanos;
+        mVerifyNanos = verifyNanos;
+        mError = error;
+    }
+
+    /** One of the STATUS constants. */
+    public int getStatus() {
+        return mStatus;
+    }
+
+    public boolean isWritten() {
+        return mStatus == STATUS_WRITTEN;
+    }
+
+    /** Whether the tag already held the message, so that nothing had to be written. */
+    public boolean isSkipped() {
+        return mStatus == STATUS_SKIPPED;
+    }
+
+    public String getStatusName() {
+        return statusName(mStatus);
+    }
+
+    public static String statusName(int status) {
+        return STATUS_NAMES[status];
+    }
+
+    public int getMessageLength() {
+        return mMessageLength;
+    }
+
+    public long getConnectNanos() {
+        return mConnectNanos;
+    }
+
+    public long getWriteNanos() {
+        return mWriteNanos;
+    }
+
+    /** Time spent reading back, 0 if not verified. */
+    public long getVerifyNanos() {
+        return mVerifyNanos;
+    }
+
+    /** Total time connected to the tag. */
+    public long getRadioNanos() {
+        return mConnectNanos + mWriteNanos + mVerifyNanos;
+    }
+
+    /** The exception behind {@link #STATUS_TAG_LOST} or {@link #STATUS_FAILED}, else null. */
+    public Exception getError() {
+        return mError;
+    }
+
+    @Override
+    public String toString() {
+        return getStatusName() + " " + mMessageLength + " bytes in " + getRadioNanos() / 1000 + "us"
+                + (mError != null ? " (" + mError + ")" : "");
+    }
+}
@@ -0,0 +1,73 @@
+package io.github.mylittleswift.android_nfc_sdk.apdu;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+
+/**
+ * Drives {@link ApduDispatcher} with synthetic and recorded traces through
+ * {@link ApduLoadHarness} and prints latency percentiles and allocation per APDU. Skipped
+ * unless the tests run with {@code -Pbenchmark}.
+ */
+public class ApduDispatcherBenchmark {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(Boolean.getBoolean("nfcsdk.benchmark"));
+    }
+
+    @Test
+    public void synthetic() throws Exception {
+        ApduTable.Builder builder = new ApduTable.Builder();
+        for (int i = 0; i < 10000; i++) {
+            byte[] response = new byte[i % 64 + 2];
+            response[response.length - 2] = (byte) 0x90;
+            builder.put(new byte[]{0x00, (byte) 0xB0, (byte) (i >>> 8), (byte) i, 0x00}, response);
+        }
+        ApduTable table = builder.build();
+        File compiled = mFolder.newFile("faketag.bin");
+        CompiledProfileWriter.write(table, compiled);
+        MappedApduProfile mapped = MappedApduProfile.open(compiled);
+
+        ApduTrace trace = ApduTrace.synthetic(table, 2000, 50, 0.05, 1);
+        run("table", SessionProfile.create(table, new ArrayList<ApduRule>()), trace);
+        run("mapped", SessionProfile.create(mapped, new ArrayList<ApduRule>()), trace);
+    }
+
+    @Test
+    public void recorded() throws Exception {
+        ApduTrace trace = ApduTrace.readResource("select-read-auth.trace");
+        LocalApduService service = new LocalApduService(ApduDispatcherTest.profile());
+        try {
+            // includes the GET CHALLENGE round trip through the worker
+            new ApduLoadHarness().setRepeat(2000).run(service, trace);
+            System.out.println("recorded: " + new ApduLoadHarness().setRepeat(20000).run(service, trace));
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    private static void run(String name, SessionProfile profile, ApduTrace trace) throws Exception {
+        LocalApduService service = new LocalApduService(profile);
+        try {
+            // warm up
+            new ApduLoadHarness().setRepeat(2).run(service, trace);
+            for (int length : new int[]{5, 50}) {
+                System.out.println(name + " back to back, sessions of " + length + ": "
+                        + new ApduLoadHarness().setSessionLength(length).setRepeat(2).run(service, trace));
+            }
+            System.out.println(name + " at 20000/s, sessions of 50: "
+                    + new ApduLoadHarness().setRate(20000).run(service, trace));
+        } finally {
+            service.shutdown();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package io.github.mylittleswift.android_nfc_sdk.apdu;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ApduDispatcher}, driven through {@link LocalApduService}.
+ */
+public class ApduDispatcherTest {
+
+    private static final byte[] OK = {(byte) 0x90, 0x00};
+    private static final byte[] NOT_SUPPORTED = {0x68, 0x00};
+    private static final byte[] SELECT = {0x00, (byte) 0xA4, 0x04, 0x00, 0x07, (byte) 0xF0, 0x01, 0x02, 0x03, 0x04, 0x05, 0x06};
+    private static final byte[] READ = {0x00, (byte) 0xB0, 0x00, 0x00, 0x10};
+    private static final byte[] CHALLENGE = {0x00, (byte) 0x84, 0x00, 0x00, 0x08};
+    private static final long TIMEOUT = TimeUnit.SECONDS.toNanos(5);
+
+    private LocalApduService mService;
+
+    @After
+    public void tearDown() throws Exception {
+        if (mService != null) {
+            mService.shutdown();
+        }
+    }
+
+    /** The card answering select-read-auth.trace. */
+    static SessionProfile profile() {
+        byte[] record = new byte[18];
+        for (int i = 0; i < 16; i++) {
+            record[i] = (byte) (i + 1);
+        }
+        record[16] = (byte) 0x90;
+        List<ApduRule> rules = new ArrayList<>();
+        rules.add(new ApduRule.Builder().setCommand(SELECT).setNext("SELECTED").setResponse(OK).build());
+        rules.add(new ApduRule.Builder()
+                .setHeader(0x00, 0xB0, 0x00, 0x00).setMask(0xFF, 0xFF, 0x00, 0x00)
+                .setState("SELECTED").setResponse(record).build());
+        rules.add(new ApduRule.Builder()
+                .setHeader(0x00, 0x84, 0x00, 0x00).setMask(0xFF, 0xFF, 0xFF, 0xFF)
+                .setState("SELECTED").setHandler("challenge").build());
+        // stateless fallbacks: reading without a selected application, selecting another one
+        rules.add(new ApduRule.Builder()
+                .setHeader(0x00, 0xB0, 0x00, 0x00).setMask(0xFF, 0xFF, 0x00, 0x00)
+                .setResponse(new byte[]{0x69, (byte) 0x85}).build());
+        rules.add(new ApduRule.Builder()
+                .setHeader(0x00, 0xA4, 0x04, 0x00).setMask(0xFF, 0xFF, 0xFF, 0xFF)
+                .setResponse(new byte[]{0x6A, (byte) 0x82}).build());
+        return SessionProfile.create(ApduTable.EMPTY, rules);
+    }
+
+    @Test
+    public void processCommandApdu_answersPendingCommandOnPublish() {
+        mService = new LocalApduService();
+        assertFalse(mService.getDispatcher().isLoaded());
+        assertNull(mService.getDispatcher().processCommandApdu(SELECT));
+        mService.getDispatcher().publish(profile());
+        assertArrayEquals(OK, mService.getLastSent());
+        assertEquals(18, mService.transceive(READ, TIMEOUT).length);
+        assertEquals(1, mService.getMetrics().snapshot().getOutcome(ApduMetrics.OUTCOME_DEFERRED));
+    }
+
+    @Test
+    public void processCommandApdu_followsSession() {
+        mService = new LocalApduService(profile());
+        assertArrayEquals(new byte[]{0x69, (byte) 0x85}, mService.transceive(READ, TIMEOUT));
+        assertArrayEquals(OK, mService.transceive(SELECT, TIMEOUT));
+        assertEquals(18, mService.transceive(READ, TIMEOUT).length);
+        // computed on the worker and sent through the callback
+        assertNull(mService.getDispatcher().processCommandApdu(CHALLENGE));
+
+        mService.deactivate(ApduMetrics.DEACTIVATION_LINK_LOSS);
+        assertEquals(SessionProfile.INITIAL, mService.getDispatcher().getSession().getState());
+        assertArrayEquals(new byte[]{0x69, (byte) 0x85}, mService.transceive(READ, TIMEOUT));
+        assertArrayEquals(NOT_SUPPORTED,
+                mService.transceive(new byte[]{(byte) 0x80, (byte) 0xCA, 0x00, 0x00}, TIMEOUT));
+
+        ApduMetrics.Snapshot snapshot = mService.getMetrics().snapshot();
+        assertEquals(1, snapshot.getDeactivations(ApduMetrics.DEACTIVATION_LINK_LOSS));
+        assertEquals(1, snapshot.getOutcome(ApduMetrics.OUTCOME_MISS));
+        assertEquals(3, snapshot.getCount(0xB0));
+    }
+
+    @Test
+    public void handler_responseDroppedAfterDeactivation() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<byte[]> sent = new ArrayList<>();
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        ApduDispatcher dispatcher = new ApduDispatcher(new ApduDispatcher.Callback() {
+            @Override
+            public void sendResponseApdu(byte[] response) {
+                synchronized (sent) {
+                    sent.add(response);
+                }
+            }
+
+            @Override
+            public byte[] computeResponse(String handler, byte[] apdu, byte[] fixed, ApduSession session) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return OK;
+            }
+        }, worker, new ApduMetrics());
+        dispatcher.publish(profile());
+        dispatcher.processCommandApdu(SELECT);
+        assertNull(dispatcher.processCommandApdu(CHALLENGE));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        dispatcher.onDeactivated(ApduMetrics.DEACTIVATION_DESELECTED);
+        release.countDown();
+        worker.shutdown();
+        assertTrue(worker.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(sent.isEmpty());
+    }
+
+    @Test
+    public void replay_recordedTrace() throws Exception {
+        mService = new LocalApduService(profile());
+        ApduTrace trace = ApduTrace.readResource("select-read-auth.trace");
+        assertEquals(3, trace.getSessions().size());
+        ApduLoadHarness.Report report = new ApduLoadHarness().setRepeat(50).run(mService, trace);
+        assertEquals(50 * trace.getExchangeCount(), report.mCount);
+        assertEquals(0, report.mMismatches);
+        assertEquals(0, report.mTimeouts);
+    }
+
+    @Test
+    public void replay_syntheticTrace() {
+        ApduTable.Builder builder = new ApduTable.Builder();
+        for (int i = 0; i < 100; i++) {
+            builder.put(new byte[]{0x00, (byte) 0xB0, 0x00, (byte) i, 0x00}, new byte[]{(byte) i, (byte) 0x90, 0x00});
+        }
+        ApduTable table = builder.build();
+        mService = new LocalApduService(SessionProfile.create(table, new ArrayList<ApduRule>()));
+        ApduTrace trace = ApduTrace.synthetic(table, 20, 30, 0.1, 11);
+        ApduLoadHarness.Report report = new ApduLoadHarness().setRate(20000).setSessionLength(10).run(mService, trace);
+        assertEquals(200, report.mCount);
+        assertEquals(0, report.mMismatches);
+        assertEquals(20, mService.getMetrics().snapshot().getDeactivations(ApduMetrics.DEACTIVATION_DESELECTED));
+    }
+}
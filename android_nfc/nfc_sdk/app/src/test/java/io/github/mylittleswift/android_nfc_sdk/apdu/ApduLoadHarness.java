@@ -0,0 +1,151 @@
+package io.github.mylittleswift.android_nfc_sdk.apdu;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays an {@link ApduTrace} against a {@link LocalApduService} like a reader would: one
+ * command at a time, deactivating the service with DESELECTED after each session.
+ *
+ * With a rate set, commands are sent on a fixed schedule and latency is measured from the
+ * time a command was due, so a slow response also delays (and is charged to) the commands
+ * behind it instead of hiding them. Allocation is measured on the sending thread, which is
+ * where HostApduService calls processCommandApdu; handler work on the worker is not
+ * included.
+ */
+final class ApduLoadHarness {
+
+    /** What a reader waits at most for a response; ISO 14443-4 frame waiting is far lower. */
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private int mRate;
+    private int mSessionLength;
+    private int mRepeat = 1;
+
+    /** Sends at most {@code apdusPerSecond} commands a second; 0, the default, sends back to back. */
+    ApduLoadHarness setRate(int apdusPerSecond) {
+        mRate = apdusPerSecond;
+        return this;
+    }
+
+    /** Cuts every session after {@code length} commands; 0, the default, plays them whole. */
+    ApduLoadHarness setSessionLength(int length) {
+        mSessionLength = length;
+        return this;
+    }
+
+    /** Plays the trace {@code repeat} times. */
+    ApduLoadHarness setRepeat(int repeat) {
+        mRepeat = repeat;
+        return this;
+    }
+
+    Report run(LocalApduService service, ApduTrace trace) {
+        List<List<ApduTrace.Exchange>> sessions = trace.getSessions();
+        int total = 0;
+        for (List<ApduTrace.Exchange> session : sessions) {
+            total += length(session);
+        }
+        total *= mRepeat;
+        long[] latencies = new long[total];
+        int mismatches = 0;
+        int timeouts = 0;
+        int sent = 0;
+        long period = mRate > 0 ? TimeUnit.SECONDS.toNanos(1) / mRate : 0;
+
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        long due = start;
+        for (int r = 0; r < mRepeat; r++) {
+            for (List<ApduTrace.Exchange> session : sessions) {
+                int length = length(session);
+                for (int i = 0; i < length; i++) {
+                    ApduTrace.Exchange exchange = session.get(i);
+                    long sendAt = System.nanoTime();
+                    if (period > 0) {
+                        due += period;
+                        while ((sendAt = System.nanoTime()) < due) {
+                            // parking overshoots by tens of microseconds, so spin the rest
+                            if (due - sendAt > SPIN_NANOS) {
+                                LockSupport.parkNanos(due - sendAt - SPIN_NANOS);
+                            }
+                        }
+                        sendAt = due;
+                    }
+                    byte[] response = service.transceive(exchange.mCommand, TIMEOUT_NANOS);
+                    latencies[sent++] = System.nanoTime() - sendAt;
+                    if (response == null) {
+                        timeouts++;
+                    } else if (exchange.mExpected != null && !Arrays.equals(exchange.mExpected, response)) {
+                        mismatches++;
+                    }
+                }
+                service.deactivate(ApduMetrics.DEACTIVATION_DESELECTED);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        Arrays.sort(latencies);
+        return new Report(sent, elapsed, latencies, allocatedBefore < 0 ? -1 : allocated, mismatches, timeouts);
+    }
+
+    private int length(List<ApduTrace.Exchange> session) {
+        return mSessionLength > 0 ? Math.min(mSessionLength, session.size()) : session.size();
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    static final class Report {
+        final int mCount;
+        final long mElapsedNanos;
+        final long[] mSortedLatencies;
+        /** -1 if the JVM cannot tell */
+        final long mAllocatedBytes;
+        final int mMismatches;
+        final int mTimeouts;
+
+        Report(int count, long elapsedNanos, long[] sortedLatencies, long allocatedBytes,
+               int mismatches, int timeouts) {
+            mCount = count;
+            mElapsedNanos = elapsedNanos;
+            mSortedLatencies = sortedLatencies;
+            mAllocatedBytes = allocatedBytes;
+            mMismatches = mismatches;
+            mTimeouts = timeouts;
+        }
+
+        long percentileNanos(double q) {
+            if (mCount == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(q * mCount) - 1;
+            return mSortedLatencies[Math.max(0, Math.min(mCount - 1, rank))];
+        }
+
+        double allocatedBytesPerApdu() {
+            return mAllocatedBytes < 0 || mCount == 0 ? -1 : (double) mAllocatedBytes / mCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d APDUs at %.0f/s, p50 %.1f us, p99 %.1f us, p999 %.1f us, %.1f bytes/APDU, %d wrong, %d timed out",
+                    mCount, mCount * 1e9 / mElapsedNanos, percentileNanos(0.5) / 1000.0,
+                    percentileNanos(0.99) / 1000.0, percentileNanos(0.999) / 1000.0,
+                    allocatedBytesPerApdu(), mMismatches, mTimeouts);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package io.github.mylittleswift.android_nfc_sdk.apdu;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ApduMetrics}.
+ */
+public class ApduMetricsTest {
+
+    @Test
+    public void bucket_isPowerOfTwoMicros() {
+        assertEquals(0, ApduMetrics.bucket(0));
+        assertEquals(1, ApduMetrics.bucket(1));
+        assertEquals(2, ApduMetrics.bucket(2));
+        assertEquals(2, ApduMetrics.bucket(3));
+        assertEquals(11, ApduMetrics.bucket(1500));
+        assertEquals(ApduMetrics.BUCKETS - 1, ApduMetrics.bucket(Long.MAX_VALUE / 1000));
+        assertTrue(1500 < ApduMetrics.bucketLimitMicros(11));
+    }
+
+    @Test
+    public void snapshot_countsPerIns() {
+        ApduMetrics metrics = new ApduMetrics();
+        for (int i = 0; i < 99; i++) {
+            metrics.recordCommand(0xB0, 100000, ApduMetrics.OUTCOME_HIT);
+        }
+        metrics.recordCommand(0xB0, 50000000, ApduMetrics.OUTCOME_HIT);
+        metrics.recordCommand((byte) 0xA4, 10000, ApduMetrics.OUTCOME_MISS);
+        metrics.recordDeactivation(ApduMetrics.DEACTIVATION_DESELECTED);
+        metrics.recordDeactivation(ApduMetrics.DEACTIVATION_LINK_LOSS);
+        metrics.recordDeactivation(ApduMetrics.DEACTIVATION_LINK_LOSS);
+        metrics.recordDeactivation(7);
+
+        ApduMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(100, snapshot.getCount(0xB0));
+        assertEquals(1, snapshot.getCount(0xA4));
+        assertEquals(0, snapshot.getCount(0x84));
+        assertEquals(100, snapshot.getOutcome(ApduMetrics.OUTCOME_HIT));
+        assertEquals(1, snapshot.getOutcome(ApduMetrics.OUTCOME_MISS));
+        assertEquals(2, snapshot.getDeactivations(ApduMetrics.DEACTIVATION_LINK_LOSS));
+        assertEquals(1, snapshot.getDeactivations(ApduMetrics.DEACTIVATION_DESELECTED));
+        // 100 µs lands in [64, 128), 50 ms in [32768, 65536)
+        assertEquals(128, snapshot.getPercentileMicros(0xB0, 0.5));
+        assertEquals(128, snapshot.getPercentileMicros(0xB0, 0.99));
+        assertEquals(65536, snapshot.getPercentileMicros(0xB0, 1.0));
+        assertEquals((99 * 100000L + 50000000L) / 100, snapshot.getMeanNanos(0xB0));
+
+        StringWriter text = new StringWriter();
+        snapshot.writeTo(new PrintWriter(text));
+        assertTrue(text.toString().contains("ins B0 count 100"));
+        assertTrue(text.toString().contains("deactivated_link_loss 2"));
+
+        metrics.reset();
+        assertEquals(0, metrics.snapshot().getCount(0xB0));
+        assertEquals(0, metrics.snapshot().getDeactivations(ApduMetrics.DEACTIVATION_LINK_LOSS));
+    }
+
+    @Test
+    public void recordCommand_doesNotAllocate() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+        long id = Thread.currentThread().getId();
+        ApduMetrics metrics = new ApduMetrics();
+        for (int i = 0; i < 100000; i++) {
+            metrics.recordCommand(i, i * 10L, i & 3);
+        }
+        long before = allocation.getThreadAllocatedBytes(id);
+        for (int i = 0; i < 100000; i++) {
+            metrics.recordCommand(i, i * 10L, i & 3);
+        }
+        long allocated = allocation.getThreadAllocatedBytes(id) - before;
+        // a little slack for the MXBean call itself
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+}
@@ -0,0 +1,101 @@
+package io.github.mylittleswift.android_nfc_sdk.apdu;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Times {@link ApduRuleSet#match(byte[])} against a first-match linear scan at 10, 1,000 and
+ * 100,000 rules. Skipped unless the tests run with {@code -Pbenchmark}.
+ */
+public class ApduRuleSetBenchmark {
+
+    private static final int LOOKUPS = 200000;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(Boolean.getBoolean("nfcsdk.benchmark"));
+    }
+
+    @Test
+    public void match() {
+        for (int count : new int[]{10, 1000, 100000}) {
+            run(count);
+        }
+    }
+
+    private static void run(int count) {
+        Random random = new Random(count);
+        List<ApduRule> rules = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            // a mix of exact reads, P2 wildcards and AID selects, roughly as in real profiles
+            ApduRule.Builder builder = new ApduRule.Builder().setResponse(new byte[]{(byte) 0x90, 0x00});
+            switch (i % 3) {
+                case 0:
+                    builder.setHeader(0x00, 0xB0, i >>> 8, i).setMask(0xFF, 0xFF, 0xFF, 0xFF);
+                    break;
+                case 1:
+                    builder.setHeader(0x80, random.nextInt(256), i >>> 8, 0).setMask(0xFF, 0xFF, 0xFF, 0x00);
+                    break;
+                default:
+                    byte[] aid = new byte[7];
+                    random.nextBytes(aid);
+                    builder.setHeader(0x00, 0xA4, 0x04, 0x00).setMask(0xFF, 0xFF, 0xFF, 0xFF)
+                            .setDataLength(5, 16).setDataPrefix(aid);
+                    break;
+            }
+            rules.add(builder.build());
+        }
+        byte[][] apdus = new byte[4096][];
+        for (int i = 0; i < apdus.length; i++) {
+            int n = random.nextInt(count * 2);
+            switch (n % 3) {
+                case 0:
+                    apdus[i] = new byte[]{0x00, (byte) 0xB0, (byte) (n >>> 8), (byte) n, 0x00};
+                    break;
+                case 1:
+                    apdus[i] = new byte[]{(byte) 0x80, (byte) random.nextInt(256), (byte) (n >>> 8), 0x01};
+                    break;
+                default:
+                    // selects the AID of rule n when there is one, a random AID otherwise
+                    apdus[i] = new byte[]{0x00, (byte) 0xA4, 0x04, 0x00, 0x07, 0, 0, 0, 0, 0, 0, 0};
+                    if (n < count) {
+                        System.arraycopy(rules.get(n).prefixBytes(), 0, apdus[i], 5, 7);
+                    } else {
+                        random.nextBytes(apdus[i]);
+                        System.arraycopy(new byte[]{0x00, (byte) 0xA4, 0x04, 0x00, 0x07}, 0, apdus[i], 0, 5);
+                    }
+                    break;
+            }
+        }
+
+        long start = System.nanoTime();
+        ApduRuleSet set = ApduRuleSet.compile(rules);
+        long compileMillis = (System.nanoTime() - start) / 1000000;
+
+        int sink = 0;
+        for (int i = 0; i < LOOKUPS * 5; i++) {
+            sink += set.match(apdus[i & (apdus.length - 1)]);
+        }
+        start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            sink += set.match(apdus[i & (apdus.length - 1)]);
+        }
+        long treeNanos = System.nanoTime() - start;
+
+        int linearLookups = Math.max(1000, LOOKUPS / Math.max(1, count / 100));
+        start = System.nanoTime();
+        for (int i = 0; i < linearLookups; i++) {
+            sink += ApduRuleSetTest.linearMatch(rules, apdus[i & (apdus.length - 1)]);
+        }
+        long linearNanos = System.nanoTime() - start;
+
+        System.out.println(String.format("%6d rules: %5d states, compiled in %4d ms, tree %7.1f ns/op, linear %10.1f ns/op (%d)",
+                count, set.stateCount(), compileMillis, (double) treeNanos / LOOKUPS,
+                (double) linearNanos / linearLookups, sink));
+    }
+}
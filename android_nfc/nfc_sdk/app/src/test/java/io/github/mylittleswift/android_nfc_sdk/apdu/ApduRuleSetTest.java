@@ -0,0 +1,145 @@
+package io.github.mylittleswift.android_nfc_sdk.apdu;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ApduRule} and {@link ApduRuleSet}.
+ */
+public class ApduRuleSetTest {
+
+    private static final byte[] OK = {(byte) 0x90, 0x00};
+
+    @Test
+    public void match_firstRuleWins() {
+        List<ApduRule> rules = new ArrayList<>();
+        rules.add(rule(0x00, 0xA4, 0x04, 0x00, 0xFF, 0xFF, 0xFF, 0xFF, new byte[]{(byte) 0xA0, 0x00}, 1));
+        rules.add(rule(0x00, 0xA4, 0x00, 0x00, 0xFF, 0xFF, 0x00, 0x00, new byte[0], 2));
+        rules.add(rule(0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, new byte[0], 3));
+        ApduRuleSet set = ApduRuleSet.compile(rules);
+
+        assertEquals(0, set.match(new byte[]{0x00, (byte) 0xA4, 0x04, 0x00, 0x03, (byte) 0xA0, 0x00, 0x01}));
+        assertEquals(1, set.match(new byte[]{0x00, (byte) 0xA4, 0x04, 0x00, 0x02, (byte) 0xA1, 0x00}));
+        assertEquals(1, set.match(new byte[]{0x00, (byte) 0xA4, 0x02, 0x0C}));
+        assertEquals(2, set.match(new byte[]{(byte) 0x80, (byte) 0xCA, 0x00, 0x00}));
+        assertArrayEquals(new byte[]{3}, set.lookup(new byte[]{0x00, (byte) 0xB0, 0x00, 0x00, 0x10}));
+        assertEquals(-1, set.match(new byte[]{0x00, (byte) 0xA4, 0x04}));
+        assertEquals(3, set.size());
+    }
+
+    @Test
+    public void match_checksDataLength() {
+        List<ApduRule> rules = new ArrayList<>();
+        rules.add(new ApduRule.Builder()
+                .setHeader(0x00, 0xD6, 0x00, 0x00)
+                .setMask(0xFF, 0xFF, 0x00, 0x00)
+                .setDataLength(1, 4)
+                .setResponse(OK)
+                .build());
+        ApduRuleSet set = ApduRuleSet.compile(rules);
+
+        assertEquals(-1, set.match(new byte[]{0x00, (byte) 0xD6, 0x00, 0x00}));
+        assertEquals(0, set.match(new byte[]{0x00, (byte) 0xD6, 0x00, 0x00, 0x01, 0x55}));
+        assertEquals(0, set.match(new byte[]{0x00, (byte) 0xD6, 0x00, 0x00, 0x04, 1, 2, 3, 4}));
+        assertEquals(-1, set.match(new byte[]{0x00, (byte) 0xD6, 0x00, 0x00, 0x05, 1, 2, 3, 4, 5}));
+        // extended length, Nc = 3
+        assertEquals(0, set.match(new byte[]{0x00, (byte) 0xD6, 0x00, 0x00, 0x00, 0x00, 0x03, 1, 2, 3}));
+    }
+
+    @Test
+    public void match_agreesWithLinearScan() {
+        Random random = new Random(8);
+        for (int round = 0; round < 20; round++) {
+            List<ApduRule> rules = randomRules(random, 1 + random.nextInt(200));
+            ApduRuleSet set = ApduRuleSet.compile(rules);
+            for (int i = 0; i < 2000; i++) {
+                byte[] apdu = randomApdu(random);
+                assertEquals(linearMatch(rules, apdu), set.match(apdu));
+            }
+        }
+    }
+
+    @Test
+    public void compiledProfile_keepsRules() throws Exception {
+        List<ApduRule> rules = randomRules(new Random(9), 50);
+        File file = File.createTempFile("faketag", ".bin");
+        try {
+            CompiledProfileWriter.write(new ApduTable.Builder()
+                    .put(new byte[]{0x00, (byte) 0xA4, 0x04, 0x00}, OK).build(), rules, file);
+            MappedApduProfile mapped = MappedApduProfile.open(file);
+            assertEquals(1, mapped.size());
+            assertArrayEquals(OK, mapped.lookup(new byte[]{0x00, (byte) 0xA4, 0x04, 0x00}));
+            List<ApduRule> read = mapped.getRules();
+            assertEquals(rules.size(), read.size());
+            ApduRuleSet expected = ApduRuleSet.compile(rules);
+            ApduRuleSet actual = ApduRuleSet.compile(read);
+            Random random = new Random(10);
+            for (int i = 0; i < 2000; i++) {
+                byte[] apdu = randomApdu(random);
+                assertEquals(expected.match(apdu), actual.match(apdu));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    static int linearMatch(List<ApduRule> rules, byte[] apdu) {
+        for (int i = 0; i < rules.size(); i++) {
+            if (rules.get(i).matches(apdu)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Rules over a small alphabet, so that random APDUs hit them often. */
+    static List<ApduRule> randomRules(Random random, int count) {
+        List<ApduRule> rules = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int[] masks = {0x00, 0xFF, 0xFF, 0xF0, 0x0F};
+            byte[] prefix = new byte[random.nextInt(4) == 0 ? random.nextInt(4) : 0];
+            for (int j = 0; j < prefix.length; j++) {
+                prefix[j] = (byte) random.nextInt(3);
+            }
+            int min = random.nextInt(3) == 0 ? random.nextInt(4) : 0;
+            int max = random.nextInt(3) == 0 ? min + random.nextInt(4) : ApduRule.MAX_DATA;
+            rules.add(new ApduRule.Builder()
+                    .setHeader(random.nextInt(3), random.nextInt(3), random.nextInt(3), random.nextInt(3))
+                    .setMask(masks[random.nextInt(masks.length)], masks[random.nextInt(masks.length)],
+                            masks[random.nextInt(masks.length)], masks[random.nextInt(masks.length)])
+                    .setDataLength(min, max)
+                    .setDataPrefix(prefix)
+                    .setResponse(new byte[]{(byte) i, (byte) 0x90, 0x00})
+                    .build());
+        }
+        return rules;
+    }
+
+    static byte[] randomApdu(Random random) {
+        byte[] apdu = new byte[random.nextInt(12)];
+        for (int i = 0; i < apdu.length; i++) {
+            apdu[i] = (byte) random.nextInt(3);
+        }
+        if (apdu.length > 5 && random.nextBoolean()) {
+            apdu[4] = (byte) (apdu.length - 5);
+        }
+        return apdu;
+    }
+
+    private static ApduRule rule(int cla, int ins, int p1, int p2,
+                                 int claMask, int insMask, int p1Mask, int p2Mask,
+                                 byte[] prefix, int response) {
+        return new ApduRule.Builder()
+                .setHeader(cla, ins, p1, p2)
+                .setMask(claMask, insMask, p1Mask, p2Mask)
+                .setDataPrefix(prefix)
+                .setResponse(new byte[]{(byte) response})
+                .build();
+    }
+}
@@ -0,0 +1,62 @@
+package io.github.mylittleswift.android_nfc_sdk.apdu;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ApduTable}.
+ */
+public class ApduTableTest {
+
+    private static final byte[] SELECT = {0x00, (byte) 0xA4, 0x04, 0x00, 0x02, 0x3F, 0x00};
+    private static final byte[] OK = {(byte) 0x90, 0x00};
+
+    @Test
+    public void lookup_matchesByContent() throws Exception {
+        ApduTable table = new ApduTable.Builder().put(SELECT, OK).build();
+
+        assertArrayEquals(OK, table.lookup(SELECT.clone()));
+        assertNull(table.lookup(new byte[]{0x00, (byte) 0xA4, 0x04, 0x00}));
+        assertNull(ApduTable.EMPTY.lookup(SELECT));
+    }
+
+    @Test
+    public void lookup_returnsSameArrayEveryTime() throws Exception {
+        ApduTable table = new ApduTable.Builder().put(SELECT, OK).build();
+
+        assertSame(table.lookup(SELECT), table.lookup(SELECT.clone()));
+    }
+
+    @Test
+    public void builder_copiesInputAndKeepsLastResponse() throws Exception {
+        byte[] command = SELECT.clone();
+        byte[] response = OK.clone();
+        ApduTable.Builder builder = new ApduTable.Builder().put(command, response);
+        command[6] = 0x01;
+        response[0] = 0x6A;
+
+        ApduTable first = builder.build();
+        builder.put(SELECT, new byte[]{0x6A, (byte) 0x82});
+        ApduTable second = builder.build();
+
+        assertArrayEquals(OK, first.lookup(SELECT));
+        assertArrayEquals(new byte[]{0x6A, (byte) 0x82}, second.lookup(SELECT));
+        assertEquals(1, second.size());
+    }
+
+    @Test
+    public void builder_growsPastInitialCapacity() throws Exception {
+        ApduTable.Builder builder = new ApduTable.Builder();
+        for (int i = 0; i < 1000; i++) {
+            builder.put(new byte[]{0x00, (byte) 0xB0, (byte) (i >>> 8), (byte) i}, new byte[]{(byte) i, (byte) 0x90, 0x00});
+        }
+        ApduTable table = builder.build();
+
+        assertEquals(1000, table.size());
+        for (int i = 0; i < 1000; i++) {
+            assertArrayEquals(new byte[]{(byte) i, (byte) 0x90, 0x00},
+                    table.lookup(new byte[]{0x00, (byte) 0xB0, (byte) (i >>> 8), (byte) i}));
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package io.github.mylittleswift.android_nfc_sdk.apdu;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A stream of reader sessions, each a list of commands with the responses expected. Traces
+ * are either generated or read from a recording in this text format:
+ *
+ * <pre>
+ * # comment
+ * &gt; 00A4040007F0010203040506     command
+ * &lt; 9000                         expected response, * for any
+ *                                (an empty line ends the session)
+ * </pre>
+ */
+final class ApduTrace {
+
+    static final class Exchange {
+        final byte[] mCommand;
+        /** null if any response will do */
+        final byte[] mExpected;
+
+        Exchange(byte[] command, byte[] expected) {
+            mCommand = command;
+            mExpected = expected;
+        }
+    }
+
+    private final List<List<Exchange>> mSessions;
+
+    private ApduTrace(List<List<Exchange>> sessions) {
+        mSessions = Collections.unmodifiableList(sessions);
+    }
+
+    List<List<Exchange>> getSessions() {
+        return mSessions;
+    }
+
+    int getExchangeCount() {
+        int count = 0;
+        for (List<Exchange> session : mSessions) {
+            count += session.size();
+        }
+        return count;
+    }
+
+    static ApduTrace readResource(String name) throws IOException {
+        InputStream in = ApduTrace.class.getResourceAsStream(name);
+        if (in == null) {
+            throw new IOException("No resource " + name);
+        }
+        return read(new InputStreamReader(in, "UTF-8"));
+    }
+
+    static ApduTrace read(Reader in) throws IOException {
+        List<List<Exchange>> sessions = new ArrayList<>();
+        List<Exchange> session = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(in);
+        try {
+            byte[] command = null;
+            int lineNumber = 0;
+            for (String line; (line = reader.readLine()) != null; ) {
+                lineNumber++;
+                line = line.trim();
+                if (line.startsWith("#")) {
+                    continue;
+                }
+                if (line.isEmpty()) {
+                    if (!session.isEmpty()) {
+                        sessions.add(session);
+                        session = new ArrayList<>();
+                    }
+                } else if (line.startsWith(">") && command == null) {
+                    command = parseHex(line.substring(1).trim());
+                } else if (line.startsWith("<") && command != null) {
+                    String expected = line.substring(1).trim();
+                    session.add(new Exchange(command, "*".equals(expected) ? null : parseHex(expected)));
+                    command = null;
+                } else {
+                    throw new IOException("Unexpected line " + lineNumber + ": " + line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        if (!session.isEmpty()) {
+            sessions.add(session);
+        }
+        return new ApduTrace(sessions);
+    }
+
+    /**
+     * Generates {@code sessions} sessions of {@code length} commands picked from
+     * {@code table}; a fraction {@code missRate} are unknown commands expecting 6800.
+     */
+    static ApduTrace synthetic(ApduTable table, int sessions, int length, double missRate, long seed) {
+        List<Exchange> known = new ArrayList<>();
+        for (int i = 0; i < table.capacity(); i++) {
+            if (table.commandAt(i) != null) {
+                known.add(new Exchange(table.commandAt(i), table.responseAt(i)));
+            }
+        }
+        Random random = new Random(seed);
+        List<List<Exchange>> result = new ArrayList<>();
+        for (int s = 0; s < sessions; s++) {
+            List<Exchange> session = new ArrayList<>();
+            for (int i = 0; i < length; i++) {
+                if (known.isEmpty() || random.nextDouble() < missRate) {
+                    // CLA FF is not used by any profile
+                    byte[] unknown = {(byte) 0xFF, (byte) random.nextInt(256), 0x00, 0x00};
+                    session.add(new Exchange(unknown, new byte[]{0x68, 0x00}));
+                } else {
+                    session.add(known.get(random.nextInt(known.size())));
+                }
+            }
+            result.add(session);
+        }
+        return new ApduTrace(result);
+    }
+
+    static byte[] parseHex(String hex) throws IOException {
+        hex = hex.replace(" ", "");
+        if (hex.length() % 2 != 0) {
+            throw new IOException("Bad hex: " + hex);
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IOException("Bad hex: " + hex);
+            }
+            bytes[i] = (byte) (high << 4 | low);
+        }
+        return bytes;
+    }
+}
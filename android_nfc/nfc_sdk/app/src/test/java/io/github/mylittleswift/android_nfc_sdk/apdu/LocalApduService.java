@@ -0,0 +1,95 @@
+package io.github.mylittleswift.android_nfc_sdk.apdu;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Stands in for the HostApduService plumbing around an {@link ApduDispatcher}: the calling
+ * thread plays the binder thread, and {@link #transceive(byte[], long)} waits for a response
+ * sent later through {@link ApduDispatcher.Callback#sendResponseApdu(byte[])} the way the
+ * NFC stack does. Handlers are answered by {@link #computeResponse}, which returns 8 zero
+ * bytes and 9000 for "challenge" and null otherwise.
+ */
+class LocalApduService implements ApduDispatcher.Callback {
+
+    private final ExecutorService mWorker = Executors.newSingleThreadExecutor();
+    private final ApduMetrics mMetrics = new ApduMetrics();
+    private final ApduDispatcher mDispatcher = new ApduDispatcher(this, mWorker, mMetrics);
+
+    private volatile byte[] mSent;
+    private volatile Thread mWaiter;
+
+    LocalApduService() {
+    }
+
+    LocalApduService(SessionProfile profile) {
+        mDispatcher.publish(profile);
+    }
+
+    ApduDispatcher getDispatcher() {
+        return mDispatcher;
+    }
+
+    ApduMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Sends {@code apdu} like a reader and returns the response, or null if none came within
+     * {@code timeoutNanos}.
+     */
+    byte[] transceive(byte[] apdu, long timeoutNanos) {
+        mSent = null;
+        mWaiter = Thread.currentThread();
+        byte[] response = mDispatcher.processCommandApdu(apdu);
+        if (response != null) {
+            mWaiter = null;
+            return response;
+        }
+        long deadline = System.nanoTime() + timeoutNanos;
+        while ((response = mSent) == null) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+                break;
+            }
+            LockSupport.parkNanos(this, left);
+        }
+        mWaiter = null;
+        return response;
+    }
+
+    /** Returns the last response sent through the callback. */
+    byte[] getLastSent() {
+        return mSent;
+    }
+
+    void deactivate(int reason) {
+        mDispatcher.onDeactivated(reason);
+    }
+
+    void shutdown() throws InterruptedException {
+        mWorker.shutdown();
+        mWorker.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void sendResponseApdu(byte[] response) {
+        mSent = response;
+        Thread waiter = mWaiter;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    @Override
+    public byte[] computeResponse(String handler, byte[] apdu, byte[] fixed, ApduSession session) {
+        if ("challenge".equals(handler)) {
+            byte[] response = new byte[10];
+            response[8] = (byte) 0x90;
+            return response;
+        }
+        return null;
+    }
+}
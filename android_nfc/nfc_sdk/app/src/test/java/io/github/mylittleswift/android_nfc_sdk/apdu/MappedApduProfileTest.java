@@ -0,0 +1,84 @@
+package io.github.mylittleswift.android_nfc_sdk.apdu;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link CompiledProfileWriter} and {@link MappedApduProfile}.
+ */
+public class MappedApduProfileTest {
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("faketag", ".bin");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mFile.delete();
+    }
+
+    @Test
+    public void lookup_agreesWithTable() throws Exception {
+        ApduTable.Builder builder = new ApduTable.Builder();
+        for (int i = 0; i < 500; i++) {
+            byte[] response = new byte[i % 40 + 2];
+            response[0] = (byte) i;
+            response[response.length - 2] = (byte) 0x90;
+            builder.put(new byte[]{0x00, (byte) 0xB0, (byte) (i >>> 8), (byte) i, 0x00}, response);
+        }
+        ApduTable table = builder.build();
+        CompiledProfileWriter.write(table, mFile);
+
+        MappedApduProfile profile = MappedApduProfile.open(mFile);
+        assertEquals(500, profile.size());
+        for (int i = 0; i < 600; i++) {
+            byte[] apdu = {0x00, (byte) 0xB0, (byte) (i >>> 8), (byte) i, 0x00};
+            byte[] expected = table.lookup(apdu);
+            if (expected == null) {
+                assertNull(profile.lookup(apdu));
+            } else {
+                assertArrayEquals(expected, profile.lookup(apdu));
+            }
+        }
+        assertNull(profile.lookup(new byte[]{0x00, (byte) 0xB0, 0x00, 0x01}));
+    }
+
+    @Test
+    public void lookup_reusesResponseArray() throws Exception {
+        byte[] select = {0x00, (byte) 0xA4, 0x04, 0x00};
+        CompiledProfileWriter.write(new ApduTable.Builder().put(select, new byte[]{(byte) 0x90, 0x00}).build(), mFile);
+
+        MappedApduProfile profile = MappedApduProfile.open(mFile);
+        assertSame(profile.lookup(select), profile.lookup(select.clone()));
+    }
+
+    @Test
+    public void open_emptyTable() throws Exception {
+        CompiledProfileWriter.write(ApduTable.EMPTY, mFile);
+
+        MappedApduProfile profile = MappedApduProfile.open(mFile);
+        assertEquals(0, profile.size());
+        assertNull(profile.lookup(new byte[]{0x00, (byte) 0xA4, 0x04, 0x00}));
+    }
+
+    @Test(expected = IOException.class)
+    public void open_rejectsBadOffsets() throws Exception {
+        byte[] select = {0x00, (byte) 0xA4, 0x04, 0x00};
+        CompiledProfileWriter.write(new ApduTable.Builder().put(select, new byte[]{(byte) 0x90, 0x00}).build(), mFile);
+        RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+        raf.setLength(raf.length() - 1);
+        raf.close();
+
+        MappedApduProfile.open(mFile);
+    }
+}
@@ -0,0 +1,110 @@
+package io.github.mylittleswift.android_nfc_sdk.apdu;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link SessionProfile}.
+ */
+public class SessionProfileTest {
+
+    private static final byte[] OK = {(byte) 0x90, 0x00};
+    private static final byte[] SELECT = {0x00, (byte) 0xA4, 0x04, 0x00, 0x02, (byte) 0xF0, 0x01, 0x00};
+    private static final byte[] READ = {0x00, (byte) 0xB0, 0x00, 0x00, 0x10};
+    private static final byte[] CHALLENGE = {0x00, (byte) 0x84, 0x00, 0x00, 0x08};
+
+    private static List<ApduRule> rules() {
+        List<ApduRule> rules = new ArrayList<>();
+        rules.add(new ApduRule.Builder().setCommand(SELECT).setNext("SELECTED").setResponse(OK).build());
+        rules.add(new ApduRule.Builder()
+                .setHeader(0x00, 0xB0, 0x00, 0x00).setMask(0xFF, 0xFF, 0x00, 0x00)
+                .setState("SELECTED").setResponse(new byte[]{0x01, (byte) 0x90, 0x00}).build());
+        rules.add(new ApduRule.Builder()
+                .setHeader(0x00, 0x84, 0x00, 0x00).setMask(0xFF, 0xFF, 0xFF, 0xFF)
+                .setState("SELECTED").setNext("AUTHENTICATING").setHandler("challenge").build());
+        // stateless: answered behind the exact table, in any state
+        rules.add(new ApduRule.Builder()
+                .setHeader(0x00, 0xB0, 0x00, 0x00).setMask(0xFF, 0xFF, 0x00, 0x00)
+                .setResponse(new byte[]{0x6A, (byte) 0x82}).build());
+        return rules;
+    }
+
+    @Test
+    public void match_followsStates() {
+        SessionProfile profile = SessionProfile.create(
+                new ApduTable.Builder().put(new byte[]{0x00, (byte) 0xCA, 0x00, 0x00}, OK).build(), rules());
+        assertTrue(profile.isStateful());
+        assertEquals(3, profile.getStateCount());
+        assertEquals(SessionProfile.INITIAL_NAME, profile.getStateName(SessionProfile.INITIAL));
+
+        // before SELECT, READ falls through to the stateless rule
+        assertEquals(-1, profile.match(SessionProfile.INITIAL, READ));
+        assertArrayEquals(new byte[]{0x6A, (byte) 0x82}, profile.getProfile().lookup(READ));
+        assertEquals(-1, profile.match(SessionProfile.INITIAL, CHALLENGE));
+
+        int select = profile.match(SessionProfile.INITIAL, SELECT);
+        assertEquals(0, select);
+        int selected = profile.getNextState(select);
+        assertEquals("SELECTED", profile.getStateName(selected));
+
+        int read = profile.match(selected, READ);
+        assertEquals(1, read);
+        assertEquals(SessionProfile.STAY, profile.getNextState(read));
+        assertArrayEquals(new byte[]{0x01, (byte) 0x90, 0x00}, profile.getRule(read).getResponse());
+
+        int challenge = profile.match(selected, CHALLENGE);
+        assertEquals("challenge", profile.getRule(challenge).getHandler());
+        assertEquals("AUTHENTICATING", profile.getStateName(profile.getNextState(challenge)));
+
+        // SELECT applies in any state, and matches whatever the Le
+        byte[] selectWithoutLe = {0x00, (byte) 0xA4, 0x04, 0x00, 0x02, (byte) 0xF0, 0x01};
+        assertEquals(0, profile.match(profile.getNextState(challenge), selectWithoutLe));
+        assertArrayEquals(OK, profile.getProfile().lookup(new byte[]{0x00, (byte) 0xCA, 0x00, 0x00}));
+    }
+
+    @Test
+    public void create_withoutStatefulRules() {
+        SessionProfile profile = SessionProfile.create(ApduTable.EMPTY, new ArrayList<ApduRule>());
+        assertFalse(profile.isStateful());
+        assertEquals(1, profile.getStateCount());
+        assertEquals(-1, profile.match(SessionProfile.INITIAL, SELECT));
+        assertSame(ApduTable.EMPTY, profile.getProfile());
+    }
+
+    @Test
+    public void compiledProfile_keepsSessionRules() throws Exception {
+        File file = File.createTempFile("faketag", ".bin");
+        try {
+            CompiledProfileWriter.write(ApduTable.EMPTY, rules(), file);
+            MappedApduProfile mapped = MappedApduProfile.open(file);
+            SessionProfile profile = SessionProfile.create(mapped, mapped.getRules());
+            int selected = profile.getNextState(profile.match(SessionProfile.INITIAL, SELECT));
+            int challenge = profile.match(selected, CHALLENGE);
+            ApduRule rule = profile.getRule(challenge);
+            assertEquals("SELECTED", rule.getState());
+            assertEquals("AUTHENTICATING", rule.getNext());
+            assertEquals("challenge", rule.getHandler());
+            assertEquals(0, rule.getResponse().length);
+            assertArrayEquals(new byte[]{0x6A, (byte) 0x82}, profile.getProfile().lookup(READ));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void session_resetStartsOver() {
+        ApduSession session = new ApduSession();
+        session.setState(2);
+        session.put("challenge", new byte[8]);
+        int generation = session.getGeneration();
+        session.reset();
+        assertEquals(SessionProfile.INITIAL, session.getState());
+        assertNull(session.get("challenge"));
+        assertNotEquals(generation, session.getGeneration());
+    }
+}
@@ -0,0 +1,172 @@
+package io.github.mylittleswift.android_nfc_sdk.provision;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link BatchProvisioner} and {@link ProvisioningStats}.
+ */
+public class BatchProvisionerTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static final byte[] UID_A = {0x04, (byte) 0xA1, 0x02};
+    private static final byte[] UID_B = {0x04, (byte) 0xB2, 0x03};
+
+    private static ProvisioningBatch batch(int size) throws Exception {
+        StringBuilder list = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            list.append("https://example.com/t/").append(i).append('\n');
+        }
+        List<byte[]> messages = ProvisioningBatchCompiler.compile(new StringReader(list.toString()), "en");
+        return new ProvisioningBatch(messages.toArray(new byte[messages.size()][]));
+    }
+
+    @Test
+    public void advancesOnlyWhenWritten() throws Exception {
+        StringWriter log = new StringWriter();
+        BatchProvisioner provisioner = new BatchProvisioner(batch(2), 0, log);
+
+        provisioner.recordFailed(0, UID_A, "tag lost, retry", 1000);
+        assertEquals(0, provisioner.getNext());
+        provisioner.recordWritten(0, UID_B, 2000);
+        assertEquals(1, provisioner.getNext());
+        provisioner.recordWritten(1, UID_A, 3000);
+        assertTrue(provisioner.isDone());
+
+        assertEquals("1000,04a102,0,tag lost; retry\n"
+                + "2000,04b203,0,written\n"
+                + "3000,04a102,1,written\n", log.toString());
+    }
+
+    @Test
+    public void skippedTags_advanceButAreCountedApart() throws Exception {
+        StringWriter log = new StringWriter();
+        BatchProvisioner provisioner = new BatchProvisioner(batch(3), 0, log);
+
+        provisioner.recordSkipped(0, UID_A, 1000);
+        provisioner.recordWritten(1, UID_B, 2000);
+        assertEquals(2, provisioner.getNext());
+
+        ProvisioningStats stats = provisioner.getStats();
+        assertEquals(1, stats.getWritten());
+        assertEquals(1, stats.getSkipped());
+        assertEquals(2, stats.getDone());
+        assertTrue(stats.format(2000).startsWith("1 written, 1 skipped, 0 failed (0.0%)"));
+        assertEquals(2, BatchProvisioner.resumeIndex(new StringReader(log.toString())));
+    }
+
+    @Test
+    public void retappedTag_keepsItsMessage() throws Exception {
+        StringWriter log = new StringWriter();
+        BatchProvisioner provisioner = new BatchProvisioner(batch(3), 0, log);
+
+        assertEquals(-1, provisioner.getProvisioned(UID_A));
+        provisioner.recordWritten(0, UID_A, 1000);
+        assertEquals(0, provisioner.getProvisioned(UID_A.clone()));
+        provisioner.recordRepeated(UID_A, 1500);
+        assertEquals(1, provisioner.getNext());
+        provisioner.recordSkipped(1, UID_B, 2000);
+        assertEquals(1, provisioner.getProvisioned(UID_B));
+
+        assertEquals(1, provisioner.getStats().getWritten());
+        assertEquals(1, provisioner.getStats().getSkipped());
+        assertEquals("1000,04a102,0,written\n"
+                + "1500,04a102,0,repeated\n"
+                + "2000,04b203,1,skipped\n", log.toString());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsSecondMessageForOneTag() throws Exception {
+        BatchProvisioner provisioner = new BatchProvisioner(batch(2), 0, new StringWriter());
+        provisioner.recordWritten(0, UID_A, 0);
+        provisioner.recordWritten(1, UID_A, 1);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsOutOfOrderWrites() throws Exception {
+        new BatchProvisioner(batch(2), 0, new StringWriter()).recordWritten(1, UID_A, 0);
+    }
+
+    @Test
+    public void open_resumesAfterLastWritten() throws Exception {
+        File batchFile = mFolder.newFile("tags.batch");
+        File logFile = new File(mFolder.getRoot(), "tags.batch.log");
+        ProvisioningBatch batch = batch(5);
+        FileOutputStream out = new FileOutputStream(batchFile);
+        try {
+            ProvisioningBatch.write(Arrays.asList(batch.get(0), batch.get(1), batch.get(2),
+                    batch.get(3), batch.get(4)), out);
+        } finally {
+            out.close();
+        }
+
+        BatchProvisioner first = BatchProvisioner.open(batchFile, logFile);
+        first.recordWritten(0, UID_A, 1);
+        first.recordWritten(1, UID_B, 2);
+        first.recordFailed(2, UID_A, "read only", 3);
+        first.close();
+
+        BatchProvisioner second = BatchProvisioner.open(batchFile, logFile);
+        assertEquals(2, second.getNext());
+        assertEquals(5, second.size());
+        // tags provisioned before the restart still keep their messages
+        assertEquals(0, second.getProvisioned(UID_A));
+        assertEquals(1, second.getProvisioned(UID_B));
+        assertEquals(-1, second.getProvisioned(new byte[]{0x04, 0x00}));
+        second.recordRepeated(UID_B, 4);
+        assertEquals(2, second.getNext());
+        second.close();
+    }
+
+    @Test
+    public void resumeIndex_ignoresTornLines() throws Exception {
+        assertEquals(3, BatchProvisioner.resumeIndex(new StringReader(
+                "1,04,0,written\n2,05,2,written\n3,06,3,failed\n4,07,x")));
+        assertEquals(0, BatchProvisioner.resumeIndex(new StringReader("")));
+    }
+
+    @Test
+    public void stats_measureThroughputAndFailures() {
+        ProvisioningStats stats = new ProvisioningStats();
+        assertEquals(0, stats.getTagsPerMinute(0), 0);
+        // one tag every 2 s for 2 minutes, every fifth attempt failing first
+        long now = 0;
+        for (int i = 0; i < 60; i++) {
+            now = i * 2000L;
+            if (i % 5 == 0) {
+                stats.recordFailed(now);
+            }
+            stats.recordWritten(now);
+        }
+        assertEquals(60, stats.getWritten());
+        assertEquals(12, stats.getFailed());
+        assertEquals(12 / 72.0, stats.getFailureRate(), 1e-9);
+        // the last minute holds the 30 tags at 60..118 s
+        assertEquals(30, stats.getTagsPerMinute(now), 1e-9);
+        assertEquals(60 * 60000.0 / now, stats.getAverageTagsPerMinute(now), 1e-9);
+        // nothing for a minute
+        assertEquals(0, stats.getTagsPerMinute(now + 60000), 1e-9);
+    }
+
+    @Test
+    public void stats_extrapolateTheFirstMinute() {
+        ProvisioningStats stats = new ProvisioningStats();
+        stats.recordWritten(0);
+        stats.recordWritten(5000);
+        stats.recordWritten(10000);
+        assertEquals(18, stats.getTagsPerMinute(10000), 1e-9);
+        assertTrue(stats.format(10000).startsWith("3 written, 0 skipped, 0 failed (0.0%), 18.0/min"));
+    }
+}
@@ -0,0 +1,86 @@
+package io.github.mylittleswift.android_nfc_sdk.provision;
+
+import io.github.mylittleswift.nfc_codec.NdefRecordView;
+import io.github.mylittleswift.nfc_codec.NdefText;
+import io.github.mylittleswift.nfc_codec.NdefUri;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ProvisioningBatch} and {@link ProvisioningBatchCompiler}.
+ */
+public class ProvisioningBatchTest {
+
+    private static final String LIST = "# shift 3\n"
+            + "https://www.example.com/t/1\n"
+            + "\n"
+            + "text:第二个\n"
+            + "tel:+4930123\n";
+
+    @Test
+    public void compile_encodesOneMessagePerLine() throws Exception {
+        List<byte[]> messages = ProvisioningBatchCompiler.compile(new StringReader(LIST), "zh");
+        assertEquals(3, messages.size());
+
+        NdefRecordView record = new NdefRecordView().wrap(ByteBuffer.wrap(messages.get(0)));
+        assertTrue(record.next());
+        assertEquals("https://www.example.com/t/1", NdefUri.decode(record));
+        assertFalse(record.next());
+
+        record.wrap(ByteBuffer.wrap(messages.get(1)));
+        assertTrue(record.next());
+        assertEquals("第二个", NdefText.decode(record));
+
+        record.wrap(ByteBuffer.wrap(messages.get(2)));
+        assertTrue(record.next());
+        assertEquals("tel:+4930123", NdefUri.decode(record));
+    }
+
+    @Test
+    public void read_returnsWhatWasWritten() throws Exception {
+        List<byte[]> messages = ProvisioningBatchCompiler.compile(new StringReader(LIST), "en");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ProvisioningBatch.write(messages, out);
+
+        ProvisioningBatch batch = ProvisioningBatch.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(3, batch.size());
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(messages.get(i), batch.get(i));
+        }
+    }
+
+    @Test
+    public void read_rejectsBadFiles() throws Exception {
+        List<byte[]> messages = ProvisioningBatchCompiler.compile(new StringReader(LIST), "en");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ProvisioningBatch.write(messages, out);
+        byte[] file = out.toByteArray();
+
+        assertUnreadable(Arrays.copyOf(file, file.length - 1));
+        byte[] badMagic = file.clone();
+        badMagic[0] = 'X';
+        assertUnreadable(badMagic);
+        // the first record header of the first message loses its MB flag
+        byte[] malformed = file.clone();
+        malformed[16] &= 0x7f;
+        assertUnreadable(malformed);
+    }
+
+    private static void assertUnreadable(byte[] file) {
+        try {
+            ProvisioningBatch.read(new ByteArrayInputStream(file));
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+}
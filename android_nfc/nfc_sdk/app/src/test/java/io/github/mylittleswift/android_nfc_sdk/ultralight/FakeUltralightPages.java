@@ -0,0 +1,112 @@
+package io.github.mylittleswift.android_nfc_sdk.ultralight;
+
+import io.github.mylittleswift.android_nfc_sdk.write.TagLostException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A Type 2 tag in memory, by default laid out like an NTAG213: an NDEF formatted CC with a
+ * 144 byte data area from page 4, an empty NDEF TLV, and 5 configuration pages after the
+ * data area. Counts reads and records writes, and can be lost after a number of page
+ * writes. Answers GET_VERSION like an NTAG213 and FAST_READ, unless told not to.
+ */
+class FakeUltralightPages implements UltralightPages {
+
+    final byte[] memory;
+    private final int mDataSize;
+    final List<Integer> written = new ArrayList<>();
+    int reads;
+    int transceives;
+    int connects;
+    /** GET_VERSION response, null to NAK it */
+    byte[] version = {0x00, 0x04, 0x04, 0x02, 0x01, 0x00, 0x0F, 0x03};
+    boolean fastRead = true;
+    int maxTransceiveLength = 253;
+    /** page writes left before the tag is lost, -1 for never */
+    int writesLeft = -1;
+
+    FakeUltralightPages() {
+        this(144);
+    }
+
+    FakeUltralightPages(int dataSize) {
+        mDataSize = dataSize;
+        memory = new byte[(4 + 5) * PAGE_SIZE + dataSize];
+        byte[] header = {
+                0x04, 0x12, 0x34, (byte) 0xa2,
+                0x56, 0x78, (byte) 0x9a, (byte) 0xbc,
+                (byte) 0xde, 0x48, 0x00, 0x00,
+                (byte) 0xe1, 0x10, (byte) (dataSize / 8), 0x00,
+                0x03, 0x00, (byte) 0xfe, 0x00,
+        };
+        System.arraycopy(header, 0, memory, 0, header.length);
+    }
+
+    /** Returns the data area from page 4. */
+    byte[] data() {
+        return Arrays.copyOfRange(memory, 4 * PAGE_SIZE, 4 * PAGE_SIZE + mDataSize);
+    }
+
+    void setData(int offset, byte... bytes) {
+        System.arraycopy(bytes, 0, memory, 4 * PAGE_SIZE + offset, bytes.length);
+    }
+
+    @Override
+    public void connect() {
+        connects++;
+    }
+
+    @Override
+    public byte[] readPages(int page) {
+        reads++;
+        byte[] pages = new byte[4 * PAGE_SIZE];
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = memory[(page * PAGE_SIZE + i) % memory.length];
+        }
+        return pages;
+    }
+
+    @Override
+    public void writePage(int page, byte[] data) throws TagLostException {
+        if (writesLeft == 0) {
+            throw new TagLostException("Lost before page " + page, null);
+        }
+        if (writesLeft > 0) {
+            writesLeft--;
+        }
+        if (page < 4 || page >= 4 + mDataSize / PAGE_SIZE || data.length != PAGE_SIZE) {
+            throw new AssertionError("Wrote page " + page);
+        }
+        System.arraycopy(data, 0, memory, page * PAGE_SIZE, PAGE_SIZE);
+        written.add(page);
+    }
+
+    @Override
+    public byte[] transceive(byte[] command) throws IOException {
+        transceives++;
+        if (command[0] == 0x60 && version != null) {
+            return version.clone();
+        }
+        if (command[0] == 0x3A && fastRead) {
+            int first = command[1] & 0xff;
+            int last = command[2] & 0xff;
+            if ((last - first + 1) * PAGE_SIZE > maxTransceiveLength || (last + 1) * PAGE_SIZE > memory.length) {
+                throw new IOException("NAK");
+            }
+            return Arrays.copyOfRange(memory, first * PAGE_SIZE, (last + 1) * PAGE_SIZE);
+        }
+        throw new IOException("NAK");
+    }
+
+    @Override
+    public int getMaxTransceiveLength() {
+        return maxTransceiveLength;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,192 @@
+package io.github.mylittleswift.android_nfc_sdk.ultralight;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link UltralightDeltaWriter}.
+ */
+public class UltralightDeltaWriterTest {
+
+    /** A well-known URI record of {@code length} bytes in all. */
+    private static byte[] message(int length, char fill) {
+        byte[] message = new byte[length];
+        Arrays.fill(message, (byte) fill);
+        boolean shortRecord = length - 4 <= 0xff;
+        message[0] = (byte) (shortRecord ? 0xD1 : 0xC1);
+        message[1] = 0x01;
+        if (shortRecord) {
+            message[2] = (byte) (length - 4);
+            message[3] = 'U';
+        } else {
+            int payload = length - 7;
+            message[2] = (byte) (payload >> 24);
+            message[3] = (byte) (payload >> 16);
+            message[4] = (byte) (payload >> 8);
+            message[5] = (byte) payload;
+            message[6] = 'U';
+        }
+        return message;
+    }
+
+    private static FakeUltralightPages holding(byte[] message) throws IOException {
+        FakeUltralightPages tag = new FakeUltralightPages(496);
+        if (message != null) {
+            UltralightDeltaWriter.write(tag, message);
+        }
+        tag.written.clear();
+        tag.reads = 0;
+        return tag;
+    }
+
+    @Test
+    public void writesTheTlvImage() throws IOException {
+        FakeUltralightPages tag = new FakeUltralightPages();
+        byte[] message = message(20, 'a');
+        UltralightDeltaWriter.write(tag, message);
+
+        byte[] data = tag.data();
+        assertEquals(0x03, data[0]);
+        assertEquals(20, data[1]);
+        assertArrayEquals(message, Arrays.copyOfRange(data, 2, 22));
+        assertEquals((byte) 0xfe, data[22]);
+        assertArrayEquals(message, UltralightDeltaWriter.readNdefMessage(tag));
+    }
+
+    @Test
+    public void writesOnlyChangedPages() throws IOException {
+        byte[] before = message(60, 'a');
+        FakeUltralightPages tag = holding(before);
+        byte[] after = before.clone();
+        after[40] = 'b';
+
+        assertEquals(1, UltralightDeltaWriter.write(tag, after));
+        // byte 40 of the message is byte 42 of the data area, in its page 10
+        assertEquals(Arrays.asList(4 + 10), tag.written);
+        assertArrayEquals(after, UltralightDeltaWriter.readNdefMessage(tag));
+    }
+
+    @Test
+    public void sameMessage_writesNothing() throws IOException {
+        byte[] message = message(60, 'a');
+        FakeUltralightPages tag = holding(message);
+        assertEquals(0, UltralightDeltaWriter.write(tag, message));
+        assertTrue(tag.written.isEmpty());
+        // the header and the 64 bytes up to the terminator
+        assertEquals(1 + 4, tag.reads);
+    }
+
+    @Test
+    public void lengthPage_isWrittenLast() throws IOException {
+        FakeUltralightPages tag = holding(message(60, 'a'));
+        int pages = UltralightDeltaWriter.write(tag, message(70, 'b'));
+
+        assertEquals(tag.written.size(), pages);
+        // emptied first, filled last
+        assertEquals(4, (int) tag.written.get(0));
+        assertEquals(4, (int) tag.written.get(pages - 1));
+    }
+
+    @Test
+    public void tagLost_neverLeavesATornMessage() throws IOException {
+        byte[][][] cases = {
+                {null, message(70, 'b')},
+                {message(60, 'a'), message(70, 'b')},
+                {message(70, 'a'), message(20, 'b')},
+                {message(20, 'a'), message(300, 'b')},
+                {message(300, 'a'), message(20, 'b')},
+                {message(300, 'a'), message(301, 'b')},
+        };
+        for (byte[][] c : cases) {
+            int total = UltralightDeltaWriter.write(holding(c[0]), c[1]);
+            for (int lostAfter = 0; lostAfter <= total; lostAfter++) {
+                FakeUltralightPages tag = holding(c[0]);
+                tag.writesLeft = lostAfter;
+                try {
+                    UltralightDeltaWriter.write(tag, c[1]);
+                } catch (IOException e) {
+                    // lost
+                }
+                byte[] read = UltralightDeltaWriter.readNdefMessage(tag);
+                assertTrue("lost after " + lostAfter + " writes: " + Arrays.toString(read),
+                        read == null || Arrays.equals(c[0], read) || Arrays.equals(c[1], read));
+            }
+        }
+    }
+
+    @Test
+    public void keepsControlTlvs() throws IOException {
+        FakeUltralightPages tag = new FakeUltralightPages();
+        // lock control TLV, then an empty NDEF TLV
+        tag.setData(0, (byte) 0x01, (byte) 0x03, (byte) 0xa0, (byte) 0x10, (byte) 0x44,
+                (byte) 0x03, (byte) 0x00, (byte) 0xfe);
+        byte[] message = message(20, 'a');
+        UltralightDeltaWriter.write(tag, message);
+
+        byte[] data = tag.data();
+        assertArrayEquals(new byte[]{0x01, 0x03, (byte) 0xa0, 0x10, 0x44, 0x03, 20}, Arrays.copyOf(data, 7));
+        assertArrayEquals(message, UltralightDeltaWriter.readNdefMessage(tag));
+    }
+
+    @Test
+    public void nullPaddedDataArea_getsAnNdefTlv() throws IOException {
+        FakeUltralightPages tag = new FakeUltralightPages();
+        tag.setData(0, new byte[144]);
+        byte[] message = message(20, 'a');
+        UltralightDeltaWriter.write(tag, message);
+        assertEquals(0x03, tag.data()[0]);
+        assertArrayEquals(message, UltralightDeltaWriter.readNdefMessage(tag));
+    }
+
+    @Test
+    public void lockedPage_isRefusedBeforeWriting() {
+        FakeUltralightPages tag = new FakeUltralightPages();
+        // static lock bit of page 6
+        tag.memory[10] = 1 << 6;
+        try {
+            UltralightDeltaWriter.write(tag, message(20, 'a'));
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Page 6"));
+        }
+        assertTrue(tag.written.isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void readOnlyCc_isRefused() throws IOException {
+        FakeUltralightPages tag = new FakeUltralightPages();
+        tag.memory[15] = 0x0f;
+        UltralightDeltaWriter.write(tag, message(20, 'a'));
+    }
+
+    @Test(expected = IOException.class)
+    public void unformatted_isRefused() throws IOException {
+        FakeUltralightPages tag = new FakeUltralightPages();
+        tag.memory[12] = 0;
+        UltralightDeltaWriter.write(tag, message(20, 'a'));
+    }
+
+    @Test
+    public void tooLarge_isRefused() {
+        FakeUltralightPages tag = new FakeUltralightPages();
+        // 144 bytes less T, L and nothing else
+        try {
+            UltralightDeltaWriter.write(tag, message(143, 'a'));
+            fail();
+        } catch (IOException e) {
+            assertTrue(tag.written.isEmpty());
+        }
+    }
+
+    @Test
+    public void fullDataArea_needsNoTerminator() throws IOException {
+        FakeUltralightPages tag = new FakeUltralightPages();
+        byte[] message = message(142, 'a');
+        UltralightDeltaWriter.write(tag, message);
+        assertArrayEquals(message, UltralightDeltaWriter.readNdefMessage(tag));
+    }
+}
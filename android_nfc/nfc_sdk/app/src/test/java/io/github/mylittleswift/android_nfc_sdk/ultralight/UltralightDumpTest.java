@@ -0,0 +1,93 @@
+package io.github.mylittleswift.android_nfc_sdk.ultralight;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link UltralightDump}.
+ */
+public class UltralightDumpTest {
+
+    private static FakeUltralightPages ntag213() {
+        FakeUltralightPages tag = new FakeUltralightPages();
+        for (int i = 16; i < tag.memory.length; i++) {
+            tag.memory[i] = (byte) i;
+        }
+        return tag;
+    }
+
+    @Test
+    public void fastRead_readsUserMemoryInRangesOfTheTransceiveLength() throws IOException {
+        FakeUltralightPages tag = ntag213();
+        tag.maxTransceiveLength = 64;
+        UltralightDump dump = UltralightDump.read(tag);
+
+        assertEquals("NTAG213", dump.getName());
+        assertTrue(dump.isFastRead());
+        assertEquals(40, dump.getPages());
+        assertArrayEquals(Arrays.copyOf(tag.memory, 160), dump.getImage());
+        // GET_VERSION, then 16 pages per FAST_READ
+        assertEquals(1 + 3, dump.getRoundTrips());
+        assertEquals(0, tag.reads);
+    }
+
+    @Test
+    public void withoutFastRead_fallsBackToRead() throws IOException {
+        FakeUltralightPages tag = ntag213();
+        tag.fastRead = false;
+        UltralightDump dump = UltralightDump.read(tag);
+
+        assertFalse(dump.isFastRead());
+        assertArrayEquals(Arrays.copyOf(tag.memory, 160), dump.getImage());
+        assertEquals(10, tag.reads);
+        assertEquals(1, tag.connects);
+    }
+
+    @Test
+    public void withoutGetVersion_readsTheDataAreaOfTheCc() throws IOException {
+        FakeUltralightPages tag = ntag213();
+        tag.version = null;
+        UltralightDump dump = UltralightDump.read(tag);
+
+        assertEquals("unknown", dump.getName());
+        assertFalse(dump.isFastRead());
+        assertEquals(40, dump.getPages());
+        assertArrayEquals(Arrays.copyOf(tag.memory, 160), dump.getImage());
+        // reconnected after the NAK
+        assertEquals(1, tag.connects);
+        assertEquals(1 + 1 + 10, dump.getRoundTrips());
+    }
+
+    @Test
+    public void readPages_trimsTheLastRead() throws IOException {
+        FakeUltralightPages tag = ntag213();
+        UltralightDump dump = UltralightDump.readPages(tag, "NTAG213", 42);
+        assertArrayEquals(Arrays.copyOf(tag.memory, 168), dump.getImage());
+        assertEquals(11, dump.getRoundTrips());
+    }
+
+    @Test
+    public void compare_reportsBothReads() throws IOException {
+        String line = UltralightDump.compare(ntag213());
+        assertTrue(line, line.startsWith("NTAG213 160 bytes: fast_read 2 round trips "));
+        assertTrue(line, line.contains(", read 10 round trips "));
+    }
+
+    @Test
+    public void variant_knowsNtagAndUltralightEv1() throws IOException {
+        assertEquals("NTAG216", name(new byte[]{0x00, 0x04, 0x04, 0x02, 0x01, 0x00, 0x13, 0x03}));
+        assertEquals("MF0UL21", name(new byte[]{0x00, 0x04, 0x03, 0x01, 0x01, 0x00, 0x0E, 0x03}));
+        assertEquals(-1, UltralightDump.variant(new byte[]{0x00, 0x05, 0x04, 0x02, 0x01, 0x00, 0x13, 0x03}));
+        assertEquals(-1, UltralightDump.variant(new byte[]{0x00}));
+    }
+
+    private static String name(byte[] version) throws IOException {
+        FakeUltralightPages tag = new FakeUltralightPages(888);
+        tag.version = version;
+        return UltralightDump.read(tag).getName();
+    }
+}
@@ -0,0 +1,97 @@
+package io.github.mylittleswift.android_nfc_sdk.write;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link DifferentialWriter}.
+ */
+public class DifferentialWriterTest {
+
+    private static final byte[] UID_A = {0x04, (byte) 0xA1, 0x02};
+    private static final byte[] UID_B = {0x04, (byte) 0xB2, 0x03};
+    private static final byte[] MESSAGE = {(byte) 0xD1, 0x01, 0x02, 0x55, 0x04, 'a'};
+    private static final byte[] OTHER = {(byte) 0xD1, 0x01, 0x02, 0x55, 0x04, 'b'};
+
+    @Test
+    public void reTap_isSkippedWithoutLookingAtTheTag() {
+        DifferentialWriter writer = new DifferentialWriter(10000, 8);
+        FakeNdefConnection tag = new FakeNdefConnection();
+
+        assertTrue(writer.write(UID_A, tag, MESSAGE, true, 0).isWritten());
+        int cachedReads = tag.cachedReads;
+        WriteResult again = writer.write(UID_A, tag, MESSAGE, true, 5000);
+
+        assertTrue(again.isSkipped());
+        assertEquals(cachedReads, tag.cachedReads);
+        assertEquals(1, tag.writes);
+    }
+
+    @Test
+    public void expiredEntry_comparesTheTagAgain() {
+        DifferentialWriter writer = new DifferentialWriter(10000, 8);
+        FakeNdefConnection tag = new FakeNdefConnection();
+        writer.write(UID_A, tag, MESSAGE, false, 0);
+
+        tag.content = OTHER.clone();
+        assertTrue(writer.write(UID_A, tag, MESSAGE, false, 10000).isWritten());
+        assertArrayEquals(MESSAGE, tag.content);
+    }
+
+    @Test
+    public void otherMessageOrTag_isNotSkipped() {
+        DifferentialWriter writer = new DifferentialWriter(10000, 8);
+        FakeNdefConnection tag = new FakeNdefConnection();
+        writer.write(UID_A, tag, MESSAGE, false, 0);
+
+        assertTrue(writer.write(UID_A, tag, OTHER, false, 1).isWritten());
+        assertTrue(writer.write(UID_B, new FakeNdefConnection(), OTHER, false, 2).isWritten());
+    }
+
+    @Test
+    public void tagHoldingTheMessage_isSkippedAndRemembered() {
+        DifferentialWriter writer = new DifferentialWriter(10000, 8);
+        FakeNdefConnection tag = new FakeNdefConnection();
+        tag.content = MESSAGE.clone();
+
+        assertTrue(writer.write(UID_A, tag, MESSAGE, true, 0).isSkipped());
+        assertEquals(1, tag.cachedReads);
+        assertTrue(writer.write(UID_A, tag, MESSAGE, true, 1).isSkipped());
+        assertEquals(1, tag.cachedReads);
+        assertEquals(0, tag.connects);
+    }
+
+    @Test
+    public void failedWrite_isForgotten() {
+        DifferentialWriter writer = new DifferentialWriter(10000, 8);
+        FakeNdefConnection tag = new FakeNdefConnection();
+        writer.write(UID_A, tag, MESSAGE, false, 0);
+
+        tag.failOnWrite = new TagLostException("gone", null);
+        assertEquals(WriteResult.STATUS_TAG_LOST, writer.write(UID_A, tag, OTHER, false, 1).getStatus());
+        // the failed write may have torn the message, so it is not trusted any more
+        tag.failOnWrite = null;
+        tag.content = new byte[0];
+        assertTrue(writer.write(UID_A, tag, MESSAGE, false, 2).isWritten());
+    }
+
+    @Test
+    public void capacity_evictsTheLeastRecentTag() {
+        DifferentialWriter writer = new DifferentialWriter(10000, 1);
+        FakeNdefConnection a = new FakeNdefConnection();
+        writer.write(UID_A, a, MESSAGE, false, 0);
+        writer.write(UID_B, new FakeNdefConnection(), MESSAGE, false, 1);
+
+        int cachedReads = a.cachedReads;
+        assertTrue(writer.write(UID_A, a, MESSAGE, false, 2).isSkipped());
+        assertEquals(cachedReads + 1, a.cachedReads);
+    }
+
+    @Test
+    public void hash_isFnv1a() {
+        assertEquals(0xcbf29ce484222325L, DifferentialWriter.hash(new byte[0]));
+        assertEquals(0xaf63dc4c8601ec8cL, DifferentialWriter.hash(new byte[]{'a'}));
+        assertNotEquals(DifferentialWriter.hash(MESSAGE), DifferentialWriter.hash(OTHER));
+    }
+}
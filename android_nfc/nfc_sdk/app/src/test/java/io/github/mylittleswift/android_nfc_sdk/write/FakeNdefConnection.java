@@ -0,0 +1,81 @@
+package io.github.mylittleswift.android_nfc_sdk.write;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A tag in memory, counting the operations done on it. {@link #content} is both what it was
+ * discovered with and what it holds now.
+ */
+class FakeNdefConnection implements NdefConnection {
+    boolean writable = true;
+    int maxSize = 64;
+    boolean canReadBack = true;
+    /** like a delta writer: a message the tag holds is not written again */
+    boolean compares;
+    IOException failOnWrite;
+    byte[] corrupt;
+    byte[] content;
+
+    int cachedReads;
+    int connects;
+    int writes;
+    int reads;
+    int closes;
+    private boolean mConnected;
+
+    @Override
+    public boolean isWritable() {
+        return writable;
+    }
+
+    @Override
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public byte[] getCachedNdefMessage() {
+        cachedReads++;
+        return content;
+    }
+
+    @Override
+    public boolean canReadBack() {
+        return canReadBack;
+    }
+
+    @Override
+    public void connect() {
+        connects++;
+        mConnected = true;
+    }
+
+    @Override
+    public boolean writeNdefMessage(byte[] message) throws IOException {
+        if (!mConnected) {
+            throw new IllegalStateException("Not connected");
+        }
+        if (compares && Arrays.equals(message, content)) {
+            return false;
+        }
+        writes++;
+        if (failOnWrite != null) {
+            throw failOnWrite;
+        }
+        content = corrupt != null ? corrupt : message.clone();
+        return true;
+    }
+
+    @Override
+    public byte[] readNdefMessage() {
+        reads++;
+        return content;
+    }
+
+    @Override
+    public void close() {
+        closes++;
+        mConnected = false;
+    }
+}
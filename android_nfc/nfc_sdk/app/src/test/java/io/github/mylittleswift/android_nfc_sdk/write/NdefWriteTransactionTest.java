@@ -0,0 +1,141 @@
+package io.github.mylittleswift.android_nfc_sdk.write;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link NdefWriteTransaction}, against a fake tag.
+ */
+public class NdefWriteTransactionTest {
+
+    private static final byte[] MESSAGE = {(byte) 0xD1, 0x01, 0x02, 0x55, 0x04, 'a'};
+
+    @Test
+    public void writesOnceAndVerifies() {
+        FakeNdefConnection tag = new FakeNdefConnection();
+        WriteResult result = NdefWriteTransaction.write(tag, MESSAGE, true);
+
+        assertTrue(result.isWritten());
+        assertEquals(MESSAGE.length, result.getMessageLength());
+        assertArrayEquals(MESSAGE, tag.content);
+        assertEquals(1, tag.connects);
+        assertEquals(1, tag.writes);
+        assertEquals(1, tag.reads);
+        assertEquals(1, tag.closes);
+    }
+
+    @Test
+    public void withoutVerify_doesNotRead() {
+        FakeNdefConnection tag = new FakeNdefConnection();
+        WriteResult result = NdefWriteTransaction.write(tag, MESSAGE, false);
+        assertTrue(result.isWritten());
+        assertEquals(0, tag.reads);
+        assertEquals(0, result.getVerifyNanos());
+    }
+
+    @Test
+    public void verify_skippedWhenTagCannotReadBack() {
+        FakeNdefConnection tag = new FakeNdefConnection();
+        tag.canReadBack = false;
+        assertTrue(NdefWriteTransaction.write(tag, MESSAGE, true).isWritten());
+        assertEquals(0, tag.reads);
+    }
+
+    @Test
+    public void verify_detectsMismatch() {
+        FakeNdefConnection tag = new FakeNdefConnection();
+        tag.corrupt = new byte[]{(byte) 0xD0, 0x00, 0x00};
+        WriteResult result = NdefWriteTransaction.write(tag, MESSAGE, true);
+
+        assertEquals(WriteResult.STATUS_VERIFY_FAILED, result.getStatus());
+        assertEquals("verify_failed", result.getStatusName());
+        assertEquals(1, tag.closes);
+    }
+
+    @Test
+    public void unchangedTag_isSkipped() {
+        FakeNdefConnection tag = new FakeNdefConnection();
+        tag.compares = true;
+        tag.content = MESSAGE.clone();
+        WriteResult result = NdefWriteTransaction.write(tag, MESSAGE, true);
+
+        assertEquals(WriteResult.STATUS_SKIPPED, result.getStatus());
+        assertFalse(result.isWritten());
+        assertEquals(0, tag.writes);
+        assertEquals(0, tag.reads);
+        assertEquals(1, tag.closes);
+
+        tag.content = new byte[]{(byte) 0xD0, 0x00, 0x00};
+        assertTrue(NdefWriteTransaction.write(tag, MESSAGE, true).isWritten());
+        assertEquals(1, tag.writes);
+    }
+
+    @Test
+    public void readOnlyAndTooLarge_doNotConnect() {
+        FakeNdefConnection readOnly = new FakeNdefConnection();
+        readOnly.writable = false;
+        assertEquals(WriteResult.STATUS_READ_ONLY, NdefWriteTransaction.write(readOnly, MESSAGE, true).getStatus());
+
+        FakeNdefConnection small = new FakeNdefConnection();
+        small.maxSize = MESSAGE.length - 1;
+        assertEquals(WriteResult.STATUS_TOO_LARGE, NdefWriteTransaction.write(small, MESSAGE, true).getStatus());
+
+        assertEquals(0, readOnly.connects + small.connects);
+        assertEquals(0, readOnly.closes + small.closes);
+    }
+
+    @Test
+    public void tagLost_isReportedAndClosed() {
+        FakeNdefConnection tag = new FakeNdefConnection();
+        tag.failOnWrite = new TagLostException("gone", null);
+        WriteResult result = NdefWriteTransaction.write(tag, MESSAGE, true);
+
+        assertEquals(WriteResult.STATUS_TAG_LOST, result.getStatus());
+        assertSame(tag.failOnWrite, result.getError());
+        assertEquals(1, tag.closes);
+    }
+
+    @Test
+    public void otherIOException_isFailed() {
+        FakeNdefConnection tag = new FakeNdefConnection();
+        tag.failOnWrite = new IOException("transceive failed");
+        WriteResult result = NdefWriteTransaction.write(tag, MESSAGE, false);
+
+        assertEquals(WriteResult.STATUS_FAILED, result.getStatus());
+        assertFalse(result.isWritten());
+        assertEquals(1, tag.closes);
+    }
+
+    @Test
+    public void writeIfChanged_skipsTagHoldingTheMessage() {
+        FakeNdefConnection tag = new FakeNdefConnection();
+        tag.writable = false;
+        tag.content = MESSAGE.clone();
+        WriteResult result = NdefWriteTransaction.writeIfChanged(tag, MESSAGE, true);
+
+        assertTrue(result.isSkipped());
+        assertEquals(0, result.getRadioNanos());
+        assertEquals(0, tag.connects);
+    }
+
+    @Test
+    public void writeIfChanged_writesOtherContent() {
+        FakeNdefConnection tag = new FakeNdefConnection();
+        tag.content = new byte[]{(byte) 0xD0, 0x00, 0x00};
+        assertTrue(NdefWriteTransaction.writeIfChanged(tag, MESSAGE, false).isWritten());
+        assertArrayEquals(MESSAGE, tag.content);
+
+        FakeNdefConnection empty = new FakeNdefConnection();
+        assertTrue(NdefWriteTransaction.writeIfChanged(empty, MESSAGE, false).isWritten());
+    }
+
+    @Test
+    public void nullTag_isUnsupported() {
+        WriteResult result = NdefWriteTransaction.writeIfChanged(null, MESSAGE, true);
+        assertEquals(WriteResult.STATUS_UNSUPPORTED, result.getStatus());
+        assertEquals(0, result.getRadioNanos());
+    }
+}
@@ -0,0 +1,109 @@
+package io.github.mylittleswift.nfc_session;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters for a {@link TagSessionExecutor}: sessions per outcome, and histograms of the
+ * time sessions waited in the queue and the time their tasks ran.
+ *
+ * Times go into fixed power of two buckets of microseconds, bucket {@code b} holding
+ * [2^(b-1), 2^b) us and the last one everything slower. Recording is a few atomic adds
+ * and allocates nothing.
+ */
+public final class SessionMetrics {
+
+    public static final int BUCKETS = 24;
+
+    private final AtomicLongArray mOutcomes = new AtomicLongArray(SessionResult.OUTCOMES);
+    private final AtomicLongArray mQueue = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray mIo = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Records one session. Only sessions whose task ran are counted in the I/O histogram.
+     *
+     * @param outcome one of the {@link SessionResult} OUTCOME constants
+     */
+    public void record(int outcome, long queueNanos, long ioNanos) {
+        mOutcomes.incrementAndGet(outcome);
+        mQueue.incrementAndGet(bucket(queueNanos / 1000));
+        if (outcome == SessionResult.OUTCOME_DONE || outcome == SessionResult.OUTCOME_FAILED) {
+            mIo.incrementAndGet(bucket(ioNanos / 1000));
+        }
+    }
+
+    /** Returns the bucket of a time of {@code micros} microseconds. */
+    public static int bucket(long micros) {
+        if (micros <= 0) {
+            return 0;
+        }
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    /** Returns the upper bound of bucket {@code b} in microseconds, the last one being open. */
+    public static long bucketLimitMicros(int b) {
+        return b == BUCKETS - 1 ? Long.MAX_VALUE : 1L << b;
+    }
+
+    public long getCount(int outcome) {
+        return mOutcomes.get(outcome);
+    }
+
+    /**
+     * Returns the upper bucket limit, in microseconds, below which a fraction {@code q} of
+     * the sessions waited in the queue, or 0 if there were none.
+     */
+    public long getQueuePercentileMicros(double q) {
+        return percentileMicros(mQueue, 0, q);
+    }
+
+    /** Like {@link #getQueuePercentileMicros(double)}, for the time tasks ran. */
+    public long getIoPercentileMicros(double q) {
+        return percentileMicros(mIo, 0, q);
+    }
+
+    /** Returns the number of times in the {@link #BUCKETS} buckets starting at {@code from}. */
+    public static long count(AtomicLongArray buckets, int from) {
+        long count = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            count += buckets.get(from + b);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the upper bucket limit, in microseconds, below which a fraction {@code q} of
+     * the times in the {@link #BUCKETS} buckets starting at {@code from} fall, or 0 if
+     * there are none.
+     */
+    public static long percentileMicros(AtomicLongArray buckets, int from, double q) {
+        long count = count(buckets, from);
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(q * count);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += buckets.get(from + b);
+            if (seen >= rank && seen > 0) {
+                return bucketLimitMicros(b);
+            }
+        }
+        return bucketLimitMicros(BUCKETS - 1);
+    }
+
+    /**
+     * One line for logs, e.g.
+     * "12 done, 0 failed, 3 dropped, 1 coalesced; queue p50 64us p99 2048us; io p50 16384us p99 65536us".
+     */
+    public String format() {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < SessionResult.OUTCOMES; i++) {
+            line.append(i == 0 ? "" : ", ").append(mOutcomes.get(i)).append(' ').append(SessionResult.outcomeName(i));
+        }
+        line.append(String.format(Locale.US, "; queue p50 %dus p99 %dus; io p50 %dus p99 %dus",
+                getQueuePercentileMicros(0.5), getQueuePercentileMicros(0.99),
+                getIoPercentileMicros(0.5), getIoPercentileMicros(0.99)));
+        return line.toString();
+    }
+}
@@ -0,0 +1,88 @@
+package io.github.mylittleswift.nfc_session;
+
+import java.util.Arrays;
+
+/**
+ * How one tag session ended, handed to its {@link TagSessionExecutor.Callback} on the result
+ * executor. Immutable, provided the value is.
+ *
+ * @param <T> what the session's task returns
+ */
+public final class SessionResult<T> {
+
+    /** The task ran and returned {@link #getValue()}. */
+    public static final int OUTCOME_DONE = 0;
+    /** The task ran and threw {@link #getError()}. */
+    public static final int OUTCOME_FAILED = 1;
+    /** The task never ran: the queue was full, or the executor shut down. */
+    public static final int OUTCOME_DROPPED = 2;
+    /** The task never ran: a newer session for the same tag took its place in the queue. */
+    public static final int OUTCOME_COALESCED = 3;
+    public static final int OUTCOMES = 4;
+
+    private static final String[] OUTCOME_NAMES = {"done", "failed", "dropped", "coalesced"};
+
+    private final byte[] mKey;
+    private final int mOutcome;
+    private final T mValue;
+    private final Exception mError;
+    private final long mQueueNanos;
+    private final long mIoNanos;
+
+    SessionResult(byte[] key, int outcome, T value, Exception error, long queueNanos, long ioNanos) {
+        mKey = key;
+        mOutcome = outcome;
+        mValue = value;
+        mError = error;
+        mQueueNanos = queueNanos;
+        mIoNanos = ioNanos;
+    }
+
+    /** The key the session was submitted with, usually the tag UID, or null. */
+    public byte[] getKey() {
+        return mKey == null ? null : mKey.clone();
+    }
+
+    /** One of the OUTCOME constants. */
+    public int getOutcome() {
+        return mOutcome;
+    }
+
+    public boolean isDone() {
+        return mOutcome == OUTCOME_DONE;
+    }
+
+    public String getOutcomeName() {
+        return outcomeName(mOutcome);
+    }
+
+    public static String outcomeName(int outcome) {
+        return OUTCOME_NAMES[outcome];
+    }
+
+    /** What the task returned, null unless {@link #isDone()}. */
+    public T getValue() {
+        return mValue;
+    }
+
+    /** What the task threw, null unless {@link #OUTCOME_FAILED}. */
+    public Exception getError() {
+        return mError;
+    }
+
+    /** From submitting the session until its task started, or until it was dropped. */
+    public long getQueueNanos() {
+        return mQueueNanos;
+    }
+
+    /** Time the task ran, 0 if it did not. */
+    public long getIoNanos() {
+        return mIoNanos;
+    }
+
+    @Override
+    public String toString() {
+        return getOutcomeName() + (mKey != null ? " " + Arrays.toString(mKey) : "") + " queued "
+                + mQueueNanos / 1000 + "us io " + mIoNanos / 1000 + "us" + (mError != null ? " (" + mError + ")" : "");
+    }
+}
@@ -0,0 +1,179 @@
+package io.github.mylittleswift.nfc_session;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Times the stages of a tap, e.g. delivery, queueing, the read of the tag and the update
+ * of the views, cheaply enough to stay on in production.
+ *
+ * A span is a stage of one tap, timed with {@link System#nanoTime()}. Each span goes into a
+ * histogram per stage, in the power of two microsecond buckets of {@link SessionMetrics},
+ * and into a ring of the most recent spans, so a slow tap can be followed from stage to
+ * stage by its tap number. Everything is allocated up front: recording a span takes a clock
+ * read and a few atomic operations, from any thread, without locking.
+ *
+ * {@link #dump(Writer)} writes the histograms and the ring. A span being overwritten while
+ * it is dumped is left out.
+ */
+public final class SpanTracer {
+
+    private final String[] mStages;
+    private final int mMask;
+    private final AtomicLong mTaps = new AtomicLong();
+    private final AtomicLong mNext = new AtomicLong();
+    private final AtomicLongArray mHistograms;
+    private final AtomicLongArray mMaxNanos;
+    private volatile boolean mEnabled = true;
+
+    // the ring; a slot is valid while mSequence holds the number of the span in it plus one.
+    // The fields are atomic too: their ordered stores cannot become visible before the
+    // slot is marked invalid, so a dump that reads a new field also sees the slot change.
+    private final AtomicLongArray mSequence;
+    private final AtomicLongArray mTap;
+    private final AtomicIntegerArray mStage;
+    private final AtomicLongArray mStart;
+    private final AtomicLongArray mDuration;
+
+    /**
+     * @param stages the names of the stages, indexed by the stage numbers spans are recorded with
+     * @param capacity the number of recent spans kept, a power of two
+     */
+    public SpanTracer(String[] stages, int capacity) {
+        if (capacity < 1 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("Capacity " + capacity + " is not a power of two");
+        }
+        mStages = stages.clone();
+        mMask = capacity - 1;
+        mHistograms = new AtomicLongArray(stages.length * SessionMetrics.BUCKETS);
+        mMaxNanos = new AtomicLongArray(stages.length);
+        mSequence = new AtomicLongArray(capacity);
+        mTap = new AtomicLongArray(capacity);
+        mStage = new AtomicIntegerArray(capacity);
+        mStart = new AtomicLongArray(capacity);
+        mDuration = new AtomicLongArray(capacity);
+    }
+
+    /** Turns recording on or off; on by default. */
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /** Returns a new tap number, to record the spans of one tap with. */
+    public long newTap() {
+        return mTaps.incrementAndGet();
+    }
+
+    /** Records the span of {@code stage} from {@code startNanos} until now. */
+    public void span(int stage, long tap, long startNanos) {
+        if (mEnabled) {
+            record(stage, tap, startNanos, System.nanoTime() - startNanos);
+        }
+    }
+
+    /** Records a span timed elsewhere, e.g. the queue wait of a {@link SessionResult}. */
+    public void record(int stage, long tap, long startNanos, long durationNanos) {
+        if (!mEnabled) {
+            return;
+        }
+        mHistograms.incrementAndGet(stage * SessionMetrics.BUCKETS + SessionMetrics.bucket(durationNanos / 1000));
+        long max;
+        while (durationNanos > (max = mMaxNanos.get(stage)) && !mMaxNanos.compareAndSet(stage, max, durationNanos)) {
+            // retry
+        }
+        long n = mNext.getAndIncrement();
+        int slot = (int) (n & mMask);
+        mSequence.set(slot, 0);
+        mTap.lazySet(slot, tap);
+        mStage.lazySet(slot, stage);
+        mStart.lazySet(slot, startNanos);
+        mDuration.lazySet(slot, durationNanos);
+        mSequence.lazySet(slot, n + 1);
+    }
+
+    public int getStageCount() {
+        return mStages.length;
+    }
+
+    public String getStageName(int stage) {
+        return mStages[stage];
+    }
+
+    public long getCount(int stage) {
+        long count = 0;
+        for (int b = 0; b < SessionMetrics.BUCKETS; b++) {
+            count += mHistograms.get(stage * SessionMetrics.BUCKETS + b);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the upper bucket limit, in microseconds, below which a fraction {@code q} of
+     * the spans of {@code stage} fall, or 0 if there were none.
+     */
+    public long getPercentileMicros(int stage, double q) {
+        long count = getCount(stage);
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(q * count);
+        long seen = 0;
+        for (int b = 0; b < SessionMetrics.BUCKETS; b++) {
+            seen += mHistograms.get(stage * SessionMetrics.BUCKETS + b);
+            if (seen >= rank && seen > 0) {
+                return SessionMetrics.bucketLimitMicros(b);
+            }
+        }
+        return SessionMetrics.bucketLimitMicros(SessionMetrics.BUCKETS - 1);
+    }
+
+    public long getMaxMicros(int stage) {
+        return mMaxNanos.get(stage) / 1000;
+    }
+
+    /**
+     * Writes a line per stage with its count, p50, p90, p99 and maximum, then the recent
+     * spans in the order they ended, with their start in microseconds from the start of
+     * the first one listed.
+     */
+    public void dump(Writer out) throws IOException {
+        out.write("# stage count p50_us p90_us p99_us max_us\n");
+        for (int stage = 0; stage < mStages.length; stage++) {
+            out.write(String.format(Locale.US, "%s %d %d %d %d %d\n", mStages[stage], getCount(stage),
+                    getPercentileMicros(stage, 0.5), getPercentileMicros(stage, 0.9),
+                    getPercentileMicros(stage, 0.99), getMaxMicros(stage)));
+        }
+        out.write("# tap stage start_us duration_us\n");
+        long end = mNext.get();
+        long first = Math.max(0, end - (mMask + 1));
+        long origin = 0;
+        boolean hasOrigin = false;
+        for (long n = first; n < end; n++) {
+            int slot = (int) (n & mMask);
+            if (mSequence.get(slot) != n + 1) {
+                continue;
+            }
+            long tap = mTap.get(slot);
+            int stage = mStage.get(slot);
+            long start = mStart.get(slot);
+            long duration = mDuration.get(slot);
+            if (mSequence.get(slot) != n + 1) {
+                continue;
+            }
+            if (!hasOrigin) {
+                origin = start;
+                hasOrigin = true;
+            }
+            out.write(String.format(Locale.US, "%d %s %d %d\n", tap, mStages[stage],
+                    (start - origin) / 1000, duration / 1000));
+        }
+    }
+}
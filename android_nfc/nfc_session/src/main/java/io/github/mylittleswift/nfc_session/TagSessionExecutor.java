@@ -0,0 +1,204 @@
+package io.github.mylittleswift.nfc_session;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.ListIterator;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs the I/O of tag sessions, one at a time, on a dedicated thread, and hands each
+ * session's {@link SessionResult} to a callback on a result executor, typically the UI
+ * thread. An activity submits a session per tap from {@code onNewIntent} and returns at
+ * once.
+ *
+ * Sessions wait in a bounded queue. A session submitted with the key of one still waiting,
+ * i.e. the same tag tapped again, takes the waiting one's place, which ends
+ * {@link SessionResult#OUTCOME_COALESCED}. When the queue is full, the policy decides
+ * which session is {@link SessionResult#OUTCOME_DROPPED}: the new one, or the oldest
+ * waiting, whose tag is the most likely to have left the field. Every session ends with
+ * exactly one callback, and is recorded in {@link #getMetrics()}.
+ */
+public final class TagSessionExecutor {
+
+    /** When the queue is full, the new session is dropped. */
+    public static final int POLICY_DROP_NEWEST = 0;
+    /** When the queue is full, the oldest waiting session is dropped for the new one. */
+    public static final int POLICY_DROP_OLDEST = 1;
+
+    /** The I/O of one session, run on the executor's thread. */
+    public interface Task<T> {
+        T run() throws Exception;
+    }
+
+    /** Receives the result of a session, on the result executor. */
+    public interface Callback<T> {
+        void onResult(SessionResult<T> result);
+    }
+
+    private final int mCapacity;
+    private final int mPolicy;
+    private final Executor mResults;
+    private final SessionMetrics mMetrics = new SessionMetrics();
+    private final LinkedList<Session<?>> mQueue = new LinkedList<>();
+    private boolean mShutdown;
+
+    /**
+     * Starts the I/O thread.
+     *
+     * @param name of the I/O thread
+     * @param capacity the number of sessions which may wait, at least 1
+     * @param policy one of the POLICY constants
+     * @param results where callbacks run
+     */
+    public TagSessionExecutor(String name, int capacity, int policy, Executor results) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity " + capacity);
+        }
+        if (policy != POLICY_DROP_NEWEST && policy != POLICY_DROP_OLDEST) {
+            throw new IllegalArgumentException("Policy " + policy);
+        }
+        mCapacity = capacity;
+        mPolicy = policy;
+        mResults = results;
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                work();
+            }
+        }, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Queues a session.
+     *
+     * @param key identifies the tag, usually its UID; null never coalesces
+     * @return false if the session was dropped right away
+     */
+    public <T> boolean submit(byte[] key, Task<T> task, Callback<T> callback) {
+        Session<T> session = new Session<>(key == null ? null : key.clone(), task, callback, System.nanoTime());
+        Session<?> displaced = null;
+        int outcome = SessionResult.OUTCOME_DROPPED;
+        synchronized (mQueue) {
+            if (mShutdown) {
+                displaced = session;
+            } else {
+                if (key != null) {
+                    for (ListIterator<Session<?>> i = mQueue.listIterator(); i.hasNext(); ) {
+                        Session<?> waiting = i.next();
+                        if (Arrays.equals(key, waiting.mKey)) {
+                            i.set(session);
+                            displaced = waiting;
+                            outcome = SessionResult.OUTCOME_COALESCED;
+                            break;
+                        }
+                    }
+                }
+                if (displaced == null) {
+                    if (mQueue.size() < mCapacity) {
+                        mQueue.addLast(session);
+                    } else if (mPolicy == POLICY_DROP_NEWEST) {
+                        displaced = session;
+                    } else {
+                        displaced = mQueue.removeFirst();
+                        mQueue.addLast(session);
+                    }
+                }
+                mQueue.notifyAll();
+            }
+        }
+        if (displaced != null) {
+            displaced.end(outcome, null, null, System.nanoTime() - displaced.mSubmitted, 0);
+        }
+        return displaced != session;
+    }
+
+    /** Returns the number of sessions waiting, not counting one running. */
+    public int getQueued() {
+        synchronized (mQueue) {
+            return mQueue.size();
+        }
+    }
+
+    public SessionMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Drops the waiting sessions and stops the I/O thread once a running session ends. Later
+     * sessions are dropped.
+     */
+    public void shutdown() {
+        Session<?>[] dropped;
+        synchronized (mQueue) {
+            mShutdown = true;
+            dropped = mQueue.toArray(new Session<?>[mQueue.size()]);
+            mQueue.clear();
+            mQueue.notifyAll();
+        }
+        long now = System.nanoTime();
+        for (Session<?> session : dropped) {
+            session.end(SessionResult.OUTCOME_DROPPED, null, null, now - session.mSubmitted, 0);
+        }
+    }
+
+    private void work() {
+        while (true) {
+            Session<?> session;
+            synchronized (mQueue) {
+                while (mQueue.isEmpty() && !mShutdown) {
+                    try {
+                        mQueue.wait();
+                    } catch (InterruptedException e) {
+                        // only shutdown ends the loop
+                    }
+                }
+                if (mShutdown) {
+                    return;
+                }
+                session = mQueue.removeFirst();
+            }
+            session.run();
+        }
+    }
+
+    private final class Session<T> {
+        final byte[] mKey;
+        final Task<T> mTask;
+        final Callback<T> mCallback;
+        final long mSubmitted;
+
+        Session(byte[] key, Task<T> task, Callback<T> callback, long submitted) {
+            mKey = key;
+            mTask = task;
+            mCallback = callback;
+            mSubmitted = submitted;
+        }
+
+        void run() {
+            long start = System.nanoTime();
+            T value = null;
+            Exception error = null;
+            try {
+                value = mTask.run();
+            } catch (Exception e) {
+                error = e;
+            }
+            long ioNanos = System.nanoTime() - start;
+            end(error == null ? SessionResult.OUTCOME_DONE : SessionResult.OUTCOME_FAILED, value, error,
+                    start - mSubmitted, ioNanos);
+        }
+
+        void end(int outcome, T value, Exception error, long queueNanos, long ioNanos) {
+            mMetrics.record(outcome, queueNanos, ioNanos);
+            final SessionResult<T> result = new SessionResult<>(mKey, outcome, value, error, queueNanos, ioNanos);
+            mResults.execute(new Runnable() {
+                @Override
+                public void run() {
+                    mCallback.onResult(result);
+                }
+            });
+        }
+    }
+}
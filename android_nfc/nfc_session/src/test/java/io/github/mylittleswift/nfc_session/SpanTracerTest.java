@@ -0,0 +1,72 @@
+package io.github.mylittleswift.nfc_session;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link SpanTracer}.
+ */
+public class SpanTracerTest {
+
+    private static final String[] STAGES = {"queue", "read"};
+    private static final int QUEUE = 0;
+    private static final int READ = 1;
+
+    @Test
+    public void record_fillsTheHistogramOfItsStage() {
+        SpanTracer tracer = new SpanTracer(STAGES, 4);
+        tracer.record(READ, 1, 0, 3000000);
+        tracer.record(READ, 2, 0, 5000000);
+        tracer.record(QUEUE, 2, 0, 100000);
+
+        assertEquals(1, tracer.getCount(QUEUE));
+        assertEquals(2, tracer.getCount(READ));
+        assertEquals(4096, tracer.getPercentileMicros(READ, 0.5));
+        assertEquals(8192, tracer.getPercentileMicros(READ, 0.99));
+        assertEquals(5000, tracer.getMaxMicros(READ));
+    }
+
+    @Test
+    public void dump_listsTheLastSpansInOrder() throws IOException {
+        SpanTracer tracer = new SpanTracer(STAGES, 2);
+        tracer.record(QUEUE, 1, 1000000, 1000);
+        tracer.record(QUEUE, 2, 2000000, 2000);
+        tracer.record(READ, 2, 2002000, 30000);
+
+        StringWriter out = new StringWriter();
+        tracer.dump(out);
+
+        assertEquals("# stage count p50_us p90_us p99_us max_us\n"
+                + "queue 2 2 4 4 2\n"
+                + "read 1 32 32 32 30\n"
+                + "# tap stage start_us duration_us\n"
+                + "2 queue 0 2\n"
+                + "2 read 2 30\n", out.toString());
+    }
+
+    @Test
+    public void disabled_recordsNothing() {
+        SpanTracer tracer = new SpanTracer(STAGES, 4);
+        tracer.setEnabled(false);
+        tracer.span(READ, tracer.newTap(), System.nanoTime());
+
+        assertEquals(0, tracer.getCount(READ));
+    }
+
+    @Test
+    public void newTap_numbersTapsFromOne() {
+        SpanTracer tracer = new SpanTracer(STAGES, 4);
+
+        assertEquals(1, tracer.newTap());
+        assertEquals(2, tracer.newTap());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacity_mustBeAPowerOfTwo() {
+        new SpanTracer(STAGES, 3);
+    }
+}
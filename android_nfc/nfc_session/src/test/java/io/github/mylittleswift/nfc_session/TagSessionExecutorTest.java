@@ -0,0 +1,208 @@
+package io.github.mylittleswift.nfc_session;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link TagSessionExecutor}.
+ */
+public class TagSessionExecutorTest {
+
+    private static final byte[] UID_A = {0x04, (byte) 0xA1};
+    private static final byte[] UID_B = {0x04, (byte) 0xB2};
+    private static final byte[] UID_C = {0x04, (byte) 0xC3};
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final BlockingQueue<SessionResult<String>> mResults = new LinkedBlockingQueue<>();
+    private final TagSessionExecutor.Callback<String> mCallback = new TagSessionExecutor.Callback<String>() {
+        @Override
+        public void onResult(SessionResult<String> result) {
+            mResults.add(result);
+        }
+    };
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+    private TagSessionExecutor mExecutor;
+
+    @After
+    public void tearDown() {
+        mRelease.countDown();
+        if (mExecutor != null) {
+            mExecutor.shutdown();
+        }
+    }
+
+    private static TagSessionExecutor.Task<String> returning(final String value) {
+        return new TagSessionExecutor.Task<String>() {
+            @Override
+            public String run() {
+                return value;
+            }
+        };
+    }
+
+    /** Occupies the I/O thread until mRelease, so that later sessions wait. */
+    private void block() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        mExecutor.submit(null, new TagSessionExecutor.Task<String>() {
+            @Override
+            public String run() throws Exception {
+                started.countDown();
+                mRelease.await();
+                return "blocker";
+            }
+        }, mCallback);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+
+    private SessionResult<String> next() throws InterruptedException {
+        SessionResult<String> result = mResults.poll(5, TimeUnit.SECONDS);
+        assertNotNull("no result", result);
+        return result;
+    }
+
+    private List<String> values(int n) throws InterruptedException {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            SessionResult<String> result = next();
+            values.add(result.getOutcomeName() + ":" + result.getValue());
+        }
+        return values;
+    }
+
+    @Test
+    public void runsSessionsInOrder() throws InterruptedException {
+        mExecutor = new TagSessionExecutor("test-io", 4, TagSessionExecutor.POLICY_DROP_NEWEST, DIRECT);
+        assertTrue(mExecutor.submit(UID_A, returning("a"), mCallback));
+        assertTrue(mExecutor.submit(UID_B, returning("b"), mCallback));
+
+        SessionResult<String> a = next();
+        assertTrue(a.isDone());
+        assertEquals("a", a.getValue());
+        assertArrayEquals(UID_A, a.getKey());
+        assertEquals("b", next().getValue());
+    }
+
+    @Test
+    public void sameTag_coalesces() throws InterruptedException {
+        mExecutor = new TagSessionExecutor("test-io", 4, TagSessionExecutor.POLICY_DROP_NEWEST, DIRECT);
+        block();
+        mExecutor.submit(UID_A, returning("a1"), mCallback);
+        mExecutor.submit(UID_B, returning("b"), mCallback);
+        mExecutor.submit(UID_A, returning("a2"), mCallback);
+
+        SessionResult<String> coalesced = next();
+        assertEquals(SessionResult.OUTCOME_COALESCED, coalesced.getOutcome());
+        assertArrayEquals(UID_A, coalesced.getKey());
+        assertEquals(2, mExecutor.getQueued());
+
+        mRelease.countDown();
+        // a2 kept a1's place in front of b
+        assertEquals(Arrays.asList("done:blocker", "done:a2", "done:b"), values(3));
+        assertEquals(1, mExecutor.getMetrics().getCount(SessionResult.OUTCOME_COALESCED));
+    }
+
+    @Test
+    public void full_dropsTheNewest() throws InterruptedException {
+        mExecutor = new TagSessionExecutor("test-io", 1, TagSessionExecutor.POLICY_DROP_NEWEST, DIRECT);
+        block();
+        assertTrue(mExecutor.submit(UID_A, returning("a"), mCallback));
+        assertFalse(mExecutor.submit(UID_B, returning("b"), mCallback));
+
+        assertEquals("dropped:null", values(1).get(0));
+        mRelease.countDown();
+        assertEquals(Arrays.asList("done:blocker", "done:a"), values(2));
+    }
+
+    @Test
+    public void full_dropsTheOldest() throws InterruptedException {
+        mExecutor = new TagSessionExecutor("test-io", 2, TagSessionExecutor.POLICY_DROP_OLDEST, DIRECT);
+        block();
+        mExecutor.submit(UID_A, returning("a"), mCallback);
+        mExecutor.submit(UID_B, returning("b"), mCallback);
+        assertTrue(mExecutor.submit(UID_C, returning("c"), mCallback));
+
+        SessionResult<String> dropped = next();
+        assertEquals(SessionResult.OUTCOME_DROPPED, dropped.getOutcome());
+        assertArrayEquals(UID_A, dropped.getKey());
+        mRelease.countDown();
+        assertEquals(Arrays.asList("done:blocker", "done:b", "done:c"), values(3));
+    }
+
+    @Test
+    public void failure_isReportedWithItsError() throws InterruptedException {
+        mExecutor = new TagSessionExecutor("test-io", 1, TagSessionExecutor.POLICY_DROP_NEWEST, DIRECT);
+        final IOException lost = new IOException("Tag was lost");
+        mExecutor.submit(UID_A, new TagSessionExecutor.Task<String>() {
+            @Override
+            public String run() throws IOException {
+                throw lost;
+            }
+        }, mCallback);
+
+        SessionResult<String> result = next();
+        assertEquals(SessionResult.OUTCOME_FAILED, result.getOutcome());
+        assertSame(lost, result.getError());
+        assertNull(result.getValue());
+    }
+
+    @Test
+    public void measuresQueueAndIoTime() throws InterruptedException {
+        mExecutor = new TagSessionExecutor("test-io", 2, TagSessionExecutor.POLICY_DROP_NEWEST, DIRECT);
+        block();
+        mExecutor.submit(UID_A, new TagSessionExecutor.Task<String>() {
+            @Override
+            public String run() throws InterruptedException {
+                Thread.sleep(20);
+                return "a";
+            }
+        }, mCallback);
+        Thread.sleep(20);
+        mRelease.countDown();
+        next();
+
+        SessionResult<String> a = next();
+        assertTrue(a.getQueueNanos() >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(a.getIoNanos() >= TimeUnit.MILLISECONDS.toNanos(20));
+        SessionMetrics metrics = mExecutor.getMetrics();
+        assertEquals(2, metrics.getCount(SessionResult.OUTCOME_DONE));
+        assertTrue(metrics.getIoPercentileMicros(0.99) >= 20000);
+        assertTrue(metrics.format(), metrics.format().startsWith("2 done, 0 failed, 0 dropped, 0 coalesced; queue p50 "));
+    }
+
+    @Test
+    public void shutdown_dropsWaitingAndLaterSessions() throws InterruptedException {
+        mExecutor = new TagSessionExecutor("test-io", 2, TagSessionExecutor.POLICY_DROP_NEWEST, DIRECT);
+        block();
+        mExecutor.submit(UID_A, returning("a"), mCallback);
+        mExecutor.shutdown();
+        assertEquals("dropped:null", values(1).get(0));
+        assertFalse(mExecutor.submit(UID_B, returning("b"), mCallback));
+        assertEquals("dropped:null", values(1).get(0));
+        mRelease.countDown();
+        // the running session still ends
+        assertEquals("done:blocker", values(1).get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroCapacity() {
+        new TagSessionExecutor("test-io", 0, TagSessionExecutor.POLICY_DROP_NEWEST, DIRECT);
+    }
+}